@@ -0,0 +1,17 @@
+package se.product_service_1.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class MessageConverterConfig implements WebMvcConfigurer {
+
+    // Läggs efter Jackson (JSON, Smile, CBOR): en converter-böna hamnar först och skulle bli standardformatet
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new ProtobufResponseHttpMessageConverter());
+    }
+}
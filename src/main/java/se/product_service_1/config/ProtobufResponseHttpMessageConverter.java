@@ -0,0 +1,216 @@
+package se.product_service_1.config;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.lang.Nullable;
+import se.product_service_1.dto.CategoryResponse;
+import se.product_service_1.dto.ProductResponse;
+import se.product_service_1.dto.TagResponse;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Skriver {@link ProductResponse}, {@link TagResponse} och {@link CategoryResponse}, ensamma eller i listor,
+ * som Protocol Buffers enligt {@code proto/product_service.proto}. Kodningen görs direkt mot
+ * {@link CodedOutputStream} utan genererade klasser, så DTO:erna behöver inte kopieras till meddelandeobjekt.
+ * Bara svar stöds; förfrågningar tas fortfarande emot som JSON. Registreras sist i {@link MessageConverterConfig}
+ * så att JSON förblir standardformatet när klienten accepterar vad som helst.
+ */
+public class ProtobufResponseHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    private static final Set<Class<?>> SUPPORTED_TYPES = Set.of(ProductResponse.class, TagResponse.class, CategoryResponse.class);
+    // Listor kapslas i ProductList/TagList/CategoryList där elementen är fält 1
+    private static final int LIST_FIELD = 1;
+
+    public ProtobufResponseHttpMessageConverter() {
+        super(APPLICATION_PROTOBUF);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected boolean canRead(@Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (SUPPORTED_TYPES.contains(clazz)) {
+            return true;
+        }
+        if (type == null || !Collection.class.isAssignableFrom(clazz)) {
+            return false;
+        }
+        // Vid ResponseEntity<?> är elementtypen okänd här; den kontrolleras då i stället när listan skrivs
+        Class<?> elementType = ResolvableType.forType(type).asCollection().resolveGeneric(0);
+        return elementType == null || elementType == Object.class || SUPPORTED_TYPES.contains(elementType);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SUPPORTED_TYPES.contains(clazz) || Collection.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Protobuf stöds bara för svar.", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Protobuf stöds bara för svar.", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (value instanceof Collection<?> elements) {
+            for (Object element : elements) {
+                if (element == null || !SUPPORTED_TYPES.contains(element.getClass())) {
+                    throw new HttpMessageNotWritableException("Kan inte koda " + element + " som protobuf.");
+                }
+            }
+        }
+        CodedOutputStream out = CodedOutputStream.newInstance(outputMessage.getBody());
+        write(value, out);
+        out.flush();
+    }
+
+    /**
+     * Kodar ett svar eller en lista av svar. Används även utanför HTTP, t.ex. i benchmarks.
+     */
+    public static void write(Object value, CodedOutputStream out) throws IOException {
+        if (value instanceof Collection<?> elements) {
+            for (Object element : elements) {
+                out.writeTag(LIST_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                out.writeUInt32NoTag(messageSize(element));
+                writeMessage(element, out);
+            }
+        } else {
+            writeMessage(value, out);
+        }
+    }
+
+    private static void writeMessage(Object value, CodedOutputStream out) throws IOException {
+        if (value instanceof ProductResponse product) {
+            writeProduct(product, out);
+        } else if (value instanceof TagResponse tag) {
+            writeTag(tag, out);
+        } else if (value instanceof CategoryResponse category) {
+            writeCategory(category, out);
+        } else {
+            throw new IllegalArgumentException("Kan inte koda " + value.getClass().getName() + " som protobuf.");
+        }
+    }
+
+    private static int messageSize(Object value) {
+        if (value instanceof ProductResponse product) {
+            return productSize(product);
+        } else if (value instanceof TagResponse tag) {
+            return tagSize(tag);
+        } else if (value instanceof CategoryResponse category) {
+            return categorySize(category);
+        }
+        throw new IllegalArgumentException("Kan inte koda " + value.getClass().getName() + " som protobuf.");
+    }
+
+    private static void writeProduct(ProductResponse product, CodedOutputStream out) throws IOException {
+        if (product.getId() != null) {
+            out.writeInt64(1, product.getId());
+        }
+        writeString(out, 2, product.getProductName());
+        writeString(out, 3, product.getCategoryName());
+        if (product.getPrice() != null) {
+            out.writeDouble(4, product.getPrice());
+        }
+        if (product.getStockQuantity() != 0) {
+            out.writeInt32(5, product.getStockQuantity());
+        }
+        if (product.getTagNames() != null) {
+            for (String tagName : product.getTagNames()) {
+                out.writeString(6, tagName);
+            }
+        }
+    }
+
+    private static int productSize(ProductResponse product) {
+        int size = 0;
+        if (product.getId() != null) {
+            size += CodedOutputStream.computeInt64Size(1, product.getId());
+        }
+        size += stringSize(2, product.getProductName());
+        size += stringSize(3, product.getCategoryName());
+        if (product.getPrice() != null) {
+            size += CodedOutputStream.computeDoubleSize(4, product.getPrice());
+        }
+        if (product.getStockQuantity() != 0) {
+            size += CodedOutputStream.computeInt32Size(5, product.getStockQuantity());
+        }
+        if (product.getTagNames() != null) {
+            for (String tagName : product.getTagNames()) {
+                size += CodedOutputStream.computeStringSize(6, tagName);
+            }
+        }
+        return size;
+    }
+
+    private static void writeTag(TagResponse tag, CodedOutputStream out) throws IOException {
+        if (tag.getId() != null) {
+            out.writeInt64(1, tag.getId());
+        }
+        writeString(out, 2, tag.getName());
+        writeString(out, 3, tag.getDescription());
+        if (tag.getProductCount() != 0) {
+            out.writeInt32(4, tag.getProductCount());
+        }
+    }
+
+    private static int tagSize(TagResponse tag) {
+        int size = 0;
+        if (tag.getId() != null) {
+            size += CodedOutputStream.computeInt64Size(1, tag.getId());
+        }
+        size += stringSize(2, tag.getName());
+        size += stringSize(3, tag.getDescription());
+        if (tag.getProductCount() != 0) {
+            size += CodedOutputStream.computeInt32Size(4, tag.getProductCount());
+        }
+        return size;
+    }
+
+    private static void writeCategory(CategoryResponse category, CodedOutputStream out) throws IOException {
+        writeString(out, 1, category.getName());
+    }
+
+    private static int categorySize(CategoryResponse category) {
+        return stringSize(1, category.getName());
+    }
+
+    // proto3 utelämnar tomma strängar, så null och "" kodas likadant
+    private static void writeString(CodedOutputStream out, int field, @Nullable String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            out.writeString(field, value);
+        }
+    }
+
+    private static int stringSize(int field, @Nullable String value) {
+        return value != null && !value.isEmpty() ? CodedOutputStream.computeStringSize(field, value) : 0;
+    }
+}
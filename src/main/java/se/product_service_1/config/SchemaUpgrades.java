@@ -0,0 +1,104 @@
+package se.product_service_1.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Rättar data i en befintlig databas som ddl-auto=update inte rör när entiteterna ändras.
+ * Körs när alla bönor är skapade, och schemat alltså uppdaterat, men innan webbservern tar emot anrop.
+ */
+@Component
+public class SchemaUpgrades implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaUpgrades.class);
+
+    // Samma som allocationSize i entiteternas @SequenceGenerator
+    public static final int ALLOCATION_SIZE = 50;
+
+    // Tabeller som gick från IDENTITY till sekvens och därför kan ha rader med högre id än sekvensen
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "products", "products_seq",
+            "product_tags", "product_tags_seq",
+            "tags", "tags_seq");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dialect dialect;
+
+    public SchemaUpgrades(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        backfillProductVersions();
+        SEQUENCES.forEach(this::alignSequence);
+        backfillOpeningBalances();
+    }
+
+    /**
+     * Produkter från före @Version har version NULL, och en sådan rad kan Hibernate inte stega.
+     */
+    public int backfillProductVersions() {
+        int updated = jdbcTemplate.update("UPDATE products SET version = 0 WHERE version IS NULL");
+        if (updated > 0) {
+            log.info("backfillProductVersions – satte version=0 på {} produkter", updated);
+        }
+        return updated;
+    }
+
+    /**
+     * Produkter från före lagerjournalen saknar ingående saldo, och då går saldot inte att räkna fram ur
+     * journalen. Ger dem ett snapshot med saldot före deras första journalrad, eller nuvarande saldo om de
+     * inte har några rader. Produkter som redan har snapshot eller vars första rad är ingående saldo rörs inte.
+     * Returnerar antalet produkter som fick ett snapshot.
+     */
+    public int backfillOpeningBalances() {
+        int withoutEntries = jdbcTemplate.update("""
+                INSERT INTO inventory_ledger_snapshots (product_id, quantity, entry_count, compacted_at)
+                SELECT p.id, COALESCE(p.stock_quantity, 0), 0, CURRENT_TIMESTAMP FROM products p
+                WHERE NOT EXISTS (SELECT 1 FROM inventory_ledger_snapshots s WHERE s.product_id = p.id)
+                  AND NOT EXISTS (SELECT 1 FROM inventory_ledger e WHERE e.product_id = p.id)""");
+        int withEntries = jdbcTemplate.update("""
+                INSERT INTO inventory_ledger_snapshots (product_id, quantity, entry_count, compacted_at)
+                SELECT e.product_id, e.quantity_after - e.delta, 0, CURRENT_TIMESTAMP FROM inventory_ledger e
+                WHERE e.seq IN (SELECT MIN(f.seq) FROM inventory_ledger f GROUP BY f.product_id)
+                  AND e.quantity_after - e.delta <> 0
+                  AND NOT EXISTS (SELECT 1 FROM inventory_ledger_snapshots s WHERE s.product_id = e.product_id)""");
+        if (withoutEntries + withEntries > 0) {
+            log.info("backfillOpeningBalances – ingående saldo för {} produkter utan och {} med journalrader",
+                    withoutEntries, withEntries);
+        }
+        return withoutEntries + withEntries;
+    }
+
+    /**
+     * Flyttar sekvensen förbi största befintliga id. Hibernates pooled-optimering delar ut id:n
+     * {@code värde - (ALLOCATION_SIZE - 1)} till och med värdet, så nästa värde måste vara minst
+     * max(id) + ALLOCATION_SIZE för att inget utdelat id ska krocka med en befintlig rad.
+     * Returnerar true om sekvensen flyttades.
+     */
+    public boolean alignSequence(String table, String sequence) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+        if (maxId == null) {
+            return false;
+        }
+        // Att läsa nästa värde förbrukar ett block, vilket bara lämnar en lucka i id-serien
+        Long next = jdbcTemplate.queryForObject(dialect.getSequenceSupport().getSequenceNextValString(sequence), Long.class);
+        long required = maxId + ALLOCATION_SIZE;
+        if (next != null && next >= required) {
+            return false;
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + required);
+        log.info("alignSequence – {} startar nu på {} (max id i {} är {})", sequence, required, table, maxId);
+        return true;
+    }
+}
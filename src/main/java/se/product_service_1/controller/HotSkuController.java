@@ -0,0 +1,35 @@
+package se.product_service_1.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import se.product_service_1.service.HotSkuInventory;
+
+import java.util.Set;
+
+@RestController
+@RequestMapping("/inventory/hot-skus")
+@AllArgsConstructor
+public class HotSkuController {
+
+    private final HotSkuInventory hotSkuInventory;
+
+    @Operation(summary = "Get hot products", description = "Ids of the products whose stock is kept in memory and written to the database in batches")
+    @GetMapping
+    public ResponseEntity<Set<Long>> getHotProducts() {
+        return ResponseEntity.ok(hotSkuInventory.hotProductIds());
+    }
+    @Operation(summary = "Flag a hot product", description = "Moves the product's stock into striped in-memory counters. Inventory changes for it no longer wait on the database row lock; they are journaled locally and written to the database every few hundred milliseconds")
+    @PutMapping("/{productId}")
+    public ResponseEntity<Void> enable(@PathVariable Long productId) {
+        hotSkuInventory.enable(productId);
+        return ResponseEntity.noContent().build();
+    }
+    @Operation(summary = "Unflag a hot product", description = "Writes outstanding changes to the database and handles the product's stock there again")
+    @DeleteMapping("/{productId}")
+    public ResponseEntity<Void> disable(@PathVariable Long productId) {
+        hotSkuInventory.disable(productId);
+        return ResponseEntity.noContent().build();
+    }
+}
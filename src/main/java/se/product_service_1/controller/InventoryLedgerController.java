@@ -0,0 +1,59 @@
+package se.product_service_1.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import se.product_service_1.dto.LedgerEntryResponse;
+import se.product_service_1.dto.LedgerReplayResult;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.model.InventoryLedgerEntry;
+import se.product_service_1.service.InventoryLedgerService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/inventory/ledger")
+@AllArgsConstructor
+public class InventoryLedgerController {
+
+    private final InventoryLedgerService inventoryLedgerService;
+
+    @Operation(summary = "Get stock change history", description = "Journal entries for a product, newest first. Pass the smallest seq of a page as beforeSeq to get the next one. Entries older than the retention period are only kept as a summed snapshot")
+    @GetMapping("/{productId}")
+    public ResponseEntity<List<LedgerEntryResponse>> getHistory(@PathVariable Long productId,
+                                                                @RequestParam(required = false) Long beforeSeq,
+                                                                @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(inventoryLedgerService.history(productId, beforeSeq, limit).stream()
+                .map(InventoryLedgerController::buildLedgerEntryResponse)
+                .toList());
+    }
+    @Operation(summary = "Replay the inventory journal", description = "Recomputes every product's stock from its snapshot and journal entries and reports products whose stockQuantity differs. Unless dryRun is true the journal's value is written back. Hot SKUs are skipped")
+    @PostMapping("/replay")
+    public ResponseEntity<LedgerReplayResult> replay(@RequestParam(defaultValue = "true") boolean dryRun) {
+        return ResponseEntity.ok(inventoryLedgerService.replay(dryRun));
+    }
+    @Operation(summary = "Compact the inventory journal", description = "Folds entries older than olderThanHours into per-product snapshots and deletes them")
+    @PostMapping("/compact")
+    public ResponseEntity<Map<String, Long>> compact(@RequestParam long olderThanHours) {
+        if (olderThanHours < 0) {
+            throw new BadRequestException("olderThanHours får inte vara negativt.");
+        }
+        return ResponseEntity.ok(Map.of("compacted",
+                inventoryLedgerService.compact(Instant.now().minus(Duration.ofHours(olderThanHours)))));
+    }
+
+    private static LedgerEntryResponse buildLedgerEntryResponse(InventoryLedgerEntry entry) {
+        return LedgerEntryResponse.builder()
+                .seq(entry.getSeq())
+                .productId(entry.getProductId())
+                .delta(entry.getDelta())
+                .quantityAfter(entry.getQuantityAfter())
+                .caller(entry.getCaller())
+                .createdAt(entry.getCreatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package se.product_service_1.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import se.product_service_1.dto.ProductAvailability;
+import se.product_service_1.dto.ReservationRequest;
+import se.product_service_1.dto.ReservationRequest.ReservationLine;
+import se.product_service_1.dto.ReservationResponse;
+import se.product_service_1.service.InventoryReservation;
+import se.product_service_1.service.InventoryReservationService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/inventory")
+@AllArgsConstructor
+public class InventoryReservationController {
+
+    private final InventoryReservationService inventoryReservationService;
+
+    @Operation(summary = "Reserve stock", description = "Holds the given quantities without changing stockQuantity. The hold expires after ttlSeconds unless it is committed or released. Fails with 422 if any line exceeds the available-to-promise quantity")
+    @PostMapping("/reservations")
+    public ResponseEntity<ReservationResponse> reserve(@RequestBody ReservationRequest request) {
+        InventoryReservation reservation = inventoryReservationService.reserve(request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(buildReservationResponse(reservation));
+    }
+    @Operation(summary = "Commit a reservation", description = "Subtracts the reserved quantities from stockQuantity and ends the reservation")
+    @PostMapping("/reservations/{reservationId}/commit")
+    public ResponseEntity<Void> commit(@PathVariable String reservationId) {
+        inventoryReservationService.commit(reservationId);
+        return ResponseEntity.noContent().build();
+    }
+    @Operation(summary = "Release a reservation", description = "Ends the reservation without changing stockQuantity")
+    @DeleteMapping("/reservations/{reservationId}")
+    public ResponseEntity<Void> release(@PathVariable String reservationId) {
+        inventoryReservationService.release(reservationId);
+        return ResponseEntity.noContent().build();
+    }
+    @Operation(summary = "Get available-to-promise", description = "Stock quantity minus active reservations for a product")
+    @GetMapping("/{productId}/available")
+    public ResponseEntity<ProductAvailability> getAvailability(@PathVariable Long productId) {
+        return ResponseEntity.ok(ProductAvailability.builder()
+                .productId(productId)
+                .availableToPromise(inventoryReservationService.availableToPromise(productId))
+                .reserved(inventoryReservationService.held(productId))
+                .build());
+    }
+
+    private static ReservationResponse buildReservationResponse(InventoryReservation reservation) {
+        List<ReservationLine> lines = new ArrayList<>();
+        reservation.getQuantities().forEach((productId, quantity) -> lines.add(new ReservationLine(productId, quantity)));
+        return ReservationResponse.builder()
+                .reservationId(reservation.getId())
+                .expiresAt(reservation.getExpiresAt())
+                .lines(lines)
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package se.product_service_1.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.product_service_1.dto.LowStockEvent;
+import se.product_service_1.dto.LowStockProduct;
+import se.product_service_1.dto.LowStockThresholdRequest;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.service.LowStockMonitor;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/product/low-stock")
+@AllArgsConstructor
+public class LowStockController {
+
+    private final LowStockMonitor lowStockMonitor;
+
+    @Operation(summary = "Get low-stock products", description = "Products whose stock is below their threshold, lowest stock first. Served from an in-memory sorted set kept up to date by every stock change")
+    @GetMapping
+    public ResponseEntity<List<LowStockProduct>> getLowStock(@RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(lowStockMonitor.lowStock(limit));
+    }
+    @Operation(summary = "Get low-stock events", description = "Buffered threshold crossings with a sequence number greater than after. Only the most recent events are kept; a gap in the sequence numbers means some were dropped")
+    @GetMapping("/events")
+    public ResponseEntity<List<LowStockEvent>> getEvents(@RequestParam(defaultValue = "0") long after) {
+        return ResponseEntity.ok(lowStockMonitor.eventsAfter(after));
+    }
+    @Operation(summary = "Stream low-stock events", description = "Server-Sent Events with one low or recovered event per threshold crossing. Reconnect with Last-Event-ID (or after) to first receive the buffered events that were missed")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                             @RequestParam(required = false) Long after) {
+        Long afterSeq = after;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                afterSeq = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Last-Event-ID måste vara ett löpnummer.");
+            }
+        }
+        return lowStockMonitor.subscribe(afterSeq);
+    }
+    @Operation(summary = "Set a product's low-stock threshold", description = "The product counts as low when its stock is below the threshold. Overrides the category threshold; 0 disables the check for the product")
+    @PutMapping("/thresholds/products/{productId}")
+    public ResponseEntity<Void> setProductThreshold(@PathVariable Long productId, @RequestBody LowStockThresholdRequest request) {
+        lowStockMonitor.setProductThreshold(productId, request.getThreshold());
+        return ResponseEntity.noContent().build();
+    }
+    @Operation(summary = "Remove a product's low-stock threshold", description = "The product falls back to its category's threshold")
+    @DeleteMapping("/thresholds/products/{productId}")
+    public ResponseEntity<Void> clearProductThreshold(@PathVariable Long productId) {
+        lowStockMonitor.clearProductThreshold(productId);
+        return ResponseEntity.noContent().build();
+    }
+    @Operation(summary = "Set a category's low-stock threshold", description = "Applies to every product in the category that has no threshold of its own")
+    @PutMapping("/thresholds/categories/{categoryId}")
+    public ResponseEntity<Void> setCategoryThreshold(@PathVariable Long categoryId, @RequestBody LowStockThresholdRequest request) {
+        lowStockMonitor.setCategoryThreshold(categoryId, request.getThreshold());
+        return ResponseEntity.noContent().build();
+    }
+    @Operation(summary = "Remove a category's low-stock threshold", description = "Products in the category fall back to inventory.low-stock.default-threshold")
+    @DeleteMapping("/thresholds/categories/{categoryId}")
+    public ResponseEntity<Void> clearCategoryThreshold(@PathVariable Long categoryId) {
+        lowStockMonitor.clearCategoryThreshold(categoryId);
+        return ResponseEntity.noContent().build();
+    }
+}
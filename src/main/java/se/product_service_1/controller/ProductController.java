@@ -1,53 +1,123 @@
 package se.product_service_1.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.AllArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import se.product_service_1.dto.*;
 import se.product_service_1.model.Category;
 import se.product_service_1.model.Product;
+import se.product_service_1.service.CatalogChangeCounters;
 import se.product_service_1.service.CategoryService;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.IdempotencyStore;
+import se.product_service_1.service.ProductListingCache;
+import se.product_service_1.service.ProductPage;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductSearchResult;
 import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTextHit;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/product")
 @AllArgsConstructor
 public class ProductController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_TEXT_SEARCH_LIMIT = 20;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final TypeReference<ProductResponse> PRODUCT_RESPONSE = new TypeReference<>() {};
+    private static final TypeReference<List<ProductResponse>> PRODUCT_RESPONSES = new TypeReference<>() {};
+    private static final TypeReference<ProductTagBulkResult> PRODUCT_TAG_BULK_RESULT = new TypeReference<>() {};
+
     private ProductService productService;
     private CategoryService categoryService;
+    private ObjectMapper objectMapper;
+    private ProductResponseCache productResponseCache;
+    private CatalogChangeCounters catalogChangeCounters;
+    private ProductListingCache productListingCache;
+    private IdempotencyStore idempotencyStore;
+    private HotSkuInventory hotSkuInventory;
 
-    @Operation(summary = "Get all products", description = "Returns all products")
+    @Operation(summary = "Get all products", description = "Returns a page of products. Pass the X-Next-Cursor header value as 'after' to get the next page. Send the ETag back in If-None-Match to get 304 Not Modified while the catalog is unchanged")
+    @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ProductResponse.class))))
     @GetMapping
-    public ResponseEntity<List<ProductResponse>> getAllProducts() {
-        List<Product> products = productService.getAllProducts();
-        List<ProductResponse> responseList = new ArrayList<>();
-        for (Product product : products) {
-            ProductResponse productResponse = buildProductResponse(product);
-            responseList.add(productResponse);
-        }
-        return ResponseEntity.ok(responseList);
+    public ResponseEntity<?> getAllProducts(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            WebRequest webRequest) {
+        // Versionen läses före produkterna så att en samtidig ändring aldrig döljs bakom en gammal tagg
+        return buildListResponse("p." + catalogChangeCounters.catalogTag(), null, sortBy, after, limit, includeTotal, webRequest);
     }
-    @Operation(summary = "Get all products from a category", description = "Returns all products from a specific category")
+    @Operation(summary = "Export the whole catalog", description = "Streams all products as NDJSON, one product per line. Pass the last received id as 'after' to resume an interrupted export")
+    @GetMapping(value = "/export", produces = NDJSON_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(required = false) Long after) {
+        StreamingResponseBody body = outputStream -> productService.exportProducts(after, (products, tagNamesByProductId) -> {
+            try {
+                for (Product product : products) {
+                    List<String> tagNames = tagNamesByProductId.getOrDefault(product.getId(), new ArrayList<>());
+                    outputStream.write(objectMapper.writeValueAsBytes(buildProductResponse(product, tagNames)));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))
+                .body(body);
+    }
+    @Operation(summary = "Get all products from a category", description = "Returns a page of products from a specific category. Pass the X-Next-Cursor header value as 'after' to get the next page. Send the ETag back in If-None-Match to get 304 Not Modified while the category is unchanged")
+    @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ProductResponse.class))))
     @GetMapping("/{productCategory}")
-    public ResponseEntity<List<ProductResponse>> getProductsByCategory(@PathVariable String productCategory) {
+    public ResponseEntity<?> getProductsByCategory(
+            @PathVariable String productCategory,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            WebRequest webRequest) {
         Category category = categoryService.getCategoryByName(productCategory);
-        List<Product> products = productService.getProductsByCategory(category.getName());
-        List<ProductResponse> responseList = new ArrayList<>();
-        for (Product product : products) {
-            ProductResponse productResponse = buildProductResponse(product);
-            responseList.add(productResponse);
-        }
-        return ResponseEntity.ok(responseList);
+        String version = "c" + category.getId() + "." + catalogChangeCounters.categoryTag(category.getId());
+        return buildListResponse(version, category.getId(), sortBy, after, limit, includeTotal, webRequest);
     }
-    @Operation(summary = "Add a new product", description = "Saves a new product")
+    @Operation(summary = "Add a new product", description = "Saves a new product. With an Idempotency-Key header a retry returns the first response instead of creating the product again")
     @PostMapping
-    public ResponseEntity<ProductResponse> addProduct(@RequestBody ProductRequest productRequest) {
+    public ResponseEntity<ProductResponse> addProduct(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                      @RequestBody ProductRequest productRequest) {
+        return idempotencyStore.execute(idempotencyKey, "POST /product", productRequest, PRODUCT_RESPONSE,
+                () -> createProduct(productRequest));
+    }
+
+    private ResponseEntity<ProductResponse> createProduct(ProductRequest productRequest) {
         Category category = categoryService.getCategoryByName(productRequest.getCategoryName());
         Product product = Product.builder()
                 .category(category)
@@ -66,6 +136,11 @@ public class ProductController {
         ProductResponse productResponse = buildProductResponse(savedProduct);
         return ResponseEntity.status(HttpStatus.CREATED).body(productResponse);
     }
+    @Operation(summary = "Add many products", description = "Creates up to " + ProductService.MAX_BULK_SIZE + " products in one transaction with batched inserts. Each item gets its own result: created with the new id, conflict if the name already exists or appears earlier in the batch, or invalid if a field is missing or the category does not exist")
+    @PostMapping("/bulk")
+    public ResponseEntity<List<ProductBulkResult>> addProducts(@RequestBody List<ProductRequest> productRequests) {
+        return ResponseEntity.ok(productService.addProducts(productRequests));
+    }
     @Operation(summary = "Delete a product", description = "Delete a product by name")
     @DeleteMapping
     public ResponseEntity<String> deleteProduct(@RequestBody ProductDeleteRequest productDelete) {
@@ -93,87 +168,307 @@ public class ProductController {
         ProductResponse productResponse = buildProductResponse(updatedProduct);
         return ResponseEntity.ok(productResponse);
     }
-    @Operation(summary = "Update stockQuantity", description = "Add or subtract stockQuantity from current stock")
+    @Operation(summary = "Check availability for a cart", description = "Returns per line whether the quantity is available (stock minus active reservations), for up to " + ProductService.MAX_AVAILABILITY_LINES + " lines. Lines for the same product are added together. Answered from the in-memory stock snapshot without reading the database")
+    @PostMapping("/availability")
+    public ResponseEntity<List<AvailabilityCheckResult>> checkAvailability(@RequestBody List<AvailabilityCheckLine> lines) {
+        return ResponseEntity.ok(productService.checkAvailability(lines));
+    }
+    @Operation(summary = "Update stockQuantity", description = "Add or subtract stockQuantity from current stock. With an Idempotency-Key header a retry returns the first response instead of applying the changes again; a concurrent retry waits for the first call")
     @PostMapping("/inventoryManager")
-    public ResponseEntity<List<ProductResponse>> updateStockQuantity(@RequestBody InventoryManagementRequest inventoryManagementRequest) {
-        List<Product> productList = productService.updateInventoryChange(inventoryManagementRequest);
-        List<ProductResponse> responseList = new ArrayList<>(productList.size());
-
-        for (Product product : productList) {
-            ProductResponse productResponse = buildProductResponse(product);
-            responseList.add(productResponse);
-        }
-
-        return ResponseEntity.ok(responseList);
+    public ResponseEntity<List<ProductResponse>> updateStockQuantity(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                                     @RequestBody InventoryManagementRequest inventoryManagementRequest) {
+        return idempotencyStore.execute(idempotencyKey, "POST /product/inventoryManager", inventoryManagementRequest, PRODUCT_RESPONSES, () -> {
+            List<Product> productList = productService.updateInventoryChange(inventoryManagementRequest);
+            return ResponseEntity.ok(buildProductResponses(productList));
+        });
     }
 
 
     // === NYA ENDPOINTS FÖR TAGG-FUNKTIONALITET ===
 
+    @Operation(summary = "Search products", description = "Combines tag, tag pattern, category, price range and stock filters, sorted by id, name, price or stock and paged with page/size. Add 'facets' (category, tag, price) to also get the number of matching products per value. With explain=true the response includes the query plan: the filters in execution order with estimated and actual rows and time per operator")
     @PostMapping("/search")
-    public ResponseEntity<List<ProductResponse>> searchProducts(@RequestBody ProductSearchRequest searchRequest) {
-        List<Product> products = productService.searchProducts(searchRequest);
-        List<ProductResponse> responseList = products.stream()
-                .map(this::buildProductResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responseList);
+    public ResponseEntity<ProductSearchResponse> searchProducts(@RequestBody ProductSearchRequest searchRequest,
+                                                                @RequestParam(defaultValue = "false") boolean explain) {
+        ProductSearchResult result = productService.searchProducts(searchRequest, explain);
+        ProductSearchResponse response = ProductSearchResponse.builder()
+                .products(buildProductResponses(result.getProducts()))
+                .totalCount(result.getTotalCount())
+                .facets(result.getFacets())
+                .plan(result.getPlan())
+                .build();
+        return ResponseEntity.ok(response);
     }
     @Operation(summary = "Hämta alla produkter för en tag", description = "Ger en lista på alla produkter med den tag man söker efter")
     @GetMapping("/search/tags")
     public ResponseEntity<List<ProductResponse>> searchProductsByTags(@RequestParam List<String> tags) {
         List<Product> products = productService.searchProductsByTags(tags);
-        List<ProductResponse> responseList = products.stream()
-                .map(this::buildProductResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responseList);
+        return ResponseEntity.ok(buildProductResponses(products));
     }
 
     @GetMapping("/search/tags/all")
     public ResponseEntity<List<ProductResponse>> searchProductsByAllTags(@RequestParam List<String> tags) {
         List<Product> products = productService.searchProductsByAllTags(tags);
-        List<ProductResponse> responseList = products.stream()
-                .map(this::buildProductResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responseList);
+        return ResponseEntity.ok(buildProductResponses(products));
     }
 
     @GetMapping("/search/tag-pattern")
     public ResponseEntity<List<ProductResponse>> searchProductsByTagPattern(@RequestParam String pattern) {
         List<Product> products = productService.searchProductsByTagPattern(pattern);
-        List<ProductResponse> responseList = products.stream()
-                .map(this::buildProductResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responseList);
+        return ResponseEntity.ok(buildProductResponses(products));
+    }
+    @Operation(summary = "Full-text product search", description = "Searches product name, category and tags with typo tolerance. Hits are ranked by relevance and matched terms are highlighted with <em>")
+    @GetMapping("/search/text")
+    public ResponseEntity<List<ProductTextSearchResponse>> searchProductsByText(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "" + DEFAULT_TEXT_SEARCH_LIMIT) int limit) {
+        List<ProductTextHit> hits = productService.searchProductsByText(q, limit);
+        List<Product> products = productService.getProductsByIds(
+                hits.stream().map(ProductTextHit::getProductId).collect(Collectors.toList()));
+        Map<Long, ProductResponse> responsesById = new HashMap<>();
+        for (ProductResponse response : buildProductResponses(products)) {
+            responsesById.put(response.getId(), response);
+        }
+
+        List<ProductTextSearchResponse> results = new ArrayList<>(hits.size());
+        for (ProductTextHit hit : hits) {
+            ProductResponse product = responsesById.get(hit.getProductId());
+            if (product != null) {
+                results.add(ProductTextSearchResponse.builder()
+                        .product(product)
+                        .score(hit.getScore())
+                        .highlights(hit.getHighlights())
+                        .build());
+            }
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    @Operation(summary = "Rebuild the full-text index", description = "Reindexes every product from the database and returns the number of indexed products")
+    @PostMapping("/search/text/rebuild")
+    public ResponseEntity<Map<String, Long>> rebuildTextIndex() {
+        return ResponseEntity.ok(Map.of("indexed", productService.rebuildTextIndex()));
     }
+
     @Operation(summary = "Add a tag to product", description = "Add a tag to a specified product id")
     @PostMapping("/{productId}/tags")
     public ResponseEntity<ProductResponse> addTagsToProduct(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
             @PathVariable Long productId,
             @RequestBody List<String> tagNames) {
-        Product product = productService.addTagsToProduct(productId, tagNames);
-        ProductResponse response = buildProductResponse(product);
-        return ResponseEntity.ok(response);
+        return idempotencyStore.execute(idempotencyKey, "POST /product/" + productId + "/tags", tagNames, PRODUCT_RESPONSE, () -> {
+            Product product = productService.addTagsToProduct(productId, tagNames);
+            ProductResponse response = buildProductResponse(product);
+            return ResponseEntity.ok(response);
+        });
+    }
+    @Operation(summary = "Replace the tags of a product", description = "Sets the product's tags to exactly the given names; missing tags are created and tags not in the list are removed")
+    @PutMapping("/{productId}/tags")
+    public ResponseEntity<ProductResponse> replaceProductTags(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @PathVariable Long productId,
+            @RequestBody List<String> tagNames) {
+        return idempotencyStore.execute(idempotencyKey, "PUT /product/" + productId + "/tags", tagNames, PRODUCT_RESPONSE, () -> {
+            Product product = productService.replaceProductTags(productId, tagNames);
+            return ResponseEntity.ok(buildProductResponse(product));
+        });
+    }
+    @Operation(summary = "Add and remove tags on many products", description = "Adds addTagNames (created if missing) and removes removeTagNames on every product in productIds, in one batched insert and one batched delete. A tag in both lists is removed")
+    @PostMapping("/tags/bulk")
+    public ResponseEntity<ProductTagBulkResult> updateProductTags(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                                  @RequestBody ProductTagBulkRequest request) {
+        return idempotencyStore.execute(idempotencyKey, "POST /product/tags/bulk", request, PRODUCT_TAG_BULK_RESULT,
+                () -> ResponseEntity.ok(productService.updateProductTags(request)));
     }
     @Operation(summary = "Remove tag from product", description = "Remove a tag from a specified product id")
     @DeleteMapping("/{productId}/tags")
     public ResponseEntity<ProductResponse> removeTagsFromProduct(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
             @PathVariable Long productId,
             @RequestBody List<String> tagNames) {
-        Product product = productService.removeTagsFromProduct(productId, tagNames);
-        ProductResponse response = buildProductResponse(product);
-        return ResponseEntity.ok(response);
+        return idempotencyStore.execute(idempotencyKey, "DELETE /product/" + productId + "/tags", tagNames, PRODUCT_RESPONSE, () -> {
+            Product product = productService.removeTagsFromProduct(productId, tagNames);
+            ProductResponse response = buildProductResponse(product);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    /**
+     * Svarar med 304 om klientens tagg fortfarande gäller. JSON-sidor hämtas färdigkodade ur
+     * {@link ProductListingCache} och byggs vid miss av cachade JSON-bitar per produkt; övriga
+     * format (CBOR, Smile, protobuf) går via DTO:erna och respektive converter.
+     */
+    private ResponseEntity<?> buildListResponse(String version, Long categoryId, String sortBy, String after, int limit,
+                                                boolean includeTotal, WebRequest webRequest) {
+        String eTag = listETag(version, webRequest);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        if (!prefersJson(webRequest)) {
+            ProductPage page = productService.getProductPage(categoryId, sortBy, after, limit, includeTotal);
+            return pageHeaders(eTag, page.getNextCursor(), page.getTotalCount())
+                    .body(buildProductResponses(page.getProducts()));
+        }
+
+        ProductListingCache.Key key = new ProductListingCache.Key(version, categoryId, sortBy, after, limit, includeTotal);
+        ProductListingCache.Page page = productListingCache.get(key, () -> {
+            ProductPage products = productService.getProductPage(categoryId, sortBy, after, limit, includeTotal);
+            return new ProductListingCache.Page(encodeProductResponses(products.getProducts()),
+                    products.getNextCursor(), products.getTotalCount());
+        });
+        ResponseEntity.BodyBuilder response = pageHeaders(eTag, page.getNextCursor(), page.getTotalCount())
+                .contentType(MediaType.APPLICATION_JSON);
+        byte[] gzipped = acceptsGzip(webRequest) ? productListingCache.gzipped(page) : null;
+        if (gzipped != null) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzipped);
+        }
+        return response.body(page.getJson());
+    }
+
+    // Samma lista kodas olika beroende på Accept (JSON, CBOR, Smile, protobuf) och gzip, så båda ingår i taggen
+    private static String listETag(String version, WebRequest webRequest) {
+        String accept = webRequest.getHeader(HttpHeaders.ACCEPT);
+        return "\"" + version + (accept != null ? "." + Integer.toHexString(accept.hashCode()) : "")
+                + (acceptsGzip(webRequest) ? "-gzip" : "") + "\"";
+    }
+
+    private static boolean acceptsGzip(WebRequest webRequest) {
+        String acceptEncoding = webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // Avgör formatet på samma sätt som content negotiation: högst kvalitet först, JSON om inget annat föredras
+    private static boolean prefersJson(WebRequest webRequest) {
+        String accept = webRequest.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isBlank()) {
+            return true;
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.getQualityValue() > 0) {
+                return mediaType.isCompatibleWith(MediaType.APPLICATION_JSON);
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity.BodyBuilder pageHeaders(String eTag, String nextCursor, Long totalCount) {
+        // no-cache: klienter och CDN får spara svaret men måste fråga om det med If-None-Match
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        if (totalCount != null) {
+            response.header(TOTAL_COUNT_HEADER, String.valueOf(totalCount));
+        }
+        return response;
+    }
+
+    /**
+     * Kodar produkterna som en JSON-array genom att foga ihop cachade, färdigkodade objekt.
+     */
+    // Bitarna kopieras till en sammanhängande sida eftersom sidan i sin tur cachas i ProductListingCache och
+    // därifrån skickas med Content-Length, gzippas en gång och träffas igen; kopian görs bara vid miss
+    private byte[] encodeProductResponses(List<Product> products) {
+        Map<Long, Product> productsById = new LinkedHashMap<>();
+        for (Product product : products) {
+            productsById.put(product.getId(), product);
+        }
+        Map<Long, byte[]> jsonById = productResponseCache.getAllJson(productsById.keySet(), missingIds -> {
+            List<Product> missing = missingIds.stream().map(productsById::get).collect(Collectors.toList());
+            Map<Long, byte[]> encoded = new HashMap<>();
+            for (ProductResponse response : buildProductResponses(missing)) {
+                try {
+                    encoded.put(response.getId(), objectMapper.writeValueAsBytes(response));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return encoded;
+        });
+
+        int length = 2 + Math.max(0, products.size() - 1);
+        for (Product product : products) {
+            length += jsonById.get(product.getId()).length;
+        }
+        byte[] json = new byte[length];
+        int position = 0;
+        json[position++] = '[';
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) {
+                json[position++] = ',';
+            }
+            byte[] slice = jsonById.get(products.get(i).getId());
+            System.arraycopy(slice, 0, json, position, slice.length);
+            position += slice.length;
+        }
+        json[position] = ']';
+        return json;
+    }
+
+    private List<ProductResponse> buildProductResponses(List<Product> products) {
+        Map<Long, Product> productsById = new LinkedHashMap<>();
+        for (Product product : products) {
+            productsById.put(product.getId(), product);
+        }
+
+        // Färdiga svar läses ur cachen, bara de som saknas byggs om
+        Map<Long, ProductResponse> responses = productResponseCache.getAll(productsById.keySet(),
+                missingIds -> assembleProductResponses(missingIds.stream().map(productsById::get).collect(Collectors.toList())));
+
+        List<ProductResponse> responseList = new ArrayList<>(products.size());
+        for (Product product : products) {
+            responseList.add(responses.get(product.getId()));
+        }
+        return responseList;
+    }
+
+    private Map<Long, ProductResponse> assembleProductResponses(List<Product> products) {
+        // Hämta taggar för hela listan i en bulk-fråga i stället för en per produkt
+        Map<Long, List<String>> tagNamesByProductId = productService.getTagNamesForProducts(
+                products.stream().map(Product::getId).collect(Collectors.toList()));
+
+        Map<Long, ProductResponse> responses = new HashMap<>();
+        for (Product product : products) {
+            List<String> tagNames = tagNamesByProductId.getOrDefault(product.getId(), new ArrayList<>());
+            responses.put(product.getId(), buildProductResponse(product, tagNames));
+        }
+        return responses;
     }
 
     private ProductResponse buildProductResponse(Product product) {
         // Hämta taggar för produkten via ProductService
         List<String> tagNames = productService.getTagNamesForProduct(product.getId());
+        return buildProductResponse(product, tagNames);
+    }
 
+    private ProductResponse buildProductResponse(Product product, List<String> tagNames) {
+        // Heta produkter har aktuellt saldo i minnet; databasen ligger efter med upp till ett flush-intervall
+        Integer liveStock = hotSkuInventory.stock(product.getId());
         return ProductResponse.builder()
                 .id(product.getId())
                 .categoryName(product.getCategory() != null ? product.getCategory().getName() : "Unknown")
                 .productName(product.getName())
                 .price(product.getPrice())
-                .stockQuantity(product.getStockQuantity())
+                .stockQuantity(liveStock != null ? liveStock : product.getStockQuantity())
                 .tagNames(tagNames)
                 .build();
     }
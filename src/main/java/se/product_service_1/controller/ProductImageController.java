@@ -7,12 +7,14 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import se.product_service_1.dto.ProductImageResponse;
@@ -75,17 +77,28 @@ public class ProductImageController {
     }
 
     @Operation(summary = "Get product image",
-            description = "Get an image for a specific product by filename")
+            description = "Get an image for a specific product by filename. Supports If-None-Match and If-Modified-Since")
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "image/*"))
+    @ApiResponse(responseCode = "304", description = "The image is unchanged")
     @GetMapping("/{productId}/image/{fileName}")
     public ResponseEntity<Resource> getProductImage(
             @PathVariable Long productId,
-            @PathVariable String fileName) {
+            @PathVariable String fileName,
+            WebRequest webRequest) throws IOException {
 
         Resource resource = fileStorageService.loadFileAsResource(productId, fileName);
+        // Filen skrivs aldrig över (unikt filnamn per uppladdning), så storlek och ändringstid identifierar innehållet
+        long lastModified = resource.lastModified();
+        String eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(resource.contentLength()) + "\"";
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
         String contentType = determineContentType(fileName);
 
         return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .cacheControl(CacheControl.noCache())
                 .contentType(MediaType.parseMediaType(contentType))
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
                 .body(resource);
@@ -8,10 +8,11 @@ import org.springframework.web.bind.annotation.*;
 import se.product_service_1.dto.TagRequest;
 import se.product_service_1.dto.TagResponse;
 import se.product_service_1.model.Tag;
-import se.product_service_1.repository.ProductTagRepository;
+import se.product_service_1.service.TagPage;
 import se.product_service_1.service.TagService;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
@@ -19,17 +20,17 @@ import java.util.stream.Collectors;
 @AllArgsConstructor
 public class TagController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
     private final TagService tagService;
-    private final ProductTagRepository productTagRepository;
 
-    @Operation(summary = "Get all tags", description = "Get a list of all tags")
+    @Operation(summary = "Get all tags", description = "Get a list of all tags. Sort by 'name' or 'popularity' and page with 'page' and 'size'")
     @GetMapping
-    public ResponseEntity<List<TagResponse>> getAllTags() {
-        List<Tag> tags = tagService.getAllTags();
-        List<TagResponse> responses = tags.stream()
-                .map(this::buildTagResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responses);
+    public ResponseEntity<List<TagResponse>> getAllTags(
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size) {
+        return buildTagPageResponse(tagService.getTagPage(sortBy, page, size));
     }
     @Operation(summary = "Get a list of products for a specific tag", description = "Get a list of products for a specific tag by name")
     @GetMapping("/name/{name}")
@@ -52,24 +53,38 @@ public class TagController {
         return ResponseEntity.ok("Tag deleted successfully");
     }
 
+    @Operation(summary = "Search tags", description = "Search tags by name, most relevant first. Sort by 'name' or 'popularity' and page with 'page' and 'size'")
     @GetMapping("/search")
-    public ResponseEntity<List<TagResponse>> searchTags(@RequestParam String searchTerm) {
-        List<Tag> tags = tagService.searchTagsByName(searchTerm);
-        List<TagResponse> responses = tags.stream()
-                .map(this::buildTagResponse)
+    public ResponseEntity<List<TagResponse>> searchTags(
+            @RequestParam String searchTerm,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size) {
+        return buildTagPageResponse(tagService.searchTagPage(searchTerm, sortBy, page, size));
+    }
+
+    // Sortering, paginering och räkning görs i TagService; här byggs bara svaren för sidan
+    private ResponseEntity<List<TagResponse>> buildTagPageResponse(TagPage page) {
+        Map<Long, Long> productCounts = page.getProductCounts();
+        List<TagResponse> responses = page.getTags().stream()
+                .map(tag -> buildTagResponse(tag, productCounts.getOrDefault(tag.getId(), 0L)))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(responses);
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(page.getTotalCount()))
+                .body(responses);
     }
 
     private TagResponse buildTagResponse(Tag tag) {
-        // Räkna produkter som använder denna tagg via ProductTagRepository
-        int productCount = productTagRepository.findByTagId(tag.getId()).size();
+        long productCount = tagService.getProductCounts(List.of(tag.getId())).getOrDefault(tag.getId(), 0L);
+        return buildTagResponse(tag, productCount);
+    }
 
+    private TagResponse buildTagResponse(Tag tag, long productCount) {
         return TagResponse.builder()
                 .id(tag.getId())
                 .name(tag.getName())
                 .description(tag.getDescription())
-                .productCount(productCount)
+                .productCount((int) productCount)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityCheckLine {
+    private Long productId;
+    private Integer quantity;
+}
@@ -0,0 +1,18 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AvailabilityCheckResult {
+    private Long productId;
+    private int quantity;
+    private boolean found; // false om produkten inte finns
+    private int availableToPromise; // lagersaldo minus aktiva reservationer
+    private boolean available; // true om alla rader för produkten tillsammans ryms i availableToPromise
+}
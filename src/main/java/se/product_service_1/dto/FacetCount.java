@@ -0,0 +1,15 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FacetCount {
+    private String value; // kategorinamn, taggnamn eller prisintervall, t.ex. "100-500"
+    private long count;
+}
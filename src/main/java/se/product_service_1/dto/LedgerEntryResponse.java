@@ -0,0 +1,21 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LedgerEntryResponse {
+    private Long seq;
+    private Long productId;
+    private Integer delta;
+    private Integer quantityAfter; // saldot direkt efter ändringen
+    private String caller; // JWT-subjektet som gjorde ändringen, "system" för interna anrop
+    private Instant createdAt;
+}
@@ -0,0 +1,23 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LedgerReplayResult {
+    private boolean dryRun;
+    private int productsChecked;
+    private int mismatches; // produkter vars saldo skiljer sig från journalen
+    private int updated; // 0 vid dryRun
+    private int skippedHot; // heta produkter har sitt saldo i minnet och jämförs inte
+    private int untracked; // produkter utan ingående saldo i journalen eller snapshot
+    private long durationMillis;
+    private List<Long> mismatchedProductIds; // högst 100
+}
@@ -0,0 +1,25 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LowStockEvent {
+    public static final String LOW = "low";
+    public static final String RECOVERED = "recovered";
+
+    private long seq; // ökar med ett per händelse; skicka senaste som Last-Event-ID för att fortsätta
+    private String type; // low när saldot går under nivån, recovered när det når upp till den igen
+    private Long productId;
+    private String productName;
+    private int stockQuantity;
+    private int threshold;
+    private Instant occurredAt;
+}
@@ -0,0 +1,18 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LowStockProduct {
+    private Long productId;
+    private String productName;
+    private Long categoryId;
+    private int stockQuantity;
+    private int threshold; // gällande nivå: produktens egen, annars kategorins
+}
@@ -0,0 +1,12 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LowStockThresholdRequest {
+    private Integer threshold; // produkten räknas som låg när saldot är under detta värde
+}
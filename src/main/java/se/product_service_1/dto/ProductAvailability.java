@@ -0,0 +1,16 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductAvailability {
+    private Long productId;
+    private int availableToPromise; // lagersaldo minus aktiva reservationer
+    private int reserved;
+}
@@ -0,0 +1,22 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductBulkResult {
+    public static final String CREATED = "created";
+    public static final String CONFLICT = "conflict";
+    public static final String INVALID = "invalid";
+
+    private int index; // position i förfrågan
+    private String productName;
+    private String status; // created, conflict (namnet finns redan) eller invalid
+    private Long productId; // bara för created
+    private String message; // orsak vid conflict/invalid
+}
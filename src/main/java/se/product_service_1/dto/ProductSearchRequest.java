@@ -16,4 +16,12 @@ public class ProductSearchRequest {
     private String categoryName;
     private boolean requireAllTags; // true = måste ha alla taggar, false = minst en tagg
     private String searchTerm; // för att söka i tagg-namn
+    private List<String> facets; // category, tag och/eller price
+    private Double minPrice;
+    private Double maxPrice;
+    private boolean inStockOnly; // true = bara produkter med minst en i lager
+    private Integer minStock;
+    private String sortBy; // id, name, price eller stock; utan sortering id-ordning eller tagg-mönstrets relevans
+    private Integer page; // 0-baserad, standard 0
+    private Integer size; // standard 100, max 1000
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductSearchResponse {
+    private List<ProductResponse> products;
+    private long totalCount; // antal träffar totalt, inte bara på sidan
+    private Map<String, List<FacetCount>> facets; // facettnamn → antal per värde, bara de facetter som efterfrågats
+    private List<QueryPlanStep> plan; // operatorerna i körordning, bara med explain=true
+}
@@ -0,0 +1,18 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductTagBulkRequest {
+    private List<Long> productIds;
+    private List<String> addTagNames; // skapas om de inte finns
+    private List<String> removeTagNames; // vinner över addTagNames om samma tagg finns i båda
+}
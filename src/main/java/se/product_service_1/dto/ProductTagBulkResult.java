@@ -0,0 +1,16 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductTagBulkResult {
+    private int productCount; // antal produkter i förfrågan
+    private int linksAdded;
+    private int linksRemoved;
+}
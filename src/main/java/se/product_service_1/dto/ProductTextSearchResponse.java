@@ -0,0 +1,18 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductTextSearchResponse {
+    private ProductResponse product;
+    private float score;
+    private Map<String, String> highlights; // fält → fragment med träffar inom <em></em>
+}
@@ -0,0 +1,18 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class QueryPlanStep {
+    private String operator; // tag-union, tag-intersection, pattern, category, price-range eller stock
+    private String detail; // villkoret, t.ex. kategorinamn eller prisintervall
+    private long estimatedRows; // uppskattning från indexstatistik, avgör ordningen
+    private Long actualRows; // kandidater kvar efter operatorn, null om planen avbröts innan
+    private Long durationMicros;
+}
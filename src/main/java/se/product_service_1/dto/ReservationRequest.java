@@ -0,0 +1,23 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReservationRequest {
+    private List<ReservationLine> lines;
+    private Integer ttlSeconds; // standard och tak styrs av inventory.reservation.*-inställningarna
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ReservationLine {
+        private Long productId;
+        private Integer quantity;
+    }
+}
@@ -0,0 +1,20 @@
+package se.product_service_1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import se.product_service_1.dto.ReservationRequest.ReservationLine;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ReservationResponse {
+    private String reservationId;
+    private Instant expiresAt; // reservationen släpps automatiskt om den inte bekräftats innan dess
+    private List<ReservationLine> lines;
+}
@@ -0,0 +1,32 @@
+package se.product_service_1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Sista rad i deltaloggen för heta produkter som har skrivits till databasen för en produkt. Sätts i samma
+ * transaktion som saldot, så att uppspelningen vid uppstart vet exakt vilka rader som redan finns i products.
+ */
+@Entity
+@Table(name = "hot_sku_checkpoints")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotSkuCheckpoint {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(nullable = false)
+    private Long seq;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+}
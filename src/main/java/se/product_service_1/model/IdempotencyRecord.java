@@ -0,0 +1,60 @@
+package se.product_service_1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Sparat svar för en Idempotency-Key. Raden skrivs innan anropet utförs och fylls i med svaret i samma
+ * transaktion, så en annan nod med samma nyckel väntar på primärnyckeln och ser sedan svaret.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created_at", columnList = "createdAt"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord implements Persistable<String> {
+
+    // Anroparens subjekt och nyckeln, så att två klienter med samma nyckel inte krockar
+    @Id
+    @Column(name = "idempotency_key", length = 400)
+    private String idempotencyKey;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    private Integer status;
+
+    @Lob
+    private String body;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // Nyckeln sätts av oss, så save() ska alltid göra INSERT och aldrig slå upp och skriva över en befintlig rad
+    @Transient
+    @Builder.Default
+    private boolean newRecord = true;
+
+    @Override
+    public String getId() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newRecord;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newRecord = false;
+    }
+}
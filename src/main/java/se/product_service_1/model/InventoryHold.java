@@ -0,0 +1,39 @@
+package se.product_service_1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * En rad per produkt i en aktiv lagerreservation. Tabellen är journalen som reservationerna
+ * läses tillbaka från vid omstart; raderna tas bort när reservationen bekräftas, släpps eller går ut.
+ */
+@Entity
+@Table(name = "inventory_holds", indexes = @Index(name = "idx_inventory_holds_reservation", columnList = "reservation_id"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryHold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_holds_seq")
+    @SequenceGenerator(name = "inventory_holds_seq", sequenceName = "inventory_holds_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "reservation_id", nullable = false, length = 36)
+    private String reservationId;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+}
@@ -0,0 +1,43 @@
+package se.product_service_1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * En rad per lagerändring: vem som ändrade, med hur mycket och vad saldot blev. Raderna skrivs i samma
+ * transaktion som ändringen och ändras aldrig; gamla rader slås ihop till {@link InventoryLedgerSnapshot}.
+ */
+@Entity
+@Table(name = "inventory_ledger", indexes = @Index(name = "idx_inventory_ledger_product_seq", columnList = "product_id, seq"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryLedgerEntry {
+
+    // Ökar inom en nod men tilldelas i block om 50, så ordningen mellan noder/trådar följer inte commit-ordningen
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_ledger_seq")
+    @SequenceGenerator(name = "inventory_ledger_seq", sequenceName = "inventory_ledger_seq", allocationSize = 50)
+    private Long seq;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(nullable = false)
+    private Integer delta;
+
+    @Column(nullable = false)
+    private Integer quantityAfter;
+
+    @Column(nullable = false, length = 100)
+    private String caller;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,37 @@
+package se.product_service_1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Beställningsnivå för en produkt eller för alla produkter i en kategori; exakt en av productId och
+ * categoryId är satt. En produkts egen nivå gäller före kategorins.
+ */
+@Entity
+@Table(name = "low_stock_thresholds", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_low_stock_thresholds_product", columnNames = "product_id"),
+        @UniqueConstraint(name = "uk_low_stock_thresholds_category", columnNames = "category_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LowStockThreshold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "low_stock_thresholds_seq")
+    @SequenceGenerator(name = "low_stock_thresholds_seq", sequenceName = "low_stock_thresholds_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "category_id")
+    private Long categoryId;
+
+    @Column(nullable = false)
+    private Integer threshold;
+}
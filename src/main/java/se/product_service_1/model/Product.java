@@ -14,8 +14,10 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class Product {
 
+    // Sekvens med pooled-optimering så att inserts kan batchas; IDENTITY kräver en rundresa per rad
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -30,4 +32,8 @@ public class Product {
 
     @Column(nullable = false)
     private Integer stockQuantity;
+
+    // Stegas av Hibernate vid varje uppdatering och skyddar mot förlorade uppdateringar
+    @Version
+    private Long version;
 }
\ No newline at end of file
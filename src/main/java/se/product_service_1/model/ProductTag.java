@@ -7,7 +7,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "product_tags")
+// Unik koppling per (produkt, tagg) så att en dubblett inte kan skapas ens vid samtidiga anrop
+@Table(name = "product_tags", uniqueConstraints = @UniqueConstraint(
+        name = "uk_product_tags_product_tag", columnNames = {"product_id", "tag_id"}))
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,7 +17,8 @@ import lombok.NoArgsConstructor;
 public class ProductTag {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_tags_seq")
+    @SequenceGenerator(name = "product_tags_seq", sequenceName = "product_tags_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "product_id", nullable = false)
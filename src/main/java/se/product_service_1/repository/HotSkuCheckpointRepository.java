@@ -0,0 +1,11 @@
+package se.product_service_1.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import se.product_service_1.model.HotSkuCheckpoint;
+
+public interface HotSkuCheckpointRepository extends JpaRepository<HotSkuCheckpoint, Long> {
+
+    @Query("SELECT MAX(c.seq) FROM HotSkuCheckpoint c")
+    Long findMaxSeq();
+}
@@ -0,0 +1,15 @@
+package se.product_service_1.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import se.product_service_1.model.InventoryHold;
+
+public interface InventoryHoldRepository extends JpaRepository<InventoryHold, Long> {
+
+    // En enda DELETE i stället för att läsa in raderna först som deleteBy-metoder gör
+    @Modifying
+    @Query("DELETE FROM InventoryHold h WHERE h.reservationId = :reservationId")
+    int deleteByReservationId(@Param("reservationId") String reservationId);
+}
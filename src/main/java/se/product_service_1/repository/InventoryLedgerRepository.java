@@ -0,0 +1,33 @@
+package se.product_service_1.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import se.product_service_1.model.InventoryLedgerEntry;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface InventoryLedgerRepository extends JpaRepository<InventoryLedgerEntry, Long> {
+
+    List<InventoryLedgerEntry> findByProductIdAndSeqLessThanOrderBySeqDesc(Long productId, Long beforeSeq, Limit limit);
+
+    // Summan per produkt i en enda grupperad fråga, som (productId, summa, antal)
+    @Query("SELECT e.productId, SUM(e.delta), COUNT(e) FROM InventoryLedgerEntry e GROUP BY e.productId")
+    List<Object[]> sumDeltasByProduct();
+
+    // Produkter vars första rad inte är ett ingående saldo, dvs. saldot före raden var inte 0
+    @Query("SELECT e.productId FROM InventoryLedgerEntry e WHERE e.quantityAfter - e.delta <> 0 "
+            + "AND e.seq IN (SELECT MIN(f.seq) FROM InventoryLedgerEntry f GROUP BY f.productId)")
+    List<Long> findProductIdsWithoutOpeningEntry();
+
+    // Rader att komprimera som (seq, productId, delta); läses som ström för att inte hålla allt i minnet
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + ProductRepository.EXPORT_FETCH_SIZE))
+    @Query("SELECT e.seq, e.productId, e.delta FROM InventoryLedgerEntry e WHERE e.createdAt < :cutoff")
+    Stream<Object[]> streamEntriesCreatedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,7 @@
+package se.product_service_1.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import se.product_service_1.model.InventoryLedgerSnapshot;
+
+public interface InventoryLedgerSnapshotRepository extends JpaRepository<InventoryLedgerSnapshot, Long> {
+}
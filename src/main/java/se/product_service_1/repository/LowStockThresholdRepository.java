@@ -0,0 +1,13 @@
+package se.product_service_1.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import se.product_service_1.model.LowStockThreshold;
+
+import java.util.Optional;
+
+public interface LowStockThresholdRepository extends JpaRepository<LowStockThreshold, Long> {
+
+    Optional<LowStockThreshold> findByProductId(Long productId);
+
+    Optional<LowStockThreshold> findByCategoryId(Long categoryId);
+}
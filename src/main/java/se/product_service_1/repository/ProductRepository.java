@@ -1,14 +1,64 @@
 package se.product_service_1.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import se.product_service_1.model.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductStockRepository {
+
+    int EXPORT_FETCH_SIZE = 500;
 
     List<Product> findByCategoryName(String categoryName);
 
     Optional<Product> findByName(String name);
-}
\ No newline at end of file
+
+    @Query("SELECT p.name FROM Product p WHERE p.name IN :names")
+    List<String> findNamesByNameIn(@Param("names") Collection<String> names);
+
+    // Keyset-paginering: positionen översätts till WHERE (sortkolumn, id) > (...) i stället för OFFSET
+    Window<Product> findAllBy(ScrollPosition position, Limit limit, Sort sort);
+
+    Window<Product> findByCategoryId(Long categoryId, ScrollPosition position, Limit limit, Sort sort);
+
+    long countByCategoryId(Long categoryId);
+
+    @Query("SELECT p.category.id FROM Product p WHERE p.id = :id")
+    Optional<Long> findCategoryIdById(@Param("id") Long id);
+
+    // Låser raden tills transaktionen är klar, så att ingen ändring mot databasen hinner emellan
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findByIdForUpdate(@Param("id") Long id);
+
+    // Läser bara saldot, så att ingen entitet hamnar i persistenskontexten före en JDBC-uppdatering av raden
+    @Query("SELECT p.stockQuantity FROM Product p WHERE p.id = :id")
+    Optional<Integer> findStockQuantityById(@Param("id") Long id);
+
+    // Strömmar produkter i id-ordning för export; kräver en öppen transaktion under hela läsningen
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    Stream<Product> streamByIdGreaterThan(@Param("afterId") Long afterId);
+
+    // Saldo per produkt som (id, stockQuantity), utan att läsa in entiteterna
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("SELECT p.id, p.stockQuantity FROM Product p")
+    Stream<Object[]> streamStockQuantities();
+}
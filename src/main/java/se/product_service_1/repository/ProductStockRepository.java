@@ -0,0 +1,26 @@
+package se.product_service_1.repository;
+
+/**
+ * Lagersaldo som ändras direkt i databasen utan att produkten läses in först.
+ */
+public interface ProductStockRepository {
+
+    /**
+     * Lägger till varje delta på motsvarande produkt i en JDBC-batch. Raden uppdateras bara om saldot
+     * inte blir negativt, så resultatet per rad är 1 vid lyckad ändring och 0 om produkten saknas
+     * eller saldot inte räcker.
+     */
+    int[] applyStockDeltas(long[] productIds, int[] deltas);
+
+    /**
+     * Som {@link #applyStockDeltas} men utan villkoret på saldot, för att backa en ändring som redan är gjord.
+     * Saldot kan alltså bli negativt. Resultatet per rad är 0 bara om produkten saknas.
+     */
+    int[] forceStockDeltas(long[] productIds, int[] deltas);
+
+    /**
+     * Sätter saldot till {@code quantities} i en JDBC-batch, men bara där det fortfarande är {@code expected}.
+     * Resultatet per rad är 0 om produkten saknas eller saldot har ändrats sedan det lästes.
+     */
+    int[] replaceStockQuantities(long[] productIds, int[] expected, int[] quantities);
+}
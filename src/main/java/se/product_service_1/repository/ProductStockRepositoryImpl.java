@@ -0,0 +1,56 @@
+package se.product_service_1.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProductStockRepositoryImpl implements ProductStockRepository {
+
+    // Villkoret i WHERE gör läs-ändra-skriv till en atomisk operation i databasen: samtidiga
+    // uppdateringar av samma rad köas på radlåset och ingen av dem går förlorad
+    private static final String APPLY_STOCK_DELTA = "UPDATE products "
+            + "SET stock_quantity = stock_quantity + ?, version = COALESCE(version, 0) + 1 "
+            + "WHERE id = ? AND stock_quantity + ? >= 0";
+
+    private static final String FORCE_STOCK_DELTA = "UPDATE products "
+            + "SET stock_quantity = stock_quantity + ?, version = COALESCE(version, 0) + 1 "
+            + "WHERE id = ?";
+
+    private static final String REPLACE_STOCK_QUANTITY = "UPDATE products "
+            + "SET stock_quantity = ?, version = COALESCE(version, 0) + 1 "
+            + "WHERE id = ? AND stock_quantity = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProductStockRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int[] applyStockDeltas(long[] productIds, int[] deltas) {
+        List<Object[]> batchArgs = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            batchArgs.add(new Object[] {deltas[i], productIds[i], deltas[i]});
+        }
+        return jdbcTemplate.batchUpdate(APPLY_STOCK_DELTA, batchArgs);
+    }
+
+    @Override
+    public int[] forceStockDeltas(long[] productIds, int[] deltas) {
+        List<Object[]> batchArgs = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            batchArgs.add(new Object[] {deltas[i], productIds[i]});
+        }
+        return jdbcTemplate.batchUpdate(FORCE_STOCK_DELTA, batchArgs);
+    }
+
+    @Override
+    public int[] replaceStockQuantities(long[] productIds, int[] expected, int[] quantities) {
+        List<Object[]> batchArgs = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            batchArgs.add(new Object[] {quantities[i], productIds[i], expected[i]});
+        }
+        return jdbcTemplate.batchUpdate(REPLACE_STOCK_QUANTITY, batchArgs);
+    }
+}
@@ -5,7 +5,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import se.product_service_1.model.ProductTag;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ProductTagRepository extends JpaRepository<ProductTag, Long> {
 
@@ -13,13 +15,37 @@ public interface ProductTagRepository extends JpaRepository<ProductTag, Long> {
 
     List<ProductTag> findByTagId(Long tagId);
 
+    List<ProductTag> findByProductIdIn(Collection<Long> productIds);
+
     void deleteByProductId(Long productId);
 
     void deleteByProductIdAndTagId(Long productId, Long tagId);
 
+    void deleteByTagId(Long tagId);
+
     @Query("SELECT pt.productId FROM ProductTag pt WHERE pt.tagId IN :tagIds")
     List<Long> findProductIdsByTagIds(@Param("tagIds") List<Long> tagIds);
 
     @Query("SELECT pt.tagId FROM ProductTag pt WHERE pt.productId = :productId")
     List<Long> findTagIdsByProductId(@Param("productId") Long productId);
-}
\ No newline at end of file
+
+    @Query("SELECT pt.productId FROM ProductTag pt WHERE pt.tagId IN :tagIds " +
+            "GROUP BY pt.productId HAVING COUNT(DISTINCT pt.tagId) = :tagCount")
+    List<Long> findProductIdsHavingAllTagIds(@Param("tagIds") Collection<Long> tagIds, @Param("tagCount") long tagCount);
+
+    // Antal produkter per tagg som (tagId, count) i en enda grupperad fråga
+    @Query("SELECT pt.tagId, COUNT(DISTINCT pt.productId) FROM ProductTag pt WHERE pt.tagId IN :tagIds GROUP BY pt.tagId")
+    List<Object[]> countProductsByTagIds(@Param("tagIds") Collection<Long> tagIds);
+
+    // Alla kopplingar som (tagId, productId), används för att bygga tagg-indexet vid uppstart
+    @Query("SELECT pt.tagId, pt.productId FROM ProductTag pt")
+    Stream<Object[]> streamAllTagLinks();
+
+    /**
+     * Hämtar (productId, tagName)-par för flera produkter i en enda join över product_tags och tags.
+     * Varje rad är en Object[] med productId på index 0 och taggnamnet på index 1.
+     */
+    @Query("SELECT pt.productId, t.name FROM ProductTag pt JOIN Tag t ON t.id = pt.tagId " +
+            "WHERE pt.productId IN :productIds ORDER BY pt.productId, t.name")
+    List<Object[]> findTagNamesByProductIds(@Param("productIds") Collection<Long> productIds);
+}
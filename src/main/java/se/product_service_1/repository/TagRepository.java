@@ -1,10 +1,13 @@
 package se.product_service_1.repository;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import se.product_service_1.model.Tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,8 +15,26 @@ public interface TagRepository extends JpaRepository<Tag, Long> {
 
     Optional<Tag> findByName(String name);
 
+    List<Tag> findByNameIn(Collection<String> names);
+
     List<Tag> findByNameContainingIgnoreCase(String name);
 
+    Page<Tag> findByNameContainingIgnoreCase(String name, Pageable pageable);
+
+    // En sida taggar som (tagg, antal produkter), flest produkter först och sedan efter namn
+    @Query(value = "SELECT t, COUNT(DISTINCT pt.productId) FROM Tag t LEFT JOIN ProductTag pt ON pt.tagId = t.id " +
+            "GROUP BY t ORDER BY COUNT(DISTINCT pt.productId) DESC, t.name",
+            countQuery = "SELECT COUNT(t) FROM Tag t")
+    Page<Object[]> findPageByPopularity(Pageable pageable);
+
+    // Som findPageByPopularity men bara taggar vars namn innehåller söktermen, oavsett skiftläge
+    @Query(value = "SELECT t, COUNT(DISTINCT pt.productId) FROM Tag t LEFT JOIN ProductTag pt ON pt.tagId = t.id " +
+            "WHERE LOWER(t.name) LIKE LOWER(CONCAT('%', :#{escape(#searchTerm)}, '%')) ESCAPE :#{escapeCharacter()} " +
+            "GROUP BY t ORDER BY COUNT(DISTINCT pt.productId) DESC, t.name",
+            countQuery = "SELECT COUNT(t) FROM Tag t " +
+                    "WHERE LOWER(t.name) LIKE LOWER(CONCAT('%', :#{escape(#searchTerm)}, '%')) ESCAPE :#{escapeCharacter()}")
+    Page<Object[]> findPageByNameContainingOrderByPopularity(@Param("searchTerm") String searchTerm, Pageable pageable);
+
     @Query("SELECT t FROM Tag t WHERE LOWER(t.name) IN :tagNames")
     List<Tag> findByNamesIgnoreCase(@Param("tagNames") List<String> tagNames);
 
@@ -0,0 +1,74 @@
+package se.product_service_1.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ändringsräknare för hela katalogen och per kategori, som produktlistornas ETags byggs av.
+ * Räknarna stegas efter commit, så en klient som läser taggen före datat kan aldrig få ett nytt
+ * datum kopplat till en gammal tagg som sedan aldrig ändras. Epoken byts vid varje uppstart
+ * eftersom räknarna då börjar om.
+ */
+@Component
+public class CatalogChangeCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogChangeCounters.class);
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong catalogVersion = new AtomicLong();
+    // Stegas av ändringar som kan röra vilken kategori som helst, t.ex. en raderad tagg
+    private final AtomicLong allCategoriesVersion = new AtomicLong();
+    private final Map<Long, AtomicLong> categoryVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Versionstagg för hela katalogen, t.ex. {@code "lq2x1k.42"}.
+     */
+    public String catalogTag() {
+        return epoch + "." + catalogVersion.get();
+    }
+
+    /**
+     * Versionstagg för en kategoris produkter.
+     */
+    public String categoryTag(Long categoryId) {
+        AtomicLong version = categoryVersions.get(categoryId);
+        return epoch + "." + allCategoriesVersion.get() + "." + (version != null ? version.get() : 0);
+    }
+
+    /**
+     * Registrerar att produkter i kategorierna har ändrats, lagts till eller tagits bort.
+     * Vid byte av kategori anges både den gamla och den nya.
+     */
+    public void productsChanged(Collection<Long> categoryIds) {
+        List<Long> ids = categoryIds.stream().filter(Objects::nonNull).distinct().toList();
+        TransactionCallbacks.afterCommit(() -> {
+            for (Long categoryId : ids) {
+                categoryVersions.computeIfAbsent(categoryId, id -> new AtomicLong()).incrementAndGet();
+            }
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    public void productChanged(Long categoryId) {
+        productsChanged(List.of(categoryId));
+    }
+
+    /**
+     * Registrerar en ändring som kan röra produkter i alla kategorier.
+     */
+    public void allChanged() {
+        TransactionCallbacks.afterCommit(() -> {
+            allCategoriesVersion.incrementAndGet();
+            catalogVersion.incrementAndGet();
+            log.debug("allChanged – alla produktlistors versioner stegade");
+        });
+    }
+}
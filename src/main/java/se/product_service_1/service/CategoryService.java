@@ -1,9 +1,14 @@
 package se.product_service_1.service;
 
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import se.product_service_1.exception.CategoryAlreadyExistsException;
 import se.product_service_1.exception.CategoryNotEmptyException;
@@ -11,15 +16,31 @@ import se.product_service_1.exception.CategoryNotFoundException;
 import se.product_service_1.model.Category;
 import se.product_service_1.repository.CategoryRepository;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class CategoryService {
 
     private static final Logger log = LoggerFactory.getLogger(CategoryService.class);
+    // Namn som nyss saknades i databasen; en kort tid räcker för att upprepade uppslag av fel namn inte ska nå databasen
+    static final Duration MISS_TTL = Duration.ofSeconds(5);
+    private static final long MISS_MAX_SIZE = 10_000;
     private final CategoryRepository categoryRepository;
     private final ProductService productService;
-
+    private final Object dictionaryLock = new Object();
+    private final Cache<String, Boolean> recentMisses = Caffeine.newBuilder()
+            .maximumSize(MISS_MAX_SIZE)
+            .expireAfterWrite(MISS_TTL)
+            .build();
+    private volatile Map<String, Category> categoriesByName;
+    // Räknas upp av varje lokal skrivning, under dictionaryLock, så att en omläsning som startade före skrivningen kan kasseras
+    private long modifications;
 
     public CategoryService(CategoryRepository categoryRepository, ProductService productService) {
         this.categoryRepository = categoryRepository;
@@ -27,13 +48,35 @@ public class CategoryService {
     }
 
     public Category getCategoryByName(String name) {
+        log.debug("Hämtar kategori med namn {}", name);
+        Category category = getDictionary().get(name);
+        if (category != null) {
+            return category;
+        }
+
+        if (name != null && recentMisses.getIfPresent(name) != null) {
+            log.debug("Kategori med namn {} saknades nyss, frågar inte databasen igen", name);
+            throw new CategoryNotFoundException("Kategori med namn:" + name + " existerar inte.");
+        }
+
+        // Kategorin kan ha skapats av en annan nod sedan senaste synkningen
+        Optional<Category> found;
         try {
-            log.info("Hämtar kategori med namn {}", name);
-            return categoryRepository.findByName(name).orElseThrow(() -> new CategoryNotFoundException(name));
+            found = categoryRepository.findByName(name);
         } catch (Exception e) {
             log.error("Fel uppstod vid hämtning av kategori med namn: {}", name, e);
             throw new CategoryNotFoundException("Kategori med namn:" + name + " existerar inte.");
         }
+        if (found.isEmpty()) {
+            log.error("Fel uppstod vid hämtning av kategori med namn: {}", name);
+            if (name != null) {
+                recentMisses.put(name, Boolean.TRUE);
+            }
+            throw new CategoryNotFoundException("Kategori med namn:" + name + " existerar inte.");
+        }
+        category = found.get();
+        putInDictionary(category);
+        return category;
     }
 
     public Category addCategory(Category category) {
@@ -44,6 +87,7 @@ public class CategoryService {
         }
 
         Category savedCategory = categoryRepository.save(category);
+        putInDictionary(savedCategory);
         log.info("addCategory - sparad category med Id={}", savedCategory.getId());
         return savedCategory;
     }
@@ -57,6 +101,7 @@ public class CategoryService {
                     });
 
             categoryRepository.deleteByName(name);
+            removeFromDictionary(name);
         } else {
             throw new CategoryNotEmptyException("Kategori med namn: " + name + " är inte tom.");
         }
@@ -65,11 +110,69 @@ public class CategoryService {
 
     public List<Category> getAllCategories() {
         log.debug("getAllCategories - hämta alla categories");
-        List<Category> list = categoryRepository.findAll();
+        List<Category> list = new ArrayList<>(getDictionary().values());
         log.debug("getAllCategories - antal categories={}", list.size());
         return list;
     }
 
+    /**
+     * Läser om alla kategorier från databasen och ersätter uppslagstabellen i ett svep.
+     * Körs vid uppstart och periodiskt ifall en annan nod har ändrat kategorier. Läsningen sker utan lås;
+     * har en lokal skrivning hunnit ske under tiden kasseras resultatet, eftersom det kan sakna skrivningen,
+     * och nästa omläsning tar över.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${category.dictionary.refresh-interval-ms:60000}",
+            initialDelayString = "${category.dictionary.refresh-interval-ms:60000}")
+    public void refreshDictionary() {
+        long startedAt;
+        synchronized (dictionaryLock) {
+            startedAt = modifications;
+        }
+        Map<String, Category> fresh = new LinkedHashMap<>();
+        for (Category category : categoryRepository.findAll()) {
+            fresh.put(category.getName(), category);
+        }
+        synchronized (dictionaryLock) {
+            // En skrivning läser alltid in uppslagstabellen först, så den är aldrig null här om räknaren har ändrats
+            if (modifications != startedAt) {
+                log.debug("refreshDictionary - kasserar omläsning, {} lokala skrivningar under tiden", modifications - startedAt);
+                return;
+            }
+            categoriesByName = Collections.unmodifiableMap(fresh);
+        }
+        recentMisses.invalidateAll();
+        log.debug("refreshDictionary - antal categories={}", fresh.size());
+    }
 
+    private Map<String, Category> getDictionary() {
+        if (categoriesByName == null) {
+            synchronized (dictionaryLock) {
+                if (categoriesByName == null) {
+                    refreshDictionary();
+                }
+            }
+        }
+        return categoriesByName;
+    }
 
+    // Copy-on-write: läsare ser alltid en komplett, oföränderlig map utan att låsa
+    private void putInDictionary(Category category) {
+        synchronized (dictionaryLock) {
+            Map<String, Category> copy = new LinkedHashMap<>(getDictionary());
+            copy.put(category.getName(), category);
+            categoriesByName = Collections.unmodifiableMap(copy);
+            modifications++;
+        }
+        recentMisses.invalidate(category.getName());
+    }
+
+    private void removeFromDictionary(String name) {
+        synchronized (dictionaryLock) {
+            Map<String, Category> copy = new LinkedHashMap<>(getDictionary());
+            copy.remove(name);
+            categoriesByName = Collections.unmodifiableMap(copy);
+            modifications++;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package se.product_service_1.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashat tidshjul för reservationer som ska gå ut. Varje fack motsvarar ett tick och en reservation läggs
+ * i facket för sin deadline, så att schemalägga är O(1) och varje tick bara går igenom det fack som
+ * passeras i stället för alla aktiva reservationer. Deadlines längre bort än ett varv ligger kvar i
+ * facket tills rätt varv kommer. Reservationer som avslutas i förtid ligger kvar tills deadline och
+ * filtreras bort av anroparen. Trådsäkert.
+ */
+public class HoldTimerWheel {
+
+    private final long tickMillis;
+    private final int mask;
+    private final ArrayDeque<Entry>[] slots;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public HoldTimerWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("tickMillis måste vara positivt och wheelSize en tvåpotens.");
+        }
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.slots = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    public synchronized void schedule(String reservationId, long deadlineMillis) {
+        // Avrundas uppåt så att ingenting går ut före sin deadline; passerade deadlines tas vid nästa tick
+        long deadlineTick = Math.max(Math.ceilDiv(deadlineMillis, tickMillis), currentTick + 1);
+        slots[(int) (deadlineTick & mask)].add(new Entry(reservationId, deadlineTick));
+    }
+
+    /**
+     * Flyttar fram hjulet till {@code nowMillis} och returnerar de reservationer vars deadline passerats.
+     */
+    public synchronized List<String> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<String> expired = new ArrayList<>();
+        // Efter ett långt uppehåll räcker ett varv: då har varje fack besökts en gång
+        long steps = Math.min(targetTick - currentTick, slots.length);
+        for (long step = 1; step <= steps; step++) {
+            Iterator<Entry> entries = slots[(int) ((currentTick + step) & mask)].iterator();
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.deadlineTick <= targetTick) {
+                    expired.add(entry.reservationId);
+                    entries.remove();
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        return expired;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (ArrayDeque<Entry> slot : slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    private static final class Entry {
+        private final String reservationId;
+        private final long deadlineTick;
+
+        private Entry(String reservationId, long deadlineTick) {
+            this.reservationId = reservationId;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
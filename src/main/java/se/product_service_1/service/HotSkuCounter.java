@@ -0,0 +1,175 @@
+package se.product_service_1.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lagersaldo för en het produkt uppdelat på flera celler så att samtidiga uttag sällan slåss om samma
+ * minnesord. Varje tråd börjar i "sin" cell och lånar från de andra när den är tom. En cell minskas bara
+ * med compare-and-set om den räcker, så summan kan aldrig bli negativ. Uttag som är större än någon
+ * enskild cell samlas ihop under ett lås.
+ * Bara {@link #forceApply(int)}, som backar en redan gjord ändring, kan ta saldot under noll. Det som saknas
+ * blir ett underskott som ökningar betalar av först; tills dess nekas alla uttag.
+ * Ändringar som ännu inte skrivits till databasen räknas i {@link #pendingDelta()}.
+ */
+public class HotSkuCounter {
+
+    private final long productId;
+    private final AtomicIntegerArray cells;
+    private final int mask;
+    private final AtomicLong pendingDelta = new AtomicLong();
+    // Pågående anrop; retire() väntar tills de är klara innan sista deltat skrivs
+    private final LongAdder inFlight = new LongAdder();
+    private volatile boolean retired;
+    // Ändras bara under låset
+    private volatile int deficit;
+
+    public HotSkuCounter(long productId, int stock, int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes måste vara en tvåpotens.");
+        }
+        this.productId = productId;
+        this.cells = new AtomicIntegerArray(stripes);
+        this.mask = stripes - 1;
+        for (int i = 0; i < stripes; i++) {
+            cells.set(i, stock / stripes + (i < stock % stripes ? 1 : 0));
+        }
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    /**
+     * Lägger till {@code delta} (negativt för uttag). Returnerar false om saldot inte räcker.
+     */
+    public boolean tryApply(int delta) {
+        if (deficit > 0) {
+            return applyWithDeficit(delta);
+        }
+        if (delta >= 0) {
+            cells.getAndAdd(home(), delta);
+            return true;
+        }
+        int quantity = -delta;
+        int start = home();
+        for (int i = 0; i <= mask; i++) {
+            int cell = (start + i) & mask;
+            int current;
+            while ((current = cells.get(cell)) >= quantity) {
+                if (cells.compareAndSet(cell, current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+        return gather(quantity);
+    }
+
+    /**
+     * Som {@link #tryApply(int)} men kan inte nekas: räcker inte saldot tas allt som finns och resten blir
+     * ett underskott, så att {@link #stock()} blir negativt.
+     */
+    public void forceApply(int delta) {
+        if (tryApply(delta)) {
+            return;
+        }
+        synchronized (this) {
+            int quantity = -delta;
+            deficit += quantity - takeUpTo(quantity);
+        }
+    }
+
+    public int stock() {
+        int sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i);
+        }
+        return sum - deficit;
+    }
+
+    public long pendingDelta() {
+        return pendingDelta.get();
+    }
+
+    void addPending(int delta) {
+        pendingDelta.addAndGet(delta);
+    }
+
+    long drainPending() {
+        return pendingDelta.getAndSet(0);
+    }
+
+    boolean enter() {
+        inFlight.increment();
+        if (retired) {
+            inFlight.decrement();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        inFlight.decrement();
+    }
+
+    /**
+     * Stänger räknaren för nya anrop och väntar in de som pågår.
+     */
+    void retire() {
+        retired = true;
+        while (inFlight.sum() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Öppnar en stängd räknare igen, t.ex. när det sista deltat inte gick att skriva.
+     */
+    void reopen() {
+        retired = false;
+    }
+
+    // Ingen enskild cell räcker: ta det som finns cell för cell och lämna tillbaka om summan ändå inte räcker
+    private synchronized boolean gather(int quantity) {
+        int taken = takeUpTo(quantity);
+        if (taken < quantity) {
+            cells.getAndAdd(home(), taken);
+            return false;
+        }
+        return true;
+    }
+
+    // Ökningar som hann läggas i en cell medan underskottet uppstod betalar av det först
+    private synchronized boolean applyWithDeficit(int delta) {
+        deficit -= takeUpTo(deficit);
+        if (delta >= 0) {
+            int paid = Math.min(delta, deficit);
+            deficit -= paid;
+            cells.getAndAdd(home(), delta - paid);
+            return true;
+        }
+        return deficit == 0 && tryApply(delta);
+    }
+
+    // Tar upp till quantity från cellerna och returnerar hur mycket som togs
+    private int takeUpTo(int quantity) {
+        int taken = 0;
+        for (int cell = 0; cell <= mask && taken < quantity; cell++) {
+            int current;
+            while ((current = cells.get(cell)) > 0) {
+                int take = Math.min(current, quantity - taken);
+                if (cells.compareAndSet(cell, current, current - take)) {
+                    taken += take;
+                    break;
+                }
+            }
+        }
+        return taken;
+    }
+
+    private int home() {
+        long id = Thread.currentThread().threadId();
+        return (int) (id ^ (id >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,173 @@
+package se.product_service_1.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lokal journal för lagerändringar på heta produkter som ännu inte skrivits till databasen.
+ * Varje ändring blir en rad {@code D <seq> <productId> <delta>} och varje lyckad skrivning till
+ * databasen en rad {@code C <seq>} som täcker alla ändringar till och med seq. Raderna skrivs direkt
+ * till filen (utan egen buffert) så att de överlever att processen kraschar.
+ * Vid uppstart summeras ändringarna efter sista checkpoint per produkt med {@link #unflushedDeltas(Path, Map)};
+ * när de skrivits till databasen öppnas en ny, tom logg som fortsätter numreringen, så att sekvensnummer som
+ * sparats i databasen fortfarande kan jämföras med nya rader.
+ */
+public class HotSkuDeltaLog implements AutoCloseable {
+
+    private final Path file;
+    private FileChannel channel;
+    private long sequence;
+
+    /**
+     * Öppnar en tom logg; det som låg i filen förut måste redan vara återspelat.
+     */
+    public HotSkuDeltaLog(Path file) {
+        this(file, 0);
+    }
+
+    /**
+     * Öppnar en tom logg vars första rad får sekvensnumret efter {@code sequence}.
+     */
+    public HotSkuDeltaLog(Path file, long sequence) {
+        this(file, sequence, true);
+    }
+
+    /**
+     * Som {@link #HotSkuDeltaLog(Path, long)}, men utan {@code truncate} skrivs nya rader efter det som redan
+     * finns i filen. {@code sequence} måste då vara minst det högsta sekvensnumret i filen.
+     */
+    public HotSkuDeltaLog(Path file, long sequence, boolean truncate) {
+        this.file = file;
+        this.sequence = sequence;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = open(file, truncate);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Kunde inte öppna deltaloggen " + file, e);
+        }
+    }
+
+    /**
+     * Skriver ändringen och kör {@code onLogged} medan loggen fortfarande är låst, så att den
+     * som samtidigt tar en ögonblicksbild med {@link #snapshot} ser antingen både rad och effekt eller ingetdera.
+     */
+    public synchronized void append(long productId, int delta, Runnable onLogged) {
+        long seq = ++sequence;
+        write("D " + seq + " " + productId + " " + delta + "\n");
+        onLogged.run();
+    }
+
+    /**
+     * Kör {@code action} med loggen låst och returnerar sekvensnumret som gäller för ögonblicksbilden.
+     */
+    public synchronized long snapshot(Runnable action) {
+        action.run();
+        return sequence;
+    }
+
+    /**
+     * Markerar att alla ändringar till och med {@code seq} finns i databasen. Har inget skrivits sedan dess
+     * töms filen så att den inte växer obegränsat.
+     */
+    public synchronized void checkpoint(long seq) {
+        if (seq == sequence) {
+            try {
+                channel.close();
+                channel = open(file, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Kunde inte tömma deltaloggen " + file, e);
+            }
+        } else {
+            write("C " + seq + "\n");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Summerar ändringar per produkt som kommer efter sista checkpoint i filen.
+     */
+    public static Map<Long, Long> unflushedDeltas(Path file) throws IOException {
+        return unflushedDeltas(file, Map.of());
+    }
+
+    /**
+     * Som {@link #unflushedDeltas(Path)}, men hoppar också över en produkts rader till och med
+     * {@code checkpoints.get(productId)}, dvs. det som enligt databasen redan är skrivet.
+     */
+    public static Map<Long, Long> unflushedDeltas(Path file, Map<Long, Long> checkpoints) throws IOException {
+        Map<Long, Long> deltas = new HashMap<>();
+        List<String> lines = readLines(file);
+        long checkpoint = 0;
+        for (String line : lines) {
+            if (line.startsWith("C ")) {
+                checkpoint = Math.max(checkpoint, Long.parseLong(line.substring(2).trim()));
+            }
+        }
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            if (parts.length == 4 && parts[0].equals("D")) {
+                long seq = Long.parseLong(parts[1]);
+                long productId = Long.parseLong(parts[2]);
+                if (seq > checkpoint && seq > checkpoints.getOrDefault(productId, 0L)) {
+                    deltas.merge(productId, Long.parseLong(parts[3]), Long::sum);
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Högsta sekvensnumret i filen, eller 0 om den saknas eller är tom.
+     */
+    public static long lastSequence(Path file) throws IOException {
+        long last = 0;
+        for (String line : readLines(file)) {
+            String[] parts = line.split(" ");
+            if (parts.length >= 2 && (parts[0].equals("D") || parts[0].equals("C"))) {
+                last = Math.max(last, Long.parseLong(parts[1].trim()));
+            }
+        }
+        return last;
+    }
+
+    private static List<String> readLines(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        String content = Files.readString(file, StandardCharsets.US_ASCII);
+        // Allt efter sista radbrytningen är en rad som inte hann skrivas klart och räknas inte
+        return List.of(content.substring(0, content.lastIndexOf('\n') + 1).split("\n"));
+    }
+
+    private void write(String line) {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Kunde inte skriva till deltaloggen " + file, e);
+        }
+    }
+
+    private static FileChannel open(Path file, boolean truncate) throws IOException {
+        return truncate
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,421 @@
+package se.product_service_1.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.model.HotSkuCheckpoint;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.HotSkuCheckpointRepository;
+import se.product_service_1.repository.ProductRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Valfritt läge för produkter med extremt många lagerändringar, t.ex. under en kampanj. För en flaggad
+ * produkt ligger saldot i en {@link HotSkuCounter} i minnet och ändringar från updateInventoryChange går
+ * dit utan att vänta på radlåset i products. Ändringarna journalförs i en lokal {@link HotSkuDeltaLog}
+ * och skrivs till databasen i klump med jämna mellanrum, tillsammans med loggens sekvensnummer per produkt
+ * i hot_sku_checkpoints. Vid uppstart spelas de rader upp mot databasen som ligger efter produktens
+ * checkpoint, innan något annat händer.
+ * Saldot i databasen (och i svar som läses därifrån) ligger därför efter med högst ett flush-intervall.
+ */
+@Component
+public class HotSkuInventory {
+
+    private static final Logger log = LoggerFactory.getLogger(HotSkuInventory.class);
+
+    public enum Outcome { APPLIED, INSUFFICIENT, NOT_HOT }
+
+    private final ProductRepository productRepository;
+    private final HotSkuCheckpointRepository hotSkuCheckpointRepository;
+    private final ProductResponseCache productResponseCache;
+    private final ProductColumnIndex productColumnIndex;
+    private final InventoryAvailability inventoryAvailability;
+    private final CatalogChangeCounters catalogChangeCounters;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate newTransaction;
+    private final Path deltaLogFile;
+    private final int stripes;
+    private final Set<Long> configuredProductIds;
+    private final Map<Long, HotSkuCounter> counters = new ConcurrentHashMap<>();
+    // Uppspelade deltan för produkter utan räknare som ännu inte kunnat skrivas till databasen
+    private final Map<Long, Long> unwritten = new ConcurrentHashMap<>();
+    private HotSkuDeltaLog deltaLog;
+    // Sekvensnumret en ny logg fortsätter från, så att det aldrig är lägre än en sparad checkpoint
+    private long lastSequence;
+    private boolean recovered;
+
+    public HotSkuInventory(ProductRepository productRepository, HotSkuCheckpointRepository hotSkuCheckpointRepository,
+                           ProductResponseCache productResponseCache,
+                           ProductColumnIndex productColumnIndex, InventoryAvailability inventoryAvailability,
+                           CatalogChangeCounters catalogChangeCounters, PlatformTransactionManager transactionManager,
+                           @Value("${inventory.hot-sku.delta-log:./data/hot-sku-deltas.log}") Path deltaLogFile,
+                           @Value("${inventory.hot-sku.stripes:16}") int stripes,
+                           @Value("${inventory.hot-sku.product-ids:}") Set<Long> configuredProductIds) {
+        this.productRepository = productRepository;
+        this.hotSkuCheckpointRepository = hotSkuCheckpointRepository;
+        this.productResponseCache = productResponseCache;
+        this.productColumnIndex = productColumnIndex;
+        this.inventoryAvailability = inventoryAvailability;
+        this.catalogChangeCounters = catalogChangeCounters;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.deltaLogFile = deltaLogFile;
+        this.stripes = stripes;
+        this.configuredProductIds = configuredProductIds;
+    }
+
+    /**
+     * Spelar upp ändringar som inte hann skrivas före förra avslutet och flaggar produkterna i
+     * inventory.hot-sku.product-ids.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        synchronized (this) {
+            ensureRecovered();
+        }
+        configuredProductIds.forEach(this::enable);
+    }
+
+    public boolean isHot(Long productId) {
+        return counters.containsKey(productId);
+    }
+
+    public Set<Long> hotProductIds() {
+        return new TreeSet<>(counters.keySet());
+    }
+
+    /**
+     * Aktuellt saldo i minnet, eller null om produkten inte är flaggad.
+     */
+    public Integer stock(Long productId) {
+        HotSkuCounter counter = counters.get(productId);
+        return counter != null ? counter.stock() : null;
+    }
+
+    /**
+     * Kopia av produkten med saldot från minnet om den är flaggad, annars produkten själv. Entiteten
+     * ändras inte eftersom Hibernate annars skulle skriva tillbaka saldot.
+     */
+    public Product withLiveStock(Product product) {
+        Integer stock = stock(product.getId());
+        if (stock == null) {
+            return product;
+        }
+        return Product.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .category(product.getCategory())
+                .price(product.getPrice())
+                .stockQuantity(stock)
+                .version(product.getVersion())
+                .build();
+    }
+
+    /**
+     * Flaggar produkten. Saldot läses under radlås och räknaren publiceras innan låset släpps, så en samtidig
+     * ändring mot databasen kommer antingen före och syns i saldot, eller efter och ser att produkten är het.
+     */
+    public synchronized void enable(Long productId) {
+        ensureRecovered();
+        if (counters.containsKey(productId)) {
+            return;
+        }
+        if (deltaLog == null) {
+            deltaLog = new HotSkuDeltaLog(deltaLogFile, lastSequence);
+        }
+        // Ett uppspelat delta som väntar på att skrivas följer med räknaren och skrivs vid dess flush
+        long carried = unwritten.getOrDefault(productId, 0L);
+        HotSkuCounter counter;
+        try {
+            counter = transaction.execute(status -> {
+                Product product = productRepository.findByIdForUpdate(productId)
+                        .orElseThrow(() -> new ProductNotFoundException("Produkt med ID " + productId + " finns inte."));
+                HotSkuCounter seeded = new HotSkuCounter(productId, (int) Math.max(0, product.getStockQuantity() + carried), stripes);
+                seeded.addPending(Math.toIntExact(carried));
+                counters.put(productId, seeded);
+                return seeded;
+            });
+        } catch (RuntimeException e) {
+            counters.remove(productId);
+            throw e;
+        }
+        unwritten.remove(productId);
+        log.info("enable – produktId={} hanteras nu i minnet, saldo={}", productId, counter.stock());
+    }
+
+    /**
+     * Avflaggar produkten: räknaren stängs, pågående ändringar väntas in och skrivs, och först därefter går
+     * nya ändringar mot databasen igen. Går det sista deltat inte att skriva förblir produkten het.
+     */
+    public synchronized void disable(Long productId) {
+        HotSkuCounter counter = counters.get(productId);
+        if (counter == null) {
+            return;
+        }
+        counter.retire();
+        flush(List.of(counter));
+        if (counter.pendingDelta() != 0) {
+            counter.reopen();
+            throw new IllegalStateException("Lagerändringar för produkt " + productId
+                    + " kunde inte skrivas till databasen; produkten hanteras fortfarande i minnet.");
+        }
+        counters.remove(productId);
+        log.info("disable – produktId={} hanteras åter i databasen", productId);
+    }
+
+    /**
+     * Ändrar saldot i minnet. NOT_HOT betyder att produkten inte (längre) är flaggad och att
+     * ändringen ska göras mot databasen i stället.
+     */
+    public Outcome tryApply(Long productId, int delta) {
+        HotSkuCounter counter = counters.get(productId);
+        if (counter == null) {
+            return Outcome.NOT_HOT;
+        }
+        if (!counter.enter()) {
+            // disable() skriver räknarens sista deltan; databasen gäller först när den är klar
+            synchronized (this) {
+                return tryApply(productId, delta);
+            }
+        }
+        try {
+            if (!counter.tryApply(delta)) {
+                return Outcome.INSUFFICIENT;
+            }
+            try {
+                deltaLog.append(productId, delta, () -> counter.addPending(delta));
+            } catch (RuntimeException e) {
+                // Inte journalförd, alltså inte gjord: lägg tillbaka även om saldot hunnit tas av andra
+                counter.forceApply(-delta);
+                throw e;
+            }
+            return Outcome.APPLIED;
+        } finally {
+            counter.exit();
+        }
+    }
+
+    /**
+     * Backar en ändring som {@link #tryApply} har gjort, när resten av anropet rullas tillbaka. Kan till
+     * skillnad från tryApply inte nekas: har saldot hunnit säljas blir det negativt tills nya ökningar täcker
+     * det. Är produkten inte längre het har ändringen redan skrivits till databasen och backas där.
+     */
+    public void compensate(Long productId, int delta) {
+        HotSkuCounter counter = counters.get(productId);
+        if (counter == null) {
+            compensateInDatabase(productId, delta);
+            return;
+        }
+        if (!counter.enter()) {
+            synchronized (this) {
+                compensate(productId, delta);
+                return;
+            }
+        }
+        try {
+            counter.forceApply(delta);
+            if (counter.stock() < 0) {
+                log.error("compensate – produktId={} har sålts på ett saldo som backades, saldo={}", productId, counter.stock());
+            }
+            try {
+                deltaLog.append(productId, delta, () -> counter.addPending(delta));
+            } catch (RuntimeException e) {
+                // Ändringen som backas är journalförd, så backningen måste till databasen även utan loggrad
+                log.error("compensate – kunde inte journalföra backning för produktId={}: {}", productId, e.getMessage());
+                counter.addPending(delta);
+            }
+        } finally {
+            counter.exit();
+        }
+    }
+
+    private void compensateInDatabase(Long productId, int delta) {
+        // Anroparens transaktion rullas tillbaka, men den avflaggade räknaren har redan skrivit ändringen
+        newTransaction.executeWithoutResult(status -> {
+            int[] updated = productRepository.forceStockDeltas(new long[] {productId}, new int[] {delta});
+            if (updated[0] > 0) {
+                refresh(List.of(productId));
+            }
+        });
+        log.info("compensate – produktId={} var inte längre het, delta {} backat i databasen", productId, delta);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.hot-sku.flush-interval-ms:200}")
+    public void flush() {
+        if (!counters.isEmpty() || !unwritten.isEmpty()) {
+            flush(counters.values());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        if (deltaLog != null) {
+            flush();
+            deltaLog.close();
+        }
+    }
+
+    /**
+     * Skriver ihopslagna deltan för räknarna och de uppspelade deltan som väntar i en JDBC-batch, sparar
+     * loggens sekvensnummer som checkpoint för produkterna i samma transaktion och sätter sedan en checkpoint
+     * i loggen. Deltan som inte kunde skrivas läggs tillbaka och tas med nästa gång, och då sätts ingen
+     * checkpoint i loggen. Returnerar true om allt skrevs.
+     */
+    private synchronized boolean flush(Collection<HotSkuCounter> toFlush) {
+        Map<Long, HotSkuCounter> flushed = new HashMap<>();
+        Map<Long, Long> drained = new LinkedHashMap<>();
+        long seq = deltaLog.snapshot(() -> toFlush.forEach(counter -> {
+            flushed.put(counter.getProductId(), counter);
+            long delta = counter.drainPending();
+            if (delta != 0) {
+                drained.put(counter.getProductId(), delta);
+            }
+        }));
+        unwritten.forEach((productId, delta) -> drained.merge(productId, delta, Long::sum));
+        unwritten.clear();
+        drained.values().removeIf(delta -> delta == 0);
+        if (drained.isEmpty()) {
+            return true;
+        }
+
+        long[] productIds = new long[drained.size()];
+        int[] deltas = new int[drained.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : drained.entrySet()) {
+            productIds[i] = entry.getKey();
+            deltas[i++] = Math.toIntExact(entry.getValue());
+        }
+        List<Long> failed;
+        try {
+            failed = transaction.execute(status -> writeDeltas(productIds, deltas, seq));
+        } catch (RuntimeException e) {
+            log.error("flush – kunde inte skriva {} deltan till databasen, försöker igen: {}", drained.size(), e.getMessage());
+            drained.forEach((productId, delta) -> putBack(flushed, productId, delta));
+            return false;
+        }
+        if (!failed.isEmpty()) {
+            failed.forEach(productId -> putBack(flushed, productId, drained.get(productId)));
+            return false;
+        }
+        // Loggens checkpoint gäller alla produkter, så den sätts bara när alla räknare var med
+        if (flushed.keySet().containsAll(counters.keySet())) {
+            deltaLog.checkpoint(seq);
+        }
+        log.debug("flush – skrev deltan för {} produkter till och med seq={}", drained.size(), seq);
+        return true;
+    }
+
+    private void putBack(Map<Long, HotSkuCounter> flushed, Long productId, long delta) {
+        HotSkuCounter counter = flushed.get(productId);
+        if (counter != null) {
+            counter.addPending(Math.toIntExact(delta));
+        } else {
+            unwritten.merge(productId, delta, Long::sum);
+        }
+    }
+
+    /**
+     * Deltan till och med loggraden seq; checkpointen sätts för de produkter som skrevs. Returnerar de
+     * produkter vars delta inte gick att skriva och måste försökas igen.
+     */
+    private List<Long> writeDeltas(long[] productIds, int[] deltas, long seq) {
+        int[] updated = productRepository.applyStockDeltas(productIds, deltas);
+        List<Long> written = new ArrayList<>(productIds.length);
+        List<Long> failed = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] > 0) {
+                written.add(productIds[i]);
+            } else if (productRepository.existsById(productIds[i])) {
+                // Databasen har ändrats förbi räknaren så att saldot inte räcker; deltat ligger kvar tills det gör det
+                log.error("writeDeltas – delta {} för produktId={} kunde inte skrivas, försöker igen", deltas[i], productIds[i]);
+                failed.add(productIds[i]);
+            } else {
+                log.warn("writeDeltas – produktId={} är borttagen, delta {} skrivs inte", productIds[i], deltas[i]);
+            }
+        }
+        saveCheckpoints(written, seq);
+        refresh(written);
+        return failed;
+    }
+
+    // Index och cachar för produkter vars saldo har skrivits i den pågående transaktionen
+    private void refresh(List<Long> productIds) {
+        Set<Long> categoryIds = new HashSet<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            Product live = withLiveStock(product);
+            productColumnIndex.update(live);
+            inventoryAvailability.stockChanged(live);
+            categoryIds.add(live.getCategory().getId());
+        }
+        productResponseCache.invalidate(productIds);
+        catalogChangeCounters.productsChanged(categoryIds);
+    }
+
+    private void saveCheckpoints(List<Long> productIds, long seq) {
+        Map<Long, HotSkuCheckpoint> checkpoints = new HashMap<>();
+        hotSkuCheckpointRepository.findAllById(productIds).forEach(checkpoint -> checkpoints.put(checkpoint.getProductId(), checkpoint));
+        Instant now = Instant.now();
+        List<HotSkuCheckpoint> toSave = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            HotSkuCheckpoint checkpoint = checkpoints.getOrDefault(productId, HotSkuCheckpoint.builder().productId(productId).build());
+            checkpoint.setSeq(seq);
+            checkpoint.setUpdatedAt(now);
+            toSave.add(checkpoint);
+        }
+        hotSkuCheckpointRepository.saveAll(toSave);
+    }
+
+    private void ensureRecovered() {
+        if (recovered) {
+            return;
+        }
+        try {
+            // Rader som redan finns i databasen men inte hann checkpointas i filen före en krasch hoppas över
+            Map<Long, Long> checkpoints = new HashMap<>();
+            hotSkuCheckpointRepository.findAll().forEach(checkpoint -> checkpoints.put(checkpoint.getProductId(), checkpoint.getSeq()));
+            Long maxCheckpoint = hotSkuCheckpointRepository.findMaxSeq();
+            lastSequence = Math.max(HotSkuDeltaLog.lastSequence(deltaLogFile), maxCheckpoint != null ? maxCheckpoint : 0);
+            Map<Long, Long> unflushed = HotSkuDeltaLog.unflushedDeltas(deltaLogFile, checkpoints);
+            // Finns ingen fil öppnas loggen först när en produkt flaggas, så att en nod utan heta produkter inte
+            // skapar någon. Raderna som ska spelas upp ligger kvar i filen tills de är skrivna och loggen checkpointas
+            if (Files.exists(deltaLogFile)) {
+                deltaLog = new HotSkuDeltaLog(deltaLogFile, lastSequence, unflushed.isEmpty());
+            }
+            if (!unflushed.isEmpty()) {
+                log.info("recover – spelar upp deltan för {} produkter från {}", unflushed.size(), deltaLogFile);
+                unwritten.putAll(unflushed);
+                if (!flush(List.of())) {
+                    log.error("recover – alla deltan kunde inte skrivas, försöker igen vid nästa flush");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Kunde inte läsa deltaloggen " + deltaLogFile, e);
+        }
+        recovered = true;
+    }
+}
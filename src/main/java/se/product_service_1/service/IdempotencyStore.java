@@ -0,0 +1,274 @@
+package se.product_service_1.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.exception.IdempotencyKeyInProgressException;
+import se.product_service_1.exception.IdempotencyKeyMismatchException;
+import se.product_service_1.model.IdempotencyRecord;
+import se.product_service_1.repository.IdempotencyRecordRepository;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Svar på skrivande anrop med headern Idempotency-Key, så att en klient kan skicka om ett anrop efter
+ * timeout utan att det utförs två gånger. Första lyckade svaret sparas per anropare och nyckel i en
+ * Caffeine-cache med max antal poster och TTL, och omsändningar får det sparade svaret direkt.
+ * Samtidiga anrop med samma nyckel väntar på det som redan pågår i stället för att köras parallellt.
+ * Ett anrop som kastar undantag sparas inte, så det kan göras om med samma nyckel.
+ * Med idempotency.persist=true skrivs nyckeln dessutom till idempotency_keys i samma transaktion som
+ * anropet, så att svaret överlever omstart och delas mellan noder.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final ObjectMapper objectMapper;
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final TransactionTemplate transaction;
+    private final Cache<String, StoredResponse> responses;
+    // Pågående anrop per nyckel; väntande anrop får resultatet, eller null om anropet misslyckades
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final boolean persist;
+    private final long waitTimeoutMillis;
+
+    public IdempotencyStore(ObjectMapper objectMapper, IdempotencyRecordRepository idempotencyRecordRepository,
+                            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                            @Value("${idempotency.ttl-seconds:86400}") long ttlSeconds,
+                            @Value("${idempotency.max-entries:100000}") long maxEntries,
+                            @Value("${idempotency.persist:false}") boolean persist,
+                            @Value("${idempotency.wait-timeout-ms:30000}") long waitTimeoutMillis) {
+        this.objectMapper = objectMapper;
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.persist = persist;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, responses, "idempotencyResponses");
+    }
+
+    /**
+     * Utför {@code action} en gång per nyckel. {@code operation} och {@code request} bildar ett fingeravtryck;
+     * samma nyckel med ett annat anrop ger 422. Utan nyckel utförs anropet som vanligt.
+     * {@code bodyType} behövs bara för att läsa tillbaka svar som sparats i databasen.
+     */
+    public <T> ResponseEntity<T> execute(String key, String operation, Object request, TypeReference<T> bodyType,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException(HEADER + " måste vara mellan 1 och " + MAX_KEY_LENGTH + " tecken.");
+        }
+        String scopedKey = InventoryLedgerService.currentCaller() + ":" + key;
+        String fingerprint = fingerprint(operation, request);
+
+        while (true) {
+            StoredResponse stored = responses.getIfPresent(scopedKey);
+            if (stored != null) {
+                return toResponse(stored, fingerprint, key, true);
+            }
+            CompletableFuture<StoredResponse> execution = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(scopedKey, execution);
+            if (running != null) {
+                stored = await(running, key);
+                if (stored != null) {
+                    return toResponse(stored, fingerprint, key, true);
+                }
+                // Det pågående anropet misslyckades och sparades inte; försök själv
+                continue;
+            }
+
+            try {
+                // Kan ha blivit klart mellan uppslaget ovan och att vi tog över nyckeln
+                stored = responses.getIfPresent(scopedKey);
+                boolean replayed = stored != null;
+                if (stored == null && persist) {
+                    stored = loadPersisted(scopedKey, bodyType);
+                    replayed = stored != null;
+                }
+                if (stored == null) {
+                    try {
+                        stored = persist ? executeAndPersist(scopedKey, fingerprint, action) : executeOnce(fingerprint, action);
+                    } catch (KeyAlreadyClaimedException e) {
+                        // En annan nod tog nyckeln först; dess transaktion är klar när vi får felet
+                        stored = loadPersisted(scopedKey, bodyType);
+                        if (stored == null) {
+                            throw new IdempotencyKeyInProgressException("Anrop med " + HEADER + " " + key + " pågår redan.");
+                        }
+                        replayed = true;
+                    }
+                }
+                responses.put(scopedKey, stored);
+                execution.complete(stored);
+                return toResponse(stored, fingerprint, key, replayed);
+            } catch (RuntimeException e) {
+                execution.complete(null);
+                throw e;
+            } finally {
+                inFlight.remove(scopedKey, execution);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        if (!persist) {
+            return;
+        }
+        Integer purged = transaction.execute(status -> idempotencyRecordRepository.deleteCreatedBefore(Instant.now().minus(ttl)));
+        if (purged != null && purged > 0) {
+            log.info("purgeExpired – tog bort {} utgångna idempotensnycklar", purged);
+        }
+    }
+
+    private <T> StoredResponse executeOnce(String fingerprint, Supplier<ResponseEntity<T>> action) {
+        ResponseEntity<T> response = action.get();
+        return new StoredResponse(fingerprint, response.getStatusCode(), response.getBody());
+    }
+
+    // Nyckeln tas innan anropet utförs, så ett anrop med samma nyckel på en annan nod väntar på raden
+    // i stället för att ändra något; misslyckas anropet rullas raden tillbaka med det
+    private <T> StoredResponse executeAndPersist(String scopedKey, String fingerprint, Supplier<ResponseEntity<T>> action) {
+        return transaction.execute(status -> {
+            IdempotencyRecord record;
+            try {
+                record = idempotencyRecordRepository.saveAndFlush(IdempotencyRecord.builder()
+                        .idempotencyKey(scopedKey)
+                        .fingerprint(fingerprint)
+                        .createdAt(Instant.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Bara krocken på nyckelraden betyder att någon annan har nyckeln; samma undantag från
+                // anropet självt (t.ex. ett upptaget produktnamn) ska nå klienten som det är
+                throw new KeyAlreadyClaimedException(e);
+            }
+            ResponseEntity<T> response = action.get();
+            record.setStatus(response.getStatusCode().value());
+            record.setBody(toJson(response.getBody()));
+            return new StoredResponse(fingerprint, response.getStatusCode(), response.getBody());
+        });
+    }
+
+    private StoredResponse loadPersisted(String scopedKey, TypeReference<?> bodyType) {
+        IdempotencyRecord record = idempotencyRecordRepository.findById(scopedKey).orElse(null);
+        if (record == null || record.getStatus() == null) {
+            return null;
+        }
+        if (record.getCreatedAt().isBefore(Instant.now().minus(ttl))) {
+            transaction.executeWithoutResult(status -> idempotencyRecordRepository.deleteById(scopedKey));
+            return null;
+        }
+        try {
+            Object body = record.getBody() != null ? objectMapper.readValue(record.getBody(), bodyType) : null;
+            return new StoredResponse(record.getFingerprint(), HttpStatusCode.valueOf(record.getStatus()), body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> running, String key) {
+        try {
+            return running.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException("Anrop med " + HEADER + " " + key + " pågår fortfarande.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException("Avbröts i väntan på anrop med " + HEADER + " " + key + ".");
+        } catch (ExecutionException e) {
+            // Framtiden avslutas alltid med complete(), aldrig med undantag
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<T> toResponse(StoredResponse stored, String fingerprint, String key, boolean replayed) {
+        if (!stored.fingerprint.equals(fingerprint)) {
+            throw new IdempotencyKeyMismatchException(HEADER + " " + key + " har redan använts för ett annat anrop.");
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.status);
+        if (replayed) {
+            builder.header(REPLAYED_HEADER, "true");
+        }
+        return builder.body((T) stored.body);
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object body) {
+        try {
+            return body != null ? objectMapper.writeValueAsString(body) : null;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class KeyAlreadyClaimedException extends RuntimeException {
+        private KeyAlreadyClaimedException(DataIntegrityViolationException cause) {
+            super(cause);
+        }
+    }
+
+    private static final class StoredResponse {
+        private final String fingerprint;
+        private final HttpStatusCode status;
+        private final Object body;
+
+        private StoredResponse(String fingerprint, HttpStatusCode status, Object body) {
+            this.fingerprint = fingerprint;
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package se.product_service_1.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import se.product_service_1.exception.NotEnoughStockException;
+import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.ProductRepository;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lagersaldo och reserverad mängd per produkt i minnet, så att tillgängligt att lova
+ * (saldo minus reserverat) kan besvaras med ett uppslag. Saldot läses från databasen första gången
+ * en produkt efterfrågas och hålls sedan aktuellt av skrivvägarna i {@link ProductService} efter commit.
+ * Ändringar av en produkt skyddas av ett av {@value #STRIPES} lås som väljs från produktens id, så
+ * reservationer på olika produkter sällan väntar på varandra.
+ */
+@Component
+public class InventoryAvailability {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryAvailability.class);
+
+    static final int STRIPES = 64;
+
+    private final ProductRepository productRepository;
+    private final Map<Long, Sku> skus = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public InventoryAvailability(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public int availableToPromise(Long productId) {
+        Sku sku = sku(productId);
+        return sku.onHand - sku.held;
+    }
+
+    public int held(Long productId) {
+        Sku sku = skus.get(productId);
+        return sku != null ? sku.held : 0;
+    }
+
+    /**
+     * Reserverar alla rader eller ingen. Kastar {@link NotEnoughStockException} om någon produkt
+     * inte har tillräckligt tillgängligt.
+     */
+    public void hold(Map<Long, Integer> quantities) {
+        long[] productIds = quantities.keySet().stream().mapToLong(Long::longValue).toArray();
+        Sku[] loaded = new Sku[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            loaded[i] = sku(productIds[i]);
+        }
+        ReentrantLock[] acquired = lockAll(productIds);
+        try {
+            for (int i = 0; i < productIds.length; i++) {
+                int quantity = quantities.get(productIds[i]);
+                if (loaded[i].onHand - loaded[i].held < quantity) {
+                    log.warn("hold – otillräckligt tillgängligt för produktId={}, begärt={}, tillgängligt={}",
+                            productIds[i], quantity, loaded[i].onHand - loaded[i].held);
+                    throw new NotEnoughStockException("Not enough stock of product " + productIds[i]
+                            + ". Available to promise: " + (loaded[i].onHand - loaded[i].held));
+                }
+            }
+            for (int i = 0; i < productIds.length; i++) {
+                loaded[i].held += quantities.get(productIds[i]);
+            }
+        } finally {
+            unlockAll(acquired);
+        }
+    }
+
+    /**
+     * Återställer en reservation från journalen utan att kontrollera saldot; löftet gavs redan före omstarten.
+     */
+    public void restoreHold(Map<Long, Integer> quantities) {
+        quantities.forEach((productId, quantity) -> {
+            Sku sku = sku(productId);
+            withLock(productId, () -> sku.held += quantity);
+        });
+    }
+
+    public void release(Map<Long, Integer> quantities) {
+        quantities.forEach((productId, quantity) -> {
+            Sku sku = skus.get(productId);
+            if (sku != null) {
+                withLock(productId, () -> sku.held = Math.max(0, sku.held - quantity));
+            }
+        });
+    }
+
+    /**
+     * Nytt saldo för produkten, tillämpas efter commit (eller direkt utan transaktion). Commits kan nå hit
+     * i annan ordning än de gjordes; en ögonblicksbild med äldre version än den som redan gäller ignoreras.
+     */
+    public void stockChanged(Product product) {
+        Long productId = product.getId();
+        int stock = product.getStockQuantity();
+        Long version = product.getVersion();
+        TransactionCallbacks.afterCommit(() -> {
+            Sku sku = skus.computeIfAbsent(productId, id -> new Sku(stock));
+            withLock(productId, () -> {
+                if (version != null && sku.version != null && version < sku.version) {
+                    log.debug("stockChanged – ignorerar äldre version för produktId={}, version={}, gällande={}",
+                            productId, version, sku.version);
+                    return;
+                }
+                sku.onHand = stock;
+                sku.version = version;
+            });
+        });
+    }
+
+    public void removed(Long productId) {
+        TransactionCallbacks.afterCommit(() -> skus.remove(productId));
+    }
+
+    private Sku sku(Long productId) {
+        Sku sku = skus.get(productId);
+        if (sku != null) {
+            return sku;
+        }
+        // Läses utanför låset; ett saldo som hunnit komma via stockChanged under tiden vinner
+        int stock = productRepository.findStockQuantityById(productId)
+                .orElseThrow(() -> new ProductNotFoundException("Produkt med ID " + productId + " finns inte."));
+        Sku fresh = new Sku(stock);
+        Sku loaded = skus.putIfAbsent(productId, fresh);
+        return loaded != null ? loaded : fresh;
+    }
+
+    private ReentrantLock lockFor(long productId) {
+        return locks[Long.hashCode(productId) & (STRIPES - 1)];
+    }
+
+    private void withLock(long productId, Runnable action) {
+        ReentrantLock lock = lockFor(productId);
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Låsen tas i stigande stripe-ordning så att två reservationer med samma produkter inte kan låsa fast varandra
+    private ReentrantLock[] lockAll(long[] productIds) {
+        int[] stripes = Arrays.stream(productIds).mapToInt(id -> Long.hashCode(id) & (STRIPES - 1)).sorted().distinct().toArray();
+        ReentrantLock[] acquired = new ReentrantLock[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            acquired[i] = locks[stripes[i]];
+            acquired[i].lock();
+        }
+        return acquired;
+    }
+
+    private static void unlockAll(ReentrantLock[] acquired) {
+        for (int i = acquired.length - 1; i >= 0; i--) {
+            acquired[i].unlock();
+        }
+    }
+
+    private static final class Sku {
+        // Skrivs under stripe-låset, läses utan lås
+        private volatile int onHand;
+        private volatile int held;
+        // Versionen som onHand kommer från; null när saldot lästes utan version och nästa skrivning ska gälla
+        private Long version;
+
+        private Sku(int onHand) {
+            this.onHand = onHand;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package se.product_service_1.service;
+
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.product_service_1.dto.LedgerReplayResult;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.model.InventoryLedgerEntry;
+import se.product_service_1.model.InventoryLedgerSnapshot;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.InventoryLedgerRepository;
+import se.product_service_1.repository.InventoryLedgerSnapshotRepository;
+import se.product_service_1.repository.ProductRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Journal över alla lagerändringar i tabellen inventory_ledger. Raderna läggs till i samma transaktion
+ * som ändringen, så journalen och saldot committas eller rullas tillbaka tillsammans, och alla rader
+ * från ett anrop skickas i en JDBC-batch.
+ * Rader äldre än inventory.ledger.retention-days komprimeras till en summa per produkt i
+ * inventory_ledger_snapshots, och {@link #replay(boolean)} räknar fram saldot ur snapshot plus resterande
+ * rader med en grupperad fråga och skriver tillbaka avvikelser i batch.
+ */
+@Service
+public class InventoryLedgerService {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryLedgerService.class);
+
+    public static final String SYSTEM_CALLER = "system";
+    public static final int MAX_HISTORY_SIZE = 1000;
+    // Håller IN-listor och JDBC-batchar på en rimlig storlek
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+    private static final int MAX_CALLER_LENGTH = 100;
+
+    private final InventoryLedgerRepository inventoryLedgerRepository;
+    private final InventoryLedgerSnapshotRepository inventoryLedgerSnapshotRepository;
+    private final ProductRepository productRepository;
+    private final HotSkuInventory hotSkuInventory;
+    private final ProductColumnIndex productColumnIndex;
+    private final InventoryAvailability inventoryAvailability;
+    private final LowStockMonitor lowStockMonitor;
+    private final ProductResponseCache productResponseCache;
+    private final CatalogChangeCounters catalogChangeCounters;
+    private final TransactionTemplate transaction;
+    private final Duration retention;
+
+    public InventoryLedgerService(InventoryLedgerRepository inventoryLedgerRepository,
+                                  InventoryLedgerSnapshotRepository inventoryLedgerSnapshotRepository,
+                                  ProductRepository productRepository, HotSkuInventory hotSkuInventory,
+                                  ProductColumnIndex productColumnIndex, InventoryAvailability inventoryAvailability,
+                                  LowStockMonitor lowStockMonitor, ProductResponseCache productResponseCache, CatalogChangeCounters catalogChangeCounters,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${inventory.ledger.retention-days:30}") long retentionDays) {
+        this.inventoryLedgerRepository = inventoryLedgerRepository;
+        this.inventoryLedgerSnapshotRepository = inventoryLedgerSnapshotRepository;
+        this.productRepository = productRepository;
+        this.hotSkuInventory = hotSkuInventory;
+        this.productColumnIndex = productColumnIndex;
+        this.inventoryAvailability = inventoryAvailability;
+        this.lowStockMonitor = lowStockMonitor;
+        this.productResponseCache = productResponseCache;
+        this.catalogChangeCounters = catalogChangeCounters;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    /**
+     * Journalför rad {@code i} som ändringen {@code deltas[i]} av produkten {@code productIds[i]} med
+     * resulterande saldo {@code quantitiesAfter[i]}. Måste anropas i ändringens transaktion.
+     */
+    public void record(long[] productIds, int[] deltas, int[] quantitiesAfter) {
+        String caller = currentCaller();
+        Instant now = Instant.now();
+        List<InventoryLedgerEntry> entries = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            entries.add(InventoryLedgerEntry.builder()
+                    .productId(productIds[i])
+                    .delta(deltas[i])
+                    .quantityAfter(quantitiesAfter[i])
+                    .caller(caller)
+                    .createdAt(now)
+                    .build());
+        }
+        inventoryLedgerRepository.saveAll(entries);
+    }
+
+    /**
+     * Journalför ingående saldo för nyskapade produkter, så att journalen täcker hela deras historik.
+     */
+    public void recordOpeningBalances(Collection<Product> products) {
+        long[] productIds = new long[products.size()];
+        int[] quantities = new int[products.size()];
+        int i = 0;
+        for (Product product : products) {
+            productIds[i] = product.getId();
+            quantities[i++] = product.getStockQuantity() != null ? product.getStockQuantity() : 0;
+        }
+        record(productIds, quantities, quantities);
+    }
+
+    /**
+     * De senaste raderna för en produkt, nyast först. {@code beforeSeq} bläddrar bakåt från föregående sida.
+     */
+    public List<InventoryLedgerEntry> history(Long productId, Long beforeSeq, int limit) {
+        if (limit <= 0 || limit > MAX_HISTORY_SIZE) {
+            throw new BadRequestException("limit måste vara mellan 1 och " + MAX_HISTORY_SIZE + ".");
+        }
+        return inventoryLedgerRepository.findByProductIdAndSeqLessThanOrderBySeqDesc(productId,
+                beforeSeq != null ? beforeSeq : Long.MAX_VALUE, Limit.of(limit));
+    }
+
+    @Scheduled(cron = "${inventory.ledger.compaction-cron:0 30 3 * * *}")
+    public void compactExpired() {
+        compact(Instant.now().minus(retention));
+    }
+
+    /**
+     * Slår ihop alla rader skapade före {@code cutoff} med produktens snapshot och tar bort dem.
+     * Returnerar antalet rader som komprimerades.
+     */
+    public long compact(Instant cutoff) {
+        long started = System.nanoTime();
+        Long compacted = transaction.execute(status -> {
+            // Per produkt: {summa av delta, antal rader}
+            Map<Long, long[]> sums = new HashMap<>();
+            Roaring64Bitmap seqs = new Roaring64Bitmap();
+            try (Stream<Object[]> rows = inventoryLedgerRepository.streamEntriesCreatedBefore(cutoff)) {
+                Iterator<Object[]> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    Object[] row = iterator.next();
+                    seqs.addLong((Long) row[0]);
+                    long[] sum = sums.computeIfAbsent((Long) row[1], productId -> new long[2]);
+                    sum[0] += (Integer) row[2];
+                    sum[1]++;
+                }
+            }
+            if (sums.isEmpty()) {
+                return 0L;
+            }
+
+            Instant now = Instant.now();
+            List<Long> productIds = new ArrayList<>(sums.keySet());
+            for (int from = 0; from < productIds.size(); from += CHUNK_SIZE) {
+                List<Long> chunk = productIds.subList(from, Math.min(from + CHUNK_SIZE, productIds.size()));
+                Map<Long, InventoryLedgerSnapshot> snapshots = new HashMap<>();
+                inventoryLedgerSnapshotRepository.findAllById(chunk).forEach(snapshot -> snapshots.put(snapshot.getProductId(), snapshot));
+                List<InventoryLedgerSnapshot> toSave = new ArrayList<>(chunk.size());
+                for (Long productId : chunk) {
+                    InventoryLedgerSnapshot snapshot = snapshots.getOrDefault(productId, InventoryLedgerSnapshot.builder()
+                            .productId(productId).quantity(0L).entryCount(0L).build());
+                    long[] sum = sums.get(productId);
+                    snapshot.setQuantity(snapshot.getQuantity() + sum[0]);
+                    snapshot.setEntryCount(snapshot.getEntryCount() + sum[1]);
+                    snapshot.setCompactedAt(now);
+                    toSave.add(snapshot);
+                }
+                inventoryLedgerSnapshotRepository.saveAll(toSave);
+            }
+
+            // Tar bort exakt de rader som summerades, även om fler har hunnit committas med äldre createdAt
+            List<Long> chunk = new ArrayList<>(CHUNK_SIZE);
+            LongIterator iterator = seqs.getLongIterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == CHUNK_SIZE || !iterator.hasNext()) {
+                    inventoryLedgerRepository.deleteAllByIdInBatch(chunk);
+                    chunk.clear();
+                }
+            }
+            return seqs.getLongCardinality();
+        });
+        log.info("compact – komprimerade {} journalrader skapade före {} på {} ms",
+                compacted, cutoff, (System.nanoTime() - started) / 1_000_000);
+        return compacted;
+    }
+
+    /**
+     * Räknar fram saldot för varje produkt ur snapshot plus journalrader och jämför med products.
+     * Utan {@code dryRun} skrivs avvikande saldon tillbaka; en produkt som ändras under tiden lämnas orörd.
+     * Heta produkter hoppas över eftersom deras saldo i databasen ligger efter minnet, och produkter utan
+     * ingående saldo i journalen eller snapshot räknas som ospårade och skrivs aldrig över.
+     */
+    public LedgerReplayResult replay(boolean dryRun) {
+        long started = System.nanoTime();
+        log.info("replay – räknar fram saldon ur journalen, dryRun={}", dryRun);
+        LedgerReplayResult result = transaction.execute(status -> {
+            Map<Long, Long> expected = new HashMap<>();
+            Set<Long> snapshotIds = new HashSet<>();
+            inventoryLedgerSnapshotRepository.findAll().forEach(snapshot -> {
+                expected.put(snapshot.getProductId(), snapshot.getQuantity());
+                snapshotIds.add(snapshot.getProductId());
+            });
+            for (Object[] row : inventoryLedgerRepository.sumDeltasByProduct()) {
+                expected.merge((Long) row[0], (Long) row[1], Long::sum);
+            }
+            // Utan ingående saldo blir summan bara ändringarna, inte saldot; de räknas som ospårade
+            Set<Long> withoutOpening = new HashSet<>(inventoryLedgerRepository.findProductIdsWithoutOpeningEntry());
+            withoutOpening.removeIf(snapshotIds::contains);
+            expected.keySet().removeAll(withoutOpening);
+            Set<Long> hotProductIds = hotSkuInventory.hotProductIds();
+
+            LedgerReplayResult replayResult = LedgerReplayResult.builder().dryRun(dryRun).mismatchedProductIds(new ArrayList<>()).build();
+            List<Long> mismatchedIds = new ArrayList<>();
+            List<Integer> currentQuantities = new ArrayList<>();
+            List<Integer> expectedQuantities = new ArrayList<>();
+            try (Stream<Object[]> rows = productRepository.streamStockQuantities()) {
+                Iterator<Object[]> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    Object[] row = iterator.next();
+                    Long productId = (Long) row[0];
+                    int current = row[1] != null ? (Integer) row[1] : 0;
+                    Long quantity = expected.get(productId);
+                    if (quantity == null) {
+                        replayResult.setUntracked(replayResult.getUntracked() + 1);
+                        continue;
+                    }
+                    if (hotProductIds.contains(productId)) {
+                        replayResult.setSkippedHot(replayResult.getSkippedHot() + 1);
+                        continue;
+                    }
+                    replayResult.setProductsChecked(replayResult.getProductsChecked() + 1);
+                    if (quantity == current) {
+                        continue;
+                    }
+                    replayResult.setMismatches(replayResult.getMismatches() + 1);
+                    if (replayResult.getMismatchedProductIds().size() < MAX_REPORTED_MISMATCHES) {
+                        replayResult.getMismatchedProductIds().add(productId);
+                    }
+                    if (quantity < 0 || quantity > Integer.MAX_VALUE) {
+                        log.error("replay – journalen ger ogiltigt saldo {} för produktId={}, skrivs inte", quantity, productId);
+                        continue;
+                    }
+                    mismatchedIds.add(productId);
+                    currentQuantities.add(current);
+                    expectedQuantities.add(quantity.intValue());
+                }
+            }
+            if (!dryRun && !mismatchedIds.isEmpty()) {
+                replayResult.setUpdated(writeQuantities(mismatchedIds, currentQuantities, expectedQuantities));
+            }
+            return replayResult;
+        });
+        result.setDurationMillis((System.nanoTime() - started) / 1_000_000);
+        log.info("replay – {} produkter kontrollerade, {} avvek, {} uppdaterade på {} ms",
+                result.getProductsChecked(), result.getMismatches(), result.getUpdated(), result.getDurationMillis());
+        return result;
+    }
+
+    private int writeQuantities(List<Long> productIds, List<Integer> currentQuantities, List<Integer> quantities) {
+        List<Long> written = new ArrayList<>();
+        for (int from = 0; from < productIds.size(); from += CHUNK_SIZE) {
+            int to = Math.min(from + CHUNK_SIZE, productIds.size());
+            long[] ids = productIds.subList(from, to).stream().mapToLong(Long::longValue).toArray();
+            int[] expected = currentQuantities.subList(from, to).stream().mapToInt(Integer::intValue).toArray();
+            int[] replacement = quantities.subList(from, to).stream().mapToInt(Integer::intValue).toArray();
+            int[] updated = productRepository.replaceStockQuantities(ids, expected, replacement);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] > 0) {
+                    written.add(ids[i]);
+                } else {
+                    log.warn("replay – produktId={} ändrades under körningen och lämnas orörd", ids[i]);
+                }
+            }
+        }
+        Set<Long> categoryIds = new HashSet<>();
+        for (Product product : productRepository.findAllById(written)) {
+            productColumnIndex.update(product);
+            inventoryAvailability.stockChanged(product);
+            lowStockMonitor.stockChanged(product);
+            categoryIds.add(product.getCategory().getId());
+        }
+        productResponseCache.invalidate(written);
+        catalogChangeCounters.productsChanged(categoryIds);
+        return written.size();
+    }
+
+    static String currentCaller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication.getName() == null) {
+            return SYSTEM_CALLER;
+        }
+        String name = authentication.getName();
+        return name.length() > MAX_CALLER_LENGTH ? name.substring(0, MAX_CALLER_LENGTH) : name;
+    }
+}
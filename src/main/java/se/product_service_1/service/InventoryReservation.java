@@ -0,0 +1,25 @@
+package se.product_service_1.service;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * En aktiv reservation: reserverad mängd per produkt fram till {@code expiresAt}.
+ */
+@Getter
+public class InventoryReservation {
+
+    private final String id;
+    private final Map<Long, Integer> quantities;
+    private final Instant expiresAt;
+
+    public InventoryReservation(String id, Map<Long, Integer> quantities, Instant expiresAt) {
+        this.id = id;
+        this.quantities = Collections.unmodifiableMap(new LinkedHashMap<>(quantities));
+        this.expiresAt = expiresAt;
+    }
+}
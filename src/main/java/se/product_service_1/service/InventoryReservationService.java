@@ -0,0 +1,256 @@
+package se.product_service_1.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.product_service_1.dto.InventoryManagementRequest;
+import se.product_service_1.dto.InventoryManagementRequest.InventoryChange;
+import se.product_service_1.dto.ReservationRequest;
+import se.product_service_1.dto.ReservationRequest.ReservationLine;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.exception.NotEnoughStockException;
+import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.exception.ResourceNotFoundException;
+import se.product_service_1.model.InventoryHold;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.InventoryHoldRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reservationer av lager inför en checkout. En reservation håller tillgänglig mängd i minnet
+ * ({@link InventoryAvailability}) utan att röra stockQuantity; först när den bekräftas dras mängden från
+ * saldot med samma atomiska uppdatering som lagerändringar. Obekräftade reservationer släpps när deras
+ * TTL löper ut av {@link HoldTimerWheel}. Varje reservation journalförs i inventory_holds och läses
+ * tillbaka vid uppstart.
+ */
+@Service
+public class InventoryReservationService {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryReservationService.class);
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final ProductService productService;
+    private final InventoryAvailability inventoryAvailability;
+    private final InventoryHoldRepository inventoryHoldRepository;
+    private final TransactionTemplate transaction;
+    private final long defaultTtlSeconds;
+    private final long maxTtlSeconds;
+    private final int maxLines;
+    private final Map<String, InventoryReservation> reservations = new ConcurrentHashMap<>();
+    private final HoldTimerWheel timerWheel;
+
+    public InventoryReservationService(ProductService productService, InventoryAvailability inventoryAvailability,
+                                       InventoryHoldRepository inventoryHoldRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${inventory.reservation.default-ttl-seconds:900}") long defaultTtlSeconds,
+                                       @Value("${inventory.reservation.max-ttl-seconds:3600}") long maxTtlSeconds,
+                                       @Value("${inventory.reservation.max-lines:100}") int maxLines,
+                                       @Value("${inventory.reservation.tick-ms:1000}") long tickMillis) {
+        this.productService = productService;
+        this.inventoryAvailability = inventoryAvailability;
+        this.inventoryHoldRepository = inventoryHoldRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        this.maxTtlSeconds = maxTtlSeconds;
+        this.maxLines = maxLines;
+        this.timerWheel = new HoldTimerWheel(tickMillis, WHEEL_SIZE, System.currentTimeMillis());
+    }
+
+    public InventoryReservation reserve(ReservationRequest request) {
+        Map<Long, Integer> quantities = quantitiesOf(request);
+        long ttlSeconds = request.getTtlSeconds() != null ? request.getTtlSeconds() : defaultTtlSeconds;
+        if (ttlSeconds <= 0 || ttlSeconds > maxTtlSeconds) {
+            throw new BadRequestException("ttlSeconds måste vara mellan 1 och " + maxTtlSeconds + ".");
+        }
+        InventoryReservation reservation = new InventoryReservation(UUID.randomUUID().toString(), quantities,
+                Instant.now().plusSeconds(ttlSeconds));
+        log.info("reserve – reservation={}, rader={}, ttl={}s", reservation.getId(), quantities, ttlSeconds);
+
+        inventoryAvailability.hold(quantities);
+        try {
+            transaction.executeWithoutResult(status -> inventoryHoldRepository.saveAll(holdsOf(reservation)));
+        } catch (RuntimeException e) {
+            inventoryAvailability.release(quantities);
+            throw e;
+        }
+        track(reservation);
+        return reservation;
+    }
+
+    /**
+     * Drar den reserverade mängden från saldot och avslutar reservationen. Om saldot har sjunkit under
+     * den reserverade mängden sedan reservationen gjordes avslutas reservationen ändå och felet kastas vidare.
+     */
+    public List<Product> commit(String reservationId) {
+        InventoryReservation reservation = take(reservationId);
+        if (!reservation.getExpiresAt().isAfter(Instant.now())) {
+            // Gick ut men hann inte släppas av tidshjulet än
+            discard(reservation);
+            throw new ResourceNotFoundException("Reservation " + reservationId + " finns inte eller har gått ut.");
+        }
+        log.info("commit – bekräftar reservation={}", reservationId);
+        List<InventoryChange> changes = new ArrayList<>();
+        reservation.getQuantities().forEach((productId, quantity) -> changes.add(new InventoryChange(productId, -quantity)));
+        try {
+            List<Product> products = transaction.execute(status -> {
+                List<Product> updated = productService.updateInventoryChange(new InventoryManagementRequest(changes),
+                        reservation.getQuantities());
+                inventoryHoldRepository.deleteByReservationId(reservationId);
+                return updated;
+            });
+            inventoryAvailability.release(reservation.getQuantities());
+            return products;
+        } catch (NotEnoughStockException | ProductNotFoundException e) {
+            log.warn("commit – reservation={} kunde inte bekräftas och släpps: {}", reservationId, e.getMessage());
+            discard(reservation);
+            throw e;
+        } catch (RuntimeException e) {
+            // Okänt fel, t.ex. mot databasen: reservationen finns kvar och kan bekräftas igen
+            reservations.put(reservationId, reservation);
+            throw e;
+        }
+    }
+
+    public void release(String reservationId) {
+        InventoryReservation reservation = take(reservationId);
+        log.info("release – släpper reservation={}", reservationId);
+        discard(reservation);
+    }
+
+    public int availableToPromise(Long productId) {
+        return inventoryAvailability.availableToPromise(productId);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.reservation.tick-ms:1000}")
+    public void expireHolds() {
+        expireHolds(Instant.now());
+    }
+
+    /**
+     * Släpper reservationer vars TTL har löpt ut vid {@code now}. Returnerar antalet som släpptes.
+     */
+    public int expireHolds(Instant now) {
+        int expired = 0;
+        for (String reservationId : timerWheel.advance(now.toEpochMilli())) {
+            InventoryReservation reservation = reservations.get(reservationId);
+            // Bekräftade och släppta reservationer ligger kvar i hjulet och hoppas över här
+            if (reservation != null && !reservation.getExpiresAt().isAfter(now)
+                    && reservations.remove(reservationId, reservation)) {
+                discard(reservation);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            log.info("expireHolds – {} reservationer har gått ut", expired);
+        }
+        return expired;
+    }
+
+    /**
+     * Läser tillbaka aktiva reservationer ur journalen vid uppstart. Reservationer som gått ut under
+     * tiden tjänsten var nere släpps direkt.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restore() {
+        Map<String, List<InventoryHold>> holdsByReservation = new LinkedHashMap<>();
+        for (InventoryHold hold : inventoryHoldRepository.findAll()) {
+            holdsByReservation.computeIfAbsent(hold.getReservationId(), id -> new ArrayList<>()).add(hold);
+        }
+        Instant now = Instant.now();
+        int restored = 0;
+        for (Map.Entry<String, List<InventoryHold>> entry : holdsByReservation.entrySet()) {
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            entry.getValue().forEach(hold -> quantities.merge(hold.getProductId(), hold.getQuantity(), Integer::sum));
+            InventoryReservation reservation = new InventoryReservation(entry.getKey(), quantities,
+                    entry.getValue().get(0).getExpiresAt());
+            if (!reservation.getExpiresAt().isAfter(now)) {
+                transaction.executeWithoutResult(status -> inventoryHoldRepository.deleteByReservationId(reservation.getId()));
+                continue;
+            }
+            try {
+                inventoryAvailability.restoreHold(quantities);
+            } catch (ProductNotFoundException e) {
+                log.warn("restore – reservation={} gäller en borttagen produkt och släpps", reservation.getId());
+                transaction.executeWithoutResult(status -> inventoryHoldRepository.deleteByReservationId(reservation.getId()));
+                continue;
+            }
+            track(reservation);
+            restored++;
+        }
+        log.info("restore – {} aktiva reservationer återställda från journalen", restored);
+    }
+
+    public int activeReservations() {
+        return reservations.size();
+    }
+
+    private Map<Long, Integer> quantitiesOf(ReservationRequest request) {
+        List<ReservationLine> lines = request.getLines();
+        if (lines == null || lines.isEmpty()) {
+            throw new BadRequestException("En reservation måste ha minst en rad.");
+        }
+        if (lines.size() > maxLines) {
+            throw new BadRequestException("Högst " + maxLines + " rader per reservation.");
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (ReservationLine line : lines) {
+            if (line.getProductId() == null || line.getQuantity() == null || line.getQuantity() <= 0) {
+                throw new BadRequestException("productId och ett positivt quantity måste anges för varje rad.");
+            }
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private static List<InventoryHold> holdsOf(InventoryReservation reservation) {
+        List<InventoryHold> holds = new ArrayList<>();
+        reservation.getQuantities().forEach((productId, quantity) -> holds.add(InventoryHold.builder()
+                .reservationId(reservation.getId())
+                .productId(productId)
+                .quantity(quantity)
+                .expiresAt(reservation.getExpiresAt())
+                .build()));
+        return holds;
+    }
+
+    private void track(InventoryReservation reservation) {
+        reservations.put(reservation.getId(), reservation);
+        timerWheel.schedule(reservation.getId(), reservation.getExpiresAt().toEpochMilli());
+    }
+
+    // Bara en av commit, release och utgång kan ta en given reservation
+    private InventoryReservation take(String reservationId) {
+        InventoryReservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            throw new ResourceNotFoundException("Reservation " + reservationId + " finns inte eller har gått ut.");
+        }
+        return reservation;
+    }
+
+    private void discard(InventoryReservation reservation) {
+        try {
+            transaction.executeWithoutResult(status -> inventoryHoldRepository.deleteByReservationId(reservation.getId()));
+        } finally {
+            // Journalrader som blir kvar om databasen inte svarar släpps vid nästa uppstart när de gått ut
+            inventoryAvailability.release(reservation.getQuantities());
+        }
+    }
+
+    public int held(Long productId) {
+        return inventoryAvailability.held(productId);
+    }
+}
@@ -0,0 +1,227 @@
+package se.product_service_1.service;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Map från long till int med öppen adressering och linjär sondering i två primitiva arrayer, utan
+ * boxning och utan ett objekt per post. Borttagning flyttar efterföljande poster bakåt i stället för att
+ * lämna gravstenar, så att sonderingskedjorna inte växer med tiden.
+ * Skrivningar serialiseras med ett lås; läsningar är optimistiska ({@link StampedLock}) och tar bara
+ * läslåset om en skrivning hann emellan, så många samtidiga uppslag stör inte varandra.
+ */
+public class LongIntHashMap {
+
+    private static final int MIN_CAPACITY = 16;
+    // Högst halvfull: korta sonderingskedjor och alltid minst en tom plats som avslutar en sondering
+    private static final int MAX_LOAD_PERCENT = 50;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    public int get(long key, int missingValue) {
+        long stamp = lock.tryOptimisticRead();
+        int value = table.get(key, missingValue);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+        stamp = lock.readLock();
+        try {
+            return table.get(key, missingValue);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Slår upp alla nycklar mot samma version av mappen; saknade nycklar ger {@code missingValue}.
+     */
+    public int[] getAll(long[] keys, int missingValue) {
+        int[] values = new int[keys.length];
+        long stamp = lock.tryOptimisticRead();
+        Table current = table;
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = current.get(keys[i], missingValue);
+        }
+        if (lock.validate(stamp)) {
+            return values;
+        }
+        stamp = lock.readLock();
+        try {
+            current = table;
+            for (int i = 0; i < keys.length; i++) {
+                values[i] = current.get(keys[i], missingValue);
+            }
+            return values;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void put(long key, int value) {
+        long stamp = lock.writeLock();
+        try {
+            if ((table.size + 1) * 100L > (long) table.keys.length * MAX_LOAD_PERCENT) {
+                table = table.resized(table.keys.length * 2);
+            }
+            table.put(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            table.remove(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(MIN_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Tar över innehållet i {@code other}, som töms.
+     */
+    public void replaceWith(LongIntHashMap other) {
+        long otherStamp = other.lock.writeLock();
+        try {
+            long stamp = lock.writeLock();
+            try {
+                table = other.table;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            other.table = new Table(MIN_CAPACITY);
+        } finally {
+            other.lock.unlockWrite(otherStamp);
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, (long) expectedSize * 100 / MAX_LOAD_PERCENT + 1);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    // Nyckeln 0 markerar en tom plats och hålls därför vid sidan av arrayerna
+    private static final class Table {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+        private int size;
+        private boolean hasZeroKey;
+        private int zeroValue;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int get(long key, int missingValue) {
+            if (key == 0) {
+                return hasZeroKey ? zeroValue : missingValue;
+            }
+            // Sonderingen begränsas till tabellens storlek så att en läsning mitt i en skrivning alltid avslutas
+            for (int i = slot(key), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long candidate = keys[i];
+                if (candidate == key) {
+                    return values[i];
+                }
+                if (candidate == 0) {
+                    return missingValue;
+                }
+            }
+            return missingValue;
+        }
+
+        private void put(long key, int value) {
+            if (key == 0) {
+                size += hasZeroKey ? 0 : 1;
+                hasZeroKey = true;
+                zeroValue = value;
+                return;
+            }
+            int i = slot(key);
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                size++;
+            }
+            // Värdet före nyckeln så att en optimistisk läsare aldrig ser nyckeln med ett gammalt värde från en annan post
+            values[i] = value;
+            keys[i] = key;
+        }
+
+        private void remove(long key) {
+            if (key == 0) {
+                size -= hasZeroKey ? 1 : 0;
+                hasZeroKey = false;
+                return;
+            }
+            int i = slot(key);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            size--;
+            // Flyttar bakåt de poster i kedjan vars hemplats inte ligger mellan hålet och deras nuvarande plats
+            int hole = i;
+            for (int j = (hole + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    values[hole] = values[j];
+                    keys[hole] = keys[j];
+                    hole = j;
+                }
+            }
+            keys[hole] = 0;
+        }
+
+        private Table resized(int capacity) {
+            Table resized = new Table(capacity);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    resized.put(keys[i], values[i]);
+                }
+            }
+            resized.hasZeroKey = hasZeroKey;
+            resized.zeroValue = zeroValue;
+            resized.size += hasZeroKey ? 1 : 0;
+            return resized;
+        }
+
+        private int slot(long key) {
+            // Blandar bitarna (fibonacci-hashning) så att löpande id:n inte hamnar i en klump
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
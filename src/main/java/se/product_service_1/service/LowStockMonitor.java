@@ -0,0 +1,463 @@
+package se.product_service_1.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.product_service_1.dto.LowStockEvent;
+import se.product_service_1.dto.LowStockProduct;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.exception.CategoryNotFoundException;
+import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.model.LowStockThreshold;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.CategoryRepository;
+import se.product_service_1.repository.LowStockThresholdRepository;
+import se.product_service_1.repository.ProductRepository;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Bevakar lagersaldon mot beställningsnivåer per produkt eller per kategori. Saldot för varje produkt
+ * hålls i minnet och uppdateras efter commit av skrivvägarna i {@link ProductService}, så en passage av
+ * nivån upptäcks på den ändrade produkten direkt utan att något skannas. Produkter under sin nivå ligger
+ * i en mängd sorterad på saldo som {@link #lowStock(int)} läser utan lås.
+ * Varje passage (low eller recovered) får ett löpnummer och sparas i en begränsad buffert; prenumeranter
+ * får händelserna som Server-Sent Events och kan fortsätta efter ett avbrott från senaste löpnumret så
+ * länge det ligger kvar i bufferten. Löpnumren börjar om vid omstart.
+ */
+@Component
+public class LowStockMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(LowStockMonitor.class);
+
+    public static final int MAX_LIST_SIZE = 1000;
+
+    private static final Comparator<LowEntry> BY_STOCK = Comparator.comparingInt((LowEntry entry) -> entry.stock)
+            .thenComparingLong(entry -> entry.productId);
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final LowStockThresholdRepository lowStockThresholdRepository;
+    private final HotSkuInventory hotSkuInventory;
+    private final TransactionTemplate transaction;
+    private final int defaultThreshold;
+    private final int bufferSize;
+    private final long sseTimeoutMillis;
+
+    // Allt nedan utom lowProducts skyddas av monitorn på this
+    private final Map<Long, Tracked> tracked = new HashMap<>();
+    private final Map<Long, Set<Long>> productIdsByCategory = new HashMap<>();
+    private final Map<Long, Integer> productThresholds = new HashMap<>();
+    private final Map<Long, Integer> categoryThresholds = new HashMap<>();
+    private final ArrayDeque<LowStockEvent> events = new ArrayDeque<>();
+    private long sequence;
+    private final NavigableSet<LowEntry> lowProducts = new ConcurrentSkipListSet<>(BY_STOCK);
+
+    // Ändringar av nivåer skrivs till databasen och minnet i samma ordning
+    private final ReentrantLock thresholdLock = new ReentrantLock();
+    // En tråd skickar alla händelser i löpnummerordning; prenumerantlistan används bara från den
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "low-stock-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<SseEmitter> subscribers = new ArrayList<>();
+
+    public LowStockMonitor(ProductRepository productRepository, CategoryRepository categoryRepository,
+                           LowStockThresholdRepository lowStockThresholdRepository, HotSkuInventory hotSkuInventory,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${inventory.low-stock.default-threshold:0}") int defaultThreshold,
+                           @Value("${inventory.low-stock.event-buffer-size:1000}") int bufferSize,
+                           @Value("${inventory.low-stock.sse-timeout-ms:1800000}") long sseTimeoutMillis) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+        this.lowStockThresholdRepository = lowStockThresholdRepository;
+        this.hotSkuInventory = hotSkuInventory;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.defaultThreshold = defaultThreshold;
+        this.bufferSize = bufferSize;
+        this.sseTimeoutMillis = sseTimeoutMillis;
+    }
+
+    /**
+     * Läser nivåerna och alla produkters saldo. Produkter som redan ligger under sin nivå hamnar i listan
+     * men ger ingen händelse, eftersom ingen passage har setts.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long started = System.nanoTime();
+        List<LowStockThreshold> thresholds = lowStockThresholdRepository.findAll();
+        synchronized (this) {
+            for (LowStockThreshold threshold : thresholds) {
+                if (threshold.getProductId() != null) {
+                    productThresholds.put(threshold.getProductId(), threshold.getThreshold());
+                } else if (threshold.getCategoryId() != null) {
+                    categoryThresholds.put(threshold.getCategoryId(), threshold.getThreshold());
+                }
+            }
+        }
+        transaction.executeWithoutResult(status -> {
+            try (Stream<Product> products = productRepository.streamByIdGreaterThan(0L)) {
+                products.forEach(product -> apply(hotSkuInventory.withLiveStock(product), false));
+            }
+        });
+        log.info("load – {} produkter och {} nivåer inlästa, {} under nivån, på {} ms", trackedCount(),
+                thresholds.size(), lowProducts.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Nytt saldo, namn eller kategori för produkten, tillämpas efter commit (eller direkt utan transaktion).
+     */
+    public void stockChanged(Product product) {
+        Snapshot snapshot = new Snapshot(product);
+        TransactionCallbacks.afterCommit(() -> apply(snapshot, true));
+    }
+
+    public void removed(Long productId) {
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                Tracked removed = tracked.remove(productId);
+                if (removed != null) {
+                    unindexCategory(removed);
+                    if (removed.entry != null) {
+                        lowProducts.remove(removed.entry);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Produkter under sin nivå, lägst saldo först.
+     */
+    public List<LowStockProduct> lowStock(int limit) {
+        if (limit <= 0 || limit > MAX_LIST_SIZE) {
+            throw new BadRequestException("limit måste vara mellan 1 och " + MAX_LIST_SIZE + ".");
+        }
+        List<LowStockProduct> result = new ArrayList<>(Math.min(limit, lowProducts.size()));
+        for (LowEntry entry : lowProducts) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(LowStockProduct.builder()
+                    .productId(entry.productId)
+                    .productName(entry.name)
+                    .categoryId(entry.categoryId)
+                    .stockQuantity(entry.stock)
+                    .threshold(entry.threshold)
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Händelser i bufferten med löpnummer efter {@code afterSeq}. Ett löpnummer som är större än det senaste
+     * kommer från före en omstart och ger hela bufferten.
+     */
+    public synchronized List<LowStockEvent> eventsAfter(long afterSeq) {
+        long from = afterSeq > sequence ? 0 : afterSeq;
+        List<LowStockEvent> result = new ArrayList<>();
+        for (LowStockEvent event : events) {
+            if (event.getSeq() > from) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Öppnar en SSE-ström som först får buffrade händelser efter {@code afterSeq} (om angivet) och sedan
+     * nya händelser när de inträffar.
+     */
+    public SseEmitter subscribe(Long afterSeq) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        Runnable unsubscribe = () -> dispatcher.execute(() -> subscribers.remove(emitter));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(error -> unsubscribe.run());
+        synchronized (this) {
+            // Läggs i kön under låset, så inga händelser kan hamna mellan de buffrade och de nya
+            List<LowStockEvent> missed = afterSeq != null ? eventsAfter(afterSeq) : List.of();
+            dispatcher.execute(() -> {
+                for (LowStockEvent event : missed) {
+                    if (!send(emitter, event)) {
+                        return;
+                    }
+                }
+                subscribers.add(emitter);
+            });
+        }
+        return emitter;
+    }
+
+    public void setProductThreshold(Long productId, Integer threshold) {
+        validateThreshold(threshold);
+        thresholdLock.lock();
+        try {
+            transaction.executeWithoutResult(status -> {
+                if (!productRepository.existsById(productId)) {
+                    throw new ProductNotFoundException("Produkt med ID " + productId + " finns inte.");
+                }
+                LowStockThreshold stored = lowStockThresholdRepository.findByProductId(productId)
+                        .orElseGet(() -> LowStockThreshold.builder().productId(productId).build());
+                stored.setThreshold(threshold);
+                lowStockThresholdRepository.save(stored);
+            });
+            synchronized (this) {
+                productThresholds.put(productId, threshold);
+                reevaluate(productId);
+            }
+        } finally {
+            thresholdLock.unlock();
+        }
+        log.info("setProductThreshold – produktId={} har nu nivån {}", productId, threshold);
+    }
+
+    public void clearProductThreshold(Long productId) {
+        thresholdLock.lock();
+        try {
+            transaction.executeWithoutResult(status ->
+                    lowStockThresholdRepository.findByProductId(productId).ifPresent(lowStockThresholdRepository::delete));
+            synchronized (this) {
+                productThresholds.remove(productId);
+                reevaluate(productId);
+            }
+        } finally {
+            thresholdLock.unlock();
+        }
+        log.info("clearProductThreshold – produktId={} följer nu kategorins nivå", productId);
+    }
+
+    public void setCategoryThreshold(Long categoryId, Integer threshold) {
+        validateThreshold(threshold);
+        thresholdLock.lock();
+        try {
+            transaction.executeWithoutResult(status -> {
+                if (!categoryRepository.existsById(categoryId)) {
+                    throw new CategoryNotFoundException("Kategori med ID " + categoryId + " finns inte.");
+                }
+                LowStockThreshold stored = lowStockThresholdRepository.findByCategoryId(categoryId)
+                        .orElseGet(() -> LowStockThreshold.builder().categoryId(categoryId).build());
+                stored.setThreshold(threshold);
+                lowStockThresholdRepository.save(stored);
+            });
+            synchronized (this) {
+                categoryThresholds.put(categoryId, threshold);
+                reevaluateCategory(categoryId);
+            }
+        } finally {
+            thresholdLock.unlock();
+        }
+        log.info("setCategoryThreshold – kategoriId={} har nu nivån {}", categoryId, threshold);
+    }
+
+    public void clearCategoryThreshold(Long categoryId) {
+        thresholdLock.lock();
+        try {
+            transaction.executeWithoutResult(status ->
+                    lowStockThresholdRepository.findByCategoryId(categoryId).ifPresent(lowStockThresholdRepository::delete));
+            synchronized (this) {
+                categoryThresholds.remove(categoryId);
+                reevaluateCategory(categoryId);
+            }
+        } finally {
+            thresholdLock.unlock();
+        }
+        log.info("clearCategoryThreshold – kategoriId={} följer nu standardnivån", categoryId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.execute(() -> {
+            subscribers.forEach(SseEmitter::complete);
+            subscribers.clear();
+        });
+        dispatcher.shutdown();
+    }
+
+    private void apply(Product product, boolean publish) {
+        apply(new Snapshot(product), publish);
+    }
+
+    private synchronized void apply(Snapshot snapshot, boolean publish) {
+        Tracked current = tracked.get(snapshot.productId);
+        if (current == null) {
+            current = new Tracked(snapshot.productId);
+            tracked.put(snapshot.productId, current);
+        } else if (snapshot.version != null && current.version != null && snapshot.version < current.version) {
+            // Commits kan nå hit i annan ordning än de gjordes; en äldre version får inte skriva över en nyare
+            return;
+        }
+        if (current.categoryId != null && !current.categoryId.equals(snapshot.categoryId)) {
+            unindexCategory(current);
+        }
+        current.name = snapshot.name;
+        current.categoryId = snapshot.categoryId;
+        current.stock = snapshot.stock;
+        current.version = snapshot.version;
+        if (current.categoryId != null) {
+            productIdsByCategory.computeIfAbsent(current.categoryId, id -> new HashSet<>()).add(current.productId);
+        }
+        evaluate(current, publish);
+    }
+
+    private void reevaluate(Long productId) {
+        Tracked current = tracked.get(productId);
+        if (current != null) {
+            evaluate(current, true);
+        }
+    }
+
+    private void reevaluateCategory(Long categoryId) {
+        for (Long productId : productIdsByCategory.getOrDefault(categoryId, Set.of())) {
+            reevaluate(productId);
+        }
+    }
+
+    private void evaluate(Tracked current, boolean publish) {
+        int threshold = thresholdFor(current);
+        boolean low = threshold > 0 && current.stock < threshold;
+        if (current.entry != null) {
+            lowProducts.remove(current.entry);
+            current.entry = null;
+        }
+        if (low) {
+            current.entry = new LowEntry(current.productId, current.name, current.categoryId, current.stock, threshold);
+            lowProducts.add(current.entry);
+        }
+        if (low != current.low) {
+            current.low = low;
+            if (publish) {
+                publish(low ? LowStockEvent.LOW : LowStockEvent.RECOVERED, current, threshold);
+            }
+        }
+    }
+
+    private int thresholdFor(Tracked current) {
+        Integer threshold = productThresholds.get(current.productId);
+        if (threshold == null && current.categoryId != null) {
+            threshold = categoryThresholds.get(current.categoryId);
+        }
+        return threshold != null ? threshold : defaultThreshold;
+    }
+
+    private void publish(String type, Tracked current, int threshold) {
+        LowStockEvent event = LowStockEvent.builder()
+                .seq(++sequence)
+                .type(type)
+                .productId(current.productId)
+                .productName(current.name)
+                .stockQuantity(current.stock)
+                .threshold(threshold)
+                .occurredAt(Instant.now())
+                .build();
+        events.addLast(event);
+        if (events.size() > bufferSize) {
+            events.removeFirst();
+        }
+        log.info("publish – produktId={} {}: saldo={}, nivå={}", current.productId, type, current.stock, threshold);
+        dispatcher.execute(() -> subscribers.removeIf(emitter -> !send(emitter, event)));
+    }
+
+    private boolean send(SseEmitter emitter, LowStockEvent event) {
+        try {
+            emitter.send(SseEmitter.event().id(Long.toString(event.getSeq())).name(event.getType()).data(event));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Klienten har kopplat ner; den kan fortsätta från senaste löpnumret
+            log.debug("send – tar bort prenumerant: {}", e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void unindexCategory(Tracked current) {
+        Set<Long> productIds = productIdsByCategory.get(current.categoryId);
+        if (productIds != null) {
+            productIds.remove(current.productId);
+            if (productIds.isEmpty()) {
+                productIdsByCategory.remove(current.categoryId);
+            }
+        }
+    }
+
+    private synchronized int trackedCount() {
+        return tracked.size();
+    }
+
+    private static void validateThreshold(Integer threshold) {
+        if (threshold == null || threshold < 0) {
+            throw new BadRequestException("threshold måste anges och får inte vara negativt.");
+        }
+    }
+
+    // Värdena läses när ändringen görs; entiteten kan ha ändrats igen när commit är klar
+    private static final class Snapshot {
+        private final long productId;
+        private final String name;
+        private final Long categoryId;
+        private final int stock;
+        private final Long version;
+
+        private Snapshot(Product product) {
+            this.productId = product.getId();
+            this.name = product.getName();
+            this.categoryId = product.getCategory() != null ? product.getCategory().getId() : null;
+            this.stock = product.getStockQuantity();
+            this.version = product.getVersion();
+        }
+    }
+
+    private static final class Tracked {
+        private final long productId;
+        private String name;
+        private Long categoryId;
+        private int stock;
+        private Long version;
+        private boolean low;
+        private LowEntry entry;
+
+        private Tracked(long productId) {
+            this.productId = productId;
+        }
+    }
+
+    // Oföränderlig post i den sorterade mängden, så att läsare utan lås alltid ser hela posten
+    private static final class LowEntry {
+        private final long productId;
+        private final String name;
+        private final Long categoryId;
+        private final int stock;
+        private final int threshold;
+
+        private LowEntry(long productId, String name, Long categoryId, int stock, int threshold) {
+            this.productId = productId;
+            this.name = name;
+            this.categoryId = categoryId;
+            this.stock = stock;
+            this.threshold = threshold;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package se.product_service_1.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.ProductRepository;
+
+import java.util.stream.Stream;
+
+/**
+ * Håller {@link ProductColumns} i synk med products. Ögonblicksbilden byggs från databasen vid uppstart
+ * och uppdateras sedan av skrivvägarna i {@link ProductService} efter commit.
+ */
+@Component
+public class ProductColumnIndex extends RebuildableIndex<ProductColumns> {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductColumnIndex.class);
+
+    private final ProductRepository productRepository;
+    private final double[] priceBounds;
+
+    public ProductColumnIndex(ProductRepository productRepository,
+                              @Value("${product.facets.price-bounds:100,500,1000,5000}") double[] priceBounds) {
+        super(new ProductColumns(priceBounds));
+        this.productRepository = productRepository;
+        this.priceBounds = priceBounds;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        log.info("rebuild - bygger kolumnindex från products");
+        rebuildWith(() -> {
+            ProductColumns fresh = new ProductColumns(priceBounds);
+            try (Stream<Product> products = productRepository.streamByIdGreaterThan(0L)) {
+                products.forEach(product -> upsert(fresh, product));
+            }
+            fresh.buildPriceIndex();
+            return fresh;
+        });
+        log.info("rebuild - kolumnindex klart, antal produkter={}", live().size());
+    }
+
+    public double[] getPriceBounds() {
+        return priceBounds.clone();
+    }
+
+    /**
+     * Den levande ögonblicksbilden. Den är trådsäker och uppdateras på plats efter varje commit.
+     */
+    public ProductColumns getColumns() {
+        return live();
+    }
+
+    public void update(Product product) {
+        // Värdena läses nu, inte efter commit, så att en senare ändring av entiteten inte smyger med
+        Product snapshot = Product.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .category(product.getCategory())
+                .price(product.getPrice())
+                .stockQuantity(product.getStockQuantity())
+                .version(product.getVersion())
+                .build();
+        afterCommit(columns -> upsert(columns, snapshot));
+    }
+
+    public void remove(Long productId) {
+        afterCommit(columns -> columns.remove(productId));
+    }
+
+    static void upsert(ProductColumns columns, Product product) {
+        columns.upsert(product.getId(), product.getName(), product.getCategory().getId(), product.getCategory().getName(),
+                product.getPrice(), product.getStockQuantity(), product.getVersion());
+    }
+
+    @Override
+    protected void replace(ProductColumns live, ProductColumns fresh) {
+        live.replaceWith(fresh);
+    }
+}
@@ -0,0 +1,613 @@
+package se.product_service_1.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Kolumnär ögonblicksbild av produkterna: en rad per produkt, sorterad på id, där varje fält ligger
+ * i en egen primitiv array. Kategorier lagras som ordinaler och priset även som prisintervall, räknat
+ * vid skrivning, så att facett-räkning blir en indexering i en int-array per rad i stället för uppslagningar
+ * och jämförelser. Vid sidan av raderna hålls priserna sorterade (pris, id) så att ett smalt prisintervall
+ * kan slås upp binärt i stället för att alla rader gås igenom. Prislistan byggs med en sortering första gången
+ * den behövs och hålls sedan i ordning vid varje skrivning, så att en ombyggnad med många rader inte betalar
+ * en insättning per rad.
+ */
+public class ProductColumns {
+
+    public static final String SORT_ID = "id";
+    public static final String SORT_NAME = "name";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_STOCK = "stock";
+    private static final int INITIAL_CAPACITY = 1024;
+    // Ett prisintervall som täcker mindre än så här stor del av raderna slås upp i den sorterade prislistan.
+    // Varje träff där kostar en binärsökning efter raden, så intervallet måste vara smalt för att vinna
+    // över ett sekventiellt svep.
+    private static final int PRICE_RANGE_SCAN_DIVISOR = 64;
+    // Radens version är okänd; nästa skrivning tillämpas alltid
+    private static final long NO_VERSION = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Stigande gränser: intervall i är [priceBounds[i-1], priceBounds[i]) och det sista saknar övre gräns
+    private final double[] priceBounds;
+    private int size;
+    private long[] ids;
+    private String[] names;
+    private int[] categoryOrdinals;
+    private double[] prices;
+    private byte[] priceBuckets;
+    private int[] stocks;
+    // Produktens @Version när raden skrevs, så att en äldre ögonblicksbild inte kan skriva över en nyare
+    private long[] versions;
+    private double[] sortedPrices;
+    private long[] idsByPrice;
+    private volatile boolean priceIndexBuilt;
+    private Map<Long, Integer> ordinalByCategoryId;
+    private List<String> categoryNames;
+    // Statistik för frågeplaneringen, hålls aktuell vid varje skrivning
+    private int[] rowsPerCategory;
+    private int inStockRows;
+    // Saldo per id vid sidan av raderna, för uppslag på id som inte ska vänta på läslåset
+    private final LongIntHashMap stockById = new LongIntHashMap();
+
+    public ProductColumns(double[] priceBounds) {
+        this.priceBounds = priceBounds.clone();
+        clear();
+    }
+
+    public double[] getPriceBounds() {
+        return priceBounds.clone();
+    }
+
+    public void upsert(long productId, String name, long categoryId, String categoryName, double price, int stock) {
+        upsert(productId, name, categoryId, categoryName, price, stock, null);
+    }
+
+    /**
+     * Skriver raden om {@code version} inte är äldre än den som redan finns. Commits kan tillämpas i annan
+     * ordning än de gjordes, och då ska den senaste versionen vinna. Returnerar false om raden lämnades orörd.
+     */
+    public boolean upsert(long productId, String name, long categoryId, String categoryName, double price, int stock,
+                          Long version) {
+        lock.writeLock().lock();
+        try {
+            int row = Arrays.binarySearch(ids, 0, size, productId);
+            if (row >= 0 && version != null && version < versions[row]) {
+                return false;
+            }
+            if (row < 0) {
+                row = -row - 1;
+                ensureCapacity();
+                if (priceIndexBuilt) {
+                    insertPrice(price, productId);
+                }
+                insertRow(row);
+                ids[row] = productId;
+            } else {
+                if (priceIndexBuilt && Double.compare(prices[row], price) != 0) {
+                    removePrice(prices[row], productId);
+                    insertPrice(price, productId);
+                }
+                uncount(row);
+            }
+            names[row] = name;
+            categoryOrdinals[row] = categoryOrdinal(categoryId, categoryName);
+            prices[row] = price;
+            priceBuckets[row] = (byte) priceBucket(price);
+            stocks[row] = stock;
+            versions[row] = version != null ? version : NO_VERSION;
+            stockById.put(productId, stock);
+            rowsPerCategory[categoryOrdinals[row]]++;
+            inStockRows += stock > 0 ? 1 : 0;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            int row = Arrays.binarySearch(ids, 0, size, productId);
+            if (row >= 0) {
+                if (priceIndexBuilt) {
+                    removePrice(prices[row], productId);
+                }
+                uncount(row);
+                int tail = size - row - 1;
+                System.arraycopy(ids, row + 1, ids, row, tail);
+                System.arraycopy(names, row + 1, names, row, tail);
+                System.arraycopy(categoryOrdinals, row + 1, categoryOrdinals, row, tail);
+                System.arraycopy(prices, row + 1, prices, row, tail);
+                System.arraycopy(priceBuckets, row + 1, priceBuckets, row, tail);
+                System.arraycopy(stocks, row + 1, stocks, row, tail);
+                System.arraycopy(versions, row + 1, versions, row, tail);
+                size--;
+                names[size] = null;
+                stockById.remove(productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ersätter hela ögonblicksbilden med innehållet i {@code snapshot}, t.ex. efter en ombyggnad från databasen.
+     * Båda måste ha samma prisintervall.
+     */
+    public void replaceWith(ProductColumns snapshot) {
+        lock.writeLock().lock();
+        try {
+            size = snapshot.size;
+            ids = snapshot.ids;
+            names = snapshot.names;
+            categoryOrdinals = snapshot.categoryOrdinals;
+            prices = snapshot.prices;
+            priceBuckets = snapshot.priceBuckets;
+            stocks = snapshot.stocks;
+            versions = snapshot.versions;
+            sortedPrices = snapshot.sortedPrices;
+            idsByPrice = snapshot.idsByPrice;
+            priceIndexBuilt = snapshot.priceIndexBuilt;
+            ordinalByCategoryId = snapshot.ordinalByCategoryId;
+            categoryNames = snapshot.categoryNames;
+            rowsPerCategory = snapshot.rowsPerCategory;
+            inStockRows = snapshot.inStockRows;
+            stockById.replaceWith(snapshot.stockById);
+            snapshot.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saldot för varje id, eller {@code missingValue} för id:n som inte finns. Läses ur en primitiv hashmap
+     * utan läslåset, så uppslagen väntar inte på en skrivning som håller på med raderna.
+     */
+    public int[] stocks(long[] productIds, int missingValue) {
+        return stockById.getAll(productIds, missingValue);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Antal produkter i kategorin, utan att raderna gås igenom.
+     */
+    public int categorySize(String categoryName) {
+        lock.readLock().lock();
+        try {
+            int ordinal = categoryNames.indexOf(categoryName);
+            return ordinal < 0 ? 0 : rowsPerCategory[ordinal];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Antal produkter med pris i det slutna intervallet, slaget upp med två binärsökningar i prislistan.
+     * Null betyder obegränsat åt det hållet.
+     */
+    public int priceRangeSize(Double minPrice, Double maxPrice) {
+        if (!priceIndexBuilt) {
+            buildPriceIndex();
+        }
+        lock.readLock().lock();
+        try {
+            int from = firstPriceIndex(minPrice != null ? minPrice : Double.NEGATIVE_INFINITY, Long.MIN_VALUE);
+            int to = firstPriceIndex(maxPrice != null ? maxPrice : Double.POSITIVE_INFINITY, Long.MAX_VALUE);
+            return Math.max(0, to - from);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Antal produkter med minst en i lager.
+     */
+    public int inStockSize() {
+        lock.readLock().lock();
+        try {
+            return inStockRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Räknar produkter per kategori och per prisintervall i ett enda svep över raderna.
+     * {@code productIds} begränsar räkningen till de produkterna, {@code null} betyder alla.
+     */
+    public FacetCounts countFacets(Roaring64Bitmap productIds) {
+        lock.readLock().lock();
+        try {
+            int[] perCategory = new int[categoryNames.size()];
+            long[] perPriceBucket = new long[priceBounds.length + 1];
+            if (productIds == null) {
+                for (int row = 0; row < size; row++) {
+                    perCategory[categoryOrdinals[row]]++;
+                    perPriceBucket[priceBuckets[row]]++;
+                }
+            } else {
+                BitSet rows = rowsOf(productIds);
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    perCategory[categoryOrdinals[row]]++;
+                    perPriceBucket[priceBuckets[row]]++;
+                }
+            }
+
+            Map<String, Long> byCategory = new LinkedHashMap<>();
+            for (int ordinal = 0; ordinal < perCategory.length; ordinal++) {
+                if (perCategory[ordinal] > 0) {
+                    byCategory.put(categoryNames.get(ordinal), (long) perCategory[ordinal]);
+                }
+            }
+            return new FacetCounts(byCategory, perPriceBucket);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filtrerar, sorterar och sidindelar produkterna under ett och samma läslås. Alla villkor i
+     * {@code filter} måste uppfyllas. Utan {@code sortBy} behålls ordningen i {@link ProductFilter#getRankedIds()}
+     * om den finns, annars id-ordning. Bara id:n för den efterfrågade sidan returneras, och
+     * alla träffar som bitmap om {@code collectMatches} är satt (t.ex. för facetter).
+     */
+    public Selection select(ProductFilter filter, String sortBy, int offset, int limit, boolean collectMatches) {
+        if (!priceIndexBuilt) {
+            buildPriceIndex();
+        }
+        lock.readLock().lock();
+        try {
+            int categoryOrdinal = -1;
+            if (filter.getCategoryName() != null) {
+                categoryOrdinal = categoryNames.indexOf(filter.getCategoryName());
+                if (categoryOrdinal < 0) {
+                    return new Selection(new long[0], 0, collectMatches ? new Roaring64Bitmap() : null);
+                }
+            }
+            RowFilter rowFilter = new RowFilter(categoryOrdinal,
+                    filter.getMinPrice() != null ? filter.getMinPrice() : Double.NEGATIVE_INFINITY,
+                    filter.getMaxPrice() != null ? filter.getMaxPrice() : Double.POSITIVE_INFINITY,
+                    filter.getMinStock() != null ? filter.getMinStock() : Integer.MIN_VALUE);
+
+            int[] matched = matchingRows(filter, rowFilter);
+            int count = matched.length;
+            int[] rows = matched;
+            if (SORT_PRICE.equals(sortBy) && filter.getRankedIds() == null && filter.getProductIds() == null) {
+                rows = firstRowsByPrice(rowFilter, offset + limit);
+            } else if (sortBy != null) {
+                rows = firstRowsInOrder(rows, rowComparator(sortBy), Math.min(count, offset + limit));
+            }
+
+            int from = Math.min(offset, rows.length);
+            int to = Math.min(rows.length, offset + limit);
+            long[] pageIds = new long[to - from];
+            for (int i = from; i < to; i++) {
+                pageIds[i - from] = ids[rows[i]];
+            }
+            Roaring64Bitmap matches = null;
+            if (collectMatches) {
+                matches = new Roaring64Bitmap();
+                for (int row : matched) {
+                    matches.addLong(ids[row]);
+                }
+            }
+            return new Selection(pageIds, count, matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] matchingRows(ProductFilter filter, RowFilter rowFilter) {
+        int[] rows = new int[Math.min(size, INITIAL_CAPACITY)];
+        int count = 0;
+        if (filter.getRankedIds() != null) {
+            for (long productId : filter.getRankedIds()) {
+                int row = Arrays.binarySearch(ids, 0, size, productId);
+                if (row >= 0 && rowFilter.matches(row)) {
+                    rows = append(rows, count++, row);
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+        if (filter.getProductIds() != null) {
+            BitSet candidates = rowsOf(filter.getProductIds());
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                if (rowFilter.matches(row)) {
+                    rows = append(rows, count++, row);
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        int from = firstPriceIndex(rowFilter.minPrice, Long.MIN_VALUE);
+        int to = firstPriceIndex(rowFilter.maxPrice, Long.MAX_VALUE);
+        if ((to - from) * PRICE_RANGE_SCAN_DIVISOR < size) {
+            // Smalt prisintervall: bara raderna i intervallet prövas, sedan tillbaka till id-ordning
+            for (int i = from; i < to; i++) {
+                int row = Arrays.binarySearch(ids, 0, size, idsByPrice[i]);
+                if (rowFilter.matches(row)) {
+                    rows = append(rows, count++, row);
+                }
+            }
+            rows = Arrays.copyOf(rows, count);
+            Arrays.sort(rows);
+            return rows;
+        }
+        for (int row = 0; row < size; row++) {
+            if (rowFilter.matches(row)) {
+                rows = append(rows, count++, row);
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // Prislistan ligger redan i (pris, id)-ordning, så den gås igenom tills k rader matchat
+    // i stället för att alla träffar sorteras
+    private int[] firstRowsByPrice(RowFilter rowFilter, int k) {
+        int[] rows = new int[Math.min(k, INITIAL_CAPACITY)];
+        int count = 0;
+        int to = firstPriceIndex(rowFilter.maxPrice, Long.MAX_VALUE);
+        for (int i = firstPriceIndex(rowFilter.minPrice, Long.MIN_VALUE); i < to && count < k; i++) {
+            int row = Arrays.binarySearch(ids, 0, size, idsByPrice[i]);
+            if (rowFilter.matches(row)) {
+                rows = append(rows, count++, row);
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // De första k raderna enligt ordningen, sorterade. En max-heap med k platser räcker eftersom
+    // bara sidorna fram till och med den efterfrågade behövs.
+    private static int[] firstRowsInOrder(int[] rows, Comparator<Integer> order, int k) {
+        if (k == 0) {
+            return new int[0];
+        }
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k, order.reversed());
+        for (int row : rows) {
+            if (heap.size() < k) {
+                heap.add(row);
+            } else if (order.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+        int[] first = new int[heap.size()];
+        for (int i = first.length - 1; i >= 0; i--) {
+            first[i] = heap.poll();
+        }
+        return first;
+    }
+
+    // Lika värden ordnas på id, dvs. radnummer
+    private Comparator<Integer> rowComparator(String sortBy) {
+        Comparator<Integer> byKey = switch (sortBy) {
+            case SORT_NAME -> (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(names[a], names[b]);
+            case SORT_PRICE -> (a, b) -> Double.compare(prices[a], prices[b]);
+            case SORT_STOCK -> (a, b) -> Integer.compare(stocks[a], stocks[b]);
+            default -> (a, b) -> 0;
+        };
+        return byKey.thenComparing(Integer::compare);
+    }
+
+    // Raderna för de givna produkterna. Båda sidor är sorterade på id, så stora mängder slås ihop
+    // linjärt medan små mängder slås upp binärt.
+    private BitSet rowsOf(Roaring64Bitmap productIds) {
+        BitSet rows = new BitSet(size);
+        boolean merge = productIds.getLongCardinality() * 16 > size;
+        int row = 0;
+        LongIterator iterator = productIds.getLongIterator();
+        while (iterator.hasNext() && row < size) {
+            long productId = iterator.next();
+            if (merge) {
+                while (row < size && ids[row] < productId) {
+                    row++;
+                }
+                if (row < size && ids[row] == productId) {
+                    rows.set(row);
+                }
+            } else {
+                int found = Arrays.binarySearch(ids, row, size, productId);
+                if (found >= 0) {
+                    rows.set(found);
+                    row = found + 1;
+                } else {
+                    row = -found - 1;
+                }
+            }
+        }
+        return rows;
+    }
+
+    void buildPriceIndex() {
+        lock.writeLock().lock();
+        try {
+            if (priceIndexBuilt) {
+                return;
+            }
+            // Raderna ligger i id-ordning och sorteringen är stabil, så lika priser hamnar i id-ordning
+            Integer[] rowsByPrice = new Integer[size];
+            for (int row = 0; row < size; row++) {
+                rowsByPrice[row] = row;
+            }
+            Arrays.sort(rowsByPrice, (a, b) -> Double.compare(prices[a], prices[b]));
+            for (int i = 0; i < size; i++) {
+                sortedPrices[i] = prices[rowsByPrice[i]];
+                idsByPrice[i] = ids[rowsByPrice[i]];
+            }
+            priceIndexBuilt = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Första positionen i prislistan vars (pris, id) är större än eller lika med de givna
+    private int firstPriceIndex(double price, long productId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Double.compare(sortedPrices[middle], price);
+            if (comparison < 0 || (comparison == 0 && idsByPrice[middle] < productId)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Anropas innan raden läggs in, medan prislistan har size element
+    private void insertPrice(double price, long productId) {
+        int position = firstPriceIndex(price, productId);
+        int tail = size - position;
+        System.arraycopy(sortedPrices, position, sortedPrices, position + 1, tail);
+        System.arraycopy(idsByPrice, position, idsByPrice, position + 1, tail);
+        sortedPrices[position] = price;
+        idsByPrice[position] = productId;
+    }
+
+    private void removePrice(double price, long productId) {
+        int position = firstPriceIndex(price, productId);
+        int tail = size - position - 1;
+        System.arraycopy(sortedPrices, position + 1, sortedPrices, position, tail);
+        System.arraycopy(idsByPrice, position + 1, idsByPrice, position, tail);
+    }
+
+    private int priceBucket(double price) {
+        int bucket = 0;
+        while (bucket < priceBounds.length && price >= priceBounds[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private int categoryOrdinal(long categoryId, String categoryName) {
+        Integer ordinal = ordinalByCategoryId.get(categoryId);
+        if (ordinal == null) {
+            ordinal = categoryNames.size();
+            ordinalByCategoryId.put(categoryId, ordinal);
+            categoryNames.add(categoryName);
+            if (ordinal == rowsPerCategory.length) {
+                rowsPerCategory = Arrays.copyOf(rowsPerCategory, rowsPerCategory.length * 2);
+            }
+        }
+        return ordinal;
+    }
+
+    private void uncount(int row) {
+        rowsPerCategory[categoryOrdinals[row]]--;
+        inStockRows -= stocks[row] > 0 ? 1 : 0;
+    }
+
+    private void ensureCapacity() {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            categoryOrdinals = Arrays.copyOf(categoryOrdinals, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            priceBuckets = Arrays.copyOf(priceBuckets, capacity);
+            stocks = Arrays.copyOf(stocks, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            sortedPrices = Arrays.copyOf(sortedPrices, capacity);
+            idsByPrice = Arrays.copyOf(idsByPrice, capacity);
+        }
+    }
+
+    private void insertRow(int row) {
+        int tail = size - row;
+        System.arraycopy(ids, row, ids, row + 1, tail);
+        System.arraycopy(names, row, names, row + 1, tail);
+        System.arraycopy(categoryOrdinals, row, categoryOrdinals, row + 1, tail);
+        System.arraycopy(prices, row, prices, row + 1, tail);
+        System.arraycopy(priceBuckets, row, priceBuckets, row + 1, tail);
+        System.arraycopy(stocks, row, stocks, row + 1, tail);
+        System.arraycopy(versions, row, versions, row + 1, tail);
+        size++;
+    }
+
+    private static int[] append(int[] rows, int index, int row) {
+        if (index == rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(16, rows.length * 2));
+        }
+        rows[index] = row;
+        return rows;
+    }
+
+    private void clear() {
+        size = 0;
+        ids = new long[INITIAL_CAPACITY];
+        names = new String[INITIAL_CAPACITY];
+        categoryOrdinals = new int[INITIAL_CAPACITY];
+        prices = new double[INITIAL_CAPACITY];
+        priceBuckets = new byte[INITIAL_CAPACITY];
+        stocks = new int[INITIAL_CAPACITY];
+        versions = new long[INITIAL_CAPACITY];
+        sortedPrices = new double[INITIAL_CAPACITY];
+        idsByPrice = new long[INITIAL_CAPACITY];
+        priceIndexBuilt = false;
+        ordinalByCategoryId = new HashMap<>();
+        categoryNames = new ArrayList<>();
+        rowsPerCategory = new int[16];
+        inStockRows = 0;
+        stockById.clear();
+    }
+
+    private class RowFilter {
+        private final int categoryOrdinal;
+        private final double minPrice;
+        private final double maxPrice;
+        private final int minStock;
+
+        RowFilter(int categoryOrdinal, double minPrice, double maxPrice, int minStock) {
+            this.categoryOrdinal = categoryOrdinal;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.minStock = minStock;
+        }
+
+        boolean matches(int row) {
+            return (categoryOrdinal < 0 || categoryOrdinals[row] == categoryOrdinal)
+                    && prices[row] >= minPrice
+                    && prices[row] <= maxPrice
+                    && stocks[row] >= minStock;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class FacetCounts {
+        private final Map<String, Long> byCategory;
+        private final long[] byPriceBucket;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Selection {
+        private final long[] pageIds;
+        private final int totalCount;
+        private final Roaring64Bitmap matches;
+    }
+}
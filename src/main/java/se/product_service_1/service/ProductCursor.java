@@ -0,0 +1,78 @@
+package se.product_service_1.service;
+
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.model.Product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Kodar och avkodar de opaka cursors som används för keyset-paginering av produkter.
+ * En cursor innehåller sorteringen samt id och sorteringsvärde för sista raden på föregående sida.
+ */
+final class ProductCursor {
+
+    static final String SORT_ID = "id";
+    static final String SORT_NAME = "name";
+    static final String SORT_PRICE = "price";
+
+    private ProductCursor() {
+    }
+
+    static Sort sortFor(String sortBy) {
+        switch (sortBy) {
+            case SORT_ID:
+                return Sort.by(SORT_ID);
+            case SORT_NAME:
+                return Sort.by(SORT_NAME, SORT_ID);
+            case SORT_PRICE:
+                return Sort.by(SORT_PRICE, SORT_ID);
+            default:
+                throw new BadRequestException("Okänd sortering: " + sortBy + ". Tillåtna värden är id, name och price.");
+        }
+    }
+
+    static String encode(String sortBy, Product last) {
+        String value;
+        switch (sortBy) {
+            case SORT_NAME:
+                value = last.getName();
+                break;
+            case SORT_PRICE:
+                value = String.valueOf(last.getPrice());
+                break;
+            default:
+                value = "";
+        }
+        String raw = sortBy + ":" + last.getId() + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ScrollPosition decode(String sortBy, String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            if (parts.length != 3 || !parts[0].equals(sortBy)) {
+                throw new BadRequestException("Cursorn hör inte till sorteringen " + sortBy + ".");
+            }
+
+            Map<String, Object> keys = new LinkedHashMap<>();
+            if (SORT_NAME.equals(sortBy)) {
+                keys.put(SORT_NAME, parts[2]);
+            } else if (SORT_PRICE.equals(sortBy)) {
+                keys.put(SORT_PRICE, Double.valueOf(parts[2]));
+            }
+            keys.put(SORT_ID, Long.valueOf(parts[1]));
+            return ScrollPosition.forward(keys);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Ogiltig cursor: " + cursor);
+        }
+    }
+}
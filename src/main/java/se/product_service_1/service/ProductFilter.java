@@ -0,0 +1,21 @@
+package se.product_service_1.service;
+
+import lombok.Builder;
+import lombok.Data;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+/**
+ * Villkor för {@link ProductColumns#select}. Fält som är null begränsar inte urvalet.
+ * {@code rankedIds} anger både vilka produkter som får komma i fråga och i vilken ordning;
+ * {@code productIds} bara vilka.
+ */
+@Data
+@Builder
+public class ProductFilter {
+    private Roaring64Bitmap productIds;
+    private long[] rankedIds;
+    private String categoryName;
+    private Double minPrice;
+    private Double maxPrice;
+    private Integer minStock;
+}
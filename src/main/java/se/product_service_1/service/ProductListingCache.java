@@ -0,0 +1,102 @@
+package se.product_service_1.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Färdigkodade JSON-sidor av produktlistorna ({@code GET /product} och {@code GET /product/{category}}).
+ * Nyckeln innehåller listans version från {@link CatalogChangeCounters}, så en ändring gör att nästa
+ * anrop missar och bygger om sidan; gamla sidor träffas aldrig mer och evictas när utrymmet behövs.
+ * Sidor över komprimeringströskeln gzippas en gång och sparas komprimerade också; Tomcat komprimerar
+ * inte svar med stark ETag. Hit/miss/eviction exponeras som Micrometer-mätvärden under namnet "productListings".
+ */
+@Component
+public class ProductListingCache {
+
+    private final Cache<Key, Page> cache;
+    private final long compressionThresholdBytes;
+
+    public ProductListingCache(MeterRegistry meterRegistry,
+                               @Value("${product.listing-cache.max-weight-bytes:33554432}") long maxWeightBytes,
+                               @Value("${server.compression.min-response-size:2KB}") DataSize compressionThreshold) {
+        this.compressionThresholdBytes = compressionThreshold.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                // Den gzippade kopian är sällan mer än en åttondel av JSON-storleken
+                .weigher((Key key, Page page) -> 128 + page.json.length + page.json.length / 8)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productListings");
+    }
+
+    public Page get(Key key, Supplier<Page> loader) {
+        return cache.get(key, k -> loader.get());
+    }
+
+    /**
+     * Sidan gzippad, eller null om den är för liten för att vara värd att komprimera.
+     */
+    public byte[] gzipped(Page page) {
+        if (page.json.length < compressionThresholdBytes) {
+            return null;
+        }
+        byte[] gzipped = page.gzippedJson;
+        if (gzipped == null) {
+            // Två samtidiga anrop kan båda komprimera; resultatet är detsamma
+            gzipped = gzip(page.json);
+            page.gzippedJson = gzipped;
+        }
+        return gzipped;
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * En sida med en given version av listan. {@code categoryId} är null för hela katalogen.
+     */
+    @Data
+    public static class Key {
+        private final String version;
+        private final Long categoryId;
+        private final String sortBy;
+        private final String after;
+        private final int limit;
+        private final boolean includeTotal;
+    }
+
+    @Getter
+    public static class Page {
+        private final byte[] json;
+        private final String nextCursor;
+        private final Long totalCount;
+        @Getter(lombok.AccessLevel.NONE)
+        private volatile byte[] gzippedJson;
+
+        public Page(byte[] json, String nextCursor, Long totalCount) {
+            this.json = json;
+            this.nextCursor = nextCursor;
+            this.totalCount = totalCount;
+        }
+    }
+}
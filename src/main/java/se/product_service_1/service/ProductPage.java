@@ -0,0 +1,19 @@
+package se.product_service_1.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import se.product_service_1.model.Product;
+
+import java.util.List;
+
+/**
+ * En sida produkter från keyset-pagineringen. {@code nextCursor} är null på sista sidan och
+ * {@code totalCount} är bara satt när klienten uttryckligen bett om det.
+ */
+@Data
+@AllArgsConstructor
+public class ProductPage {
+    private List<Product> products;
+    private String nextCursor;
+    private Long totalCount;
+}
@@ -0,0 +1,86 @@
+package se.product_service_1.service;
+
+import lombok.Getter;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * En körbar plan för en produktsökning: filteroperatorer i den ordning de körs, mest selektiv först.
+ * Varje operator får kandidaterna från den föregående och returnerar de som uppfyller även dess villkor;
+ * den första utgår från hela katalogen ({@code null}). Blir kandidatmängden tom körs inga fler operatorer.
+ * Utfall och tid per operator sparas så att planen kan visas med explain.
+ */
+public class ProductQueryPlan {
+
+    private final List<Step> steps = new ArrayList<>();
+    // Sätts av mönster-operatorn; slutresultatet följer då mönstrets relevansordning
+    private long[] rankedIds;
+
+    public void addStep(String operator, String detail, long estimatedRows, UnaryOperator<Roaring64Bitmap> filter) {
+        steps.add(new Step(operator, detail, estimatedRows, filter));
+    }
+
+    /**
+     * Sorterar operatorerna på uppskattat antal rader. Sorteringen är stabil, så vid lika uppskattning
+     * behålls den ordning operatorerna lades till i.
+     */
+    public void orderBySelectivity() {
+        steps.sort(Comparator.comparingLong(Step::getEstimatedRows));
+    }
+
+    /**
+     * Kör operatorerna i tur och ordning. {@code null} betyder att planen saknar operatorer och alla produkter matchar.
+     */
+    public Roaring64Bitmap execute() {
+        Roaring64Bitmap candidates = null;
+        for (Step step : steps) {
+            long start = System.nanoTime();
+            candidates = step.filter.apply(candidates);
+            step.durationMicros = (System.nanoTime() - start) / 1000;
+            step.actualRows = candidates.getLongCardinality();
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public long[] getRankedIds() {
+        return rankedIds;
+    }
+
+    void setRankedIds(long[] rankedIds) {
+        this.rankedIds = rankedIds;
+    }
+
+    static Roaring64Bitmap intersect(Roaring64Bitmap candidates, Roaring64Bitmap matches) {
+        return candidates == null ? matches : Roaring64Bitmap.and(candidates, matches);
+    }
+
+    @Getter
+    public static class Step {
+        private final String operator;
+        private final String detail;
+        private final long estimatedRows;
+        @Getter(lombok.AccessLevel.NONE)
+        private final UnaryOperator<Roaring64Bitmap> filter;
+        // null tills operatorn körts; förblir null om planen avbröts innan
+        private Long actualRows;
+        private Long durationMicros;
+
+        Step(String operator, String detail, long estimatedRows, UnaryOperator<Roaring64Bitmap> filter) {
+            this.operator = operator;
+            this.detail = detail;
+            this.estimatedRows = estimatedRows;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package se.product_service_1.service;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import se.product_service_1.dto.ProductSearchRequest;
+import se.product_service_1.model.Tag;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Översätter en {@link ProductSearchRequest} till en {@link ProductQueryPlan}. Varje villkor blir en operator
+ * vars selektivitet uppskattas från statistik som redan hålls aktuell: antal produkter per tagg i tagg-indexet,
+ * per kategori, i prisintervallet och i lager i {@link ProductColumns}. Operatorerna körs sedan med den mest
+ * selektiva först, så att de följande bara behöver pröva ett fåtal kandidater.
+ */
+@Component
+public class ProductQueryPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductQueryPlanner.class);
+
+    public static final String OPERATOR_TAG_UNION = "tag-union";
+    public static final String OPERATOR_TAG_INTERSECTION = "tag-intersection";
+    public static final String OPERATOR_PATTERN = "pattern";
+    public static final String OPERATOR_CATEGORY = "category";
+    public static final String OPERATOR_PRICE_RANGE = "price-range";
+    public static final String OPERATOR_STOCK = "stock";
+
+    private final TagService tagService;
+
+    public ProductQueryPlanner(TagService tagService) {
+        this.tagService = tagService;
+    }
+
+    public ProductQueryPlan plan(ProductSearchRequest searchRequest, ProductColumns columns) {
+        ProductQueryPlan plan = new ProductQueryPlan();
+        long catalogSize = columns.size();
+
+        if (searchRequest.getTagNames() != null && !searchRequest.getTagNames().isEmpty()) {
+            addTagStep(plan, searchRequest.getTagNames(), searchRequest.isRequireAllTags(), catalogSize);
+        }
+        if (searchRequest.getSearchTerm() != null && !searchRequest.getSearchTerm().trim().isEmpty()) {
+            addPatternStep(plan, searchRequest.getSearchTerm(), catalogSize);
+        }
+        if (searchRequest.getCategoryName() != null) {
+            String categoryName = searchRequest.getCategoryName();
+            plan.addStep(OPERATOR_CATEGORY, categoryName, columns.categorySize(categoryName),
+                    candidates -> columnMatches(columns, candidates, ProductFilter.builder().categoryName(categoryName)));
+        }
+        if (searchRequest.getMinPrice() != null || searchRequest.getMaxPrice() != null) {
+            Double minPrice = searchRequest.getMinPrice();
+            Double maxPrice = searchRequest.getMaxPrice();
+            plan.addStep(OPERATOR_PRICE_RANGE, "[" + minPrice + ", " + maxPrice + "]", columns.priceRangeSize(minPrice, maxPrice),
+                    candidates -> columnMatches(columns, candidates, ProductFilter.builder().minPrice(minPrice).maxPrice(maxPrice)));
+        }
+        Integer minStock = minStock(searchRequest);
+        if (minStock != null) {
+            // Räknaren gäller minst en i lager, så för högre gränser är den en övre gräns
+            long estimate = minStock > 0 ? columns.inStockSize() : catalogSize;
+            plan.addStep(OPERATOR_STOCK, ">= " + minStock, estimate,
+                    candidates -> columnMatches(columns, candidates, ProductFilter.builder().minStock(minStock)));
+        }
+
+        plan.orderBySelectivity();
+        if (log.isDebugEnabled()) {
+            log.debug("plan – {}", plan.getSteps().stream()
+                    .map(step -> step.getOperator() + "(" + step.getDetail() + ")~" + step.getEstimatedRows())
+                    .collect(Collectors.joining(" -> ")));
+        }
+        return plan;
+    }
+
+    private void addTagStep(ProductQueryPlan plan, List<String> tagNames, boolean requireAll, long catalogSize) {
+        Set<String> distinctNames = new LinkedHashSet<>(tagNames);
+        Map<String, Tag> tags = tagService.getTagsByNames(distinctNames);
+        List<Long> tagIds = tags.values().stream().map(Tag::getId).collect(Collectors.toList());
+        Map<Long, Long> counts = tagService.getProductCounts(tagIds);
+
+        if (requireAll) {
+            // En okänd tagg betyder att ingen produkt kan ha alla
+            long estimate = tags.size() < distinctNames.size()
+                    ? 0
+                    : counts.values().stream().mapToLong(Long::longValue).min().orElse(0);
+            plan.addStep(OPERATOR_TAG_INTERSECTION, String.join(",", distinctNames), estimate,
+                    candidates -> estimate == 0
+                            ? new Roaring64Bitmap()
+                            : ProductQueryPlan.intersect(candidates, Roaring64Bitmap.bitmapOf(tagService.findProductIdsWithAllTags(tagIds))));
+        } else {
+            long estimate = Math.min(catalogSize, counts.values().stream().mapToLong(Long::longValue).sum());
+            plan.addStep(OPERATOR_TAG_UNION, String.join(",", distinctNames), estimate,
+                    candidates -> tagIds.isEmpty()
+                            ? new Roaring64Bitmap()
+                            : ProductQueryPlan.intersect(candidates, Roaring64Bitmap.bitmapOf(tagService.findProductIdsWithAnyTag(tagIds))));
+        }
+    }
+
+    private void addPatternStep(ProductQueryPlan plan, String pattern, long catalogSize) {
+        List<Tag> matchingTags = tagService.searchTagsByName(pattern);
+        Map<Long, Long> counts = tagService.getProductCounts(matchingTags.stream().map(Tag::getId).collect(Collectors.toList()));
+        long estimate = Math.min(catalogSize, counts.values().stream().mapToLong(Long::longValue).sum());
+        plan.addStep(OPERATOR_PATTERN, pattern, estimate, candidates -> {
+            long[] rankedIds = tagService.findProductIdsRankedByPattern(matchingTags, pattern);
+            plan.setRankedIds(rankedIds);
+            return ProductQueryPlan.intersect(candidates, Roaring64Bitmap.bitmapOf(rankedIds));
+        });
+    }
+
+    private static Roaring64Bitmap columnMatches(ProductColumns columns, Roaring64Bitmap candidates,
+                                                 ProductFilter.ProductFilterBuilder filter) {
+        return columns.select(filter.productIds(candidates).build(), null, 0, 0, true).getMatches();
+    }
+
+    private static Integer minStock(ProductSearchRequest searchRequest) {
+        Integer minStock = searchRequest.getMinStock();
+        if (searchRequest.isInStockOnly() && (minStock == null || minStock < 1)) {
+            minStock = 1;
+        }
+        return minStock;
+    }
+}
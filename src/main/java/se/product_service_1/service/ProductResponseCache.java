@@ -0,0 +1,161 @@
+package se.product_service_1.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.product_service_1.dto.ProductResponse;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-through cache för färdigbyggda {@link ProductResponse} per produkt-id, och för samma svar
+ * färdigkodade som UTF-8 JSON så att listor kan sättas ihop utan att Jackson körs igen.
+ * Storleken begränsas av en uppskattad bytevikt och Caffeine evictar enligt W-TinyLFU.
+ * Hit/miss/eviction exponeras som Micrometer-mätvärden under namnen "productResponses" och "productResponsesJson".
+ * Båda cacharna invalideras tillsammans.
+ */
+@Component
+public class ProductResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductResponseCache.class);
+
+    static final int STRIPES = 1024;
+
+    private final Cache<Long, ProductResponse> cache;
+    private final Cache<Long, byte[]> jsonCache;
+    // Invalideringsräknare per stripe av produkt-id:n, skrivs och läses under lock så att en laddning som
+    // pågick under en invalidering av samma produkt aldrig cachas; laddningar av andra produkter påverkas inte
+    private final Object lock = new Object();
+    private final long[] invalidations = new long[STRIPES];
+
+    public ProductResponseCache(MeterRegistry meterRegistry,
+                                @Value("${product.cache.max-weight-bytes:67108864}") long maxWeightBytes,
+                                @Value("${product.cache.max-json-weight-bytes:33554432}") long maxJsonWeightBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((Long id, ProductResponse response) -> estimateSize(response))
+                .recordStats()
+                .build();
+        this.jsonCache = Caffeine.newBuilder()
+                .maximumWeight(maxJsonWeightBytes)
+                .weigher((Long id, byte[] json) -> 16 + json.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productResponses");
+        CaffeineCacheMetrics.monitor(meterRegistry, jsonCache, "productResponsesJson");
+    }
+
+    /**
+     * Hämtar svar för alla id:n, cachade där det går. Saknade id:n laddas med ett enda anrop till loadern.
+     */
+    public Map<Long, ProductResponse> getAll(Collection<Long> productIds,
+                                             Function<Set<Long>, Map<Long, ProductResponse>> loader) {
+        return getAll(cache, productIds, loader);
+    }
+
+    /**
+     * Som {@link #getAll} men för svaren kodade som JSON, ett komplett objekt per produkt.
+     */
+    public Map<Long, byte[]> getAllJson(Collection<Long> productIds, Function<Set<Long>, Map<Long, byte[]>> loader) {
+        return getAll(jsonCache, productIds, loader);
+    }
+
+    private <V> Map<Long, V> getAll(Cache<Long, V> cache, Collection<Long> productIds, Function<Set<Long>, Map<Long, V>> loader) {
+        Map<Long, V> result = new HashMap<>(cache.getAllPresent(productIds));
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long id : productIds) {
+            if (!result.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Long> stamps = new HashMap<>();
+        synchronized (lock) {
+            for (Long id : missing) {
+                stamps.put(id, invalidations[stripe(id)]);
+            }
+        }
+        Map<Long, V> loaded = loader.apply(missing);
+        result.putAll(loaded);
+        synchronized (lock) {
+            loaded.forEach((id, value) -> {
+                Long stamp = stamps.get(id);
+                if (stamp != null && stamp == invalidations[stripe(id)]) {
+                    cache.put(id, value);
+                }
+            });
+        }
+        return result;
+    }
+
+    public void invalidate(Long productId) {
+        invalidate(List.of(productId));
+    }
+
+    /**
+     * Tar bort produkterna direkt och, om en transaktion pågår, en gång till efter commit så att
+     * en läsare som hann cacha det gamla committade värdet under transaktionen inte lämnar kvar det.
+     */
+    public void invalidate(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        evict(productIds);
+        List<Long> ids = List.copyOf(productIds);
+        TransactionCallbacks.registerAfterCommit(() -> evict(ids));
+    }
+
+    public void invalidateAll() {
+        synchronized (lock) {
+            for (int i = 0; i < STRIPES; i++) {
+                invalidations[i]++;
+            }
+            cache.invalidateAll();
+            jsonCache.invalidateAll();
+        }
+        log.debug("invalidateAll – hela ProductResponse-cachen tömd");
+    }
+
+    private void evict(Collection<Long> productIds) {
+        synchronized (lock) {
+            for (Long id : productIds) {
+                invalidations[stripe(id)]++;
+            }
+            cache.invalidateAll(productIds);
+            jsonCache.invalidateAll(productIds);
+        }
+        log.debug("invalidate – produkter borttagna ur cachen: {}", productIds);
+    }
+
+    private static int stripe(Long productId) {
+        return Long.hashCode(productId) & (STRIPES - 1);
+    }
+
+    private static int estimateSize(ProductResponse response) {
+        int size = 64 + stringSize(response.getProductName()) + stringSize(response.getCategoryName());
+        if (response.getTagNames() != null) {
+            for (String tagName : response.getTagNames()) {
+                size += 8 + stringSize(tagName);
+            }
+        }
+        return size;
+    }
+
+    private static int stringSize(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+}
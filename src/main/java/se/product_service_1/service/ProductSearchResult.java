@@ -0,0 +1,23 @@
+package se.product_service_1.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import se.product_service_1.dto.FacetCount;
+import se.product_service_1.dto.QueryPlanStep;
+import se.product_service_1.model.Product;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * En sida av ett sökresultat, totalt antal träffar och de facetter som efterfrågats (annars null)
+ * samt frågeplanen om den efterfrågats med explain (annars null).
+ */
+@Data
+@AllArgsConstructor
+public class ProductSearchResult {
+    private List<Product> products;
+    private long totalCount;
+    private Map<String, List<FacetCount>> facets;
+    private List<QueryPlanStep> plan;
+}
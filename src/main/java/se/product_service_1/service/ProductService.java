@@ -1,15 +1,31 @@
 package se.product_service_1.service;
 
+import jakarta.persistence.EntityManager;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.dto.AvailabilityCheckLine;
+import se.product_service_1.dto.AvailabilityCheckResult;
+import se.product_service_1.dto.FacetCount;
 import se.product_service_1.dto.InventoryManagementRequest;
 import se.product_service_1.dto.InventoryManagementRequest.InventoryChange;
+import se.product_service_1.dto.ProductBulkResult;
+import se.product_service_1.dto.ProductRequest;
 import se.product_service_1.dto.ProductSearchRequest;
+import se.product_service_1.dto.ProductTagBulkRequest;
+import se.product_service_1.dto.ProductTagBulkResult;
+import se.product_service_1.dto.QueryPlanStep;
+import se.product_service_1.exception.BadRequestException;
 import se.product_service_1.exception.NotEnoughStockException;
 import se.product_service_1.exception.ProductAlreadyExistsException;
 import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.model.Category;
 import se.product_service_1.model.Product;
 import se.product_service_1.model.ProductTag;
 import se.product_service_1.model.Tag;
@@ -19,29 +35,83 @@ import se.product_service_1.repository.ProductTagRepository;
 import se.product_service_1.repository.TagRepository;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ProductService {
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
+    // Håller IN-listan under databasernas parametergränser
+    private static final int TAG_LOOKUP_CHUNK_SIZE = 1000;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BULK_SIZE = 10_000;
+    public static final int MAX_AVAILABILITY_LINES = 1000;
+    // Saldot kan aldrig vara negativt, så ett negativt värde betyder att produkten saknas
+    private static final int UNKNOWN_STOCK = -1;
+    public static final String FACET_CATEGORY = "category";
+    public static final String FACET_TAG = "tag";
+    public static final String FACET_PRICE = "price";
+    private static final int TAG_FACET_SIZE = 20;
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 100;
+    private static final Set<String> SEARCH_SORT_FIELDS = Set.of(
+            ProductColumns.SORT_ID, ProductColumns.SORT_NAME, ProductColumns.SORT_PRICE, ProductColumns.SORT_STOCK);
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
     private final TagService tagService;
     private final ProductTagRepository productTagRepository;
     private final TagRepository tagRepository;
+    private final EntityManager entityManager;
+    private final ProductResponseCache productResponseCache;
+    private final ProductTagIndex productTagIndex;
+    private final ProductTextIndex productTextIndex;
+    private final ProductColumnIndex productColumnIndex;
+    private final ProductQueryPlanner productQueryPlanner;
+    private final CatalogChangeCounters catalogChangeCounters;
+    private final InventoryAvailability inventoryAvailability;
+    private final HotSkuInventory hotSkuInventory;
+    private final InventoryLedgerService inventoryLedgerService;
+    private final LowStockMonitor lowStockMonitor;
 
     public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository,
-                          TagService tagService, ProductTagRepository productTagRepository, TagRepository tagRepository) {
+                          TagService tagService, ProductTagRepository productTagRepository, TagRepository tagRepository,
+                          EntityManager entityManager, ProductResponseCache productResponseCache,
+                          ProductTagIndex productTagIndex, ProductTextIndex productTextIndex,
+                          ProductColumnIndex productColumnIndex, ProductQueryPlanner productQueryPlanner,
+                          CatalogChangeCounters catalogChangeCounters, InventoryAvailability inventoryAvailability,
+                          HotSkuInventory hotSkuInventory, InventoryLedgerService inventoryLedgerService,
+                          LowStockMonitor lowStockMonitor) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.tagService = tagService;
         this.productTagRepository = productTagRepository;
         this.tagRepository = tagRepository;
+        this.entityManager = entityManager;
+        this.productResponseCache = productResponseCache;
+        this.productTagIndex = productTagIndex;
+        this.productTextIndex = productTextIndex;
+        this.productColumnIndex = productColumnIndex;
+        this.productQueryPlanner = productQueryPlanner;
+        this.catalogChangeCounters = catalogChangeCounters;
+        this.inventoryAvailability = inventoryAvailability;
+        this.hotSkuInventory = hotSkuInventory;
+        this.inventoryLedgerService = inventoryLedgerService;
+        this.lowStockMonitor = lowStockMonitor;
     }
 
+    @Transactional
     public Product addProduct(Product product) {
         log.info("addProduct – försök spara produkt: productName={}, category={}",
                 product.getName(), product.getCategory());
@@ -51,6 +121,11 @@ public class ProductService {
         }
 
         Product saved = productRepository.save(product);
+        inventoryLedgerService.recordOpeningBalances(List.of(saved));
+        productTextIndex.reindex(saved.getId());
+        productColumnIndex.update(saved);
+        lowStockMonitor.stockChanged(saved);
+        catalogChangeCounters.productChanged(saved.getCategory().getId());
         log.info("addProduct – sparad produkt med productId={}", saved.getId());
         return saved;
     }
@@ -66,6 +141,7 @@ public class ProductService {
 
         // Spara produkten först
         Product saved = productRepository.save(product);
+        inventoryLedgerService.recordOpeningBalances(List.of(saved));
 
         // Hantera taggar
         if (tagNames != null && !tagNames.isEmpty()) {
@@ -78,22 +154,172 @@ public class ProductService {
                         .tagId(tag.getId())
                         .build();
                 productTagRepository.save(productTag);
+                productTagIndex.addLink(tag.getId(), saved.getId());
             }
         }
 
+        productTextIndex.reindex(saved.getId());
+        productColumnIndex.update(saved);
+        lowStockMonitor.stockChanged(saved);
+        catalogChangeCounters.productChanged(saved.getCategory().getId());
         log.info("addProductWithTags – sparad produkt med productId={} och {} taggar",
                 saved.getId(), tagNames != null ? tagNames.size() : 0);
         return saved;
     }
 
+    /**
+     * Skapar många produkter i en transaktion. Kategorier och taggar slås upp en gång för hela batchen,
+     * befintliga namn kontrolleras med en IN-fråga och produkter och taggkopplingar sparas med JDBC-batchning.
+     * Varje post får ett eget resultat: ett namn som redan finns (eller förekommer tidigare i batchen) ger
+     * conflict, saknade fält eller okänd kategori ger invalid, och övriga skapas ändå.
+     */
+    @Transactional
+    public List<ProductBulkResult> addProducts(List<ProductRequest> productRequests) {
+        log.info("addProducts – bulk-skapande av {} produkter", productRequests.size());
+        if (productRequests.size() > MAX_BULK_SIZE) {
+            throw new BadRequestException("Högst " + MAX_BULK_SIZE + " produkter per anrop.");
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        Set<String> categoryNames = new LinkedHashSet<>();
+        Set<String> tagNames = new LinkedHashSet<>();
+        for (ProductRequest request : productRequests) {
+            if (request.getProductName() != null) {
+                names.add(request.getProductName());
+            }
+            if (request.getCategoryName() != null) {
+                categoryNames.add(request.getCategoryName());
+            }
+            if (request.getTagNames() != null) {
+                request.getTagNames().stream().filter(Objects::nonNull).forEach(tagNames::add);
+            }
+        }
+
+        Set<String> existingNames = new HashSet<>();
+        List<String> nameList = new ArrayList<>(names);
+        for (int from = 0; from < nameList.size(); from += TAG_LOOKUP_CHUNK_SIZE) {
+            existingNames.addAll(productRepository.findNamesByNameIn(
+                    nameList.subList(from, Math.min(from + TAG_LOOKUP_CHUNK_SIZE, nameList.size()))));
+        }
+        Map<String, Category> categoriesByName = categoryRepository.findByNameIn(categoryNames).stream()
+                .collect(Collectors.toMap(Category::getName, category -> category));
+
+        List<ProductBulkResult> results = new ArrayList<>(productRequests.size());
+        List<Product> products = new ArrayList<>();
+        List<ProductRequest> accepted = new ArrayList<>();
+        Set<String> namesInBatch = new HashSet<>();
+        for (int i = 0; i < productRequests.size(); i++) {
+            ProductRequest request = productRequests.get(i);
+            ProductBulkResult result = ProductBulkResult.builder().index(i).productName(request.getProductName()).build();
+            results.add(result);
+
+            String invalid = validateBulkItem(request, categoriesByName);
+            if (invalid != null) {
+                result.setStatus(ProductBulkResult.INVALID);
+                result.setMessage(invalid);
+            } else if (existingNames.contains(request.getProductName()) || !namesInBatch.add(request.getProductName())) {
+                result.setStatus(ProductBulkResult.CONFLICT);
+                result.setMessage("Produkt med namn " + request.getProductName() + " finns redan.");
+            } else {
+                products.add(Product.builder()
+                        .name(request.getProductName())
+                        .category(categoriesByName.get(request.getCategoryName()))
+                        .price(request.getPrice())
+                        .stockQuantity(request.getStockQuantity() != null ? request.getStockQuantity() : 0)
+                        .build());
+                accepted.add(request);
+            }
+        }
+        if (products.isEmpty()) {
+            return results;
+        }
+
+        // Bara taggar som behövs av produkter som faktiskt skapas
+        Set<String> usedTagNames = new LinkedHashSet<>();
+        accepted.stream().filter(request -> request.getTagNames() != null)
+                .forEach(request -> request.getTagNames().stream().filter(Objects::nonNull).forEach(usedTagNames::add));
+        tagNames.retainAll(usedTagNames);
+        Map<String, Tag> tagsByName = tagNames.isEmpty()
+                ? Map.of()
+                : tagService.getOrCreateTagsByName(new ArrayList<>(tagNames));
+
+        productRepository.saveAll(products);
+        inventoryLedgerService.recordOpeningBalances(products);
+        List<ProductTag> links = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            Long productId = products.get(i).getId();
+            List<String> productTagNames = accepted.get(i).getTagNames();
+            if (productTagNames == null) {
+                continue;
+            }
+            for (String tagName : new LinkedHashSet<>(productTagNames)) {
+                Tag tag = tagName != null ? tagsByName.get(tagName) : null;
+                if (tag != null) {
+                    links.add(ProductTag.builder().productId(productId).tagId(tag.getId()).build());
+                }
+            }
+        }
+        productTagRepository.saveAll(links);
+        entityManager.flush();
+
+        for (ProductTag link : links) {
+            productTagIndex.addLink(link.getTagId(), link.getProductId());
+        }
+        List<Long> productIds = new ArrayList<>(products.size());
+        Set<Long> categoryIds = new HashSet<>();
+        for (Product product : products) {
+            productIds.add(product.getId());
+            categoryIds.add(product.getCategory().getId());
+            productColumnIndex.update(product);
+            lowStockMonitor.stockChanged(product);
+        }
+        productTextIndex.reindex(productIds);
+        catalogChangeCounters.productsChanged(categoryIds);
+
+        Map<String, Long> idsByName = products.stream().collect(Collectors.toMap(Product::getName, Product::getId));
+        for (ProductBulkResult result : results) {
+            if (result.getStatus() == null) {
+                result.setStatus(ProductBulkResult.CREATED);
+                result.setProductId(idsByName.get(result.getProductName()));
+            }
+        }
+        log.info("addProducts – skapade {} av {} produkter med {} taggkopplingar",
+                products.size(), productRequests.size(), links.size());
+        return results;
+    }
+
+    private static String validateBulkItem(ProductRequest request, Map<String, Category> categoriesByName) {
+        if (request.getProductName() == null || request.getProductName().isBlank()) {
+            return "productName saknas.";
+        }
+        if (request.getPrice() == null) {
+            return "price saknas.";
+        }
+        if (request.getCategoryName() == null) {
+            return "categoryName saknas.";
+        }
+        if (!categoriesByName.containsKey(request.getCategoryName())) {
+            return "Kategori med namn:" + request.getCategoryName() + " existerar inte.";
+        }
+        return null;
+    }
+
     @Transactional
     public void deleteProduct(Long productId) {
         log.info("deleteProduct – försök radera produktId={}", productId);
         if (productRepository.existsById(productId)) {
+            Optional<Long> categoryId = productRepository.findCategoryIdById(productId);
             // Ta bort alla ProductTag-kopplingar först
             productTagRepository.deleteByProductId(productId);
+            productTagIndex.removeProduct(productId);
             // Ta bort produkten
             productRepository.deleteById(productId);
+            productResponseCache.invalidate(productId);
+            productTextIndex.remove(productId);
+            productColumnIndex.remove(productId);
+            inventoryAvailability.removed(productId);
+            lowStockMonitor.removed(productId);
+            categoryId.ifPresentOrElse(catalogChangeCounters::productChanged, catalogChangeCounters::allChanged);
             log.info("deleteProduct – produkt raderad produktId={}", productId);
         } else {
             log.warn("deleteProduct – ingen produkt att radera för produktId={}", productId);
@@ -126,10 +352,87 @@ public class ProductService {
         return list;
     }
 
+    /**
+     * Hämtar en sida produkter med keyset-paginering, valfritt begränsat till en kategori.
+     * Databasen behöver varken OFFSET eller COUNT(*) om inte {@code includeTotal} är satt.
+     */
+    public ProductPage getProductPage(Long categoryId, String sortBy, String after, int limit, boolean includeTotal) {
+        log.debug("getProductPage – categoryId={}, sortBy={}, after={}, limit={}", categoryId, sortBy, after, limit);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit måste vara mellan 1 och " + MAX_PAGE_SIZE + ".");
+        }
+
+        Sort sort = ProductCursor.sortFor(sortBy);
+        ScrollPosition position = ProductCursor.decode(sortBy, after);
+        Window<Product> window = categoryId != null
+                ? productRepository.findByCategoryId(categoryId, position, Limit.of(limit), sort)
+                : productRepository.findAllBy(position, Limit.of(limit), sort);
+
+        List<Product> products = window.getContent();
+        String nextCursor = window.hasNext() && !products.isEmpty()
+                ? ProductCursor.encode(sortBy, products.get(products.size() - 1))
+                : null;
+
+        Long totalCount = null;
+        if (includeTotal) {
+            totalCount = categoryId != null ? productRepository.countByCategoryId(categoryId) : productRepository.count();
+        }
+        return new ProductPage(products, nextCursor, totalCount);
+    }
+
+    /**
+     * Strömmar hela katalogen i id-ordning och lämnar över den i chunkar tillsammans med chunkens taggar.
+     * Persistence-kontexten töms efter varje chunk så att minnesanvändningen är konstant oavsett katalogens storlek.
+     *
+     * @param afterId       exportera endast produkter med id större än detta, för att återuppta en avbruten export
+     * @param chunkConsumer tar emot varje chunk av produkter och en map productId → taggnamn
+     */
+    @Transactional(readOnly = true)
+    public void exportProducts(Long afterId, BiConsumer<List<Product>, Map<Long, List<String>>> chunkConsumer) {
+        log.info("exportProducts – startar export efter productId={}", afterId);
+        long exported = 0;
+        try (Stream<Product> stream = productRepository.streamByIdGreaterThan(afterId != null ? afterId : 0L)) {
+            Iterator<Product> iterator = stream.iterator();
+            List<Product> chunk = new ArrayList<>(ProductRepository.EXPORT_FETCH_SIZE);
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == ProductRepository.EXPORT_FETCH_SIZE || !iterator.hasNext()) {
+                    Map<Long, List<String>> tagNames = getTagNamesForProducts(
+                            chunk.stream().map(Product::getId).collect(Collectors.toList()));
+                    chunkConsumer.accept(chunk, tagNames);
+                    exported += chunk.size();
+                    chunk = new ArrayList<>(ProductRepository.EXPORT_FETCH_SIZE);
+                    entityManager.clear();
+                }
+            }
+        }
+        log.info("exportProducts – export klar, antal produkter={}", exported);
+    }
+
     public List<String> getTagNamesForProduct(Long productId) {
-        List<Long> tagIds = productTagRepository.findTagIdsByProductId(productId);
-        List<Tag> tags = tagRepository.findAllById(tagIds);
-        return tags.stream().map(Tag::getName).collect(Collectors.toList());
+        return getTagNamesForProducts(List.of(productId)).getOrDefault(productId, new ArrayList<>());
+    }
+
+    /**
+     * Hämtar taggnamn för en hel lista produkter med en join-fråga per chunk i stället för
+     * två frågor per produkt. Produkter utan taggar saknas i den returnerade mappen.
+     */
+    public Map<Long, List<String>> getTagNamesForProducts(Collection<Long> productIds) {
+        Map<Long, List<String>> tagNamesByProductId = new HashMap<>();
+        if (productIds == null || productIds.isEmpty()) {
+            return tagNamesByProductId;
+        }
+
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        for (int from = 0; from < ids.size(); from += TAG_LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + TAG_LOOKUP_CHUNK_SIZE, ids.size()));
+            for (Object[] row : productTagRepository.findTagNamesByProductIds(chunk)) {
+                tagNamesByProductId.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+        log.debug("getTagNamesForProducts – taggar hämtade för {} av {} produkter",
+                tagNamesByProductId.size(), ids.size());
+        return tagNamesByProductId;
     }
 
     public List<Product> getProductsByCategory(String categoryName) {
@@ -137,7 +440,17 @@ public class ProductService {
     }
 
     public Product updateProduct(Product product) {
+        // Den sparade kategorin, ifall produkten har bytt kategori
+        Optional<Long> previousCategoryId = productRepository.findCategoryIdById(product.getId());
         Product updatedProduct = productRepository.save(product);
+        productResponseCache.invalidate(updatedProduct.getId());
+        productTextIndex.reindex(updatedProduct.getId());
+        // Saldot i databasen ligger efter för en het produkt och får inte skriva över det aktuella i minnet
+        Product live = hotSkuInventory.withLiveStock(updatedProduct);
+        productColumnIndex.update(live);
+        inventoryAvailability.stockChanged(live);
+        lowStockMonitor.stockChanged(live);
+        catalogChangeCounters.productsChanged(Arrays.asList(previousCategoryId.orElse(null), updatedProduct.getCategory().getId()));
         return updatedProduct;
     }
 
@@ -145,99 +458,315 @@ public class ProductService {
 
     public List<Product> searchProductsByTags(List<String> tagNames) {
         log.info("searchProductsByTags – söker produkter med taggar: {}", tagNames);
+        return getProductsInOrder(findProductIdsByAnyTag(tagNames));
+    }
+
+    public List<Product> searchProductsByAllTags(List<String> tagNames) {
+        log.info("searchProductsByAllTags – söker produkter som har ALLA taggar: {}", tagNames);
+        return getProductsInOrder(findProductIdsByAllTags(tagNames));
+    }
+
+    private long[] findProductIdsByAnyTag(List<String> tagNames) {
         if (tagNames == null || tagNames.isEmpty()) {
-            return new ArrayList<>();
+            return new long[0];
         }
 
         // Hitta tag-IDs baserat på namn
-        List<Tag> tags = tagNames.stream()
-                .map(name -> tagRepository.findByName(name))
-                .filter(opt -> opt.isPresent())
-                .map(opt -> opt.get())
-                .collect(Collectors.toList());
+        Collection<Tag> tags = tagService.getTagsByNames(tagNames).values();
 
         if (tags.isEmpty()) {
-            return new ArrayList<>();
+            return new long[0];
         }
 
         List<Long> tagIds = tags.stream().map(Tag::getId).collect(Collectors.toList());
-        List<Long> productIds = productTagRepository.findProductIdsByTagIds(tagIds);
-
-        return productRepository.findAllById(productIds);
+        return tagService.findProductIdsWithAnyTag(tagIds);
     }
 
-    public List<Product> searchProductsByAllTags(List<String> tagNames) {
-        log.info("searchProductsByAllTags – söker produkter som har ALLA taggar: {}", tagNames);
+    private long[] findProductIdsByAllTags(List<String> tagNames) {
         if (tagNames == null || tagNames.isEmpty()) {
-            return new ArrayList<>();
+            return new long[0];
         }
 
-        // Denna implementation kräver mer komplex logik - returnera tom för nu
-        return new ArrayList<>();
+        Set<String> distinctNames = new LinkedHashSet<>(tagNames);
+        Map<String, Tag> tags = tagService.getTagsByNames(distinctNames);
+
+        // En okänd tagg betyder att ingen produkt kan ha alla
+        if (tags.size() < distinctNames.size()) {
+            return new long[0];
+        }
+
+        List<Long> tagIds = tags.values().stream().map(Tag::getId).collect(Collectors.toList());
+        return tagService.findProductIdsWithAllTags(tagIds);
     }
 
+    /**
+     * Produkter med någon tagg vars namn innehåller mönstret. Produkter med en exakt matchande tagg
+     * kommer först, sedan prefixträffar och sist övriga delsträngsträffar; inom varje grupp i id-ordning.
+     */
     public List<Product> searchProductsByTagPattern(String tagPattern) {
         log.info("searchProductsByTagPattern – söker produkter med tagg-mönster: {}", tagPattern);
-        List<Tag> tags = tagRepository.findByNameContainingIgnoreCase(tagPattern);
-        List<Long> tagIds = tags.stream().map(Tag::getId).collect(Collectors.toList());
+        return getProductsInOrder(findProductIdsByTagPattern(tagPattern));
+    }
+
+    private long[] findProductIdsByTagPattern(String tagPattern) {
+        return tagService.findProductIdsRankedByPattern(tagService.searchTagsByName(tagPattern), tagPattern);
+    }
 
-        if (tagIds.isEmpty()) {
-            return new ArrayList<>();
+    // Laddar produkterna i chunkar och returnerar dem i samma ordning som id:na
+    private List<Product> getProductsInOrder(long[] productIds) {
+        Map<Long, Product> productsById = new HashMap<>(productIds.length * 2);
+        for (int from = 0; from < productIds.length; from += TAG_LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = new ArrayList<>();
+            for (int i = from; i < Math.min(from + TAG_LOOKUP_CHUNK_SIZE, productIds.length); i++) {
+                chunk.add(productIds[i]);
+            }
+            productRepository.findAllById(chunk).forEach(product -> productsById.put(product.getId(), product));
         }
 
-        List<Long> productIds = productTagRepository.findProductIdsByTagIds(tagIds);
-        return productRepository.findAllById(productIds);
+        List<Product> products = new ArrayList<>(productsById.size());
+        for (long productId : productIds) {
+            Product product = productsById.get(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
     }
 
-    public List<Product> searchProducts(ProductSearchRequest searchRequest) {
-        log.info("searchProducts – avancerad sökning: {}", searchRequest);
+    /**
+     * Fulltextsökning i namn, kategori och taggar. Träffarna är sorterade efter relevans (BM25).
+     */
+    public List<ProductTextHit> searchProductsByText(String query, int limit) {
+        log.info("searchProductsByText – fulltextsökning: query={}, limit={}", query, limit);
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("Sökfrågan får inte vara tom.");
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit måste vara mellan 1 och " + MAX_PAGE_SIZE + ".");
+        }
+        return productTextIndex.search(query, limit);
+    }
 
-        // Om endast taggar är specificerade
-        if (searchRequest.getTagNames() != null && !searchRequest.getTagNames().isEmpty()) {
-            if (searchRequest.isRequireAllTags()) {
-                return searchProductsByAllTags(searchRequest.getTagNames());
-            } else {
-                return searchProductsByTags(searchRequest.getTagNames());
+    public List<Product> getProductsByIds(List<Long> productIds) {
+        return getProductsInOrder(productIds.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * Tillgänglighet per rad för en varukorg. Saldot läses ur kolumnindexets saldokarta (heta produkter ur
+     * minnet) och aktiva reservationer dras av, så när indexet är byggt går anropet inte till databasen.
+     * Flera rader för samma produkt räknas ihop.
+     */
+    public List<AvailabilityCheckResult> checkAvailability(List<AvailabilityCheckLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new BadRequestException("Minst en rad måste anges.");
+        }
+        if (lines.size() > MAX_AVAILABILITY_LINES) {
+            throw new BadRequestException("Högst " + MAX_AVAILABILITY_LINES + " rader per anrop.");
+        }
+        long[] productIds = new long[lines.size()];
+        Map<Long, Integer> requested = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            AvailabilityCheckLine line = lines.get(i);
+            if (line.getProductId() == null || line.getQuantity() == null || line.getQuantity() <= 0) {
+                throw new BadRequestException("productId och ett positivt quantity måste anges för varje rad.");
             }
+            productIds[i] = line.getProductId();
+            requested.merge(line.getProductId(), line.getQuantity(), Integer::sum);
         }
 
-        // Om sökterm för taggar är specificerad
-        if (searchRequest.getSearchTerm() != null && !searchRequest.getSearchTerm().trim().isEmpty()) {
-            return searchProductsByTagPattern(searchRequest.getSearchTerm());
+        int[] stocks;
+        if (productColumnIndex.isReady()) {
+            stocks = productColumnIndex.getColumns().stocks(productIds, UNKNOWN_STOCK);
+        } else {
+            // Bara under uppstart, innan kolumnindexet är byggt
+            log.info("checkAvailability – kolumnindex inte klart, läser {} saldon från databasen", productIds.length);
+            Map<Long, Integer> stockById = new HashMap<>();
+            productRepository.findAllById(requested.keySet())
+                    .forEach(product -> stockById.put(product.getId(), product.getStockQuantity()));
+            stocks = Arrays.stream(productIds).mapToInt(productId -> stockById.getOrDefault(productId, UNKNOWN_STOCK)).toArray();
         }
 
-        // Om endast kategori är specificerad
-        if (searchRequest.getCategoryName() != null) {
-            return getProductsByCategory(searchRequest.getCategoryName());
+        List<AvailabilityCheckResult> results = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Integer hotStock = hotSkuInventory.stock(productIds[i]);
+            int stock = hotStock != null ? hotStock : stocks[i];
+            boolean found = stock != UNKNOWN_STOCK;
+            int availableToPromise = found ? Math.max(0, stock - inventoryAvailability.held(productIds[i])) : 0;
+            results.add(AvailabilityCheckResult.builder()
+                    .productId(productIds[i])
+                    .quantity(lines.get(i).getQuantity())
+                    .found(found)
+                    .availableToPromise(availableToPromise)
+                    .available(found && requested.get(productIds[i]) <= availableToPromise)
+                    .build());
         }
+        return results;
+    }
 
-        // Ingen specifik sökning - returnera alla produkter
-        return getAllProducts();
+    public long rebuildTextIndex() {
+        log.info("rebuildTextIndex – full ombyggnad av fulltextindex begärd");
+        return productTextIndex.rebuild();
     }
 
-    @Transactional
-    public Product addTagsToProduct(Long productId, List<String> tagNames) {
-        log.info("addTagsToProduct – lägger till taggar {} till produkt {}", tagNames, productId);
+    /**
+     * Avancerad sökning där alla angivna villkor kombineras: taggar, tagg-mönster, kategori, prisintervall
+     * och lagersaldo. Villkoren körs som en plan där det mest selektiva går först (se {@link ProductQueryPlanner});
+     * sortering och sidindelning görs sedan på kolumnindexet, och bara produkterna på den efterfrågade sidan
+     * hämtas från databasen. Utan sortering behålls tagg-mönstrets relevansordning, annars id-ordning.
+     * Med {@code explain} returneras även planen med uppskattat och faktiskt antal rader samt tid per operator.
+     */
+    public ProductSearchResult searchProducts(ProductSearchRequest searchRequest, boolean explain) {
+        log.info("searchProducts – avancerad sökning: {}, explain={}", searchRequest, explain);
+        int page = searchRequest.getPage() != null ? searchRequest.getPage() : 0;
+        int size = searchRequest.getSize() != null ? searchRequest.getSize() : DEFAULT_SEARCH_PAGE_SIZE;
+        String sortBy = searchRequest.getSortBy();
+        validateSearchRequest(searchRequest, page, size);
 
-        Product product = getProductById(productId);
-        Set<Tag> newTags = tagService.getOrCreateTags(tagNames);
+        ProductColumns columns = getColumns();
+        ProductQueryPlan plan = productQueryPlanner.plan(searchRequest, columns);
+        Roaring64Bitmap candidates = plan.execute();
+
+        ProductFilter filter;
+        if (plan.getRankedIds() != null) {
+            long[] rankedIds = plan.getRankedIds();
+            if (candidates != null) {
+                rankedIds = Arrays.stream(rankedIds).filter(candidates::contains).toArray();
+            }
+            filter = ProductFilter.builder().rankedIds(rankedIds).build();
+        } else {
+            filter = ProductFilter.builder().productIds(candidates).build();
+        }
 
-        // Skapa nya ProductTag-kopplingar
-        for (Tag tag : newTags) {
-            // Kontrollera om kopplingen redan finns
-            List<ProductTag> existing = productTagRepository.findByProductId(productId);
-            boolean alreadyExists = existing.stream()
-                    .anyMatch(pt -> pt.getTagId().equals(tag.getId()));
+        List<String> facetNames = searchRequest.getFacets() != null ? searchRequest.getFacets() : List.of();
+        ProductColumns.Selection selection = columns.select(filter, sortBy, page * size, size, !facetNames.isEmpty());
+        List<Product> products = getProductsInOrder(selection.getPageIds());
+        Map<String, List<FacetCount>> facets = facetNames.isEmpty()
+                ? null
+                : getFacets(columns, selection.getMatches(), facetNames);
+        List<QueryPlanStep> planSteps = explain ? toQueryPlanSteps(plan) : null;
+        return new ProductSearchResult(products, selection.getTotalCount(), facets, planSteps);
+    }
 
-            if (!alreadyExists) {
-                ProductTag productTag = ProductTag.builder()
-                        .productId(productId)
-                        .tagId(tag.getId())
-                        .build();
-                productTagRepository.save(productTag);
+    private static List<QueryPlanStep> toQueryPlanSteps(ProductQueryPlan plan) {
+        return plan.getSteps().stream()
+                .map(step -> QueryPlanStep.builder()
+                        .operator(step.getOperator())
+                        .detail(step.getDetail())
+                        .estimatedRows(step.getEstimatedRows())
+                        .actualRows(step.getActualRows())
+                        .durationMicros(step.getDurationMicros())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private void validateSearchRequest(ProductSearchRequest searchRequest, int page, int size) {
+        if (page < 0) {
+            throw new BadRequestException("page får inte vara negativ.");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("size måste vara mellan 1 och " + MAX_PAGE_SIZE + ".");
+        }
+        if (searchRequest.getSortBy() != null && !SEARCH_SORT_FIELDS.contains(searchRequest.getSortBy())) {
+            throw new BadRequestException("Okänd sortering: " + searchRequest.getSortBy() + ". Tillåtna: id, name, price, stock.");
+        }
+        if (searchRequest.getMinPrice() != null && searchRequest.getMaxPrice() != null
+                && searchRequest.getMinPrice() > searchRequest.getMaxPrice()) {
+            throw new BadRequestException("minPrice får inte vara större än maxPrice.");
+        }
+        if (searchRequest.getFacets() != null) {
+            for (String facetName : searchRequest.getFacets()) {
+                if (!List.of(FACET_CATEGORY, FACET_TAG, FACET_PRICE).contains(facetName)) {
+                    throw new BadRequestException("Okänd facett: " + facetName + ". Tillåtna: category, tag, price.");
+                }
             }
         }
+    }
+
+    // Kolumnindexet när det är byggt; annars en tillfällig ögonblicksbild så att sökningen fungerar under uppstart
+    private ProductColumns getColumns() {
+        if (productColumnIndex.isReady()) {
+            return productColumnIndex.getColumns();
+        }
+        log.debug("getColumns – kolumnindexet byggs fortfarande, bygger tillfällig ögonblicksbild");
+        ProductColumns columns = new ProductColumns(productColumnIndex.getPriceBounds());
+        productRepository.findAll().forEach(product -> ProductColumnIndex.upsert(columns, product));
+        return columns;
+    }
+
+    /**
+     * Facettantal för ett sökresultat: antal produkter per kategori, per prisintervall och för de
+     * vanligaste taggarna. Kategori och pris räknas i ett svep över kolumnindexet, taggar genom
+     * snitt mellan resultatet och tagg-bitmaparna, så inga extra SQL-frågor per facett behövs.
+     */
+    private Map<String, List<FacetCount>> getFacets(ProductColumns columns, Roaring64Bitmap productIds,
+                                                    List<String> facetNames) {
+        Set<String> requested = new LinkedHashSet<>(facetNames);
+        ProductColumns.FacetCounts counts = null;
+        if (requested.contains(FACET_CATEGORY) || requested.contains(FACET_PRICE)) {
+            counts = columns.countFacets(productIds);
+        }
+
+        Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+        for (String facetName : requested) {
+            switch (facetName) {
+                case FACET_CATEGORY -> facets.put(facetName, toFacetCounts(counts.getByCategory()));
+                case FACET_PRICE -> facets.put(facetName, toPriceFacetCounts(columns.getPriceBounds(), counts.getByPriceBucket()));
+                default -> facets.put(facetName, toFacetCounts(countTagFacet(productIds)));
+            }
+        }
+        return facets;
+    }
+
+    private Map<String, Long> countTagFacet(Roaring64Bitmap productIds) {
+        Map<String, Long> counts = new HashMap<>();
+        if (productTagIndex.isReady()) {
+            Map<Long, Long> countsByTagId = productTagIndex.topTagCounts(productIds, TAG_FACET_SIZE);
+            for (Tag tag : tagRepository.findAllById(countsByTagId.keySet())) {
+                counts.put(tag.getName(), countsByTagId.get(tag.getId()));
+            }
+            return counts;
+        }
+        List<Long> ids = new ArrayList<>();
+        productIds.forEach(ids::add);
+        getTagNamesForProducts(ids).values().forEach(tagNames ->
+                tagNames.forEach(tagName -> counts.merge(tagName, 1L, Long::sum)));
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(TAG_FACET_SIZE)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    // Flest träffar först, lika många i bokstavsordning
+    private static List<FacetCount> toFacetCounts(Map<String, Long> counts) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .map(entry -> new FacetCount(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    // Intervallen redovisas i prisordning, även de som är tomma
+    private static List<FacetCount> toPriceFacetCounts(double[] priceBounds, long[] countsByBucket) {
+        List<FacetCount> facetCounts = new ArrayList<>(countsByBucket.length);
+        for (int bucket = 0; bucket < countsByBucket.length; bucket++) {
+            String from = bucket == 0 ? "0" : formatPrice(priceBounds[bucket - 1]);
+            String label = bucket < priceBounds.length
+                    ? from + "-" + formatPrice(priceBounds[bucket])
+                    : from + "+";
+            facetCounts.add(new FacetCount(label, countsByBucket[bucket]));
+        }
+        return facetCounts;
+    }
+
+    private static String formatPrice(double price) {
+        return price == Math.rint(price) ? String.valueOf((long) price) : String.valueOf(price);
+    }
 
+    @Transactional
+    public Product addTagsToProduct(Long productId, List<String> tagNames) {
+        log.info("addTagsToProduct – lägger till taggar {} till produkt {}", tagNames, productId);
+
+        Product product = getProductById(productId);
+        applyTagDiff(List.of(product), tagIds(tagService.getOrCreateTags(tagNames)), Set.of(), false);
         return product;
     }
 
@@ -246,32 +775,308 @@ public class ProductService {
         log.info("removeTagsFromProduct – tar bort taggar {} från produkt {}", tagNames, productId);
 
         Product product = getProductById(productId);
+        applyTagDiff(List.of(product), Set.of(), tagIds(tagService.getTagsByNames(tagNames).values()), false);
+        return product;
+    }
 
-        // Hitta tag-IDs baserat på namn
-        for (String tagName : tagNames) {
-            tagRepository.findByName(tagName).ifPresent(tag -> {
-                productTagRepository.deleteByProductIdAndTagId(productId, tag.getId());
-            });
-        }
+    /**
+     * Ersätter produktens taggar med exakt de angivna; taggar som saknas skapas.
+     */
+    @Transactional
+    public Product replaceProductTags(Long productId, List<String> tagNames) {
+        log.info("replaceProductTags – sätter taggar {} på produkt {}", tagNames, productId);
 
+        Product product = getProductById(productId);
+        Set<Long> tagIds = tagNames.isEmpty() ? Set.of() : tagIds(tagService.getOrCreateTags(tagNames));
+        applyTagDiff(List.of(product), tagIds, Set.of(), true);
         return product;
     }
 
+    /**
+     * Lägger till och tar bort taggar på många produkter på en gång. Alla produkter måste finnas.
+     */
+    @Transactional
+    public ProductTagBulkResult updateProductTags(ProductTagBulkRequest request) {
+        List<Long> productIds = request.getProductIds() != null ? request.getProductIds() : List.of();
+        List<String> addTagNames = request.getAddTagNames() != null ? request.getAddTagNames() : List.of();
+        List<String> removeTagNames = request.getRemoveTagNames() != null ? request.getRemoveTagNames() : List.of();
+        log.info("updateProductTags – {} produkter, lägger till {}, tar bort {}", productIds.size(), addTagNames, removeTagNames);
+        if (productIds.size() > MAX_BULK_SIZE) {
+            throw new BadRequestException("Högst " + MAX_BULK_SIZE + " produkter per anrop.");
+        }
+
+        List<Product> products = getProductsByIds(productIds.stream().distinct().toList());
+        if (products.size() != productIds.stream().distinct().count()) {
+            Set<Long> missing = new LinkedHashSet<>(productIds);
+            products.forEach(product -> missing.remove(product.getId()));
+            log.warn("updateProductTags – produkter saknas: {}", missing);
+            throw new ProductNotFoundException("Produkter med ID " + missing + " finns inte.");
+        }
+
+        Set<Long> attach = addTagNames.isEmpty() ? Set.of() : tagIds(tagService.getOrCreateTags(addTagNames));
+        Set<Long> detach = removeTagNames.isEmpty() ? Set.of() : tagIds(tagService.getTagsByNames(removeTagNames).values());
+        int[] changes = applyTagDiff(products, attach, detach, false);
+        return ProductTagBulkResult.builder()
+                .productCount(products.size())
+                .linksAdded(changes[0])
+                .linksRemoved(changes[1])
+                .build();
+    }
+
+    /**
+     * Läser nuvarande kopplingar för alla produkter i en fråga, räknar fram skillnaden mot önskat läge i minnet
+     * och skriver den med en batchad delete och en batchad insert. Med replace blir önskat läge exakt attach,
+     * annars (nuvarande + attach) - detach. Returnerar {antal tillagda, antal borttagna} kopplingar.
+     */
+    private int[] applyTagDiff(List<Product> products, Set<Long> attach, Set<Long> detach, boolean replace) {
+        List<Long> productIds = products.stream().map(Product::getId).toList();
+        Map<Long, List<ProductTag>> currentLinks = new HashMap<>();
+        for (int from = 0; from < productIds.size(); from += TAG_LOOKUP_CHUNK_SIZE) {
+            productTagRepository.findByProductIdIn(productIds.subList(from, Math.min(from + TAG_LOOKUP_CHUNK_SIZE, productIds.size())))
+                    .forEach(link -> currentLinks.computeIfAbsent(link.getProductId(), id -> new ArrayList<>()).add(link));
+        }
+
+        List<ProductTag> removed = new ArrayList<>();
+        List<ProductTag> added = new ArrayList<>();
+        for (Long productId : productIds) {
+            Set<Long> currentTagIds = new HashSet<>();
+            for (ProductTag link : currentLinks.getOrDefault(productId, List.of())) {
+                boolean keep = replace ? attach.contains(link.getTagId()) : !detach.contains(link.getTagId());
+                // Gamla dubbletter från före unik-constrainten städas bort på vägen
+                if (keep && currentTagIds.add(link.getTagId())) {
+                    continue;
+                }
+                removed.add(link);
+            }
+            for (Long tagId : attach) {
+                if (!detach.contains(tagId) && !currentTagIds.contains(tagId)) {
+                    added.add(ProductTag.builder().productId(productId).tagId(tagId).build());
+                }
+            }
+        }
+
+        List<Long> removedIds = removed.stream().map(ProductTag::getId).toList();
+        for (int from = 0; from < removedIds.size(); from += TAG_LOOKUP_CHUNK_SIZE) {
+            productTagRepository.deleteAllByIdInBatch(removedIds.subList(from, Math.min(from + TAG_LOOKUP_CHUNK_SIZE, removedIds.size())));
+        }
+        productTagRepository.saveAll(added);
+
+        removed.forEach(link -> productTagIndex.removeLink(link.getTagId(), link.getProductId()));
+        added.forEach(link -> productTagIndex.addLink(link.getTagId(), link.getProductId()));
+        Set<Long> changedProductIds = new LinkedHashSet<>();
+        removed.forEach(link -> changedProductIds.add(link.getProductId()));
+        added.forEach(link -> changedProductIds.add(link.getProductId()));
+        if (!changedProductIds.isEmpty()) {
+            productResponseCache.invalidate(changedProductIds);
+            productTextIndex.reindex(changedProductIds);
+            catalogChangeCounters.productsChanged(products.stream()
+                    .filter(product -> changedProductIds.contains(product.getId()))
+                    .map(product -> product.getCategory().getId())
+                    .collect(Collectors.toSet()));
+        }
+        log.info("applyTagDiff – {} produkter, {} kopplingar tillagda, {} borttagna", products.size(), added.size(), removed.size());
+        return new int[] {added.size(), removed.size()};
+    }
+
+    private static Set<Long> tagIds(Collection<Tag> tags) {
+        return tags.stream().map(Tag::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Ändrar lagersaldot med villkorade UPDATE-satser i en JDBC-batch i stället för att läsa, räkna och spara
+     * i Java, så att samtidiga anrop mot samma produkt inte skriver över varandra. Om någon rad saknar produkt
+     * eller skulle ge negativt saldo rullas hela anropet tillbaka. Uttag får inte ta mängd som är reserverad
+     * i {@link InventoryAvailability}.
+     */
     @Transactional
     public List<Product> updateInventoryChange(InventoryManagementRequest inventoryManagementRequest) {
+        return updateInventoryChange(inventoryManagementRequest, Map.of());
+    }
+
+    /**
+     * Som {@link #updateInventoryChange(InventoryManagementRequest)}, men uttag upp till {@code reserved} per
+     * produkt tas från anroparens egen reservation i stället för från det tillgängliga.
+     */
+    @Transactional
+    public List<Product> updateInventoryChange(InventoryManagementRequest inventoryManagementRequest, Map<Long, Integer> reserved) {
         List<InventoryChange> inventoryChanges = inventoryManagementRequest.getInventoryChanges();
-        List<Product> productList = new ArrayList<>(inventoryChanges.size());
-        Product product;
-        for (InventoryChange change : inventoryChanges) {
-            product = getProductById(change.getProductId());
-            int newStockQuantity = product.getStockQuantity() + change.getInventoryChange();
-            if (newStockQuantity < 0) {
-                throw new NotEnoughStockException("Not enough stock of " + product.getName() + ". Stock quantity: " + product.getStockQuantity());
+        if (inventoryChanges == null || inventoryChanges.isEmpty()) {
+            return List.of();
+        }
+        long[] productIds = new long[inventoryChanges.size()];
+        int[] deltas = new int[inventoryChanges.size()];
+        for (int i = 0; i < inventoryChanges.size(); i++) {
+            InventoryChange change = inventoryChanges.get(i);
+            if (change.getProductId() == null || change.getInventoryChange() == null) {
+                throw new BadRequestException("productId och inventoryChange måste anges för varje rad.");
             }
-            product.setStockQuantity(newStockQuantity);
-            productRepository.save(product);
-            productList.add(product);
+            productIds[i] = change.getProductId();
+            deltas[i] = change.getInventoryChange();
+        }
+        log.info("updateInventoryChange – {} lagerändringar", productIds.length);
+
+        // Uttaget hålls i minnet under transaktionen så att det inte kan ta mängd som andra har reserverat
+        Map<Long, Integer> withdrawals = unreservedWithdrawals(productIds, deltas, reserved);
+        if (!withdrawals.isEmpty()) {
+            inventoryAvailability.hold(withdrawals);
+            // Släpps efter att stockChanged har sänkt saldot vid commit, eller direkt vid rollback
+            TransactionCallbacks.afterCompletion(() -> inventoryAvailability.release(withdrawals));
         }
+
+        // Flaggade heta produkter ändras i minnet; resten går i en batch mot databasen
+        List<Integer> appliedHot = new ArrayList<>();
+        List<Integer> cold = new ArrayList<>();
+        // Databasen rullar tillbaka sina rader, även när en yttre transaktion eller commit misslyckas efter att
+        // metoden returnerat; ändringarna i minnet backas då på samma sätt
+        boolean undoOnRollback = TransactionCallbacks.registerAfterRollback(
+                () -> undoHotStockDeltas(productIds, deltas, appliedHot));
+        try {
+            for (int i = 0; i < productIds.length; i++) {
+                HotSkuInventory.Outcome outcome = hotSkuInventory.tryApply(productIds[i], deltas[i]);
+                if (outcome == HotSkuInventory.Outcome.APPLIED) {
+                    appliedHot.add(i);
+                } else if (outcome == HotSkuInventory.Outcome.NOT_HOT) {
+                    cold.add(i);
+                } else {
+                    throw notEnoughHotStock(productIds[i], deltas[i]);
+                }
+            }
+            if (!cold.isEmpty()) {
+                applyColdStockDeltas(productIds, deltas, cold);
+                moveToHot(productIds, deltas, cold, appliedHot);
+            }
+        } catch (RuntimeException e) {
+            if (!undoOnRollback) {
+                undoHotStockDeltas(productIds, deltas, appliedHot);
+            }
+            throw e;
+        }
+
+        Map<Long, Product> productsById = new HashMap<>();
+        productRepository.findAllById(Arrays.stream(productIds).boxed().collect(Collectors.toSet()))
+                .forEach(product -> productsById.put(product.getId(), product));
+        List<Product> productList = new ArrayList<>(productIds.length);
+        // Heta produkter har aktuellt saldo i minnet, inte i databasen
+        productsById.replaceAll((productId, product) -> hotSkuInventory.withLiveStock(product));
+        for (long productId : productIds) {
+            productList.add(productsById.get(productId));
+        }
+        try {
+            inventoryLedgerService.record(productIds, deltas, quantitiesAfter(productIds, deltas, productsById));
+            // Journalen skrivs här och inte vid commit, så att fel syns för anroparen innan metoden returnerar
+            entityManager.flush();
+        } catch (RuntimeException e) {
+            if (!undoOnRollback) {
+                undoHotStockDeltas(productIds, deltas, appliedHot);
+            }
+            throw e;
+        }
+        for (Product changed : productsById.values()) {
+            productColumnIndex.update(changed);
+            inventoryAvailability.stockChanged(changed);
+            lowStockMonitor.stockChanged(changed);
+        }
+        productResponseCache.invalidate(productsById.keySet());
+        catalogChangeCounters.productsChanged(productsById.values().stream().map(changed -> changed.getCategory().getId()).collect(Collectors.toList()));
         return productList;
     }
-}
\ No newline at end of file
+
+    private void applyColdStockDeltas(long[] productIds, int[] deltas, List<Integer> lines) {
+        long[] coldIds = new long[lines.size()];
+        int[] coldDeltas = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            coldIds[i] = productIds[lines.get(i)];
+            coldDeltas[i] = deltas[lines.get(i)];
+        }
+        int[] updated = productRepository.applyStockDeltas(coldIds, coldDeltas);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                // Undantaget rullar tillbaka de rader i batchen som redan gick igenom
+                Product product = getProductById(coldIds[i]);
+                log.warn("updateInventoryChange – otillräckligt lager för produktId={}, ändring={}", coldIds[i], coldDeltas[i]);
+                throw new NotEnoughStockException("Not enough stock of " + product.getName() + ". Stock quantity: " + product.getStockQuantity());
+            }
+        }
+    }
+
+    /**
+     * En produkt som flaggades som het medan raden väntade på radlåset fick sitt saldo i minnet från databasen
+     * före den här ändringen. Ändringen backas då i databasen och görs i minnet i stället.
+     */
+    private void moveToHot(long[] productIds, int[] deltas, List<Integer> cold, List<Integer> appliedHot) {
+        List<Integer> turnedHot = cold.stream().filter(i -> hotSkuInventory.isHot(productIds[i])).toList();
+        if (turnedHot.isEmpty()) {
+            return;
+        }
+        long[] hotIds = new long[turnedHot.size()];
+        int[] reversed = new int[turnedHot.size()];
+        for (int i = 0; i < turnedHot.size(); i++) {
+            hotIds[i] = productIds[turnedHot.get(i)];
+            reversed[i] = -deltas[turnedHot.get(i)];
+        }
+        // Raden är låst av den här transaktionen sedan ändringen, så att backa den går alltid
+        productRepository.applyStockDeltas(hotIds, reversed);
+        for (int i : turnedHot) {
+            HotSkuInventory.Outcome outcome = hotSkuInventory.tryApply(productIds[i], deltas[i]);
+            if (outcome == HotSkuInventory.Outcome.APPLIED) {
+                appliedHot.add(i);
+            } else if (outcome == HotSkuInventory.Outcome.NOT_HOT) {
+                // Avflaggad igen under tiden
+                applyColdStockDeltas(productIds, deltas, List.of(i));
+            } else {
+                throw notEnoughHotStock(productIds[i], deltas[i]);
+            }
+        }
+    }
+
+    private NotEnoughStockException notEnoughHotStock(long productId, int delta) {
+        log.warn("updateInventoryChange – otillräckligt lager för het produktId={}, ändring={}", productId, delta);
+        return new NotEnoughStockException("Not enough stock of " + getProductById(productId).getName()
+                + ". Stock quantity: " + hotSkuInventory.stock(productId));
+    }
+
+    // Nettouttaget per produkt utöver det anroparen redan har reserverat
+    private static Map<Long, Integer> unreservedWithdrawals(long[] productIds, int[] deltas, Map<Long, Integer> reserved) {
+        Map<Long, Integer> net = new LinkedHashMap<>();
+        for (int i = 0; i < productIds.length; i++) {
+            net.merge(productIds[i], deltas[i], Integer::sum);
+        }
+        Map<Long, Integer> withdrawals = new LinkedHashMap<>();
+        net.forEach((productId, delta) -> {
+            int unreserved = -delta - reserved.getOrDefault(productId, 0);
+            if (unreserved > 0) {
+                withdrawals.put(productId, unreserved);
+            }
+        });
+        return withdrawals;
+    }
+
+    // Transaktionen rullar tillbaka databasraderna; ändringarna i minnet backas för hand, och det får inte nekas.
+    // Körs en gång, antingen efter rollback eller direkt när metoden anropas utan transaktion
+    private void undoHotStockDeltas(long[] productIds, int[] deltas, List<Integer> appliedHot) {
+        Set<Long> undone = new HashSet<>();
+        for (int i : appliedHot) {
+            hotSkuInventory.compensate(productIds[i], -deltas[i]);
+            undone.add(productIds[i]);
+        }
+        // Ett svar som hann byggas med det backade saldot i minnet får inte ligga kvar
+        productResponseCache.invalidate(undone);
+    }
+
+    /**
+     * Saldot efter varje rad, räknat baklänges från slutsaldot så att flera rader för samma produkt får var sitt
+     * mellanled. Kalla produkter är radlåsta av anropet och ger exakta värden; för heta produkter är slutsaldot
+     * ögonblicksvärdet i minnet och kan redan innehålla samtidiga ändringar.
+     */
+    private static int[] quantitiesAfter(long[] productIds, int[] deltas, Map<Long, Product> productsById) {
+        Map<Long, Integer> running = new HashMap<>();
+        productsById.forEach((productId, product) -> running.put(productId, product.getStockQuantity()));
+        int[] quantitiesAfter = new int[productIds.length];
+        for (int i = productIds.length - 1; i >= 0; i--) {
+            int quantity = running.get(productIds[i]);
+            quantitiesAfter[i] = quantity;
+            running.put(productIds[i], quantity - deltas[i]);
+        }
+        return quantitiesAfter;
+    }
+}
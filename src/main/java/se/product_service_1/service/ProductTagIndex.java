@@ -0,0 +1,86 @@
+package se.product_service_1.service;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.repository.ProductTagRepository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Håller {@link TagBitmapIndex} i synk med product_tags. Indexet byggs från databasen vid uppstart
+ * och uppdateras sedan av taggkopplingarna i {@link ProductService} och {@link TagService} efter commit.
+ */
+@Component
+public class ProductTagIndex extends RebuildableIndex<TagBitmapIndex> {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductTagIndex.class);
+
+    private final ProductTagRepository productTagRepository;
+
+    public ProductTagIndex(ProductTagRepository productTagRepository) {
+        super(new TagBitmapIndex());
+        this.productTagRepository = productTagRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        log.info("rebuild - bygger tagg-index från product_tags");
+        long[] links = new long[1];
+        rebuildWith(() -> {
+            TagBitmapIndex fresh = new TagBitmapIndex();
+            try (Stream<Object[]> rows = productTagRepository.streamAllTagLinks()) {
+                for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                    fresh.add((Long) row[0], (Long) row[1]);
+                    links[0]++;
+                }
+            }
+            return fresh;
+        });
+        log.info("rebuild - tagg-index klart, antal kopplingar={}", links[0]);
+    }
+
+    public Roaring64Bitmap union(Collection<Long> tagIds) {
+        return live().union(tagIds);
+    }
+
+    public Roaring64Bitmap intersection(Collection<Long> tagIds) {
+        return live().intersection(tagIds);
+    }
+
+    public Map<Long, Long> productCounts(Collection<Long> tagIds) {
+        return live().productCounts(tagIds);
+    }
+
+    public Map<Long, Long> topTagCounts(Roaring64Bitmap productIds, int limit) {
+        return live().topTagCounts(productIds, limit);
+    }
+
+    public void addLink(Long tagId, Long productId) {
+        afterCommit(index -> index.add(tagId, productId));
+    }
+
+    public void removeLink(Long tagId, Long productId) {
+        afterCommit(index -> index.remove(tagId, productId));
+    }
+
+    public void removeProduct(Long productId) {
+        afterCommit(index -> index.removeProduct(productId));
+    }
+
+    public void removeTag(Long tagId) {
+        afterCommit(index -> index.removeTag(tagId));
+    }
+
+    @Override
+    protected void replace(TagBitmapIndex live, TagBitmapIndex fresh) {
+        live.replaceWith(fresh);
+    }
+}
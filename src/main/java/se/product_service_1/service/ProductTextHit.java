@@ -0,0 +1,17 @@
+package se.product_service_1.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * En träff från fulltextsökningen: produktens id, BM25-poäng och markerade fragment per fält.
+ */
+@Data
+@AllArgsConstructor
+public class ProductTextHit {
+    private Long productId;
+    private float score;
+    private Map<String, String> highlights;
+}
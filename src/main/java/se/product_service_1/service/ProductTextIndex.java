@@ -0,0 +1,308 @@
+package se.product_service_1.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.ProductRepository;
+import se.product_service_1.repository.ProductTagRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Inbäddat Lucene-index över produktnamn, kategori och taggar. Rankning sker med BM25 (Lucenes standard),
+ * varje sökord matchas även med fuzzy-frågor för att tåla stavfel och träffarna markeras i ett fragment per fält.
+ * Indexet hålls nära realtid av skrivvägarna i {@link ProductService} och {@link TagService} efter commit.
+ */
+@Component
+public class ProductTextIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductTextIndex.class);
+
+    static final String FIELD_ID = "id";
+    static final String FIELD_NAME = "name";
+    static final String FIELD_CATEGORY = "category";
+    static final String FIELD_TAGS = "tags";
+    private static final Map<String, Float> FIELD_BOOSTS = Map.of(FIELD_NAME, 3f, FIELD_TAGS, 2f, FIELD_CATEGORY, 1f);
+    private static final int REBUILD_CHUNK_SIZE = 500;
+
+    private final ProductRepository productRepository;
+    private final ProductTagRepository productTagRepository;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final Timer searchTimer;
+
+    public ProductTextIndex(ProductRepository productRepository, ProductTagRepository productTagRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${product.text-index.path:}") String indexPath) throws IOException {
+        this.productRepository = productRepository;
+        this.productTagRepository = productTagRepository;
+        // Utan sökväg ligger indexet i minnet och byggs om vid varje uppstart
+        this.directory = indexPath.isBlank() ? new ByteBuffersDirectory() : FSDirectory.open(Paths.get(indexPath));
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(writer, null);
+        this.searchTimer = Timer.builder("product.text_search")
+                .description("Latens för fulltextsökning av produkter")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void buildIfEmpty() {
+        if (writer.getDocStats().numDocs == 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Bygger om hela indexet från databasen. Läser produkterna som en ström och taggarna per chunk.
+     */
+    @Transactional(readOnly = true)
+    public long rebuild() {
+        log.info("rebuild - bygger om fulltextindex för produkter");
+        long indexed = 0;
+        try {
+            writer.deleteAll();
+            try (Stream<Product> stream = productRepository.streamByIdGreaterThan(0L)) {
+                List<Product> chunk = new ArrayList<>(REBUILD_CHUNK_SIZE);
+                for (Product product : (Iterable<Product>) stream::iterator) {
+                    chunk.add(product);
+                    if (chunk.size() == REBUILD_CHUNK_SIZE) {
+                        indexed += write(chunk);
+                        chunk.clear();
+                    }
+                }
+                indexed += write(chunk);
+            }
+            writer.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("rebuild - fulltextindex klart, antal produkter={}", indexed);
+        return indexed;
+    }
+
+    /**
+     * Indexerar om produkterna efter commit (eller direkt utan transaktion) med aktuella namn, kategori och taggar.
+     */
+    public void reindex(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(productIds);
+        afterCommit(() -> {
+            List<Product> products = productRepository.findAllById(ids);
+            write(products);
+            // Produkter som inte längre finns ska inte heller finnas i indexet
+            Set<Long> missing = new HashSet<>(ids);
+            products.forEach(product -> missing.remove(product.getId()));
+            deleteDocuments(missing);
+            searcherManager.maybeRefresh();
+        });
+    }
+
+    public void reindex(Long productId) {
+        reindex(List.of(productId));
+    }
+
+    public void remove(Long productId) {
+        afterCommit(() -> {
+            deleteDocuments(List.of(productId));
+            searcherManager.maybeRefresh();
+        });
+    }
+
+    public List<ProductTextHit> search(String queryText, int limit) {
+        return searchTimer.record(() -> {
+            Query query = buildQuery(queryText);
+            if (query == null) {
+                return new ArrayList<ProductTextHit>();
+            }
+            try {
+                IndexSearcher searcher = searcherManager.acquire();
+                try {
+                    TopDocs topDocs = searcher.search(query, limit);
+                    Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter("<em>", "</em>"), new QueryScorer(query));
+                    List<ProductTextHit> hits = new ArrayList<>(topDocs.scoreDocs.length);
+                    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                        Document document = searcher.storedFields().document(scoreDoc.doc);
+                        hits.add(new ProductTextHit(Long.valueOf(document.get(FIELD_ID)), scoreDoc.score,
+                                highlight(highlighter, document)));
+                    }
+                    return hits;
+                } finally {
+                    searcherManager.release(searcher);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    // Varje sökord måste matcha i något fält, exakt eller med upp till två stavfel
+    private Query buildQuery(String queryText) {
+        List<String> terms = analyze(queryText);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for (String term : terms) {
+            BooleanQuery.Builder termQuery = new BooleanQuery.Builder();
+            int maxEdits = term.length() > 5 ? 2 : term.length() > 2 ? 1 : 0;
+            FIELD_BOOSTS.forEach((field, boost) -> {
+                termQuery.add(new BoostQuery(new TermQuery(new Term(field, term)), boost * 2), BooleanClause.Occur.SHOULD);
+                if (maxEdits > 0) {
+                    termQuery.add(new BoostQuery(new FuzzyQuery(new Term(field, term), maxEdits), boost), BooleanClause.Occur.SHOULD);
+                }
+            });
+            query.add(termQuery.build(), BooleanClause.Occur.MUST);
+        }
+        return query.build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        try (TokenStream tokens = analyzer.tokenStream(FIELD_NAME, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                terms.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    private Map<String, String> highlight(Highlighter highlighter, Document document) throws IOException {
+        Map<String, String> highlights = new LinkedHashMap<>();
+        for (String field : List.of(FIELD_NAME, FIELD_CATEGORY, FIELD_TAGS)) {
+            String[] values = document.getValues(field);
+            if (values.length == 0) {
+                continue;
+            }
+            try {
+                String fragment = highlighter.getBestFragment(analyzer, field, String.join(", ", values));
+                if (fragment != null) {
+                    highlights.put(field, fragment);
+                }
+            } catch (InvalidTokenOffsetsException e) {
+                log.warn("highlight - kunde inte markera fält {}: {}", field, e.getMessage());
+            }
+        }
+        return highlights;
+    }
+
+    private long write(List<Product> products) throws IOException {
+        if (products.isEmpty()) {
+            return 0;
+        }
+        Map<Long, List<String>> tagNamesByProductId = new HashMap<>();
+        for (Object[] row : productTagRepository.findTagNamesByProductIds(
+                products.stream().map(Product::getId).toList())) {
+            tagNamesByProductId.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        for (Product product : products) {
+            writer.updateDocument(new Term(FIELD_ID, product.getId().toString()),
+                    toDocument(product, tagNamesByProductId.getOrDefault(product.getId(), List.of())));
+        }
+        return products.size();
+    }
+
+    private void deleteDocuments(Collection<Long> productIds) throws IOException {
+        for (Long productId : productIds) {
+            writer.deleteDocuments(new Term(FIELD_ID, productId.toString()));
+        }
+    }
+
+    private static Document toDocument(Product product, List<String> tagNames) {
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, product.getId().toString(), Field.Store.YES));
+        document.add(new TextField(FIELD_NAME, product.getName(), Field.Store.YES));
+        if (product.getCategory() != null) {
+            document.add(new TextField(FIELD_CATEGORY, product.getCategory().getName(), Field.Store.YES));
+        }
+        for (String tagName : tagNames) {
+            document.add(new TextField(FIELD_TAGS, tagName, Field.Store.YES));
+        }
+        return document;
+    }
+
+    private void afterCommit(IndexUpdate update) {
+        Runnable task = () -> {
+            try {
+                update.run();
+            } catch (IOException e) {
+                // Indexet kan alltid byggas om; en misslyckad uppdatering får inte fälla skrivningen
+                log.error("afterCommit - kunde inte uppdatera fulltextindex", e);
+            }
+        };
+        TransactionCallbacks.afterCommit(task);
+    }
+
+    @FunctionalInterface
+    private interface IndexUpdate {
+        void run() throws IOException;
+    }
+}
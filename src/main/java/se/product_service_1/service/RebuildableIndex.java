@@ -0,0 +1,81 @@
+package se.product_service_1.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Gemensam grund för index i minnet som byggs från databasen och sedan hålls i synk av skrivvägarna
+ * efter commit. Ändringar som kommer medan ett nytt index byggs spelas upp på det nya innan det ersätter
+ * det levande, så att ingen commit går förlorad i bytet.
+ * Tills första bygget är klart svarar {@link #isReady()} false och anroparen får gå mot databasen.
+ */
+abstract class RebuildableIndex<T> {
+
+    private final T live;
+    // Ändringar som sker medan indexet byggs om spelas upp på det nya indexet innan det tas i bruk
+    private final List<Consumer<T>> pendingDuringRebuild = new ArrayList<>();
+    private boolean rebuilding;
+    private volatile boolean ready;
+
+    protected RebuildableIndex(T live) {
+        this.live = live;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    protected T live() {
+        return live;
+    }
+
+    /**
+     * Bygger ett nytt index med {@code build} och ersätter det levande med det.
+     */
+    protected void rebuildWith(Supplier<T> build) {
+        synchronized (this) {
+            rebuilding = true;
+            pendingDuringRebuild.clear();
+        }
+        T fresh;
+        try {
+            fresh = build.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                rebuilding = false;
+                pendingDuringRebuild.clear();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pendingDuringRebuild.forEach(change -> change.accept(fresh));
+            pendingDuringRebuild.clear();
+            replace(live, fresh);
+            rebuilding = false;
+            ready = true;
+        }
+    }
+
+    /**
+     * Flyttar innehållet i {@code fresh} till {@code live}.
+     */
+    protected abstract void replace(T live, T fresh);
+
+    /**
+     * Tillämpar ändringen efter commit, eller direkt om ingen transaktion pågår.
+     */
+    protected void afterCommit(Consumer<T> change) {
+        TransactionCallbacks.afterCommit(() -> apply(change));
+    }
+
+    private void apply(Consumer<T> change) {
+        synchronized (this) {
+            if (rebuilding) {
+                pendingDuringRebuild.add(change);
+            }
+        }
+        change.accept(live);
+    }
+}
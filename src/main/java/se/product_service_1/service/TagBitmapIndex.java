@@ -0,0 +1,185 @@
+package se.product_service_1.service;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverterat index från tagg-id till en komprimerad bitmap (Roaring) av produkt-id:n.
+ * Läsningar delar ett läslås och bygger alltid en ny bitmap, så anroparen får ett resultat
+ * som inte påverkas av senare skrivningar.
+ */
+public class TagBitmapIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Roaring64Bitmap> productsByTagId = new HashMap<>();
+
+    public void add(long tagId, long productId) {
+        lock.writeLock().lock();
+        try {
+            productsByTagId.computeIfAbsent(tagId, id -> new Roaring64Bitmap()).addLong(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long tagId, long productId) {
+        lock.writeLock().lock();
+        try {
+            Roaring64Bitmap products = productsByTagId.get(tagId);
+            if (products != null) {
+                products.removeLong(productId);
+                if (products.isEmpty()) {
+                    productsByTagId.remove(tagId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeProduct(long productId) {
+        lock.writeLock().lock();
+        try {
+            productsByTagId.values().forEach(products -> products.removeLong(productId));
+            productsByTagId.values().removeIf(Roaring64Bitmap::isEmpty);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeTag(long tagId) {
+        lock.writeLock().lock();
+        try {
+            productsByTagId.remove(tagId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ersätter hela indexet med innehållet i {@code snapshot}, t.ex. efter en ombyggnad från databasen.
+     */
+    public void replaceWith(TagBitmapIndex snapshot) {
+        lock.writeLock().lock();
+        try {
+            productsByTagId = snapshot.productsByTagId;
+            snapshot.productsByTagId = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Antal produkter per tagg. Taggar utan produkter får 0.
+     */
+    public Map<Long, Long> productCounts(Collection<Long> tagIds) {
+        lock.readLock().lock();
+        try {
+            Map<Long, Long> counts = new HashMap<>();
+            for (Long tagId : tagIds) {
+                Roaring64Bitmap products = productsByTagId.get(tagId);
+                counts.put(tagId, products != null ? products.getLongCardinality() : 0L);
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * De {@code limit} taggar som flest av {@code productIds} bär, med antal, i fallande ordning.
+     * {@code null} räknar över alla produkter. En tagg vars bitmap är mindre än det sämsta antalet
+     * i topplistan kan inte ta sig in och hoppas över utan snittberäkning.
+     */
+    public Map<Long, Long> topTagCounts(Roaring64Bitmap productIds, int limit) {
+        lock.readLock().lock();
+        try {
+            PriorityQueue<long[]> top = new PriorityQueue<>(Comparator.comparingLong((long[] entry) -> entry[1]));
+            for (Map.Entry<Long, Roaring64Bitmap> entry : productsByTagId.entrySet()) {
+                Roaring64Bitmap products = entry.getValue();
+                if (top.size() == limit && products.getLongCardinality() <= top.peek()[1]) {
+                    continue;
+                }
+                long count = productIds == null
+                        ? products.getLongCardinality()
+                        : Roaring64Bitmap.andCardinality(products, productIds);
+                if (count == 0) {
+                    continue;
+                }
+                if (top.size() < limit) {
+                    top.add(new long[]{entry.getKey(), count});
+                } else if (count > top.peek()[1]) {
+                    top.poll();
+                    top.add(new long[]{entry.getKey(), count});
+                }
+            }
+
+            List<long[]> sorted = new ArrayList<>(top);
+            sorted.sort((a, b) -> Long.compare(b[1], a[1]));
+            Map<Long, Long> counts = new LinkedHashMap<>();
+            sorted.forEach(entry -> counts.put(entry[0], entry[1]));
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Produkter som har minst en av taggarna (OR).
+     */
+    public Roaring64Bitmap union(Collection<Long> tagIds) {
+        lock.readLock().lock();
+        try {
+            Roaring64Bitmap result = new Roaring64Bitmap();
+            for (Long tagId : tagIds) {
+                Roaring64Bitmap products = productsByTagId.get(tagId);
+                if (products != null) {
+                    result.or(products);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Produkter som har alla taggarna (AND). Snittet börjar med den minsta bitmapen.
+     */
+    public Roaring64Bitmap intersection(Collection<Long> tagIds) {
+        lock.readLock().lock();
+        try {
+            List<Roaring64Bitmap> bitmaps = new ArrayList<>(tagIds.size());
+            for (Long tagId : tagIds) {
+                Roaring64Bitmap products = productsByTagId.get(tagId);
+                if (products == null) {
+                    return new Roaring64Bitmap();
+                }
+                bitmaps.add(products);
+            }
+            if (bitmaps.isEmpty()) {
+                return new Roaring64Bitmap();
+            }
+            bitmaps.sort((a, b) -> Long.compare(a.getLongCardinality(), b.getLongCardinality()));
+
+            Roaring64Bitmap result = new Roaring64Bitmap();
+            result.or(bitmaps.get(0));
+            for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+                result.and(bitmaps.get(i));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package se.product_service_1.service;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import se.product_service_1.model.Tag;
+import se.product_service_1.repository.TagRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * N-gram-index över normaliserade taggnamn för skiftlägesokänslig delsträngs- och prefixsökning utan
+ * tabellskanning. Alla n-gram med längd 1–3 indexeras; längre söktermer slås upp som snittet av sina
+ * trigram och verifieras sedan mot namnet. Träffar sorteras med exakt träff först, sedan prefix och sist delsträng.
+ */
+@Component
+public class TagNameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TagNameIndex.class);
+    private static final int GRAM_LENGTH = 3;
+
+    public static final int RANK_EXACT = 0;
+    public static final int RANK_PREFIX = 1;
+    public static final int RANK_SUBSTRING = 2;
+
+    private final TagRepository tagRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Tag> tagsById = new HashMap<>();
+    private Map<String, Roaring64Bitmap> tagIdsByGram = new HashMap<>();
+    // Taggar som läggs till under en ombyggnad läggs även in i det nya indexet
+    private List<Tag> addedDuringRebuild;
+    private volatile boolean ready;
+
+    public TagNameIndex(TagRepository tagRepository) {
+        this.tagRepository = tagRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${tag.name-index.refresh-interval-ms:300000}",
+            initialDelayString = "${tag.name-index.refresh-interval-ms:300000}")
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            addedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<Tag> tags = tagRepository.findAll();
+        Map<Long, Tag> freshTags = new HashMap<>();
+        Map<String, Roaring64Bitmap> freshGrams = new HashMap<>();
+        tags.forEach(tag -> addTo(freshTags, freshGrams, tag));
+
+        lock.writeLock().lock();
+        try {
+            addedDuringRebuild.forEach(tag -> addTo(freshTags, freshGrams, tag));
+            addedDuringRebuild = null;
+            tagsById = freshTags;
+            tagIdsByGram = freshGrams;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("rebuild - taggnamn-index byggt, antal taggar={}", tags.size());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void add(Collection<Tag> tags) {
+        lock.writeLock().lock();
+        try {
+            for (Tag tag : tags) {
+                if (!tagsById.containsKey(tag.getId())) {
+                    addTo(tagsById, tagIdsByGram, tag);
+                }
+                if (addedDuringRebuild != null) {
+                    addedDuringRebuild.add(tag);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long tagId) {
+        lock.writeLock().lock();
+        try {
+            Tag tag = tagsById.remove(tagId);
+            if (tag != null) {
+                for (String gram : grams(normalize(tag.getName()))) {
+                    Roaring64Bitmap ids = tagIdsByGram.get(gram);
+                    if (ids != null) {
+                        ids.removeLong(tagId);
+                        if (ids.isEmpty()) {
+                            tagIdsByGram.remove(gram);
+                        }
+                    }
+                }
+            }
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.removeIf(added -> added.getId().equals(tagId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Taggar vars namn innehåller {@code term}, oavsett skiftläge, sorterade efter relevans och sedan namn.
+     */
+    public List<Tag> search(String term) {
+        String normalizedTerm = normalize(term);
+        List<Tag> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (normalizedTerm.isEmpty()) {
+                matches.addAll(tagsById.values());
+            } else {
+                Roaring64Bitmap candidates = candidates(normalizedTerm);
+                candidates.forEach(tagId -> {
+                    Tag tag = tagsById.get(tagId);
+                    if (tag != null && normalize(tag.getName()).contains(normalizedTerm)) {
+                        matches.add(tag);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(relevanceOrder(term));
+        return matches;
+    }
+
+    /**
+     * 0 för exakt träff, 1 för prefix och 2 för övriga delsträngsträffar.
+     */
+    public static int rank(String tagName, String term) {
+        String name = normalize(tagName);
+        String normalizedTerm = normalize(term);
+        if (name.equals(normalizedTerm)) {
+            return RANK_EXACT;
+        }
+        return name.startsWith(normalizedTerm) ? RANK_PREFIX : RANK_SUBSTRING;
+    }
+
+    public static Comparator<Tag> relevanceOrder(String term) {
+        return Comparator.<Tag>comparingInt(tag -> rank(tag.getName(), term))
+                .thenComparing(Tag::getName);
+    }
+
+    // Anropas med läslåset taget
+    private Roaring64Bitmap candidates(String normalizedTerm) {
+        if (normalizedTerm.length() <= GRAM_LENGTH) {
+            Roaring64Bitmap ids = tagIdsByGram.get(normalizedTerm);
+            return ids != null ? ids : new Roaring64Bitmap();
+        }
+
+        List<Roaring64Bitmap> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= normalizedTerm.length(); i++) {
+            Roaring64Bitmap ids = tagIdsByGram.get(normalizedTerm.substring(i, i + GRAM_LENGTH));
+            if (ids == null) {
+                return new Roaring64Bitmap();
+            }
+            postings.add(ids);
+        }
+        postings.sort(Comparator.comparingLong(Roaring64Bitmap::getLongCardinality));
+        Roaring64Bitmap result = new Roaring64Bitmap();
+        result.or(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.and(postings.get(i));
+        }
+        return result;
+    }
+
+    private static void addTo(Map<Long, Tag> tags, Map<String, Roaring64Bitmap> gramIndex, Tag tag) {
+        tags.put(tag.getId(), tag);
+        for (String gram : grams(normalize(tag.getName()))) {
+            gramIndex.computeIfAbsent(gram, g -> new Roaring64Bitmap()).addLong(tag.getId());
+        }
+    }
+
+    private static List<String> grams(String name) {
+        List<String> grams = new ArrayList<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= name.length(); i++) {
+                grams.add(name.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
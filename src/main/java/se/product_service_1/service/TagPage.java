@@ -0,0 +1,20 @@
+package se.product_service_1.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import se.product_service_1.model.Tag;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * En sida taggar med antal produkter per tagg på sidan. {@code totalCount} är antalet taggar
+ * som matchar utan paginering.
+ */
+@Data
+@AllArgsConstructor
+public class TagPage {
+    private List<Tag> tags;
+    private Map<Long, Long> productCounts;
+    private long totalCount;
+}
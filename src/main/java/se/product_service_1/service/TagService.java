@@ -1,25 +1,78 @@
 package se.product_service_1.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.product_service_1.exception.BadRequestException;
 import se.product_service_1.exception.ResourceNotFoundException;
 import se.product_service_1.model.Tag;
+import se.product_service_1.repository.ProductTagRepository;
 import se.product_service_1.repository.TagRepository;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.HashSet;
+import java.util.TreeMap;
 
 @Service
 public class TagService {
 
     private static final Logger log = LoggerFactory.getLogger(TagService.class);
+    private static final int TAG_DICTIONARY_MAX_SIZE = 100_000;
+    // Håller IN-listan i den grupperade räkningen under databasernas gränser för antal parametrar
+    private static final int PRODUCT_COUNT_CHUNK_SIZE = 1000;
+    private static final String SORT_POPULARITY = "popularity";
+    private static final String SORT_NAME = "name";
     private final TagRepository tagRepository;
+    private final ProductTagRepository productTagRepository;
+    private final ProductResponseCache productResponseCache;
+    private final ProductTagIndex productTagIndex;
+    private final TagNameIndex tagNameIndex;
+    private final ProductTextIndex productTextIndex;
+    private final CatalogChangeCounters catalogChangeCounters;
+    // Nya taggar skapas i en egen transaktion så att en krock med en samtidig skapare inte förstör anroparens transaktion
+    private final TransactionTemplate newTransaction;
+    // Taggar som raderas på en annan nod försvinner härifrån senast när posten går ut
+    private final Cache<String, Tag> tagsByName;
 
-    public TagService(TagRepository tagRepository) {
+    public TagService(TagRepository tagRepository, ProductTagRepository productTagRepository,
+                      ProductResponseCache productResponseCache, ProductTagIndex productTagIndex,
+                      TagNameIndex tagNameIndex, ProductTextIndex productTextIndex,
+                      CatalogChangeCounters catalogChangeCounters, PlatformTransactionManager transactionManager,
+                      @Value("${tag.cache.ttl-seconds:300}") long cacheTtlSeconds) {
+        this.tagsByName = Caffeine.newBuilder()
+                .maximumSize(TAG_DICTIONARY_MAX_SIZE)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .build();
         this.tagRepository = tagRepository;
+        this.productTagRepository = productTagRepository;
+        this.productResponseCache = productResponseCache;
+        this.productTagIndex = productTagIndex;
+        this.tagNameIndex = tagNameIndex;
+        this.productTextIndex = productTextIndex;
+        this.catalogChangeCounters = catalogChangeCounters;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
     public List<Tag> getAllTags() {
@@ -29,13 +82,153 @@ public class TagService {
         return tags;
     }
 
+    /**
+     * En sida av alla taggar, sorterad efter namn, popularitet (antal produkter) eller id. Sorteringen och
+     * pagineringen görs i databasen; utan {@code size} returneras alla taggar.
+     */
+    public TagPage getTagPage(String sortBy, Integer page, Integer size) {
+        log.debug("getTagPage - sortBy={}, page={}, size={}", sortBy, page, size);
+        Pageable pageable = pageable(sortBy, page, size);
+        if (SORT_POPULARITY.equals(sortBy)) {
+            return popularityPage(tagRepository.findPageByPopularity(pageable));
+        }
+        Pageable sorted = withSort(pageable, Sort.by(SORT_NAME.equals(sortBy) ? "name" : "id"));
+        return countedPage(tagRepository.findAll(sorted));
+    }
+
+    /**
+     * En sida av taggarna som matchar söktermen. Sorteras efter namn eller popularitet i databasen;
+     * utan sortering mest relevanta först, och då pagineras träffarna från {@link #searchTagsByName}.
+     */
+    public TagPage searchTagPage(String searchTerm, String sortBy, Integer page, Integer size) {
+        log.info("searchTagPage - söka taggar med term: {}, sortBy={}", searchTerm, sortBy);
+        Pageable pageable = pageable(sortBy, page, size);
+        if (SORT_POPULARITY.equals(sortBy)) {
+            return popularityPage(tagRepository.findPageByNameContainingOrderByPopularity(searchTerm, pageable));
+        }
+        if (SORT_NAME.equals(sortBy)) {
+            return countedPage(tagRepository.findByNameContainingIgnoreCase(searchTerm, withSort(pageable, Sort.by("name"))));
+        }
+        // Relevansordningen finns bara i minnet; bara sidans taggar räknas
+        List<Tag> matches = searchTagsByName(searchTerm);
+        List<Tag> slice = matches;
+        if (pageable.isPaged()) {
+            int from = (int) Math.min(pageable.getOffset(), matches.size());
+            slice = matches.subList(from, Math.min(from + pageable.getPageSize(), matches.size()));
+        }
+        return new TagPage(slice, getProductCounts(slice.stream().map(Tag::getId).toList()), matches.size());
+    }
+
+    private static Pageable pageable(String sortBy, Integer page, Integer size) {
+        if (sortBy != null && !SORT_POPULARITY.equals(sortBy) && !SORT_NAME.equals(sortBy)) {
+            throw new BadRequestException("Okänd sortering: " + sortBy + ". Tillåtna värden är name och popularity.");
+        }
+        if (size == null) {
+            return Pageable.unpaged();
+        }
+        int pageNumber = page != null ? page : 0;
+        if (size < 1 || pageNumber < 0) {
+            throw new BadRequestException("size måste vara minst 1 och page får inte vara negativ.");
+        }
+        return PageRequest.of(pageNumber, size);
+    }
+
+    private static Pageable withSort(Pageable pageable, Sort sort) {
+        return pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort) : Pageable.unpaged(sort);
+    }
+
+    private TagPage popularityPage(Page<Object[]> rows) {
+        List<Tag> tags = new ArrayList<>(rows.getNumberOfElements());
+        Map<Long, Long> productCounts = new HashMap<>();
+        for (Object[] row : rows) {
+            Tag tag = (Tag) row[0];
+            tags.add(tag);
+            productCounts.put(tag.getId(), (Long) row[1]);
+        }
+        return new TagPage(tags, productCounts, rows.getTotalElements());
+    }
+
+    private TagPage countedPage(Page<Tag> tags) {
+        List<Tag> content = tags.getContent();
+        return new TagPage(content, getProductCounts(content.stream().map(Tag::getId).toList()), tags.getTotalElements());
+    }
+
     public Tag getTagByName(String name) {
         log.info("getTagByName - hämta tagg med namn: {}", name);
-        return tagRepository.findByName(name)
-                .orElseThrow(() -> {
-                    log.warn("getTagByName - ingen tagg hittades för namn: {}", name);
-                    return new ResourceNotFoundException("Tagg med namn '" + name + "' finns inte");
-                });
+        Tag tag = getTagsByNames(Collections.singletonList(name)).get(name);
+        if (tag == null) {
+            log.warn("getTagByName - ingen tagg hittades för namn: {}", name);
+            throw new ResourceNotFoundException("Tagg med namn '" + name + "' finns inte");
+        }
+        return tag;
+    }
+
+    /**
+     * Slår upp befintliga taggar via namn. Träffar tas ur uppslagstabellen och resten hämtas
+     * med en enda IN-fråga. Mappen har de efterfrågade namnen som nycklar, även när databasen matchar
+     * en tagg med annat skiftläge; namn som inte finns saknas i den, liksom null och tomma namn.
+     */
+    public Map<String, Tag> getTagsByNames(Collection<String> tagNames) {
+        // Cachen kastar NullPointerException för null-nycklar, och ett tomt namn kan aldrig vara en tagg
+        Set<String> requested = new LinkedHashSet<>();
+        for (String name : tagNames) {
+            if (name != null && !name.isBlank()) {
+                requested.add(name);
+            }
+        }
+        if (requested.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<String, Tag> result = new HashMap<>(tagsByName.getAllPresent(requested));
+        Set<String> missing = new LinkedHashSet<>();
+        for (String name : requested) {
+            if (!result.containsKey(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Tag> found = tagRepository.findByNameIn(missing);
+            Map<String, Tag> foundByName = new HashMap<>();
+            Map<String, Tag> foundByLowerCaseName = new HashMap<>();
+            for (Tag tag : found) {
+                foundByName.put(tag.getName(), tag);
+                foundByLowerCaseName.putIfAbsent(tag.getName().toLowerCase(Locale.ROOT), tag);
+            }
+            for (String name : missing) {
+                // En skiftlägesokänslig kollation i databasen kan ha matchat namnet med en annan stavning
+                Tag tag = foundByName.getOrDefault(name, foundByLowerCaseName.get(name.toLowerCase(Locale.ROOT)));
+                if (tag != null) {
+                    tagsByName.put(name, tag);
+                    result.put(name, tag);
+                }
+            }
+            // Taggen kan ha skapats av en annan nod
+            tagNameIndex.add(found);
+        }
+        return result;
+    }
+
+    /**
+     * Antal produkter per tagg. Räknarna i tagg-indexet hålls uppdaterade av kopplingarna, så databasen
+     * behövs bara innan indexet är byggt och då med en grupperad fråga för alla taggar på en gång.
+     */
+    public Map<Long, Long> getProductCounts(Collection<Long> tagIds) {
+        if (tagIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        if (productTagIndex.isReady()) {
+            return productTagIndex.productCounts(tagIds);
+        }
+        Map<Long, Long> counts = new HashMap<>();
+        tagIds.forEach(tagId -> counts.put(tagId, 0L));
+        List<Long> idList = new ArrayList<>(counts.keySet());
+        for (int from = 0; from < idList.size(); from += PRODUCT_COUNT_CHUNK_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + PRODUCT_COUNT_CHUNK_SIZE, idList.size()));
+            for (Object[] row : productTagRepository.countProductsByTagIds(chunk)) {
+                counts.put((Long) row[0], (Long) row[1]);
+            }
+        }
+        return counts;
     }
 
     public Tag createTag(String name, String description) {
@@ -52,44 +245,159 @@ public class TagService {
                 .build();
 
         Tag savedTag = tagRepository.save(tag);
+        tagsByName.put(savedTag.getName(), savedTag);
+        tagNameIndex.add(List.of(savedTag));
         log.info("createTag - tagg skapad med ID: {}", savedTag.getId());
         return savedTag;
     }
 
+    @Transactional
     public void deleteTag(Long tagId) {
         log.info("deleteTag - radera tagg med ID: {}", tagId);
         if (!tagRepository.existsById(tagId)) {
             throw new ResourceNotFoundException("Tagg med ID " + tagId + " finns inte");
         }
+        // Ta bort kopplingarna och invalidera de produkter som bar taggen
+        List<Long> productIds = productTagRepository.findProductIdsByTagIds(List.of(tagId));
+        productTagRepository.deleteByTagId(tagId);
         tagRepository.deleteById(tagId);
+        // Tas bort först efter commit, så att en läsare under transaktionen inte lägger tillbaka taggen
+        TransactionCallbacks.afterCommit(() -> {
+            tagsByName.asMap().values().removeIf(tag -> tag.getId().equals(tagId));
+            tagNameIndex.remove(tagId);
+        });
+        productTagIndex.removeTag(tagId);
+        productResponseCache.invalidate(productIds);
+        productTextIndex.reindex(productIds);
+        catalogChangeCounters.allChanged();
         log.info("deleteTag - tagg raderad: {}", tagId);
     }
 
+    // Besvaras från tagg-indexet när det är byggt, annars från product_tags
+    public long[] findProductIdsWithAnyTag(List<Long> tagIds) {
+        if (productTagIndex.isReady()) {
+            return productTagIndex.union(tagIds).toArray();
+        }
+        return productTagRepository.findProductIdsByTagIds(tagIds).stream()
+                .mapToLong(Long::longValue).distinct().sorted().toArray();
+    }
+
+    public long[] findProductIdsWithAllTags(List<Long> tagIds) {
+        if (productTagIndex.isReady()) {
+            return productTagIndex.intersection(tagIds).toArray();
+        }
+        return productTagRepository.findProductIdsHavingAllTagIds(tagIds, tagIds.size()).stream()
+                .mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    /**
+     * Produkterna som bär någon av taggarna som matchat mönstret. Produkter med en exakt matchande tagg
+     * kommer först, sedan prefixträffar och sist övriga delsträngsträffar; inom varje grupp i id-ordning.
+     */
+    public long[] findProductIdsRankedByPattern(List<Tag> matchingTags, String tagPattern) {
+        Map<Integer, List<Long>> tagIdsByRank = new TreeMap<>();
+        for (Tag tag : matchingTags) {
+            tagIdsByRank.computeIfAbsent(TagNameIndex.rank(tag.getName(), tagPattern), rank -> new ArrayList<>())
+                    .add(tag.getId());
+        }
+
+        Set<Long> seen = new HashSet<>();
+        List<Long> orderedProductIds = new ArrayList<>();
+        for (List<Long> tagIds : tagIdsByRank.values()) {
+            for (long productId : findProductIdsWithAnyTag(tagIds)) {
+                if (seen.add(productId)) {
+                    orderedProductIds.add(productId);
+                }
+            }
+        }
+        return orderedProductIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Skiftlägesokänslig delsträngssökning på taggnamn, sorterad med exakt träff först, sedan prefix och sist delsträng.
+     * Besvaras från {@link TagNameIndex} och går bara mot databasen innan indexet är byggt.
+     */
     public List<Tag> searchTagsByName(String searchTerm) {
         log.info("searchTagsByName - söka taggar med term: {}", searchTerm);
-        return tagRepository.findByNameContainingIgnoreCase(searchTerm);
+        if (tagNameIndex.isReady()) {
+            return tagNameIndex.search(searchTerm);
+        }
+        List<Tag> tags = new ArrayList<>(tagRepository.findByNameContainingIgnoreCase(searchTerm));
+        tags.sort(TagNameIndex.relevanceOrder(searchTerm));
+        return tags;
     }
 
+    /**
+     * Hämtar eller skapar taggar för alla namn med som mest en IN-fråga och en batch-insert.
+     * Om en annan tråd eller nod hinner skapa samma tagg samtidigt läses den in i stället för att misslyckas.
+     */
     public Set<Tag> getOrCreateTags(List<String> tagNames) {
+        return new HashSet<>(getOrCreateTagsByName(tagNames).values());
+    }
+
+    /**
+     * Som {@link #getOrCreateTags(List)}, men med de efterfrågade namnen som nycklar så att anroparen
+     * kan koppla varje namn till sin tagg även när den lagrade taggen stavas med annat skiftläge.
+     */
+    public Map<String, Tag> getOrCreateTagsByName(List<String> tagNames) {
         log.info("getOrCreateTags - hantera taggar: {}", tagNames);
-        Set<Tag> tags = new HashSet<>();
+        Map<String, Tag> tags = new HashMap<>(getTagsByNames(tagNames));
 
-        for (String tagName : tagNames) {
-            Optional<Tag> existingTag = tagRepository.findByName(tagName);
-            if (existingTag.isPresent()) {
-                tags.add(existingTag.get());
-                log.debug("getOrCreateTags - använder befintlig tagg: {}", tagName);
-            } else {
-                Tag newTag = Tag.builder()
-                        .name(tagName)
-                        .description("Auto-skapad tagg")
-                        .build();
-                Tag savedTag = tagRepository.save(newTag);
-                tags.add(savedTag);
-                log.info("getOrCreateTags - skapade ny tagg: {}", tagName);
+        List<String> missing = new ArrayList<>();
+        for (String tagName : new LinkedHashSet<>(tagNames)) {
+            if (tagName != null && !tags.containsKey(tagName)) {
+                missing.add(tagName);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // Skapade taggar kommer i samma ordning som namnen
+            List<Tag> created = createTags(missing);
+            for (int i = 0; i < missing.size(); i++) {
+                Tag tag = created.get(i);
+                tagsByName.put(tag.getName(), tag);
+                tagsByName.put(missing.get(i), tag);
+                tags.put(missing.get(i), tag);
             }
+            tagNameIndex.add(created);
         }
 
         return tags;
     }
-}
\ No newline at end of file
+
+    private List<Tag> createTags(List<String> tagNames) {
+        List<Tag> newTags = new ArrayList<>(tagNames.size());
+        for (String tagName : tagNames) {
+            newTags.add(buildAutoCreatedTag(tagName));
+        }
+        try {
+            List<Tag> saved = newTransaction.execute(status -> tagRepository.saveAll(newTags));
+            log.info("getOrCreateTags - skapade nya taggar: {}", tagNames);
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("getOrCreateTags - samtidig skapning av taggar {}, försöker en i taget", tagNames);
+            List<Tag> resolved = new ArrayList<>(tagNames.size());
+            for (String tagName : tagNames) {
+                resolved.add(findOrCreateTag(tagName));
+            }
+            return resolved;
+        }
+    }
+
+    private Tag findOrCreateTag(String tagName) {
+        return tagRepository.findByName(tagName).orElseGet(() -> {
+            try {
+                return newTransaction.execute(status -> tagRepository.save(buildAutoCreatedTag(tagName)));
+            } catch (DataIntegrityViolationException e) {
+                // Någon annan vann racet – deras tagg är nu committad
+                return tagRepository.findByName(tagName).orElseThrow(() -> e);
+            }
+        });
+    }
+
+    private Tag buildAutoCreatedTag(String tagName) {
+        return Tag.builder()
+                .name(tagName)
+                .description("Auto-skapad tagg")
+                .build();
+    }
+}
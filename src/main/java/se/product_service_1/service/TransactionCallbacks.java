@@ -0,0 +1,77 @@
+package se.product_service_1.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Kopplar ändringar av strukturer i minnet till den pågående transaktionen, så att de syns först när
+ * det de speglar är committat. Utan aktiv transaktion körs ändringen direkt.
+ */
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Kör {@code action} efter commit, eller direkt om ingen transaktion pågår.
+     */
+    static void afterCommit(Runnable action) {
+        if (!registerAfterCommit(action)) {
+            action.run();
+        }
+    }
+
+    /**
+     * Kör {@code action} efter commit om en transaktion pågår. Returnerar false, utan att köra den,
+     * om ingen transaktion pågår.
+     */
+    static boolean registerAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Kör {@code action} om transaktionen rullas tillbaka, oavsett om det sker i metoden som registrerade den
+     * eller senare i en yttre transaktion eller vid commit. Returnerar false, utan att köra den, om ingen
+     * transaktion pågår.
+     */
+    static boolean registerAfterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Kör {@code action} när transaktionen är avslutad, både efter commit och efter rollback, eller direkt om
+     * ingen transaktion pågår. Körs efter alla {@link #afterCommit(Runnable)}-åtgärder i samma transaktion.
+     */
+    static void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,102 @@
+package se.product_service_1.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.product_service_1.service.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Saldo för en varukorg med 100 rader bland 100 000 produkter: {@link LongIntHashMap} mot
+ * ConcurrentHashMap med boxade nycklar och värden, och mot en IN-fråga i databasen (H2 i minnet).
+ * Körs manuellt: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=se.product_service_1.benchmark.AvailabilityBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+    private static final int PRODUCTS = 100_000;
+    private static final int CART_LINES = 100;
+
+    private final LongIntHashMap stockMap = new LongIntHashMap(PRODUCTS);
+    private final Map<Long, Integer> boxedMap = new ConcurrentHashMap<>();
+    private long[] cart;
+    private String inQuery;
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        for (long id = 1; id <= PRODUCTS; id++) {
+            int stock = random.nextInt(1_000);
+            stockMap.put(id, stock);
+            boxedMap.put(id, stock);
+        }
+        cart = random.longs(CART_LINES, 1, PRODUCTS + 1).toArray();
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:availability;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(config);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, stock_quantity INT NOT NULL)");
+        List<Object[]> rows = new ArrayList<>(PRODUCTS);
+        for (long id = 1; id <= PRODUCTS; id++) {
+            rows.add(new Object[] {id, boxedMap.get(id)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO products VALUES (?, ?)", rows);
+        inQuery = "SELECT id, stock_quantity FROM products WHERE id IN ("
+                + Arrays.stream(cart).mapToObj(Long::toString).collect(Collectors.joining(",")) + ")";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public int[] primitiveMap() {
+        return stockMap.getAll(cart, -1);
+    }
+
+    @Benchmark
+    public int[] boxedMap() {
+        int[] stocks = new int[cart.length];
+        for (int i = 0; i < cart.length; i++) {
+            stocks[i] = boxedMap.getOrDefault(cart[i], -1);
+        }
+        return stocks;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> database() {
+        return jdbcTemplate.queryForList(inQuery);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AvailabilityBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,95 @@
+package se.product_service_1.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import se.product_service_1.service.ProductColumns;
+import se.product_service_1.service.ProductFilter;
+import se.product_service_1.service.TagBitmapIndex;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mäter facett-räkning över {@link ProductColumns} och {@link TagBitmapIndex}, både för hela katalogen
+ * och för ett sökresultat med var tionde produkt, samt filtrerade och sorterade urval ur kolumnerna.
+ * Målet är under 10 ms per anrop vid 1M produkter.
+ * Körs manuellt: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=se.product_service_1.benchmark.FacetBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FacetBenchmark {
+
+    @Param({"1000000"})
+    private int productCount;
+
+    private static final int CATEGORY_COUNT = 40;
+    private static final int TAG_COUNT = 200;
+    private static final int TAGS_PER_PRODUCT = 4;
+    private static final double[] PRICE_BOUNDS = {100, 500, 1000, 5000};
+
+    private ProductColumns columns;
+    private TagBitmapIndex tags;
+    private Roaring64Bitmap tenthOfCatalog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        columns = new ProductColumns(PRICE_BOUNDS);
+        tags = new TagBitmapIndex();
+        tenthOfCatalog = new Roaring64Bitmap();
+        Random random = new Random(42);
+        for (long productId = 1; productId <= productCount; productId++) {
+            long categoryId = 1 + random.nextInt(CATEGORY_COUNT);
+            columns.upsert(productId, "Product " + productId, categoryId, "Category " + categoryId, random.nextDouble() * 10_000, random.nextInt(100));
+            for (int i = 0; i < TAGS_PER_PRODUCT; i++) {
+                tags.add(1 + random.nextInt(TAG_COUNT), productId);
+            }
+            if (productId % 10 == 0) {
+                tenthOfCatalog.addLong(productId);
+            }
+        }
+    }
+
+    @Benchmark
+    public ProductColumns.FacetCounts columnFacetsAllProducts() {
+        return columns.countFacets(null);
+    }
+
+    @Benchmark
+    public ProductColumns.FacetCounts columnFacetsSearchResult() {
+        return columns.countFacets(tenthOfCatalog);
+    }
+
+    @Benchmark
+    public Map<Long, Long> tagFacetSearchResult() {
+        return tags.topTagCounts(tenthOfCatalog, 20);
+    }
+
+    @Benchmark
+    public ProductColumns.Selection selectNarrowPriceRangeInStockByPrice() {
+        ProductFilter filter = ProductFilter.builder().minPrice(1000.0).maxPrice(1500.0).minStock(1).build();
+        return columns.select(filter, ProductColumns.SORT_PRICE, 0, 100, false);
+    }
+
+    @Benchmark
+    public ProductColumns.Selection selectCategoryInStockByName() {
+        ProductFilter filter = ProductFilter.builder().categoryName("Category 7").minStock(1).build();
+        return columns.select(filter, ProductColumns.SORT_NAME, 0, 100, false);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FacetBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
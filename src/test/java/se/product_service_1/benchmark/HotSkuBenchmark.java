@@ -0,0 +1,101 @@
+package se.product_service_1.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.product_service_1.repository.ProductStockRepositoryImpl;
+import se.product_service_1.service.HotSkuCounter;
+import se.product_service_1.service.HotSkuDeltaLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jämför uttag från en och samma produkt från många trådar: villkorad UPDATE mot raden i databasen
+ * (H2 i minnet, autocommit per uttag) mot {@link HotSkuCounter} med journalrad i {@link HotSkuDeltaLog},
+ * och räknaren utan journal för att se vad loggen kostar.
+ * Körs manuellt: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=se.product_service_1.benchmark.HotSkuBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class HotSkuBenchmark {
+
+    private static final long PRODUCT_ID = 1L;
+    private static final long[] PRODUCT_IDS = {PRODUCT_ID};
+    private static final int[] DECREMENT = {-1};
+
+    private HikariDataSource dataSource;
+    private ProductStockRepositoryImpl rowLock;
+    private HotSkuCounter counter;
+    private HotSkuDeltaLog deltaLog;
+    private Path logDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:hotsku;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(16);
+        dataSource = new HikariDataSource(config);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, stock_quantity INT NOT NULL, version BIGINT)");
+        jdbcTemplate.update("INSERT INTO products VALUES (?, ?, 0)", PRODUCT_ID, Integer.MAX_VALUE);
+        rowLock = new ProductStockRepositoryImpl(jdbcTemplate);
+
+        counter = new HotSkuCounter(PRODUCT_ID, Integer.MAX_VALUE, 16);
+        logDir = Files.createTempDirectory("hot-sku-bench");
+        deltaLog = new HotSkuDeltaLog(logDir.resolve("deltas.log"));
+    }
+
+    // Motsvarar en flush: allt fram till nu räknas som skrivet och filen töms
+    @TearDown(Level.Iteration)
+    public void checkpoint() {
+        deltaLog.checkpoint(deltaLog.snapshot(() -> { }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataSource.close();
+        deltaLog.close();
+        Files.deleteIfExists(logDir.resolve("deltas.log"));
+        Files.deleteIfExists(logDir);
+    }
+
+    @Benchmark
+    public int[] rowLockDecrement() {
+        return rowLock.applyStockDeltas(PRODUCT_IDS, DECREMENT);
+    }
+
+    @Benchmark
+    public boolean hotCounterDecrementWithLog() {
+        boolean applied = counter.tryApply(-1);
+        if (applied) {
+            deltaLog.append(PRODUCT_ID, -1, () -> { });
+        }
+        return applied;
+    }
+
+    @Benchmark
+    public boolean hotCounterDecrement() {
+        return counter.tryApply(-1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HotSkuBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
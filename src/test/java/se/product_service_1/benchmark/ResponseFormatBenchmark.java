@@ -0,0 +1,109 @@
+package se.product_service_1.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.google.protobuf.CodedOutputStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import se.product_service_1.config.ProtobufResponseHttpMessageConverter;
+import se.product_service_1.dto.ProductResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Jämför kodningstid för en sida {@link ProductResponse} i JSON, gzip-komprimerad JSON, CBOR, Smile och protobuf.
+ * Antal bytes per format skrivs ut vid start. Körs manuellt: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=se.product_service_1.benchmark.ResponseFormatBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseFormatBenchmark {
+
+    // En full sida i listendpointerna
+    @Param({"100", "1000"})
+    private int productCount;
+
+    private static final String[] CATEGORIES = {"Electronics", "Books", "Toys", "Garden", "Kitchen"};
+    private static final String[] TAGS = {"Sale", "New", "Eco", "Premium", "Gift", "Outdoor", "Kids", "Bestseller"};
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final ObjectMapper smileMapper = new SmileMapper();
+    private List<ProductResponse> products;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        products = new ArrayList<>(productCount);
+        for (long id = 1; id <= productCount; id++) {
+            List<String> tagNames = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                tagNames.add(TAGS[random.nextInt(TAGS.length)]);
+            }
+            products.add(ProductResponse.builder()
+                    .id(id)
+                    .productName("Product " + id)
+                    .categoryName(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                    .price(Math.round(random.nextDouble() * 100_000) / 100.0)
+                    .stockQuantity(random.nextInt(500))
+                    .tagNames(tagNames)
+                    .build());
+        }
+        System.out.printf("%n%d produkter: json=%d gzip=%d cbor=%d smile=%d protobuf=%d bytes%n", productCount,
+                json().length, jsonGzip().length, cbor().length, smile().length, protobuf().length);
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException {
+        return jsonMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] jsonGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            jsonMapper.writeValue(gzip, products);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cbor() throws IOException {
+        return cborMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] smile() throws IOException {
+        return smileMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] protobuf() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        ProtobufResponseHttpMessageConverter.write(products, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResponseFormatBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
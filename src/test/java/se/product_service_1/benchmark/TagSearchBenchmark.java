@@ -0,0 +1,135 @@
+package se.product_service_1.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import se.product_service_1.service.TagBitmapIndex;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jämför tagg-sökning via {@link TagBitmapIndex} med motsvarande SQL mot product_tags i H2.
+ * Körs manuellt: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=se.product_service_1.benchmark.TagSearchBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagSearchBenchmark {
+
+    @Param({"100000"})
+    private int productCount;
+
+    private static final int TAG_COUNT = 50;
+    private static final int TAGS_PER_PRODUCT = 4;
+    // Roteras mellan anropen så att H2 inte kan återanvända förra resultatet för samma parametrar
+    private static final List<List<Long>> QUERY_TAG_IDS = List.of(
+            List.of(3L, 7L, 11L), List.of(5L, 13L, 21L), List.of(2L, 17L, 40L), List.of(8L, 9L, 33L));
+
+    private Connection connection;
+    private PreparedStatement unionStatement;
+    private PreparedStatement intersectionStatement;
+    private TagBitmapIndex index;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:tagbench;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS product_tags");
+            statement.execute("CREATE TABLE product_tags (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "product_id BIGINT NOT NULL, tag_id BIGINT NOT NULL)");
+            statement.execute("CREATE INDEX idx_product_tags_tag ON product_tags(tag_id)");
+        }
+
+        index = new TagBitmapIndex();
+        Random random = new Random(42);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO product_tags (product_id, tag_id) VALUES (?, ?)")) {
+            for (long productId = 1; productId <= productCount; productId++) {
+                for (int i = 0; i < TAGS_PER_PRODUCT; i++) {
+                    long tagId = 1 + random.nextInt(TAG_COUNT);
+                    insert.setLong(1, productId);
+                    insert.setLong(2, tagId);
+                    insert.addBatch();
+                    index.add(tagId, productId);
+                }
+                if (productId % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+
+        unionStatement = connection.prepareStatement(
+                "SELECT DISTINCT product_id FROM product_tags WHERE tag_id IN (?, ?, ?) ORDER BY product_id");
+        intersectionStatement = connection.prepareStatement(
+                "SELECT product_id FROM product_tags WHERE tag_id IN (?, ?, ?) " +
+                        "GROUP BY product_id HAVING COUNT(DISTINCT tag_id) = 3 ORDER BY product_id");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> sqlUnion() throws SQLException {
+        return query(unionStatement);
+    }
+
+    @Benchmark
+    public long[] indexUnion() {
+        return index.union(nextTagIds()).toArray();
+    }
+
+    @Benchmark
+    public List<Long> sqlIntersection() throws SQLException {
+        return query(intersectionStatement);
+    }
+
+    @Benchmark
+    public long[] indexIntersection() {
+        return index.intersection(nextTagIds()).toArray();
+    }
+
+    private List<Long> query(PreparedStatement statement) throws SQLException {
+        List<Long> tagIds = nextTagIds();
+        for (int i = 0; i < tagIds.size(); i++) {
+            statement.setLong(i + 1, tagIds.get(i));
+        }
+        List<Long> productIds = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                productIds.add(resultSet.getLong(1));
+            }
+        }
+        return productIds;
+    }
+
+    private List<Long> nextTagIds() {
+        invocation = (invocation + 1) % QUERY_TAG_IDS.size();
+        return QUERY_TAG_IDS.get(invocation);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TagSearchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
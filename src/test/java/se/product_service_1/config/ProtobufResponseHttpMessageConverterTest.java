@@ -0,0 +1,66 @@
+package se.product_service_1.config;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import se.product_service_1.dto.ProductResponse;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtobufResponseHttpMessageConverterTest {
+
+    private final ProtobufResponseHttpMessageConverter converter = new ProtobufResponseHttpMessageConverter();
+
+    @Test
+    void canWrite_ShouldOnlyAcceptResponseDtosAndListsOfThem() {
+        var productList = new ParameterizedTypeReference<List<ProductResponse>>() {}.getType();
+        var mapType = new ParameterizedTypeReference<Map<String, Long>>() {}.getType();
+
+        assertTrue(converter.canWrite(productList, List.class, ProtobufResponseHttpMessageConverter.APPLICATION_PROTOBUF));
+        assertTrue(converter.canWrite(ProductResponse.class, ProductResponse.class, ProtobufResponseHttpMessageConverter.APPLICATION_PROTOBUF));
+        assertFalse(converter.canWrite(productList, List.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(mapType, Map.class, ProtobufResponseHttpMessageConverter.APPLICATION_PROTOBUF));
+        assertFalse(converter.canWrite(new ParameterizedTypeReference<List<String>>() {}.getType(), List.class,
+                ProtobufResponseHttpMessageConverter.APPLICATION_PROTOBUF));
+    }
+
+    @Test
+    void write_ShouldEncodeProductListAccordingToSchema() throws Exception {
+        ProductResponse laptop = ProductResponse.builder()
+                .id(7L)
+                .productName("Laptop")
+                .categoryName("Electronics")
+                .price(999.5)
+                .stockQuantity(3)
+                .tagNames(List.of("Tech", "Sale"))
+                .build();
+        ProductResponse empty = ProductResponse.builder().id(8L).build();
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        converter.write(List.of(laptop, empty), new ParameterizedTypeReference<List<ProductResponse>>() {}.getType(),
+                ProtobufResponseHttpMessageConverter.APPLICATION_PROTOBUF, output);
+
+        UnknownFieldSet list = UnknownFieldSet.parseFrom(output.getBodyAsBytes());
+        List<ByteString> products = list.getField(1).getLengthDelimitedList();
+        assertEquals(2, products.size());
+
+        UnknownFieldSet first = UnknownFieldSet.parseFrom(products.get(0));
+        assertEquals(List.of(7L), first.getField(1).getVarintList());
+        assertEquals("Laptop", first.getField(2).getLengthDelimitedList().get(0).toStringUtf8());
+        assertEquals("Electronics", first.getField(3).getLengthDelimitedList().get(0).toStringUtf8());
+        assertEquals(999.5, Double.longBitsToDouble(first.getField(4).getFixed64List().get(0)));
+        assertEquals(List.of(3L), first.getField(5).getVarintList());
+        assertEquals(List.of("Tech", "Sale"), first.getField(6).getLengthDelimitedList().stream().map(ByteString::toStringUtf8).toList());
+
+        UnknownFieldSet second = UnknownFieldSet.parseFrom(products.get(1));
+        assertEquals(List.of(8L), second.getField(1).getVarintList());
+        assertFalse(second.hasField(2));
+        assertEquals("application/x-protobuf", output.getHeaders().getContentType().toString());
+    }
+}
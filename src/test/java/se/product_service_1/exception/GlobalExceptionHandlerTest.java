@@ -0,0 +1,40 @@
+package se.product_service_1.exception;
+
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.context.request.ServletWebRequest;
+import se.product_service_1.model.Product;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GlobalExceptionHandlerTest {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+    @Test
+    void handleOptimisticLock_ShouldReturnConflictForSpringDataException() {
+        ResponseEntity<GlobalExceptionHandler.ErrorResponse> response = handler.handleOptimisticLock(
+                new ObjectOptimisticLockingFailureException(Product.class, 1L), request("/product/update"));
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(409, response.getBody().getStatus());
+        assertEquals("/product/update", response.getBody().getPath());
+    }
+
+    @Test
+    void handleOptimisticLock_ShouldReturnConflictForJpaException() {
+        ResponseEntity<GlobalExceptionHandler.ErrorResponse> response = handler.handleOptimisticLock(
+                new OptimisticLockException("stale"), request("/product/inventory"));
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(HttpStatus.CONFLICT.getReasonPhrase(), response.getBody().getError());
+    }
+
+    private static ServletWebRequest request(String uri) {
+        return new ServletWebRequest(new MockHttpServletRequest("PUT", uri));
+    }
+}
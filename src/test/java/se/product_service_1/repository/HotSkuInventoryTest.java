@@ -0,0 +1,290 @@
+package se.product_service_1.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.product_service_1.dto.InventoryManagementRequest;
+import se.product_service_1.dto.InventoryManagementRequest.InventoryChange;
+import se.product_service_1.exception.NotEnoughStockException;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.HotSkuCheckpoint;
+import se.product_service_1.model.Product;
+import se.product_service_1.service.CatalogChangeCounters;
+import se.product_service_1.service.HotSkuDeltaLog;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.InventoryAvailability;
+import se.product_service_1.service.InventoryLedgerService;
+import se.product_service_1.service.LowStockMonitor;
+import se.product_service_1.service.ProductColumnIndex;
+import se.product_service_1.service.ProductQueryPlanner;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTagIndex;
+import se.product_service_1.service.ProductTextIndex;
+import se.product_service_1.service.TagNameIndex;
+import se.product_service_1.service.TagService;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Heta produkter mot riktig databas, med varje anrop i egen transaktion som i drift.
+ */
+@DataJpaTest
+@Import({ProductService.class, TagService.class, ProductResponseCache.class, ProductTagIndex.class, TagNameIndex.class, ProductTextIndex.class, ProductColumnIndex.class, ProductQueryPlanner.class, CatalogChangeCounters.class, InventoryAvailability.class, HotSkuInventory.class, InventoryLedgerService.class, LowStockMonitor.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = "inventory.hot-sku.delta-log=target/hot-sku-test/deltas.log")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HotSkuInventoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Autowired
+    private HotSkuInventory hotSkuInventory;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private HotSkuCheckpointRepository hotSkuCheckpointRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ProductResponseCache productResponseCache;
+
+    @Autowired
+    private ProductColumnIndex productColumnIndex;
+
+    @Autowired
+    private InventoryAvailability inventoryAvailability;
+
+    @Autowired
+    private CatalogChangeCounters catalogChangeCounters;
+
+    private Category category;
+    private Product hot;
+    private Product cold;
+
+    @BeforeEach
+    void setUp() {
+        category = categoryRepository.save(Category.builder().name("Flash sale").build());
+        hot = saveProduct("Hot", 10);
+        cold = saveProduct("Cold", 10);
+        hotSkuInventory.enable(hot.getId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        hotSkuInventory.disable(hot.getId());
+        hotSkuInventory.disable(cold.getId());
+        hotSkuCheckpointRepository.deleteAll();
+        productRepository.deleteAll(productRepository.findByCategoryName(category.getName()));
+        categoryRepository.delete(category);
+    }
+
+    @Test
+    void updateInventoryChange_ShouldKeepHotStockInMemoryUntilFlush() {
+        List<Product> result = productService.updateInventoryChange(request(hot.getId(), -3, cold.getId(), -2));
+
+        assertEquals(7, result.get(0).getStockQuantity());
+        assertEquals(8, result.get(1).getStockQuantity());
+        assertEquals(10, stock(hot));
+        assertEquals(8, stock(cold));
+
+        hotSkuInventory.flush();
+
+        assertEquals(7, stock(hot));
+    }
+
+    @Test
+    void updateInventoryChange_ShouldUndoHotLinesWhenColdLineFails() {
+        assertThrows(NotEnoughStockException.class,
+                () -> productService.updateInventoryChange(request(hot.getId(), -3, cold.getId(), -20)));
+
+        assertEquals(10, hotSkuInventory.stock(hot.getId()));
+        hotSkuInventory.flush();
+        assertEquals(10, stock(hot));
+        assertEquals(10, stock(cold));
+    }
+
+    @Test
+    void updateInventoryChange_ShouldUndoHotLinesWhenOuterTransactionRollsBack() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            productService.updateInventoryChange(request(hot.getId(), -3, cold.getId(), -2));
+            assertEquals(7, hotSkuInventory.stock(hot.getId()));
+            // T.ex. nyckelraden i IdempotencyStore eller reservationens journal som inte går att spara
+            status.setRollbackOnly();
+        });
+
+        assertEquals(10, hotSkuInventory.stock(hot.getId()));
+        hotSkuInventory.flush();
+        assertEquals(10, stock(hot));
+        assertEquals(10, stock(cold));
+    }
+
+    @Test
+    void updateProduct_ShouldKeepLiveStockOfHotProductInIndexes() {
+        productService.updateInventoryChange(request(hot.getId(), -3, cold.getId(), -1));
+        Product loaded = productRepository.findById(hot.getId()).orElseThrow();
+        loaded.setPrice(12.0);
+
+        productService.updateProduct(loaded);
+
+        assertEquals(10, stock(hot));
+        assertEquals(7, inventoryAvailability.availableToPromise(hot.getId()));
+    }
+
+    @Test
+    void recover_ShouldReplayDeltasThatWereNeverFlushed() {
+        Path log = dir.resolve("crashed.log");
+        HotSkuInventory crashed = newInventory(log, Set.of(cold.getId()));
+        crashed.recover();
+        assertEquals(HotSkuInventory.Outcome.APPLIED, crashed.tryApply(cold.getId(), -4));
+        assertEquals(HotSkuInventory.Outcome.INSUFFICIENT, crashed.tryApply(cold.getId(), -7));
+        assertEquals(10, stock(cold));
+
+        // Ingen flush före "kraschen"; nästa instans läser samma logg vid uppstart
+        HotSkuInventory restarted = newInventory(log, Set.of());
+        restarted.recover();
+
+        assertEquals(6, stock(cold));
+    }
+
+    @Test
+    void recover_ShouldSkipDeltasWrittenBeforeCrashButNotCheckpointedInLog() throws Exception {
+        Path log = dir.resolve("unchecked.log");
+        try (HotSkuDeltaLog deltaLog = new HotSkuDeltaLog(log)) {
+            deltaLog.append(cold.getId(), -4, () -> { });
+            deltaLog.append(cold.getId(), -1, () -> { });
+        }
+        // Första raden committades tillsammans med sin checkpoint, men processen dog innan loggen fick sin
+        productRepository.applyStockDeltas(new long[] {cold.getId()}, new int[] {-4});
+        hotSkuCheckpointRepository.save(HotSkuCheckpoint.builder().productId(cold.getId()).seq(1L).updatedAt(Instant.now()).build());
+
+        HotSkuInventory restarted = newInventory(log, Set.of());
+        restarted.recover();
+
+        assertEquals(5, stock(cold));
+        assertEquals(2L, hotSkuCheckpointRepository.findById(cold.getId()).orElseThrow().getSeq());
+    }
+
+    @Test
+    void recover_ShouldKeepDeltaThatCannotBeWrittenUntilStockAllowsIt() throws Exception {
+        Path log = dir.resolve("stuck.log");
+        try (HotSkuDeltaLog deltaLog = new HotSkuDeltaLog(log)) {
+            deltaLog.append(cold.getId(), -12, () -> { });
+        }
+
+        HotSkuInventory restarted = newInventory(log, Set.of());
+        restarted.recover();
+
+        assertEquals(10, stock(cold));
+        assertEquals(Map.of(cold.getId(), -12L), HotSkuDeltaLog.unflushedDeltas(log));
+
+        productRepository.applyStockDeltas(new long[] {cold.getId()}, new int[] {5});
+        restarted.flush();
+
+        assertEquals(3, stock(cold));
+        assertEquals(Map.of(), HotSkuDeltaLog.unflushedDeltas(log));
+    }
+
+    @Test
+    void compensate_ShouldUndoInDatabaseWhenProductWasUnflaggedInBetween() {
+        assertEquals(HotSkuInventory.Outcome.APPLIED, hotSkuInventory.tryApply(hot.getId(), 5));
+        hotSkuInventory.disable(hot.getId());
+        assertEquals(15, stock(hot));
+
+        hotSkuInventory.compensate(hot.getId(), -5);
+
+        assertEquals(10, stock(hot));
+    }
+
+    @Test
+    void disable_ShouldKeepProductHotWhenLastDeltaCannotBeWritten() {
+        assertEquals(HotSkuInventory.Outcome.APPLIED, hotSkuInventory.tryApply(hot.getId(), -3));
+        // Saldot i databasen ändras förbi räknaren så att uttaget inte längre får plats
+        productRepository.applyStockDeltas(new long[] {hot.getId()}, new int[] {-9});
+
+        assertThrows(IllegalStateException.class, () -> hotSkuInventory.disable(hot.getId()));
+        assertTrue(hotSkuInventory.isHot(hot.getId()));
+        assertEquals(HotSkuInventory.Outcome.APPLIED, hotSkuInventory.tryApply(hot.getId(), -1));
+
+        productRepository.applyStockDeltas(new long[] {hot.getId()}, new int[] {5});
+        hotSkuInventory.disable(hot.getId());
+
+        assertFalse(hotSkuInventory.isHot(hot.getId()));
+        assertEquals(2, stock(hot));
+    }
+
+    @Test
+    void enable_ShouldWaitForRowLockOfConcurrentColdChange() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> enabling = new TransactionTemplate(transactionManager).execute(status -> {
+                productService.updateInventoryChange(new InventoryManagementRequest(List.of(new InventoryChange(cold.getId(), -2))));
+                Future<?> future = executor.submit(() -> hotSkuInventory.enable(cold.getId()));
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                assertFalse(hotSkuInventory.isHot(cold.getId()));
+                return future;
+            });
+            enabling.get(10, TimeUnit.SECONDS);
+
+            assertEquals(8, hotSkuInventory.stock(cold.getId()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private HotSkuInventory newInventory(Path log, Set<Long> productIds) {
+        return new HotSkuInventory(productRepository, hotSkuCheckpointRepository, productResponseCache, productColumnIndex, inventoryAvailability,
+                catalogChangeCounters, transactionManager, log, 4, productIds);
+    }
+
+    private static InventoryManagementRequest request(Long firstId, int firstDelta, Long secondId, int secondDelta) {
+        return new InventoryManagementRequest(List.of(new InventoryChange(firstId, firstDelta), new InventoryChange(secondId, secondDelta)));
+    }
+
+    private int stock(Product product) {
+        return productRepository.findById(product.getId()).orElseThrow().getStockQuantity();
+    }
+
+    private Product saveProduct(String name, int stock) {
+        return productRepository.save(Product.builder()
+                .name(name)
+                .category(category)
+                .price(10.0)
+                .stockQuantity(stock)
+                .build());
+    }
+}
@@ -0,0 +1,115 @@
+package se.product_service_1.repository;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.dto.ProductTagBulkResult;
+import se.product_service_1.service.IdempotencyStore;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sparade idempotensnycklar mot riktig databas. Två instanser av storen motsvarar två noder (eller en
+ * omstart): den andra ska hitta svaret i tabellen utan att utföra anropet igen.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyRecordTest {
+
+    private static final TypeReference<ProductTagBulkResult> RESULT = new TypeReference<>() {};
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicInteger executions = new AtomicInteger();
+    private IdempotencyStore firstNode;
+    private IdempotencyStore secondNode;
+
+    @BeforeEach
+    void setUp() {
+        firstNode = newStore();
+        secondNode = newStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyRecordRepository.deleteAll();
+    }
+
+    @Test
+    void execute_ShouldReplayPersistedResponseOnAnotherNode() {
+        ResponseEntity<ProductTagBulkResult> first = firstNode.execute("k1", "POST /product/tags/bulk", List.of(1, 2), RESULT, this::execute);
+        ResponseEntity<ProductTagBulkResult> retry = secondNode.execute("k1", "POST /product/tags/bulk", List.of(1, 2), RESULT, this::execute);
+
+        assertEquals(1, executions.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(1, idempotencyRecordRepository.count());
+    }
+
+    @Test
+    void execute_FailedCallShouldReleaseTheKey() {
+        assertThrows(IllegalStateException.class, () -> firstNode.execute("k1", "POST /product/tags/bulk", List.of(1), RESULT, () -> {
+            executions.incrementAndGet();
+            throw new IllegalStateException("fel");
+        }));
+        assertEquals(0, idempotencyRecordRepository.count());
+
+        secondNode.execute("k1", "POST /product/tags/bulk", List.of(1), RESULT, this::execute);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_ConstraintViolationFromTheCallShouldReachTheClient() {
+        DataIntegrityViolationException duplicateName = new DataIntegrityViolationException("produktnamnet finns redan");
+
+        DataIntegrityViolationException thrown = assertThrows(DataIntegrityViolationException.class,
+                () -> firstNode.execute("k1", "POST /product", List.of(1), RESULT, () -> {
+                    throw duplicateName;
+                }));
+
+        assertSame(duplicateName, thrown);
+        assertEquals(0, idempotencyRecordRepository.count());
+    }
+
+    @Test
+    void purgeExpired_ShouldDeleteOldKeys() throws InterruptedException {
+        IdempotencyStore shortLived = new IdempotencyStore(new ObjectMapper(), idempotencyRecordRepository, transactionManager,
+                new SimpleMeterRegistry(), 0, 1000, true, 1000);
+        shortLived.execute("k1", "POST /product/tags/bulk", List.of(1), RESULT, this::execute);
+        Thread.sleep(5);
+
+        shortLived.purgeExpired();
+
+        assertEquals(0, idempotencyRecordRepository.count());
+    }
+
+    private ResponseEntity<ProductTagBulkResult> execute() {
+        executions.incrementAndGet();
+        return ResponseEntity.ok(ProductTagBulkResult.builder().productCount(2).linksAdded(3).linksRemoved(1).build());
+    }
+
+    private IdempotencyStore newStore() {
+        return new IdempotencyStore(new ObjectMapper(), idempotencyRecordRepository, transactionManager,
+                new SimpleMeterRegistry(), 3600, 1000, true, 1000);
+    }
+}
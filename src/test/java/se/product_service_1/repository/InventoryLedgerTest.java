@@ -0,0 +1,178 @@
+package se.product_service_1.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import se.product_service_1.config.SchemaUpgrades;
+import se.product_service_1.dto.InventoryManagementRequest;
+import se.product_service_1.dto.InventoryManagementRequest.InventoryChange;
+import se.product_service_1.dto.LedgerReplayResult;
+import se.product_service_1.exception.NotEnoughStockException;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.InventoryLedgerEntry;
+import se.product_service_1.model.Product;
+import se.product_service_1.service.CatalogChangeCounters;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.InventoryAvailability;
+import se.product_service_1.service.InventoryLedgerService;
+import se.product_service_1.service.LowStockMonitor;
+import se.product_service_1.service.ProductColumnIndex;
+import se.product_service_1.service.ProductQueryPlanner;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTagIndex;
+import se.product_service_1.service.ProductTextIndex;
+import se.product_service_1.service.TagNameIndex;
+import se.product_service_1.service.TagService;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ProductService.class, TagService.class, ProductResponseCache.class, ProductTagIndex.class, TagNameIndex.class, ProductTextIndex.class, ProductColumnIndex.class, ProductQueryPlanner.class, CatalogChangeCounters.class, InventoryAvailability.class, HotSkuInventory.class, InventoryLedgerService.class, LowStockMonitor.class, SimpleMeterRegistry.class})
+class InventoryLedgerTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private InventoryLedgerService inventoryLedgerService;
+
+    @Autowired
+    private InventoryLedgerRepository inventoryLedgerRepository;
+
+    @Autowired
+    private InventoryLedgerSnapshotRepository inventoryLedgerSnapshotRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Product first;
+    private Product second;
+
+    @BeforeEach
+    void setUp() {
+        Category category = categoryRepository.save(Category.builder().name("Ledger").build());
+        first = productService.addProduct(Product.builder().name("Ledger A").category(category).price(10.0).stockQuantity(10).build());
+        second = productService.addProduct(Product.builder().name("Ledger B").category(category).price(10.0).stockQuantity(4).build());
+        // Lagerändringarna går via JDBC och ska se produkterna som ett nytt anrop gör
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void updateInventoryChange_ShouldJournalEveryLineWithRunningQuantityAndCaller() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice", null));
+
+        productService.updateInventoryChange(new InventoryManagementRequest(List.of(
+                new InventoryChange(first.getId(), 5),
+                new InventoryChange(second.getId(), -1),
+                new InventoryChange(first.getId(), -3))));
+
+        List<InventoryLedgerEntry> history = inventoryLedgerService.history(first.getId(), null, 10);
+        assertEquals(List.of(-3, 5, 10), history.stream().map(InventoryLedgerEntry::getDelta).toList());
+        assertEquals(List.of(12, 15, 10), history.stream().map(InventoryLedgerEntry::getQuantityAfter).toList());
+        assertEquals(List.of("alice", "alice", InventoryLedgerService.SYSTEM_CALLER),
+                history.stream().map(InventoryLedgerEntry::getCaller).toList());
+        assertEquals(3, inventoryLedgerService.history(second.getId(), null, 10).get(0).getQuantityAfter());
+
+        List<InventoryLedgerEntry> page = inventoryLedgerService.history(first.getId(), history.get(0).getSeq(), 1);
+        assertEquals(List.of(history.get(1).getSeq()), page.stream().map(InventoryLedgerEntry::getSeq).toList());
+    }
+
+    @Test
+    void updateInventoryChange_ShouldNotJournalRejectedRequest() {
+        assertThrows(NotEnoughStockException.class, () -> productService.updateInventoryChange(new InventoryManagementRequest(List.of(
+                new InventoryChange(first.getId(), -1),
+                new InventoryChange(second.getId(), -5)))));
+
+        assertEquals(1, inventoryLedgerService.history(first.getId(), null, 10).size());
+    }
+
+    @Test
+    void compact_ShouldFoldEntriesIntoSnapshotWithoutChangingReplayedStock() {
+        productService.updateInventoryChange(new InventoryManagementRequest(List.of(
+                new InventoryChange(first.getId(), -4),
+                new InventoryChange(first.getId(), 2))));
+
+        long compacted = inventoryLedgerService.compact(Instant.now().plusSeconds(1));
+
+        assertTrue(compacted >= 4);
+        assertTrue(inventoryLedgerService.history(first.getId(), null, 10).isEmpty());
+        assertEquals(8L, inventoryLedgerSnapshotRepository.findById(first.getId()).orElseThrow().getQuantity());
+        assertEquals(3L, inventoryLedgerSnapshotRepository.findById(first.getId()).orElseThrow().getEntryCount());
+
+        productService.updateInventoryChange(new InventoryManagementRequest(List.of(new InventoryChange(first.getId(), 1))));
+        LedgerReplayResult result = inventoryLedgerService.replay(true);
+        assertEquals(0, result.getMismatches());
+        assertEquals(1, inventoryLedgerService.history(first.getId(), null, 10).size());
+    }
+
+    @Test
+    void replay_ShouldRestoreStockChangedOutsideTheJournal() {
+        // Ändrar saldot förbi tjänsten, som en manuell UPDATE i databasen
+        productRepository.applyStockDeltas(new long[] {first.getId()}, new int[] {-7});
+
+        LedgerReplayResult dryRun = inventoryLedgerService.replay(true);
+        assertEquals(1, dryRun.getMismatches());
+        assertEquals(List.of(first.getId()), dryRun.getMismatchedProductIds());
+        assertEquals(0, dryRun.getUpdated());
+
+        LedgerReplayResult result = inventoryLedgerService.replay(false);
+        assertEquals(1, result.getUpdated());
+        entityManager.clear();
+        assertEquals(10, productRepository.findById(first.getId()).orElseThrow().getStockQuantity());
+        assertEquals(4, productRepository.findById(second.getId()).orElseThrow().getStockQuantity());
+        assertEquals(0, inventoryLedgerService.replay(true).getMismatches());
+    }
+
+    @Test
+    void replay_ShouldLeaveProductsWithoutOpeningBalanceUntilBackfilled() {
+        // Skapad före journalen: inget ingående saldo, bara ändringen efteråt journalförs
+        Product legacy = productRepository.save(Product.builder().name("Ledger Legacy").category(first.getCategory()).price(10.0).stockQuantity(9).build());
+        entityManager.flush();
+        entityManager.clear();
+        productService.updateInventoryChange(new InventoryManagementRequest(List.of(new InventoryChange(legacy.getId(), -2))));
+
+        LedgerReplayResult result = inventoryLedgerService.replay(false);
+        assertEquals(0, result.getMismatches());
+        assertEquals(1, result.getUntracked());
+        entityManager.clear();
+        assertEquals(7, productRepository.findById(legacy.getId()).orElseThrow().getStockQuantity());
+
+        assertEquals(1, new SchemaUpgrades(jdbcTemplate, entityManagerFactory).backfillOpeningBalances());
+
+        assertEquals(9L, inventoryLedgerSnapshotRepository.findById(legacy.getId()).orElseThrow().getQuantity());
+        LedgerReplayResult backfilled = inventoryLedgerService.replay(true);
+        assertEquals(0, backfilled.getMismatches());
+        assertEquals(0, backfilled.getUntracked());
+    }
+}
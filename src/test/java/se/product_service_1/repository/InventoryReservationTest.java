@@ -0,0 +1,184 @@
+package se.product_service_1.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.dto.InventoryManagementRequest;
+import se.product_service_1.dto.InventoryManagementRequest.InventoryChange;
+import se.product_service_1.dto.ReservationRequest;
+import se.product_service_1.dto.ReservationRequest.ReservationLine;
+import se.product_service_1.exception.NotEnoughStockException;
+import se.product_service_1.exception.ResourceNotFoundException;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.service.CatalogChangeCounters;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.InventoryAvailability;
+import se.product_service_1.service.InventoryLedgerService;
+import se.product_service_1.service.LowStockMonitor;
+import se.product_service_1.service.InventoryReservation;
+import se.product_service_1.service.InventoryReservationService;
+import se.product_service_1.service.ProductColumnIndex;
+import se.product_service_1.service.ProductQueryPlanner;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTagIndex;
+import se.product_service_1.service.ProductTextIndex;
+import se.product_service_1.service.TagNameIndex;
+import se.product_service_1.service.TagService;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reservationer mot riktig databas. Varje anrop går i egen transaktion så att
+ * ändringar efter commit når {@link InventoryAvailability} som i drift.
+ */
+@DataJpaTest
+@Import({ProductService.class, TagService.class, ProductResponseCache.class, ProductTagIndex.class, TagNameIndex.class, ProductTextIndex.class, ProductColumnIndex.class, ProductQueryPlanner.class, CatalogChangeCounters.class, InventoryAvailability.class, HotSkuInventory.class, InventoryLedgerService.class, LowStockMonitor.class, InventoryReservationService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryReservationTest {
+
+    @Autowired
+    private InventoryReservationService reservationService;
+
+    @Autowired
+    private InventoryAvailability inventoryAvailability;
+
+    @Autowired
+    private InventoryHoldRepository inventoryHoldRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Category category;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        category = categoryRepository.save(Category.builder().name("Reservations").build());
+        product = productRepository.save(Product.builder()
+                .name("Reserved SKU")
+                .category(category)
+                .price(10.0)
+                .stockQuantity(10)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        inventoryHoldRepository.deleteAll();
+        productRepository.deleteAll(productRepository.findByCategoryName(category.getName()));
+        categoryRepository.delete(category);
+    }
+
+    @Test
+    void reserve_ShouldLowerAvailableWithoutTouchingStock() {
+        InventoryReservation reservation = reservationService.reserve(request(4, null));
+
+        assertEquals(6, reservationService.availableToPromise(product.getId()));
+        assertEquals(10, stock());
+        assertEquals(1, inventoryHoldRepository.count());
+        assertThrows(NotEnoughStockException.class, () -> reservationService.reserve(request(7, null)));
+
+        reservationService.release(reservation.getId());
+
+        assertEquals(10, reservationService.availableToPromise(product.getId()));
+        assertEquals(0, inventoryHoldRepository.count());
+    }
+
+    @Test
+    void commit_ShouldMoveHoldIntoStock() {
+        InventoryReservation reservation = reservationService.reserve(request(4, null));
+
+        reservationService.commit(reservation.getId());
+
+        assertEquals(6, stock());
+        assertEquals(6, reservationService.availableToPromise(product.getId()));
+        assertEquals(0, inventoryHoldRepository.count());
+        assertThrows(ResourceNotFoundException.class, () -> reservationService.commit(reservation.getId()));
+    }
+
+    @Test
+    void commit_ShouldReleaseHoldWhenStockWasTakenElsewhere() {
+        InventoryReservation reservation = reservationService.reserve(request(4, null));
+        productRepository.applyStockDeltas(new long[] {product.getId()}, new int[] {-8});
+
+        assertThrows(NotEnoughStockException.class, () -> reservationService.commit(reservation.getId()));
+
+        assertEquals(2, stock());
+        assertEquals(0, inventoryAvailability.held(product.getId()));
+        assertEquals(0, inventoryHoldRepository.count());
+    }
+
+    @Test
+    void updateInventoryChange_ShouldNotSellReservedStock() {
+        InventoryReservation reservation = reservationService.reserve(request(4, null));
+
+        assertThrows(NotEnoughStockException.class, () -> productService.updateInventoryChange(
+                new InventoryManagementRequest(List.of(new InventoryChange(product.getId(), -7)))));
+        assertEquals(10, stock());
+        assertEquals(4, inventoryAvailability.held(product.getId()));
+
+        productService.updateInventoryChange(new InventoryManagementRequest(List.of(new InventoryChange(product.getId(), -6))));
+
+        assertEquals(4, stock());
+        assertEquals(0, reservationService.availableToPromise(product.getId()));
+        reservationService.commit(reservation.getId());
+        assertEquals(0, stock());
+        assertEquals(0, inventoryAvailability.held(product.getId()));
+    }
+
+    @Test
+    void expireHolds_ShouldReleaseReservationsPastTheirTtl() {
+        InventoryReservation reservation = reservationService.reserve(request(4, 1));
+
+        assertEquals(0, reservationService.expireHolds(Instant.now()));
+        assertEquals(1, reservationService.expireHolds(reservation.getExpiresAt().plusSeconds(1)));
+
+        assertEquals(10, reservationService.availableToPromise(product.getId()));
+        assertEquals(0, inventoryHoldRepository.count());
+    }
+
+    @Test
+    void restore_ShouldRebuildHoldsFromJournal() {
+        InventoryReservation reservation = reservationService.reserve(request(3, null));
+        // Ny instans motsvarar en omstart: bara journalen finns kvar
+        InventoryAvailability restartedAvailability = new InventoryAvailability(productRepository);
+        InventoryReservationService restarted = new InventoryReservationService(productService, restartedAvailability,
+                inventoryHoldRepository, transactionManager, 900, 3600, 100, 1000);
+
+        restarted.restore();
+
+        assertEquals(1, restarted.activeReservations());
+        assertEquals(7, restarted.availableToPromise(product.getId()));
+        restarted.release(reservation.getId());
+        assertEquals(0, inventoryHoldRepository.count());
+    }
+
+    private ReservationRequest request(int quantity, Integer ttlSeconds) {
+        return new ReservationRequest(List.of(new ReservationLine(product.getId(), quantity)), ttlSeconds);
+    }
+
+    private int stock() {
+        return productRepository.findById(product.getId()).orElseThrow().getStockQuantity();
+    }
+}
@@ -0,0 +1,157 @@
+package se.product_service_1.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import se.product_service_1.dto.InventoryManagementRequest;
+import se.product_service_1.dto.InventoryManagementRequest.InventoryChange;
+import se.product_service_1.exception.NotEnoughStockException;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.service.CatalogChangeCounters;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.InventoryAvailability;
+import se.product_service_1.service.InventoryLedgerService;
+import se.product_service_1.service.LowStockMonitor;
+import se.product_service_1.service.ProductColumnIndex;
+import se.product_service_1.service.ProductQueryPlanner;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTagIndex;
+import se.product_service_1.service.ProductTextIndex;
+import se.product_service_1.service.TagNameIndex;
+import se.product_service_1.service.TagService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kör lagerändringar från många trådar mot samma produkt, var och en i sin egen transaktion,
+ * och kontrollerar att ingen uppdatering går förlorad.
+ */
+@DataJpaTest
+@Import({ProductService.class, TagService.class, ProductResponseCache.class, ProductTagIndex.class, TagNameIndex.class, ProductTextIndex.class, ProductColumnIndex.class, ProductQueryPlanner.class, CatalogChangeCounters.class, InventoryAvailability.class, HotSkuInventory.class, InventoryLedgerService.class, LowStockMonitor.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductInventoryConcurrencyTest {
+
+    private static final int WRITERS = 64;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Category category;
+
+    @BeforeEach
+    void setUp() {
+        category = categoryRepository.save(Category.builder().name("Concurrency").build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAll(productRepository.findByCategoryName(category.getName()));
+        categoryRepository.delete(category);
+    }
+
+    @Test
+    void updateInventoryChange_ShouldNotLoseUpdatesUnderParallelWriters() throws Exception {
+        Product sku = saveProduct("Hot SKU", 0);
+        int updatesPerWriter = 10;
+
+        List<Integer> failures = runWriters(sku.getId(), 1, updatesPerWriter);
+
+        assertEquals(0, failures.stream().mapToInt(Integer::intValue).sum());
+        Product reloaded = productRepository.findById(sku.getId()).orElseThrow();
+        assertEquals(WRITERS * updatesPerWriter, reloaded.getStockQuantity());
+        assertEquals(sku.getVersion() + WRITERS * updatesPerWriter, reloaded.getVersion());
+    }
+
+    @Test
+    void updateInventoryChange_ShouldNeverOversellUnderParallelWriters() throws Exception {
+        int stock = 100;
+        Product sku = saveProduct("Scarce SKU", stock);
+
+        List<Integer> failures = runWriters(sku.getId(), -1, 2);
+
+        assertEquals(2 * WRITERS - stock, failures.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, productRepository.findById(sku.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void updateInventoryChange_ShouldRollBackWholeRequestWhenOneLineFails() {
+        Product first = saveProduct("First", 5);
+        Product second = saveProduct("Second", 1);
+        InventoryManagementRequest request = new InventoryManagementRequest(List.of(
+                new InventoryChange(first.getId(), -3),
+                new InventoryChange(second.getId(), -2)));
+
+        assertThrows(NotEnoughStockException.class, () -> productService.updateInventoryChange(request));
+
+        assertEquals(5, productRepository.findById(first.getId()).orElseThrow().getStockQuantity());
+        assertEquals(1, productRepository.findById(second.getId()).orElseThrow().getStockQuantity());
+    }
+
+    /**
+     * Startar alla skrivare samtidigt; varje skrivare gör {@code times} anrop med {@code delta}
+     * och returnerar hur många av dem som nekades på grund av otillräckligt lager.
+     */
+    private List<Integer> runWriters(Long productId, int delta, int times) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int writer = 0; writer < WRITERS; writer++) {
+                Callable<Integer> task = () -> {
+                    start.await();
+                    int rejected = 0;
+                    for (int i = 0; i < times; i++) {
+                        try {
+                            productService.updateInventoryChange(new InventoryManagementRequest(
+                                    List.of(new InventoryChange(productId, delta))));
+                        } catch (NotEnoughStockException e) {
+                            rejected++;
+                        }
+                    }
+                    return rejected;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            List<Integer> failures = new ArrayList<>();
+            for (Future<Integer> future : futures) {
+                failures.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Product saveProduct(String name, int stock) {
+        return productRepository.save(Product.builder()
+                .name(name)
+                .category(category)
+                .price(10.0)
+                .stockQuantity(stock)
+                .build());
+    }
+}
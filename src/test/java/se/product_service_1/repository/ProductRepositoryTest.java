@@ -0,0 +1,229 @@
+package se.product_service_1.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.dto.FacetCount;
+import se.product_service_1.dto.ProductBulkResult;
+import se.product_service_1.dto.ProductRequest;
+import se.product_service_1.dto.ProductTagBulkRequest;
+import se.product_service_1.dto.ProductTagBulkResult;
+import se.product_service_1.dto.ProductSearchRequest;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.service.CatalogChangeCounters;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.InventoryAvailability;
+import se.product_service_1.service.InventoryLedgerService;
+import se.product_service_1.service.LowStockMonitor;
+import se.product_service_1.service.ProductColumnIndex;
+import se.product_service_1.service.ProductPage;
+import se.product_service_1.service.ProductQueryPlanner;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductSearchResult;
+import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTagIndex;
+import se.product_service_1.service.ProductTextIndex;
+import se.product_service_1.service.TagNameIndex;
+import se.product_service_1.service.TagService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ProductService.class, TagService.class, ProductResponseCache.class, ProductTagIndex.class, TagNameIndex.class, ProductTextIndex.class, ProductColumnIndex.class, ProductQueryPlanner.class, CatalogChangeCounters.class, InventoryAvailability.class, HotSkuInventory.class, InventoryLedgerService.class, LowStockMonitor.class, SimpleMeterRegistry.class})
+class ProductRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductColumnIndex productColumnIndex;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    private Category electronics;
+    private Category books;
+
+    @BeforeEach
+    void setUp() {
+        electronics = entityManager.persist(Category.builder().name("Electronics").build());
+        books = entityManager.persist(Category.builder().name("Books").build());
+        persistProduct("Laptop", electronics, 999.0);
+        persistProduct("Phone", electronics, 499.0);
+        persistProduct("Cable", electronics, 9.0);
+        persistProduct("Charger", electronics, 9.0);
+        persistProduct("Novel", books, 15.0);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void getProductPage_ShouldWalkAllPagesByPrice() {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ProductPage page = productService.getProductPage(null, "price", cursor, 2, false);
+            page.getProducts().forEach(product -> names.add(product.getName()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(List.of("Cable", "Charger", "Novel", "Phone", "Laptop"), names);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void getProductPage_ShouldFilterOnCategoryAndSortByName() {
+        ProductPage first = productService.getProductPage(electronics.getId(), "name", null, 3, true);
+        ProductPage second = productService.getProductPage(electronics.getId(), "name", first.getNextCursor(), 3, false);
+
+        assertEquals(List.of("Cable", "Charger", "Laptop"), first.getProducts().stream().map(Product::getName).toList());
+        assertEquals(4L, first.getTotalCount());
+        assertEquals(List.of("Phone"), second.getProducts().stream().map(Product::getName).toList());
+        assertNull(second.getNextCursor());
+        assertNull(second.getTotalCount());
+    }
+
+    @Test
+    void getProductPage_ShouldRejectCursorFromOtherSort() {
+        String priceCursor = productService.getProductPage(null, "price", null, 1, false).getNextCursor();
+
+        assertThrows(BadRequestException.class,
+                () -> productService.getProductPage(null, "name", priceCursor, 1, false));
+    }
+
+    @Test
+    void exportProducts_ShouldStreamInIdOrderAndResumeAfterId() {
+        List<Long> allIds = new ArrayList<>();
+        productService.exportProducts(null, (products, tagNames) -> products.forEach(p -> allIds.add(p.getId())));
+
+        List<Long> resumedIds = new ArrayList<>();
+        productService.exportProducts(allIds.get(1), (products, tagNames) -> products.forEach(p -> resumedIds.add(p.getId())));
+
+        assertEquals(5, allIds.size());
+        assertEquals(allIds.stream().sorted().toList(), allIds);
+        assertEquals(allIds.subList(2, 5), resumedIds);
+    }
+
+    @Test
+    void searchProducts_ShouldCombineCategoryPriceAndSortWithFacets() {
+        // Produkterna är sparade direkt via entityManager, förbi skrivvägarna som håller indexet i synk
+        productColumnIndex.rebuild();
+        ProductSearchRequest request = ProductSearchRequest.builder()
+                .categoryName("Electronics")
+                .maxPrice(500.0)
+                .sortBy("price")
+                .size(2)
+                .facets(List.of("category"))
+                .build();
+
+        ProductSearchResult result = productService.searchProducts(request, true);
+
+        assertEquals(List.of("Cable", "Charger"), result.getProducts().stream().map(Product::getName).toList());
+        assertEquals(3L, result.getTotalCount());
+        assertEquals(List.of(new FacetCount("Electronics", 3L)), result.getFacets().get("category"));
+        assertEquals(2, result.getPlan().size());
+        assertEquals(3L, result.getPlan().get(1).getActualRows());
+    }
+
+    @Test
+    void addProducts_ShouldCreateValidItemsAndReportConflictsPerItem() {
+        List<ProductRequest> requests = List.of(
+                bulkRequest("Tablet", "Electronics", List.of("portable", "touch")),
+                bulkRequest("Laptop", "Electronics", null),
+                bulkRequest("Essay", "Books", List.of("portable")),
+                bulkRequest("Tablet", "Books", null),
+                bulkRequest("Lamp", "Furniture", null));
+
+        List<ProductBulkResult> results = productService.addProducts(requests);
+
+        assertEquals(List.of(ProductBulkResult.CREATED, ProductBulkResult.CONFLICT, ProductBulkResult.CREATED,
+                        ProductBulkResult.CONFLICT, ProductBulkResult.INVALID),
+                results.stream().map(ProductBulkResult::getStatus).toList());
+        Long tabletId = results.get(0).getProductId();
+        assertNotNull(tabletId);
+        assertNull(results.get(1).getProductId());
+        assertEquals(2, productTagRepository.findTagIdsByProductId(tabletId).size());
+        assertEquals(1, productTagRepository.findTagIdsByProductId(results.get(2).getProductId()).size());
+        assertEquals(7, productRepository.count());
+    }
+
+    @Test
+    void replaceProductTags_ShouldAddMissingAndRemoveOthers() {
+        Long tabletId = productService.addProducts(List.of(bulkRequest("Tablet", "Electronics", List.of("old", "keep"))))
+                .get(0).getProductId();
+
+        productService.replaceProductTags(tabletId, List.of("keep", "new"));
+        entityManager.flush();
+
+        assertEquals(List.of("keep", "new"), tagNamesOf(tabletId));
+    }
+
+    @Test
+    void updateProductTags_ShouldAttachAndDetachAcrossProducts() {
+        List<ProductBulkResult> created = productService.addProducts(List.of(
+                bulkRequest("Tablet", "Electronics", List.of("sale")),
+                bulkRequest("Essay", "Books", List.of("sale", "paper"))));
+        Long tabletId = created.get(0).getProductId();
+        Long essayId = created.get(1).getProductId();
+
+        ProductTagBulkResult result = productService.updateProductTags(ProductTagBulkRequest.builder()
+                .productIds(List.of(tabletId, essayId))
+                .addTagNames(List.of("new", "paper"))
+                .removeTagNames(List.of("sale"))
+                .build());
+        entityManager.flush();
+
+        assertEquals(2, result.getProductCount());
+        assertEquals(3, result.getLinksAdded());
+        assertEquals(2, result.getLinksRemoved());
+        assertEquals(List.of("new", "paper"), tagNamesOf(tabletId));
+        assertEquals(List.of("new", "paper"), tagNamesOf(essayId));
+    }
+
+    @Test
+    void updateProductTags_ShouldRejectUnknownProducts() {
+        ProductTagBulkRequest request = ProductTagBulkRequest.builder()
+                .productIds(List.of(-1L))
+                .addTagNames(List.of("sale"))
+                .build();
+
+        assertThrows(ProductNotFoundException.class, () -> productService.updateProductTags(request));
+    }
+
+    private List<String> tagNamesOf(Long productId) {
+        return productTagRepository.findTagNamesByProductIds(List.of(productId)).stream()
+                .map(row -> (String) row[1])
+                .toList();
+    }
+
+    private static ProductRequest bulkRequest(String name, String categoryName, List<String> tagNames) {
+        return new ProductRequest(name, categoryName, 10.0, 3, tagNames);
+    }
+
+    private void persistProduct(String name, Category category, double price) {
+        entityManager.persist(Product.builder()
+                .name(name)
+                .category(category)
+                .price(price)
+                .stockQuantity(1)
+                .build());
+    }
+}
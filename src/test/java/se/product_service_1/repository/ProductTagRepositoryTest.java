@@ -0,0 +1,213 @@
+package se.product_service_1.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.model.ProductTag;
+import se.product_service_1.model.Tag;
+import se.product_service_1.service.CatalogChangeCounters;
+import se.product_service_1.service.HotSkuInventory;
+import se.product_service_1.service.InventoryAvailability;
+import se.product_service_1.service.InventoryLedgerService;
+import se.product_service_1.service.LowStockMonitor;
+import se.product_service_1.service.ProductColumnIndex;
+import se.product_service_1.service.ProductQueryPlanner;
+import se.product_service_1.service.ProductResponseCache;
+import se.product_service_1.service.ProductService;
+import se.product_service_1.service.ProductTagIndex;
+import se.product_service_1.service.ProductTextIndex;
+import se.product_service_1.service.TagNameIndex;
+import se.product_service_1.service.TagPage;
+import se.product_service_1.service.TagService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ProductService.class, TagService.class, ProductResponseCache.class, ProductTagIndex.class, TagNameIndex.class, ProductTextIndex.class, ProductColumnIndex.class, ProductQueryPlanner.class, CatalogChangeCounters.class, InventoryAvailability.class, HotSkuInventory.class, InventoryLedgerService.class, LowStockMonitor.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ProductTagRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private ProductTagIndex productTagIndex;
+
+    @Autowired
+    private TagService tagService;
+
+    private Category category;
+    private Tag tech;
+    private Tag gaming;
+
+    @BeforeEach
+    void setUp() {
+        category = entityManager.persist(Category.builder().name("Electronics").build());
+        tech = entityManager.persist(Tag.builder().name("Tech").build());
+        gaming = entityManager.persist(Tag.builder().name("Gaming").build());
+    }
+
+    @Test
+    void getTagNamesForProducts_ShouldMapTagsPerProduct() {
+        Product laptop = persistProduct("Laptop", tech, gaming);
+        Product phone = persistProduct("Phone", tech);
+        Product cable = persistProduct("Cable");
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<Long, List<String>> result = productService.getTagNamesForProducts(
+                List.of(laptop.getId(), phone.getId(), cable.getId()));
+
+        assertEquals(List.of("Gaming", "Tech"), result.get(laptop.getId()));
+        assertEquals(List.of("Tech"), result.get(phone.getId()));
+        assertFalse(result.containsKey(cable.getId()));
+    }
+
+    @Test
+    void findProductIdsHavingAllTagIds_ShouldOnlyReturnProductsWithEveryTag() {
+        Product laptop = persistProduct("Laptop", tech, gaming);
+        persistProduct("Phone", tech);
+        entityManager.flush();
+
+        List<Long> result = productTagRepository.findProductIdsHavingAllTagIds(List.of(tech.getId(), gaming.getId()), 2);
+
+        assertEquals(List.of(laptop.getId()), result);
+    }
+
+    @Test
+    void searchProductsByTags_ShouldUseIndexForUnionAndIntersection() {
+        Product laptop = persistProduct("Laptop", tech, gaming);
+        Product phone = persistProduct("Phone", tech);
+        persistProduct("Cable");
+        entityManager.flush();
+        productTagIndex.rebuild();
+
+        List<Product> anyTag = productService.searchProductsByTags(List.of("Tech", "Gaming"));
+        List<Product> allTags = productService.searchProductsByAllTags(List.of("Tech", "Gaming"));
+
+        assertEquals(List.of(laptop.getId(), phone.getId()), anyTag.stream().map(Product::getId).toList());
+        assertEquals(List.of(laptop.getId()), allTags.stream().map(Product::getId).toList());
+        assertTrue(productService.searchProductsByAllTags(List.of("Tech", "Unknown")).isEmpty());
+    }
+
+    @Test
+    void getProductCounts_ShouldMatchGroupedQueryAndIndex() {
+        persistProduct("Laptop", tech, gaming);
+        persistProduct("Phone", tech);
+        entityManager.flush();
+        List<Long> tagIds = List.of(tech.getId(), gaming.getId());
+
+        Map<Long, Long> fromQuery = new HashMap<>();
+        productTagRepository.countProductsByTagIds(tagIds).forEach(row -> fromQuery.put((Long) row[0], (Long) row[1]));
+        productTagIndex.rebuild();
+
+        assertEquals(Map.of(tech.getId(), 2L, gaming.getId(), 1L), fromQuery);
+        assertEquals(fromQuery, tagService.getProductCounts(tagIds));
+    }
+
+    @Test
+    void getTagPage_ShouldPageByPopularityInDatabase() {
+        Tag audio = entityManager.persist(Tag.builder().name("Audio").build());
+        persistProduct("Laptop", tech, gaming);
+        persistProduct("Phone", tech);
+        entityManager.flush();
+
+        TagPage first = tagService.getTagPage("popularity", 0, 2);
+        TagPage second = tagService.getTagPage("popularity", 1, 2);
+
+        assertEquals(List.of(tech, gaming), first.getTags());
+        assertEquals(Map.of(tech.getId(), 2L, gaming.getId(), 1L), first.getProductCounts());
+        assertEquals(3, first.getTotalCount());
+        assertEquals(List.of(audio), second.getTags());
+        assertEquals(0L, second.getProductCounts().get(audio.getId()));
+    }
+
+    @Test
+    void searchTagPage_ShouldPageMatchesInDatabase() {
+        Tag audio = entityManager.persist(Tag.builder().name("Audio").build());
+        persistProduct("Laptop", gaming);
+        entityManager.flush();
+
+        TagPage byName = tagService.searchTagPage("A", "name", 1, 1);
+        TagPage byPopularity = tagService.searchTagPage("a", "popularity", null, null);
+
+        assertEquals(List.of(gaming), byName.getTags());
+        assertEquals(2, byName.getTotalCount());
+        assertEquals(List.of(gaming, audio), byPopularity.getTags());
+        assertEquals(Map.of(gaming.getId(), 1L, audio.getId(), 0L), byPopularity.getProductCounts());
+        assertTrue(tagService.searchTagPage("%", "popularity", null, null).getTags().isEmpty());
+    }
+
+    @Test
+    void getTagPage_ShouldRejectUnknownSortAndInvalidPage() {
+        assertThrows(BadRequestException.class, () -> tagService.getTagPage("newest", null, null));
+        assertThrows(BadRequestException.class, () -> tagService.getTagPage("name", -1, 10));
+        assertThrows(BadRequestException.class, () -> tagService.getTagPage(null, 0, 0));
+    }
+
+    @Test
+    void getTagNamesForProducts_StatementCountShouldNotGrowWithProductCount() {
+        long smallListStatements = countStatementsForTagLookup(persistProducts("Small", 5));
+        long largeListStatements = countStatementsForTagLookup(persistProducts("Large", 200));
+
+        assertEquals(1, smallListStatements);
+        assertEquals(smallListStatements, largeListStatements);
+    }
+
+    private long countStatementsForTagLookup(List<Long> productIds) {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        productService.getTagNamesForProducts(productIds);
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<Long> persistProducts(String prefix, int count) {
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(persistProduct(prefix + "-" + i, tech, gaming).getId());
+        }
+        return ids;
+    }
+
+    private Product persistProduct(String name, Tag... tags) {
+        Product product = entityManager.persist(Product.builder()
+                .name(name)
+                .category(category)
+                .price(10.0)
+                .stockQuantity(1)
+                .build());
+        for (Tag tag : tags) {
+            entityManager.persist(ProductTag.builder().productId(product.getId()).tagId(tag.getId()).build());
+        }
+        return product;
+    }
+}
@@ -0,0 +1,96 @@
+package se.product_service_1.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.product_service_1.config.SchemaUpgrades;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.model.Tag;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uppgraderingar av en befintlig databas, där raderna skapades innan entiteterna ändrades.
+ */
+@DataJpaTest
+class SchemaUpgradesTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private SchemaUpgrades schemaUpgrades;
+    private Category category;
+
+    @BeforeEach
+    void setUp() {
+        schemaUpgrades = new SchemaUpgrades(jdbcTemplate, entityManagerFactory);
+        category = entityManager.persist(Category.builder().name("Books").build());
+    }
+
+    @Test
+    void backfillProductVersions_ShouldLetHibernateUpdateOldRows() {
+        Product product = entityManager.persistAndFlush(Product.builder()
+                .name("Old").category(category).price(10.0).stockQuantity(5).build());
+        jdbcTemplate.update("UPDATE products SET version = NULL");
+        entityManager.clear();
+
+        assertEquals(1, schemaUpgrades.backfillProductVersions());
+
+        Product loaded = entityManager.find(Product.class, product.getId());
+        assertEquals(0L, loaded.getVersion());
+        loaded.setPrice(12.0);
+        entityManager.flush();
+        assertEquals(1L, loaded.getVersion());
+        assertEquals(0, schemaUpgrades.backfillProductVersions());
+    }
+
+    @Test
+    void alignSequence_ShouldMoveSequencePastRowsInsertedBeforeIt() {
+        Product product = entityManager.persistAndFlush(Product.builder()
+                .name("Existing").category(category).price(10.0).stockQuantity(5).build());
+        long maxId = product.getId() + 1000;
+        // En rad från tiden med IDENTITY, långt före sekvensen
+        jdbcTemplate.update("INSERT INTO products (id, name, category_id, price, stock_quantity, version) VALUES (?, 'Legacy', ?, 1.0, 1, 0)",
+                maxId, category.getId());
+
+        assertTrue(schemaUpgrades.alignSequence("products", "products_seq"));
+
+        Long next = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR products_seq", Long.class);
+        // Hibernate delar ut next - 49 .. next
+        assertTrue(next - (SchemaUpgrades.ALLOCATION_SIZE - 1) > maxId);
+        assertFalse(schemaUpgrades.alignSequence("products", "products_seq"));
+    }
+
+    @Test
+    void alignSequence_ShouldMoveTagSequencePastRowsInsertedBeforeIt() {
+        jdbcTemplate.update("INSERT INTO tags (id, name) VALUES (?, 'legacy')", 5000L);
+
+        assertTrue(schemaUpgrades.alignSequence("tags", "tags_seq"));
+
+        Tag tag = entityManager.persistAndFlush(Tag.builder().name("fresh").build());
+        assertTrue(tag.getId() > 5000L);
+    }
+
+    @Test
+    void backfillOpeningBalances_ShouldSnapshotCurrentStockOfProductsWithoutLedger() {
+        Product product = entityManager.persistAndFlush(Product.builder()
+                .name("Untracked").category(category).price(10.0).stockQuantity(6).build());
+
+        assertEquals(1, schemaUpgrades.backfillOpeningBalances());
+
+        assertEquals(6L, jdbcTemplate.queryForObject(
+                "SELECT quantity FROM inventory_ledger_snapshots WHERE product_id = ?", Long.class, product.getId()));
+        assertEquals(0, schemaUpgrades.backfillOpeningBalances());
+    }
+}
@@ -0,0 +1,60 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogChangeCountersTest {
+
+    private final CatalogChangeCounters counters = new CatalogChangeCounters();
+
+    @Test
+    void productChanged_ShouldOnlyChangeCatalogAndItsCategory() {
+        String catalog = counters.catalogTag();
+        String electronics = counters.categoryTag(1L);
+        String books = counters.categoryTag(2L);
+
+        counters.productChanged(1L);
+
+        assertNotEquals(catalog, counters.catalogTag());
+        assertNotEquals(electronics, counters.categoryTag(1L));
+        assertEquals(books, counters.categoryTag(2L));
+    }
+
+    @Test
+    void productsChanged_ShouldIgnoreUnknownPreviousCategory() {
+        String electronics = counters.categoryTag(1L);
+
+        counters.productsChanged(Arrays.asList(null, 1L));
+
+        assertNotEquals(electronics, counters.categoryTag(1L));
+    }
+
+    @Test
+    void allChanged_ShouldChangeEveryCategory() {
+        String books = counters.categoryTag(2L);
+
+        counters.allChanged();
+
+        assertNotEquals(books, counters.categoryTag(2L));
+    }
+
+    @Test
+    void productChanged_ShouldWaitForCommit() {
+        String catalog = counters.catalogTag();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            counters.productChanged(1L);
+            assertEquals(catalog, counters.catalogTag());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertNotEquals(catalog, counters.catalogTag());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
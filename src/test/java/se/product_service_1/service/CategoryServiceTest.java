@@ -52,6 +52,30 @@ class CategoryServiceTest {
         verify(categoryRepository, times(1)).findByName("Electronics");
     }
 
+    @Test
+    void getCategoryByName_ShouldServeFromDictionary_WhenLoaded() {
+        when(categoryRepository.findAll()).thenReturn(List.of(sampleCategory));
+        categoryService.refreshDictionary();
+
+        Category result = categoryService.getCategoryByName("Electronics");
+
+        assertSame(sampleCategory, result);
+        verify(categoryRepository, never()).findByName(anyString());
+    }
+
+    @Test
+    void addCategory_ShouldMakeCategoryVisibleWithoutDatabaseLookup() {
+        when(categoryRepository.findByName("Electronics")).thenReturn(Optional.empty());
+        when(categoryRepository.save(sampleCategory)).thenReturn(sampleCategory);
+        categoryService.refreshDictionary();
+
+        categoryService.addCategory(sampleCategory);
+
+        assertEquals(List.of(sampleCategory), categoryService.getAllCategories());
+        assertSame(sampleCategory, categoryService.getCategoryByName("Electronics"));
+        verify(categoryRepository, times(1)).findByName("Electronics");
+    }
+
     @Test
     void getCategoryByName_ShouldThrow_WhenNotFound() {
         when(categoryRepository.findByName("Unknown")).thenReturn(Optional.empty());
@@ -60,6 +84,48 @@ class CategoryServiceTest {
                 () -> categoryService.getCategoryByName("Unknown"));
     }
 
+    @Test
+    void getCategoryByName_ShouldNotQueryAgain_WhenRecentlyMissing() {
+        when(categoryRepository.findByName("Unknown")).thenReturn(Optional.empty());
+
+        assertThrows(CategoryNotFoundException.class, () -> categoryService.getCategoryByName("Unknown"));
+        assertThrows(CategoryNotFoundException.class, () -> categoryService.getCategoryByName("Unknown"));
+
+        verify(categoryRepository, times(1)).findByName("Unknown");
+    }
+
+    @Test
+    void getCategoryByName_ShouldFindCategoryAddedAfterMiss() {
+        Category books = Category.builder().id(2L).name("Books").build();
+        when(categoryRepository.findByName("Books")).thenReturn(Optional.empty());
+        when(categoryRepository.save(books)).thenReturn(books);
+        assertThrows(CategoryNotFoundException.class, () -> categoryService.getCategoryByName("Books"));
+
+        categoryService.addCategory(books);
+
+        assertSame(books, categoryService.getCategoryByName("Books"));
+    }
+
+    @Test
+    void refreshDictionary_ShouldKeepCategoryAddedWhileReading() {
+        Category books = Category.builder().id(2L).name("Books").build();
+        when(categoryRepository.save(books)).thenReturn(books);
+        when(categoryRepository.findAll())
+                .thenReturn(List.of(sampleCategory))
+                .thenAnswer(invocation -> {
+                    // Skrivningen committas efter att omläsningen läst tabellen
+                    categoryService.addCategory(books);
+                    return List.of(sampleCategory);
+                });
+        categoryService.refreshDictionary();
+
+        categoryService.refreshDictionary();
+
+        assertSame(books, categoryService.getCategoryByName("Books"));
+        // Bara addCategorys dubblettkontroll; uppslaget besvarades av uppslagstabellen
+        verify(categoryRepository, times(1)).findByName("Books");
+    }
+
     @Test
     void addCategory_ShouldSave_WhenNotExists() {
         when(categoryRepository.findByName("Electronics")).thenReturn(Optional.empty());
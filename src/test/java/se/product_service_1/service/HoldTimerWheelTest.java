@@ -0,0 +1,50 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldTimerWheelTest {
+
+    private final HoldTimerWheel wheel = new HoldTimerWheel(100, 8, 0);
+
+    @Test
+    void advance_ShouldExpireOnlyPassedDeadlines() {
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 500);
+
+        assertEquals(List.of(), wheel.advance(200));
+        assertEquals(List.of("a"), wheel.advance(300));
+        assertEquals(List.of("b"), wheel.advance(500));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_ShouldKeepDeadlinesMoreThanOneLapAway() {
+        // 8 fack à 100 ms: 1 250 ms hamnar i samma fack som 450 ms men ett varv senare
+        wheel.schedule("later", 1250);
+        wheel.schedule("sooner", 450);
+
+        assertEquals(List.of("sooner"), wheel.advance(500));
+        assertEquals(List.of(), wheel.advance(1200));
+        assertEquals(List.of("later"), wheel.advance(1300));
+    }
+
+    @Test
+    void advance_ShouldCatchUpAfterLongPause() {
+        wheel.schedule("a", 300);
+        wheel.schedule("b", 2500);
+
+        assertEquals(List.of("a", "b"), wheel.advance(10_000).stream().sorted().toList());
+    }
+
+    @Test
+    void schedule_ShouldExpirePassedDeadlineOnNextTick() {
+        wheel.advance(1000);
+        wheel.schedule("late", 200);
+
+        assertEquals(List.of("late"), wheel.advance(1100));
+    }
+}
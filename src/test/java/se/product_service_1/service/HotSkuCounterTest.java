@@ -0,0 +1,94 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotSkuCounterTest {
+
+    @Test
+    void tryApply_ShouldGatherFromSeveralCellsAndRefuseMoreThanStock() {
+        HotSkuCounter counter = new HotSkuCounter(1L, 10, 4);
+
+        assertTrue(counter.tryApply(-7));
+        assertEquals(3, counter.stock());
+        assertFalse(counter.tryApply(-4));
+        assertEquals(3, counter.stock());
+        assertTrue(counter.tryApply(5));
+        assertTrue(counter.tryApply(-8));
+        assertEquals(0, counter.stock());
+    }
+
+    @Test
+    void tryApply_ShouldNeverOversellUnderParallelWriters() throws Exception {
+        int stock = 1000;
+        HotSkuCounter counter = new HotSkuCounter(1L, stock, 16);
+        int writers = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int sold = 0;
+                    for (int i = 0; i < 100; i++) {
+                        if (counter.tryApply(-(1 + i % 3))) {
+                            sold += 1 + i % 3;
+                        }
+                    }
+                    return sold;
+                }));
+            }
+            start.countDown();
+            int sold = 0;
+            for (Future<Integer> future : futures) {
+                sold += future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(stock - counter.stock(), sold);
+            assertTrue(counter.stock() >= 0 && counter.stock() < 3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void forceApply_ShouldRecordDeficitThatIncrementsPayOffBeforeNewWithdrawals() {
+        HotSkuCounter counter = new HotSkuCounter(1L, 4, 4);
+        assertTrue(counter.tryApply(3));
+        assertTrue(counter.tryApply(-7));
+
+        // Påfyllningen på 3 backas efter att allt har sålts
+        counter.forceApply(-3);
+
+        assertEquals(-3, counter.stock());
+        assertFalse(counter.tryApply(-1));
+        assertTrue(counter.tryApply(2));
+        assertEquals(-1, counter.stock());
+        assertFalse(counter.tryApply(-1));
+        assertTrue(counter.tryApply(4));
+        assertEquals(3, counter.stock());
+        assertTrue(counter.tryApply(-3));
+        assertEquals(0, counter.stock());
+    }
+
+    @Test
+    void retire_ShouldRejectNewCallers() {
+        HotSkuCounter counter = new HotSkuCounter(1L, 5, 2);
+        assertTrue(counter.enter());
+        counter.exit();
+
+        counter.retire();
+
+        assertFalse(counter.enter());
+    }
+}
@@ -0,0 +1,70 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotSkuDeltaLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unflushedDeltas_ShouldSumChangesAfterLastCheckpoint() throws Exception {
+        Path file = dir.resolve("deltas.log");
+        try (HotSkuDeltaLog log = new HotSkuDeltaLog(file)) {
+            log.append(1L, -2, () -> { });
+            log.append(2L, 5, () -> { });
+            long seq = log.snapshot(() -> { });
+            log.append(1L, -3, () -> { });
+            log.checkpoint(seq);
+            log.append(1L, -1, () -> { });
+        }
+
+        assertEquals(Map.of(1L, -4L), HotSkuDeltaLog.unflushedDeltas(file));
+    }
+
+    @Test
+    void unflushedDeltas_ShouldIgnoreLineCutOffByCrash() throws Exception {
+        Path file = dir.resolve("deltas.log");
+        try (HotSkuDeltaLog log = new HotSkuDeltaLog(file)) {
+            log.append(1L, -2, () -> { });
+        }
+        Files.writeString(file, "D 2 1 -1", StandardOpenOption.APPEND);
+
+        assertEquals(Map.of(1L, -2L), HotSkuDeltaLog.unflushedDeltas(file));
+    }
+
+    @Test
+    void checkpoint_ShouldEmptyFileWhenEverythingIsWritten() throws Exception {
+        Path file = dir.resolve("deltas.log");
+        try (HotSkuDeltaLog log = new HotSkuDeltaLog(file)) {
+            log.append(1L, -2, () -> { });
+            log.checkpoint(log.snapshot(() -> { }));
+            log.append(1L, 3, () -> { });
+        }
+
+        assertEquals(Map.of(1L, 3L), HotSkuDeltaLog.unflushedDeltas(file));
+        assertEquals(1, Files.readAllLines(file).size());
+    }
+
+    @Test
+    void unflushedDeltas_ShouldSkipLinesCoveredByProductCheckpoint() throws Exception {
+        Path file = dir.resolve("deltas.log");
+        try (HotSkuDeltaLog log = new HotSkuDeltaLog(file, 40)) {
+            log.append(1L, -2, () -> { });
+            log.append(2L, 5, () -> { });
+            log.append(1L, -3, () -> { });
+        }
+
+        assertEquals(43, HotSkuDeltaLog.lastSequence(file));
+        assertEquals(Map.of(1L, -3L, 2L, 5L), HotSkuDeltaLog.unflushedDeltas(file, Map.of(1L, 41L)));
+        assertEquals(Map.of(1L, -5L), HotSkuDeltaLog.unflushedDeltas(file, Map.of(2L, 42L)));
+    }
+}
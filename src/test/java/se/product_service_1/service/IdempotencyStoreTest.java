@@ -0,0 +1,153 @@
+package se.product_service_1.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.exception.IdempotencyKeyInProgressException;
+import se.product_service_1.exception.IdempotencyKeyMismatchException;
+import se.product_service_1.repository.IdempotencyRecordRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class IdempotencyStoreTest {
+
+    private static final TypeReference<String> STRING = new TypeReference<>() {};
+
+    private IdempotencyStore store;
+    private AtomicInteger executions;
+
+    @BeforeEach
+    void setUp() {
+        store = newStore(30_000);
+        executions = new AtomicInteger();
+    }
+
+    @Test
+    void execute_ShouldRunOnceAndReplayStoredResponse() {
+        ResponseEntity<String> first = store.execute("k1", "POST /x", List.of(1), STRING, this::created);
+        ResponseEntity<String> retry = store.execute("k1", "POST /x", List.of(1), STRING, this::created);
+
+        assertEquals(1, executions.get());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    void execute_ShouldRunEveryTimeWithoutKey() {
+        store.execute(null, "POST /x", List.of(1), STRING, this::created);
+        store.execute(null, "POST /x", List.of(1), STRING, this::created);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_ShouldRejectKeyReusedForAnotherRequest() {
+        store.execute("k1", "POST /x", List.of(1), STRING, this::created);
+
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> store.execute("k1", "POST /x", List.of(2), STRING, this::created));
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> store.execute("k1", "POST /y", List.of(1), STRING, this::created));
+        assertThrows(BadRequestException.class,
+                () -> store.execute(" ", "POST /x", List.of(1), STRING, this::created));
+    }
+
+    @Test
+    void execute_ShouldNotStoreFailures() {
+        assertThrows(IllegalStateException.class, () -> store.execute("k1", "POST /x", List.of(1), STRING, () -> {
+            executions.incrementAndGet();
+            throw new IllegalStateException("fel");
+        }));
+
+        ResponseEntity<String> retry = store.execute("k1", "POST /x", List.of(1), STRING, this::created);
+
+        assertEquals(2, executions.get());
+        assertNull(retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    void execute_ConcurrentDuplicatesShouldWaitForTheFirstExecution() throws Exception {
+        int callers = 16;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<ResponseEntity<String>>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> store.execute("k1", "POST /x", List.of(1), STRING, () -> {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return created();
+                })));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // Ge övriga anrop tid att hitta det pågående och börja vänta
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<ResponseEntity<String>> result : results) {
+                assertEquals("svar 1", result.get(10, TimeUnit.SECONDS).getBody());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_ShouldGiveUpWaitingAfterTimeout() throws Exception {
+        IdempotencyStore impatient = newStore(50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResponseEntity<String>> first = executor.submit(() -> impatient.execute("k1", "POST /x", List.of(1), STRING, () -> {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return created();
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            assertThrows(IdempotencyKeyInProgressException.class,
+                    () -> impatient.execute("k1", "POST /x", List.of(1), STRING, this::created));
+            release.countDown();
+            assertEquals(HttpStatus.CREATED, first.get(10, TimeUnit.SECONDS).getStatusCode());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ResponseEntity<String> created() {
+        return ResponseEntity.status(HttpStatus.CREATED).body("svar " + executions.incrementAndGet());
+    }
+
+    private static IdempotencyStore newStore(long waitTimeoutMillis) {
+        return new IdempotencyStore(new ObjectMapper(), mock(IdempotencyRecordRepository.class),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), 3600, 1000, false, waitTimeoutMillis);
+    }
+}
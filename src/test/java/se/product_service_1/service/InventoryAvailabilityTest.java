@@ -0,0 +1,60 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.ProductRepository;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InventoryAvailabilityTest {
+
+    private ProductRepository productRepository;
+    private InventoryAvailability availability;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.findStockQuantityById(1L)).thenReturn(Optional.of(10));
+        availability = new InventoryAvailability(productRepository);
+    }
+
+    @Test
+    void stockChanged_ShouldIgnoreSnapshotOlderThanCurrent() {
+        availability.stockChanged(product(1L, 4, 3L));
+        availability.stockChanged(product(1L, 7, 2L));
+
+        assertEquals(4, availability.availableToPromise(1L));
+    }
+
+    @Test
+    void stockChanged_ShouldApplyNewerSnapshot() {
+        availability.stockChanged(product(1L, 7, 2L));
+        availability.stockChanged(product(1L, 4, 3L));
+
+        assertEquals(4, availability.availableToPromise(1L));
+    }
+
+    @Test
+    void stockChanged_ShouldApplyAnySnapshotOverStockLoadedWithoutVersion() {
+        assertEquals(10, availability.availableToPromise(1L));
+
+        availability.stockChanged(product(1L, 6, 1L));
+
+        assertEquals(6, availability.availableToPromise(1L));
+    }
+
+    private static Product product(Long id, int stock, Long version) {
+        return Product.builder()
+                .id(id)
+                .name("Product " + id)
+                .price(10.0)
+                .stockQuantity(stock)
+                .version(version)
+                .build();
+    }
+}
@@ -0,0 +1,113 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTest {
+
+    @Test
+    void putGetRemove_ShouldMatchHashMapUnderRandomOperations() {
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // Litet nyckelutrymme (inklusive 0 och negativa) så att samma nycklar skrivs och tas bort om och om igen
+            long key = random.nextInt(2_000) - 100;
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = -100; key < 1_900; key++) {
+            assertEquals(expected.getOrDefault(key, -1), map.get(key, -1), "key " + key);
+        }
+    }
+
+    @Test
+    void getAll_ShouldReturnMissingValueForUnknownKeys() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (long id = 1; id <= 1_000; id++) {
+            map.put(id, (int) id * 2);
+        }
+
+        assertArrayEquals(new int[] {2, -1, 2_000, -1}, map.getAll(new long[] {1, 0, 1_000, 1_001}, -1));
+    }
+
+    @Test
+    void replaceWith_ShouldTakeOverContentAndEmptyTheOther() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(1, 1);
+        LongIntHashMap fresh = new LongIntHashMap();
+        fresh.put(2, 2);
+
+        map.replaceWith(fresh);
+
+        assertEquals(-1, map.get(1, -1));
+        assertEquals(2, map.get(2, -1));
+        assertEquals(0, fresh.size());
+    }
+
+    @Test
+    void get_ConcurrentReadersShouldSeeOnlyWrittenValues() throws Exception {
+        LongIntHashMap map = new LongIntHashMap();
+        // Jämna id:n har alltid värdet id; udda id:n läggs till och tas bort av skrivaren
+        for (long id = 0; id < 10_000; id += 2) {
+            map.put(id, (int) id);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int round = 0; round < 50; round++) {
+                    for (long id = 1; id < 10_000; id += 2) {
+                        map.put(id, (int) id);
+                    }
+                    for (long id = 1; id < 10_000; id += 2) {
+                        map.remove(id);
+                    }
+                }
+                running.set(false);
+            });
+            Future<?>[] readers = new Future<?>[3];
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = executor.submit(() -> {
+                    long[] keys = new long[100];
+                    while (running.get()) {
+                        for (int i = 0; i < keys.length; i++) {
+                            keys[i] = i * 100L;
+                        }
+                        int[] values = map.getAll(keys, -1);
+                        for (int i = 0; i < keys.length; i++) {
+                            assertEquals(keys[i], values[i]);
+                        }
+                        int odd = map.get(4_001, -1);
+                        assertTrue(odd == -1 || odd == 4_001);
+                    }
+                });
+            }
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.product_service_1.dto.LowStockEvent;
+import se.product_service_1.dto.LowStockProduct;
+import se.product_service_1.exception.BadRequestException;
+import se.product_service_1.exception.ProductNotFoundException;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.CategoryRepository;
+import se.product_service_1.repository.LowStockThresholdRepository;
+import se.product_service_1.repository.ProductRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LowStockMonitorTest {
+
+    private static final Category BOOKS = Category.builder().id(1L).name("Books").build();
+
+    private ProductRepository productRepository;
+    private CategoryRepository categoryRepository;
+    private LowStockThresholdRepository lowStockThresholdRepository;
+    private LowStockMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        categoryRepository = mock(CategoryRepository.class);
+        lowStockThresholdRepository = mock(LowStockThresholdRepository.class);
+        when(productRepository.existsById(anyLong())).thenReturn(true);
+        when(categoryRepository.existsById(anyLong())).thenReturn(true);
+        when(lowStockThresholdRepository.findByProductId(anyLong())).thenReturn(Optional.empty());
+        when(lowStockThresholdRepository.findByCategoryId(anyLong())).thenReturn(Optional.empty());
+        monitor = newMonitor(1000);
+    }
+
+    @Test
+    void stockChanged_ShouldPublishOnlyWhenThresholdIsCrossed() {
+        monitor.setCategoryThreshold(1L, 10);
+
+        monitor.stockChanged(product(1L, 20, 1L));
+        monitor.stockChanged(product(1L, 8, 2L));
+        monitor.stockChanged(product(1L, 5, 3L));
+        monitor.stockChanged(product(1L, 12, 4L));
+
+        List<LowStockEvent> events = monitor.eventsAfter(0);
+        assertEquals(2, events.size());
+        assertEquals(LowStockEvent.LOW, events.get(0).getType());
+        assertEquals(8, events.get(0).getStockQuantity());
+        assertEquals(10, events.get(0).getThreshold());
+        assertEquals(LowStockEvent.RECOVERED, events.get(1).getType());
+        assertEquals(2L, events.get(1).getSeq());
+        assertTrue(monitor.lowStock(10).isEmpty());
+    }
+
+    @Test
+    void lowStock_ShouldListLowestStockFirstAndPreferProductThreshold() {
+        monitor.setCategoryThreshold(1L, 10);
+        monitor.stockChanged(product(1L, 7, 1L));
+        monitor.stockChanged(product(2L, 3, 1L));
+        monitor.stockChanged(product(3L, 9, 1L));
+
+        assertEquals(List.of(2L, 1L, 3L), monitor.lowStock(10).stream().map(LowStockProduct::getProductId).toList());
+        assertEquals(List.of(2L, 1L), monitor.lowStock(2).stream().map(LowStockProduct::getProductId).toList());
+
+        monitor.setProductThreshold(1L, 5);
+
+        List<LowStockProduct> low = monitor.lowStock(10);
+        assertEquals(List.of(2L, 3L), low.stream().map(LowStockProduct::getProductId).toList());
+        LowStockEvent last = monitor.eventsAfter(3).get(0);
+        assertEquals(LowStockEvent.RECOVERED, last.getType());
+        assertEquals(1L, last.getProductId());
+        assertEquals(5, last.getThreshold());
+
+        monitor.clearCategoryThreshold(1L);
+
+        assertEquals(List.of(), monitor.lowStock(10));
+    }
+
+    @Test
+    void stockChanged_ShouldIgnoreOlderVersionAndForgetRemovedProduct() {
+        monitor.setProductThreshold(1L, 10);
+        monitor.stockChanged(product(1L, 4, 5L));
+        monitor.stockChanged(product(1L, 50, 4L));
+
+        assertEquals(4, monitor.lowStock(10).get(0).getStockQuantity());
+
+        monitor.removed(1L);
+
+        assertTrue(monitor.lowStock(10).isEmpty());
+        assertEquals(1, monitor.eventsAfter(0).size());
+    }
+
+    @Test
+    void eventsAfter_ShouldKeepOnlyNewestEventsAndReplayAllAfterRestart() {
+        monitor = newMonitor(2);
+        monitor.setProductThreshold(1L, 10);
+        monitor.stockChanged(product(1L, 1, 1L));
+        monitor.stockChanged(product(1L, 11, 2L));
+        monitor.stockChanged(product(1L, 2, 3L));
+
+        assertEquals(List.of(2L, 3L), monitor.eventsAfter(0).stream().map(LowStockEvent::getSeq).toList());
+        assertEquals(List.of(3L), monitor.eventsAfter(2).stream().map(LowStockEvent::getSeq).toList());
+        // Ett löpnummer från före en omstart är större än det senaste
+        assertEquals(2, monitor.eventsAfter(500).size());
+    }
+
+    @Test
+    void setProductThreshold_ShouldRejectNegativeOrUnknownProduct() {
+        when(productRepository.existsById(99L)).thenReturn(false);
+
+        assertThrows(BadRequestException.class, () -> monitor.setProductThreshold(1L, -1));
+        assertThrows(ProductNotFoundException.class, () -> monitor.setProductThreshold(99L, 5));
+    }
+
+    private LowStockMonitor newMonitor(int bufferSize) {
+        return new LowStockMonitor(productRepository, categoryRepository, lowStockThresholdRepository,
+                mock(HotSkuInventory.class), mock(PlatformTransactionManager.class), 0, bufferSize, 60_000);
+    }
+
+    private static Product product(Long id, int stock, Long version) {
+        return Product.builder()
+                .id(id)
+                .name("Product " + id)
+                .category(BOOKS)
+                .price(10.0)
+                .stockQuantity(stock)
+                .version(version)
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductColumnsTest {
+
+    private static final double[] PRICE_BOUNDS = {100, 500};
+
+    private ProductColumns columns;
+
+    @BeforeEach
+    void setUp() {
+        columns = new ProductColumns(PRICE_BOUNDS);
+        // Läggs in i oordning för att täcka insättning mitt i kolumnerna
+        columns.upsert(3L, "Wooden Train", 2L, "Toys", 50.0, 1);
+        columns.upsert(1L, "laptop", 1L, "Electronics", 999.0, 5);
+        columns.upsert(2L, "Headphones", 1L, "Electronics", 100.0, 0);
+    }
+
+    @Test
+    void countFacets_ShouldCountCategoriesAndPriceBucketsForAllProducts() {
+        ProductColumns.FacetCounts counts = columns.countFacets(null);
+
+        assertEquals(Map.of("Electronics", 2L, "Toys", 1L), counts.getByCategory());
+        assertArrayEquals(new long[]{1, 1, 1}, counts.getByPriceBucket());
+    }
+
+    @Test
+    void countFacets_ShouldOnlyCountGivenProducts() {
+        ProductColumns.FacetCounts counts = columns.countFacets(Roaring64Bitmap.bitmapOf(2L, 3L, 99L));
+
+        assertEquals(Map.of("Electronics", 1L, "Toys", 1L), counts.getByCategory());
+        assertArrayEquals(new long[]{1, 1, 0}, counts.getByPriceBucket());
+    }
+
+    @Test
+    void upsertAndRemove_ShouldBeReflectedInCounts() {
+        columns.upsert(2L, "Headphones", 2L, "Toys", 20.0, 3);
+        columns.remove(1L);
+
+        ProductColumns.FacetCounts counts = columns.countFacets(null);
+
+        assertEquals(2, columns.size());
+        assertEquals(Map.of("Toys", 2L), counts.getByCategory());
+        assertArrayEquals(new long[]{2, 0, 0}, counts.getByPriceBucket());
+    }
+
+    @Test
+    void upsert_ShouldIgnoreOlderVersionAppliedAfterNewer() {
+        assertTrue(columns.upsert(1L, "laptop", 1L, "Electronics", 999.0, 2, 7L));
+        // Commit med version 6 som tillämpas efter version 7
+        assertFalse(columns.upsert(1L, "laptop", 1L, "Electronics", 999.0, 4, 6L));
+
+        assertArrayEquals(new int[]{2}, columns.stocks(new long[]{1L}, -1));
+        assertEquals(2, columns.inStockSize());
+        assertTrue(columns.upsert(1L, "laptop", 1L, "Electronics", 999.0, 0, 7L));
+        assertArrayEquals(new int[]{0}, columns.stocks(new long[]{1L}, -1));
+    }
+
+    @Test
+    void stats_ShouldFollowUpsertAndRemove() {
+        columns.upsert(2L, "Headphones", 2L, "Toys", 20.0, 3);
+        columns.remove(1L);
+
+        assertEquals(0, columns.categorySize("Electronics"));
+        assertEquals(2, columns.categorySize("Toys"));
+        assertEquals(0, columns.categorySize("Unknown"));
+        assertEquals(2, columns.inStockSize());
+        assertEquals(1, columns.priceRangeSize(30.0, null));
+        assertEquals(2, columns.priceRangeSize(null, 50.0));
+    }
+
+    @Test
+    void countFacets_ShouldMergeLargeResultSets() {
+        ProductColumns large = new ProductColumns(PRICE_BOUNDS);
+        Roaring64Bitmap even = new Roaring64Bitmap();
+        for (long id = 1; id <= 10_000; id++) {
+            large.upsert(id, "Product " + id, id % 4, "Category " + id % 4, id % 1000, 1);
+            if (id % 2 == 0) {
+                even.addLong(id);
+            }
+        }
+
+        ProductColumns.FacetCounts counts = large.countFacets(even);
+
+        assertEquals(5000L, counts.getByCategory().values().stream().mapToLong(Long::longValue).sum());
+        assertFalse(counts.getByCategory().containsKey("Category 1"));
+    }
+
+    @Test
+    void select_ShouldCombineFilters() {
+        ProductFilter filter = ProductFilter.builder().categoryName("Electronics").minPrice(100.0).minStock(1).build();
+
+        ProductColumns.Selection selection = columns.select(filter, null, 0, 10, false);
+
+        assertArrayEquals(new long[]{1L}, selection.getPageIds());
+        assertEquals(1, selection.getTotalCount());
+    }
+
+    @Test
+    void select_ShouldSortAndPage() {
+        ProductFilter all = ProductFilter.builder().build();
+
+        assertArrayEquals(new long[]{3L, 2L, 1L}, columns.select(all, ProductColumns.SORT_PRICE, 0, 10, false).getPageIds());
+        assertArrayEquals(new long[]{2L, 1L}, columns.select(all, ProductColumns.SORT_NAME, 0, 2, false).getPageIds());
+        ProductColumns.Selection secondPage = columns.select(all, ProductColumns.SORT_STOCK, 2, 2, false);
+        assertArrayEquals(new long[]{1L}, secondPage.getPageIds());
+        assertEquals(3, secondPage.getTotalCount());
+    }
+
+    @Test
+    void select_ShouldKeepRankedOrderAndCollectMatches() {
+        ProductFilter filter = ProductFilter.builder().rankedIds(new long[]{3L, 99L, 1L, 2L}).maxPrice(500.0).build();
+
+        ProductColumns.Selection selection = columns.select(filter, null, 0, 10, true);
+
+        assertArrayEquals(new long[]{3L, 2L}, selection.getPageIds());
+        assertArrayEquals(new long[]{2L, 3L}, selection.getMatches().toArray());
+    }
+
+    @Test
+    void select_ShouldFollowPriceChangesInNarrowRange() {
+        ProductColumns large = new ProductColumns(PRICE_BOUNDS);
+        for (long id = 1; id <= 1000; id++) {
+            large.upsert(id, "Product " + id, 1L, "Electronics", id, 1);
+        }
+        large.upsert(500L, "Product 500", 1L, "Electronics", 10.5, 1);
+        large.remove(11L);
+
+        ProductFilter narrow = ProductFilter.builder().minPrice(10.0).maxPrice(12.0).build();
+
+        assertArrayEquals(new long[]{10L, 12L, 500L}, large.select(narrow, null, 0, 10, false).getPageIds());
+        assertArrayEquals(new long[]{10L, 500L, 12L}, large.select(narrow, ProductColumns.SORT_PRICE, 0, 10, false).getPageIds());
+    }
+}
@@ -0,0 +1,50 @@
+package se.product_service_1.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductListingCacheTest {
+
+    private final ProductListingCache cache = new ProductListingCache(new SimpleMeterRegistry(), 1024 * 1024, DataSize.ofBytes(64));
+
+    @Test
+    void get_ShouldLoadEachVersionOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        ProductListingCache.Key first = new ProductListingCache.Key("c1.a.0.1", 1L, "id", null, 100, false);
+        ProductListingCache.Key changed = new ProductListingCache.Key("c1.a.0.2", 1L, "id", null, 100, false);
+
+        cache.get(first, () -> page("[]", loads));
+        cache.get(first, () -> page("[]", loads));
+        cache.get(changed, () -> page("[]", loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void gzipped_ShouldOnlyCompressPagesAboveThreshold() throws Exception {
+        String json = "[" + "{\"productName\":\"Laptop\"},".repeat(20) + "{}]";
+        ProductListingCache.Page large = new ProductListingCache.Page(json.getBytes(StandardCharsets.UTF_8), null, null);
+        ProductListingCache.Page small = new ProductListingCache.Page("[]".getBytes(StandardCharsets.UTF_8), null, null);
+
+        byte[] gzipped = cache.gzipped(large);
+
+        assertNull(cache.gzipped(small));
+        assertSame(gzipped, cache.gzipped(large));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertEquals(json, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ProductListingCache.Page page(String json, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new ProductListingCache.Page(json.getBytes(StandardCharsets.UTF_8), null, null);
+    }
+}
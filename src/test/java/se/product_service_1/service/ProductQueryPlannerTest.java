@@ -0,0 +1,79 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import se.product_service_1.dto.ProductSearchRequest;
+import se.product_service_1.model.Tag;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductQueryPlannerTest {
+
+    private TagService tagService;
+    private ProductQueryPlanner planner;
+    private ProductColumns columns;
+
+    @BeforeEach
+    void setUp() {
+        tagService = mock(TagService.class);
+        planner = new ProductQueryPlanner(tagService);
+        columns = new ProductColumns(new double[]{100});
+        for (long id = 1; id <= 100; id++) {
+            columns.upsert(id, "Product " + id, id % 2, id % 2 == 0 ? "Even" : "Odd", id, id <= 10 ? 0 : 5);
+        }
+    }
+
+    @Test
+    void plan_ShouldRunMostSelectiveFilterFirst() {
+        Tag sale = Tag.builder().id(7L).name("sale").build();
+        when(tagService.getTagsByNames(any())).thenReturn(Map.of("sale", sale));
+        when(tagService.getProductCounts(List.of(7L))).thenReturn(Map.of(7L, 3L));
+        when(tagService.findProductIdsWithAnyTag(List.of(7L))).thenReturn(new long[]{2L, 4L, 5L});
+
+        ProductQueryPlan plan = planner.plan(ProductSearchRequest.builder()
+                .categoryName("Even")
+                .tagNames(List.of("sale"))
+                .minPrice(3.0)
+                .build(), columns);
+        Roaring64Bitmap result = plan.execute();
+
+        assertEquals(List.of(ProductQueryPlanner.OPERATOR_TAG_UNION, ProductQueryPlanner.OPERATOR_CATEGORY, ProductQueryPlanner.OPERATOR_PRICE_RANGE),
+                plan.getSteps().stream().map(ProductQueryPlan.Step::getOperator).toList());
+        assertEquals(List.of(3L, 50L, 98L), plan.getSteps().stream().map(ProductQueryPlan.Step::getEstimatedRows).toList());
+        assertEquals(List.of(3L, 2L, 1L), plan.getSteps().stream().map(ProductQueryPlan.Step::getActualRows).toList());
+        assertEquals(Roaring64Bitmap.bitmapOf(4L), result);
+    }
+
+    @Test
+    void execute_ShouldStopWhenNoCandidatesRemain() {
+        when(tagService.getTagsByNames(any())).thenReturn(Map.of());
+        when(tagService.getProductCounts(List.of())).thenReturn(Map.of());
+
+        ProductQueryPlan plan = planner.plan(ProductSearchRequest.builder()
+                .tagNames(List.of("missing"))
+                .requireAllTags(true)
+                .inStockOnly(true)
+                .build(), columns);
+        Roaring64Bitmap result = plan.execute();
+
+        assertTrue(result.isEmpty());
+        assertEquals(ProductQueryPlanner.OPERATOR_TAG_INTERSECTION, plan.getSteps().get(0).getOperator());
+        assertEquals(0L, plan.getSteps().get(0).getActualRows());
+        assertNull(plan.getSteps().get(1).getActualRows());
+        verify(tagService, never()).findProductIdsWithAllTags(any());
+    }
+
+    @Test
+    void execute_ShouldReturnNullWithoutFilters() {
+        ProductQueryPlan plan = planner.plan(ProductSearchRequest.builder().build(), columns);
+
+        assertTrue(plan.getSteps().isEmpty());
+        assertNull(plan.execute());
+    }
+}
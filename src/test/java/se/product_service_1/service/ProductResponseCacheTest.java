@@ -0,0 +1,163 @@
+package se.product_service_1.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.product_service_1.dto.ProductResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductResponseCacheTest {
+
+    private static final List<Long> PRODUCT_IDS = List.of(1L, 2L, 3L, 4L, 5L);
+
+    private ProductResponseCache cache;
+    // Fungerar som "databasen" som cachen ska spegla
+    private Map<Long, Integer> stockById;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ProductResponseCache(new SimpleMeterRegistry(), 1024 * 1024, 1024 * 1024);
+        stockById = new ConcurrentHashMap<>();
+        PRODUCT_IDS.forEach(id -> stockById.put(id, 0));
+    }
+
+    @Test
+    void getAll_ShouldLoadOnlyMissingIds() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<Set<Long>, Map<Long, ProductResponse>> loader = ids -> {
+            loads.addAndGet(ids.size());
+            return load(ids);
+        };
+
+        cache.getAll(List.of(1L, 2L), loader);
+        cache.getAll(List.of(1L, 2L, 3L), loader);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void getAll_ShouldCacheLoadWhenOtherProductIsInvalidatedMeanwhile() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.getAll(List.of(1L), ids -> {
+            loads.incrementAndGet();
+            cache.invalidate(2L);
+            return load(ids);
+        });
+
+        cache.getAll(List.of(1L), ids -> {
+            loads.incrementAndGet();
+            return load(ids);
+        });
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getAll_ShouldNotCacheLoadWhenSameProductIsInvalidatedMeanwhile() {
+        cache.getAll(List.of(1L), ids -> {
+            Map<Long, ProductResponse> responses = load(ids);
+            stockById.put(1L, 7);
+            cache.invalidate(1L);
+            return responses;
+        });
+
+        assertEquals(7, cache.getAll(List.of(1L), this::load).get(1L).getStockQuantity());
+    }
+
+    @Test
+    void invalidate_ShouldReloadChangedProduct() {
+        cache.getAll(List.of(1L), this::load);
+        stockById.put(1L, 7);
+        cache.invalidate(1L);
+
+        assertEquals(7, cache.getAll(List.of(1L), this::load).get(1L).getStockQuantity());
+    }
+
+    @Test
+    void invalidate_ShouldAlsoDropEncodedJson() {
+        Function<Set<Long>, Map<Long, byte[]>> encoder = ids -> {
+            Map<Long, byte[]> json = new HashMap<>();
+            ids.forEach(id -> json.put(id, ("{\"stockQuantity\":" + stockById.get(id) + "}").getBytes()));
+            return json;
+        };
+        cache.getAllJson(List.of(1L), encoder);
+        stockById.put(1L, 7);
+        cache.invalidate(1L);
+
+        assertEquals("{\"stockQuantity\":7}", new String(cache.getAllJson(List.of(1L), encoder).get(1L)));
+    }
+
+    @Test
+    void concurrentReadersAndWriters_ShouldNeverLeaveStaleEntries() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int reader = 0; reader < 6; reader++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 2_000; i++) {
+                    cache.getAll(PRODUCT_IDS, this::slowLoad);
+                }
+                return null;
+            }));
+        }
+        for (int writer = 0; writer < 2; writer++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    Long id = PRODUCT_IDS.get(ThreadLocalRandom.current().nextInt(PRODUCT_IDS.size()));
+                    stockById.merge(id, 1, Integer::sum);
+                    cache.invalidate(id);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Map<Long, ProductResponse> cached = cache.getAll(PRODUCT_IDS, this::load);
+        for (Long id : PRODUCT_IDS) {
+            assertEquals(stockById.get(id), cached.get(id).getStockQuantity(), "stale entry for product " + id);
+        }
+    }
+
+    private Map<Long, ProductResponse> slowLoad(Set<Long> ids) {
+        Map<Long, ProductResponse> responses = load(ids);
+        // Vidga fönstret mellan läsning och insättning i cachen
+        Thread.yield();
+        return responses;
+    }
+
+    private Map<Long, ProductResponse> load(Set<Long> ids) {
+        Map<Long, ProductResponse> responses = new HashMap<>();
+        for (Long id : ids) {
+            responses.put(id, ProductResponse.builder()
+                    .id(id)
+                    .productName("Product " + id)
+                    .stockQuantity(stockById.get(id))
+                    .build());
+        }
+        return responses;
+    }
+}
@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import se.product_service_1.dto.AvailabilityCheckLine;
+import se.product_service_1.dto.AvailabilityCheckResult;
 import se.product_service_1.exception.ProductAlreadyExistsException;
 import se.product_service_1.exception.ProductNotFoundException;
 import se.product_service_1.model.Category;
@@ -12,6 +14,8 @@ import se.product_service_1.model.Product;
 import se.product_service_1.model.Tag;
 import se.product_service_1.repository.CategoryRepository;
 import se.product_service_1.repository.ProductRepository;
+import se.product_service_1.repository.ProductTagRepository;
+import se.product_service_1.repository.TagRepository;
 
 import java.util.*;
 
@@ -29,6 +33,42 @@ class ProductServiceTest {
     @Mock
     private TagService tagService;
 
+    @Mock
+    private ProductTagRepository productTagRepository;
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @Mock
+    private ProductResponseCache productResponseCache;
+
+    @Mock
+    private ProductTagIndex productTagIndex;
+
+    @Mock
+    private ProductTextIndex productTextIndex;
+
+    @Mock
+    private ProductColumnIndex productColumnIndex;
+
+    @Mock
+    private ProductQueryPlanner productQueryPlanner;
+
+    @Mock
+    private CatalogChangeCounters catalogChangeCounters;
+
+    @Mock
+    private InventoryAvailability inventoryAvailability;
+
+    @Mock
+    private HotSkuInventory hotSkuInventory;
+
+    @Mock
+    private InventoryLedgerService inventoryLedgerService;
+
+    @Mock
+    private LowStockMonitor lowStockMonitor;
+
     @InjectMocks
     private ProductService productService;
 
@@ -97,6 +137,7 @@ class ProductServiceTest {
         productService.deleteProduct(1L);
 
         verify(productRepository).deleteById(1L);
+        verify(productResponseCache).invalidate(1L);
     }
 
     @Test
@@ -171,5 +212,29 @@ class ProductServiceTest {
 
         assertEquals("Updated Laptop", result.getName());
         verify(productRepository).save(sampleProduct);
+        verify(productResponseCache).invalidate(1L);
+    }
+
+    @Test
+    void checkAvailability_ShouldAnswerFromStockSnapshotWithoutDatabase() {
+        ProductColumns columns = new ProductColumns(new double[] {100});
+        columns.upsert(1L, "Laptop", 7L, "Electronics", 999.99, 5);
+        columns.upsert(2L, "Mouse", 7L, "Electronics", 9.99, 10);
+        when(productColumnIndex.isReady()).thenReturn(true);
+        when(productColumnIndex.getColumns()).thenReturn(columns);
+        when(inventoryAvailability.held(2L)).thenReturn(4);
+        when(hotSkuInventory.stock(anyLong())).thenReturn(null);
+
+        List<AvailabilityCheckResult> result = productService.checkAvailability(List.of(
+                new AvailabilityCheckLine(1L, 3),
+                new AvailabilityCheckLine(2L, 6),
+                new AvailabilityCheckLine(1L, 3),
+                new AvailabilityCheckLine(3L, 1)));
+
+        assertEquals(List.of(5, 6, 5, 0), result.stream().map(AvailabilityCheckResult::getAvailableToPromise).toList());
+        // Raderna för produkt 1 är tillsammans 6 och ryms inte i saldot 5
+        assertEquals(List.of(false, true, false, false), result.stream().map(AvailabilityCheckResult::isAvailable).toList());
+        assertFalse(result.get(3).isFound());
+        verifyNoInteractions(productRepository);
     }
-}
\ No newline at end of file
+}
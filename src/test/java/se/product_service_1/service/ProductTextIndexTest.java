@@ -0,0 +1,106 @@
+package se.product_service_1.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import se.product_service_1.model.Category;
+import se.product_service_1.model.Product;
+import se.product_service_1.repository.ProductRepository;
+import se.product_service_1.repository.ProductTagRepository;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ProductTextIndexTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductTagRepository productTagRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProductTextIndex productTextIndex;
+
+    private final Category electronics = Category.builder().id(1L).name("Electronics").build();
+    private final Category toys = Category.builder().id(2L).name("Toys").build();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        List<Product> products = List.of(
+                product(1L, "Wireless Headphones", electronics),
+                product(2L, "Gaming Laptop", electronics),
+                product(3L, "Wooden Train", toys));
+        when(productRepository.streamByIdGreaterThan(0L)).thenReturn(products.stream());
+        when(productTagRepository.findTagNamesByProductIds(anyCollection())).thenReturn(List.of(
+                new Object[]{1L, "Audio"},
+                new Object[]{2L, "Gaming"},
+                new Object[]{3L, "Kids"}));
+        meterRegistry = new SimpleMeterRegistry();
+        productTextIndex = new ProductTextIndex(productRepository, productTagRepository, meterRegistry, "");
+        productTextIndex.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        productTextIndex.close();
+    }
+
+    @Test
+    void search_ShouldTolerateTypos() {
+        List<ProductTextHit> hits = productTextIndex.search("hedphones", 10);
+
+        assertEquals(List.of(1L), ids(hits));
+    }
+
+    @Test
+    void search_ShouldRankNameMatchAboveTagAndCategoryMatch() {
+        // "gaming" finns både i namnet och som tagg på produkt 2; "electronics" bara som kategori
+        List<ProductTextHit> hits = productTextIndex.search("gaming", 10);
+
+        assertEquals(2L, hits.get(0).getProductId());
+        assertTrue(hits.get(0).getHighlights().get("name").contains("<em>Gaming</em>"));
+    }
+
+    @Test
+    void search_ShouldRequireEveryTerm() {
+        assertEquals(List.of(2L), ids(productTextIndex.search("laptop electronics", 10)));
+        assertTrue(productTextIndex.search("laptop toys", 10).isEmpty());
+    }
+
+    @Test
+    void reindex_ShouldMakeChangesSearchableWithoutRebuild() {
+        when(productRepository.findAllById(List.of(4L))).thenReturn(List.of(product(4L, "Bluetooth Speaker", electronics)));
+        when(productTagRepository.findTagNamesByProductIds(List.of(4L))).thenReturn(List.<Object[]>of(new Object[]{4L, "Audio"}));
+
+        productTextIndex.reindex(4L);
+        productTextIndex.remove(1L);
+
+        assertEquals(List.of(4L), ids(productTextIndex.search("audio", 10)));
+    }
+
+    @Test
+    void search_ShouldRecordLatency() {
+        productTextIndex.search("train", 10);
+
+        assertEquals(1, meterRegistry.get("product.text_search").timer().count());
+    }
+
+    private static List<Long> ids(List<ProductTextHit> hits) {
+        return hits.stream().map(ProductTextHit::getProductId).collect(Collectors.toList());
+    }
+
+    private static Product product(Long id, String name, Category category) {
+        return Product.builder().id(id).name(name).category(category).price(100.0).stockQuantity(10).build();
+    }
+}
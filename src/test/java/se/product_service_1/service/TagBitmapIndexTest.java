@@ -0,0 +1,72 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagBitmapIndexTest {
+
+    private TagBitmapIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TagBitmapIndex();
+        index.add(1L, 10L);
+        index.add(1L, 11L);
+        index.add(1L, 12L);
+        index.add(2L, 11L);
+        index.add(2L, 12L);
+        index.add(3L, 12L);
+    }
+
+    @Test
+    void union_ShouldReturnEachProductOnce() {
+        assertArrayEquals(new long[]{10L, 11L, 12L}, index.union(List.of(1L, 2L, 3L)).toArray());
+    }
+
+    @Test
+    void intersection_ShouldReturnProductsWithAllTags() {
+        assertArrayEquals(new long[]{11L, 12L}, index.intersection(List.of(1L, 2L)).toArray());
+        assertArrayEquals(new long[]{12L}, index.intersection(List.of(1L, 2L, 3L)).toArray());
+    }
+
+    @Test
+    void intersection_ShouldBeEmpty_WhenTagHasNoProducts() {
+        assertTrue(index.intersection(List.of(1L, 99L)).isEmpty());
+    }
+
+    @Test
+    void topTagCounts_ShouldCountWithinResultAndKeepMostCommon() {
+        Map<Long, Long> counts = index.topTagCounts(Roaring64Bitmap.bitmapOf(11L, 12L), 2);
+
+        assertEquals(List.of(1L, 2L), List.copyOf(counts.keySet()));
+        assertEquals(2L, counts.get(1L));
+        assertEquals(2L, counts.get(2L));
+        assertEquals(Map.of(1L, 3L), index.topTagCounts(null, 1));
+    }
+
+    @Test
+    void removeProductAndTag_ShouldUpdateResults() {
+        index.removeProduct(12L);
+        index.removeTag(2L);
+
+        assertArrayEquals(new long[]{10L, 11L}, index.union(List.of(1L, 2L, 3L)).toArray());
+        assertTrue(index.intersection(List.of(3L)).isEmpty());
+    }
+
+    @Test
+    void replaceWith_ShouldSwapInSnapshot() {
+        TagBitmapIndex snapshot = new TagBitmapIndex();
+        snapshot.add(5L, 50L);
+
+        index.replaceWith(snapshot);
+
+        assertTrue(index.union(List.of(1L)).isEmpty());
+        assertArrayEquals(new long[]{50L}, index.union(List.of(5L)).toArray());
+    }
+}
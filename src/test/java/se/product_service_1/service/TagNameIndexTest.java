@@ -0,0 +1,72 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import se.product_service_1.model.Tag;
+import se.product_service_1.repository.TagRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TagNameIndexTest {
+
+    @Mock
+    private TagRepository tagRepository;
+
+    private TagNameIndex tagNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(tagRepository.findAll()).thenReturn(List.of(
+                tag(1L, "Gaming"),
+                tag(2L, "Game"),
+                tag(3L, "Board Game"),
+                tag(4L, "Videogames"),
+                tag(5L, "Tech")));
+        tagNameIndex = new TagNameIndex(tagRepository);
+        tagNameIndex.rebuild();
+    }
+
+    @Test
+    void search_ShouldOrderExactThenPrefixThenSubstring() {
+        List<String> result = names(tagNameIndex.search("GAME"));
+
+        assertEquals(List.of("Game", "Board Game", "Videogames"), result);
+    }
+
+    @Test
+    void search_ShouldHandleShortTerms() {
+        assertEquals(List.of("Game", "Gaming", "Board Game", "Videogames"), names(tagNameIndex.search("ga")));
+        assertEquals(List.of("Tech"), names(tagNameIndex.search("h")));
+    }
+
+    @Test
+    void search_ShouldVerifyTrigramCandidates() {
+        // "Gamma Ames" innehåller både "gam" och "ame" men inte "game"
+        tagNameIndex.add(List.of(tag(7L, "Gamma Ames")));
+
+        assertFalse(names(tagNameIndex.search("game")).contains("Gamma Ames"));
+        assertEquals(List.of("Videogames"), names(tagNameIndex.search("eogam")));
+    }
+
+    @Test
+    void addAndRemove_ShouldUpdateSearchResults() {
+        tagNameIndex.add(List.of(tag(6L, "Gamepad")));
+        tagNameIndex.remove(4L);
+
+        assertEquals(List.of("Game", "Gamepad", "Board Game"), names(tagNameIndex.search("game")));
+    }
+
+    private static Tag tag(Long id, String name) {
+        return Tag.builder().id(id).name(name).build();
+    }
+
+    private static List<String> names(List<Tag> tags) {
+        return tags.stream().map(Tag::getName).toList();
+    }
+}
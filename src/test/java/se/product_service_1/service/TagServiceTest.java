@@ -0,0 +1,176 @@
+package se.product_service_1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import se.product_service_1.model.Tag;
+import se.product_service_1.repository.ProductTagRepository;
+import se.product_service_1.repository.TagRepository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TagServiceTest {
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @Mock
+    private ProductTagRepository productTagRepository;
+
+    @Mock
+    private ProductResponseCache productResponseCache;
+
+    @Mock
+    private ProductTagIndex productTagIndex;
+
+    @Mock
+    private TagNameIndex tagNameIndex;
+
+    @Mock
+    private ProductTextIndex productTextIndex;
+
+    @Mock
+    private CatalogChangeCounters catalogChangeCounters;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TagService tagService;
+
+    private Tag tech;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        tagService = new TagService(tagRepository, productTagRepository, productResponseCache, productTagIndex, tagNameIndex, productTextIndex, catalogChangeCounters, transactionManager, 300);
+        tech = Tag.builder().id(1L).name("Tech").build();
+    }
+
+    @Test
+    void getOrCreateTags_ShouldUseOneLookupAndOneBatchInsert() {
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of(tech));
+        when(tagRepository.saveAll(anyList())).thenAnswer(invocation -> withIds(invocation.getArgument(0)));
+
+        Set<Tag> result = tagService.getOrCreateTags(List.of("Tech", "Gaming", "Audio"));
+
+        assertEquals(Set.of("Tech", "Gaming", "Audio"), result.stream().map(Tag::getName).collect(Collectors.toSet()));
+        verify(tagRepository, times(1)).findByNameIn(anyCollection());
+        verify(tagRepository, times(1)).saveAll(anyList());
+        verify(tagRepository, never()).findByName(anyString());
+    }
+
+    @Test
+    void getOrCreateTags_ShouldServeKnownTagsFromDictionary() {
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of(tech));
+        tagService.getOrCreateTags(List.of("Tech"));
+
+        Set<Tag> result = tagService.getOrCreateTags(List.of("Tech"));
+
+        assertEquals(Set.of(tech), result);
+        verify(tagRepository, times(1)).findByNameIn(anyCollection());
+    }
+
+    @Test
+    void getOrCreateTags_ShouldReuseTagCreatedConcurrently() {
+        Tag concurrentlyCreated = Tag.builder().id(2L).name("Gaming").build();
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of());
+        when(tagRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(tagRepository.findByName("Gaming")).thenReturn(Optional.of(concurrentlyCreated));
+
+        Set<Tag> result = tagService.getOrCreateTags(List.of("Gaming"));
+
+        assertEquals(Set.of(concurrentlyCreated), result);
+        verify(tagRepository, never()).save(any());
+    }
+
+    @Test
+    void getOrCreateTagsByName_ShouldKeyTagsByRequestedNameWhenStoredCaseDiffers() {
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of(tech));
+        when(tagRepository.saveAll(anyList())).thenAnswer(invocation -> withIds(invocation.getArgument(0)));
+
+        Map<String, Tag> result = tagService.getOrCreateTagsByName(List.of("TECH", "Gaming"));
+
+        assertSame(tech, result.get("TECH"));
+        assertEquals("Gaming", result.get("Gaming").getName());
+        assertSame(tech, tagService.getTagsByNames(List.of("TECH")).get("TECH"));
+        verify(tagRepository, times(1)).findByNameIn(anyCollection());
+    }
+
+    @Test
+    void getTagsByNames_ShouldSkipNullAndBlankNames() {
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of(tech));
+
+        Map<String, Tag> result = tagService.getTagsByNames(Arrays.asList(null, " ", "Tech"));
+
+        assertEquals(Map.of("Tech", tech), result);
+        verify(tagRepository).findByNameIn(Set.of("Tech"));
+    }
+
+    @Test
+    void getTagsByNames_ShouldNotQueryWhenOnlyBlankNamesAreGiven() {
+        assertTrue(tagService.getTagsByNames(Arrays.asList(null, "")).isEmpty());
+        verify(tagRepository, never()).findByNameIn(anyCollection());
+    }
+
+    @Test
+    void getProductCounts_ShouldSplitLongIdListIntoChunks() {
+        List<Long> tagIds = LongStream.rangeClosed(1, 2500).boxed().collect(Collectors.toList());
+        when(productTagRepository.countProductsByTagIds(anyCollection())).thenReturn(List.<Object[]>of());
+        when(productTagRepository.countProductsByTagIds(argThat(ids -> ids.contains(1L))))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, 4L}));
+
+        Map<Long, Long> counts = tagService.getProductCounts(tagIds);
+
+        verify(productTagRepository, times(3)).countProductsByTagIds(argThat(ids -> ids.size() <= 1000));
+        assertEquals(2500, counts.size());
+        assertEquals(4L, counts.get(1L));
+        assertEquals(0L, counts.get(2500L));
+    }
+
+    @Test
+    void deleteTag_ShouldEvictCachedTagOnlyAfterCommit() {
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of(tech));
+        when(tagRepository.existsById(1L)).thenReturn(true);
+        tagService.getTagsByNames(List.of("Tech"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tagService.deleteTag(1L);
+
+            assertSame(tech, tagService.getTagsByNames(List.of("Tech")).get("Tech"));
+            verify(tagNameIndex, never()).remove(1L);
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        when(tagRepository.findByNameIn(anyCollection())).thenReturn(List.of());
+        assertTrue(tagService.getTagsByNames(List.of("Tech")).isEmpty());
+        verify(tagNameIndex).remove(1L);
+    }
+
+    private List<Tag> withIds(List<Tag> tags) {
+        long id = 10;
+        for (Tag tag : tags) {
+            tag.setId(id++);
+        }
+        return tags;
+    }
+}